@@ -1,7 +1,41 @@
 package su.plo.voice.api.encryption;
 
+import java.nio.ByteBuffer;
+
 public interface Encryption {
     byte[] encrypt(byte[] data) throws EncryptionException;
 
     byte[] decrypt(byte[] data) throws EncryptionException;
+
+    /**
+     * Encrypts remaining bytes of the input buffer into the output buffer
+     * <br/>
+     * By default, data is copied to the array and encrypted by {@link #encrypt(byte[])}
+     *
+     * @return number of bytes written to the output buffer
+     */
+    default int encrypt(ByteBuffer data, ByteBuffer out) throws EncryptionException {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+
+        byte[] encrypted = encrypt(bytes);
+        out.put(encrypted);
+        return encrypted.length;
+    }
+
+    /**
+     * Decrypts remaining bytes of the input buffer into the output buffer
+     * <br/>
+     * By default, data is copied to the array and decrypted by {@link #decrypt(byte[])}
+     *
+     * @return number of bytes written to the output buffer
+     */
+    default int decrypt(ByteBuffer data, ByteBuffer out) throws EncryptionException {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+
+        byte[] decrypted = decrypt(bytes);
+        out.put(decrypted);
+        return decrypted.length;
+    }
 }
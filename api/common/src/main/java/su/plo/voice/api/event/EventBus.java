@@ -19,6 +19,17 @@ public interface EventBus {
      */
     <E extends Event> void callAsync(@NotNull E event);
 
+    /**
+     * Checks if there are any handlers registered for the event class
+     * <br/>
+     * Can be used to skip creating the event when nobody listens to it
+     *
+     * @param eventClass the event class
+     *
+     * @return true if the event class has at least one handler
+     */
+    boolean hasListeners(@NotNull Class<? extends Event> eventClass);
+
     /**
      * Registers all events in listener class
      *
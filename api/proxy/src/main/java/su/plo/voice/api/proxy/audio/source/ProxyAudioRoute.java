@@ -0,0 +1,56 @@
+package su.plo.voice.api.proxy.audio.source;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import su.plo.voice.api.addon.AddonContainer;
+import su.plo.voice.api.server.audio.capture.ServerActivation;
+import su.plo.voice.api.server.audio.line.ServerSourceLine;
+import su.plo.voice.api.server.player.VoicePlayer;
+import su.plo.voice.proto.packets.tcp.serverbound.PlayerAudioEndPacket;
+import su.plo.voice.proto.packets.udp.serverbound.PlayerAudioPacket;
+
+import java.util.Collection;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Routes the audio of the player activation to the source line right on the proxy
+ * <br/>
+ * Routed audio is not forwarded to the backend servers,
+ * it's sent by the proxy directly to the players on all backend servers
+ * using the direct source of the speaking player.
+ * <br/>
+ * Note: by default, it will send packets to all players with voice chat except the speaking player.
+ * Use {@link ProxyAudioRoute#setPlayers} and (or) {@link ProxyAudioRoute#addFilter} to filter the listeners
+ */
+public interface ProxyAudioRoute {
+
+    @NotNull AddonContainer getAddon();
+
+    @NotNull ServerActivation getActivation();
+
+    @NotNull ServerSourceLine getLine();
+
+    void setPlayers(@Nullable Supplier<Collection<VoicePlayer>> playersSupplier);
+
+    /**
+     * Adds a filter of the listeners
+     */
+    void addFilter(@NotNull Predicate<VoicePlayer> filter);
+
+    void removeFilter(@NotNull Predicate<VoicePlayer> filter);
+
+    /**
+     * Sends the audio packet of the player to the listeners
+     *
+     * @return true if the packet was routed and should not be forwarded to the backend server
+     */
+    boolean sendAudioPacket(@NotNull VoicePlayer player, @NotNull PlayerAudioPacket packet);
+
+    /**
+     * Sends the audio end packet of the player to the listeners
+     *
+     * @return true if the packet was routed and should not be forwarded to the backend server
+     */
+    boolean sendAudioEndPacket(@NotNull VoicePlayer player, @NotNull PlayerAudioEndPacket packet);
+}
@@ -1,6 +1,32 @@
 package su.plo.voice.api.proxy.audio.source;
 
+import org.jetbrains.annotations.NotNull;
+import su.plo.voice.api.server.audio.capture.ServerActivation;
+import su.plo.voice.api.server.audio.line.ServerSourceLine;
 import su.plo.voice.api.server.audio.source.BaseServerSourceManager;
 
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+
 public interface ProxySourceManager extends BaseServerSourceManager {
+
+    /**
+     * Creates the route of the activation to the source line,
+     * previous route of the activation is removed
+     *
+     * @see ProxyAudioRoute
+     */
+    @NotNull ProxyAudioRoute createRoute(@NotNull Object addonObject,
+                                         @NotNull ServerActivation activation,
+                                         @NotNull ServerSourceLine line);
+
+    Optional<ProxyAudioRoute> getRouteByActivationId(@NotNull UUID activationId);
+
+    @NotNull Collection<ProxyAudioRoute> getRoutes();
+
+    /**
+     * Removes the route and the sources created by it
+     */
+    void removeRoute(@NotNull UUID activationId);
 }
@@ -3,6 +3,7 @@ package su.plo.voice.api.server.connection;
 import org.jetbrains.annotations.NotNull;
 import su.plo.voice.api.server.player.VoicePlayer;
 import su.plo.voice.api.server.socket.UdpConnection;
+import su.plo.voice.proto.packets.Packet;
 import su.plo.voice.proto.packets.udp.clientbound.ClientPacketUdpHandler;
 
 import java.util.Collection;
@@ -17,4 +18,11 @@ public interface UdpConnectionManager<P extends VoicePlayer, C extends UdpConnec
     Optional<C> getConnectionBySecret(@NotNull UUID secret);
 
     Collection<C> getConnections();
+
+    /**
+     * Sends the packet to the connections
+     * <br/>
+     * The packet is encoded only once for all connections
+     */
+    void sendPacket(@NotNull Packet<?> packet, @NotNull Collection<? extends UdpConnection> connections);
 }
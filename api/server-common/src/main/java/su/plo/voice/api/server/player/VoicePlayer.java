@@ -45,5 +45,14 @@ public interface VoicePlayer {
 
     Optional<PublicKey> getPublicKey();
 
+    /**
+     * Checks if the player has the permission
+     * <br/>
+     * Implementations may cache the result until the player's permissions are updated
+     */
+    default boolean hasPermission(@NotNull String permission) {
+        return getInstance().hasPermission(permission);
+    }
+
     @NotNull MinecraftServerPlayer getInstance();
 }
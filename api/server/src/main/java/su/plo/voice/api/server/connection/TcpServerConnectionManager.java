@@ -4,6 +4,8 @@ import org.jetbrains.annotations.NotNull;
 import su.plo.voice.api.server.player.VoiceServerPlayer;
 import su.plo.voice.proto.packets.tcp.clientbound.ClientPacketTcpHandler;
 
+import java.util.concurrent.CompletableFuture;
+
 // todo: doc
 // todo: move to PlayerManager?
 public interface TcpServerConnectionManager extends ConnectionManager<ClientPacketTcpHandler, VoiceServerPlayer> {
@@ -24,11 +26,25 @@ public interface TcpServerConnectionManager extends ConnectionManager<ClientPack
 
     /**
      * Sends {@link su.plo.voice.proto.packets.tcp.clientbound.ConfigPacket} to the player
+     * <br/>
+     * Packet can be built asynchronously, config packets of the player are sent in the order of the calls
      *
      * @param receiver the player
      */
     void sendConfigInfo(@NotNull VoiceServerPlayer receiver);
 
+    /**
+     * Sends {@link su.plo.voice.proto.packets.tcp.clientbound.ConfigPacket} to the player,
+     * see {@link #sendConfigInfo(VoiceServerPlayer)}
+     *
+     * @param receiver the player
+     * @return the future completed when the packet is sent
+     */
+    default CompletableFuture<Void> sendConfigInfoAsync(@NotNull VoiceServerPlayer receiver) {
+        sendConfigInfo(receiver);
+        return CompletableFuture.completedFuture(null);
+    }
+
     /**
      * Sends {@link su.plo.voice.proto.packets.tcp.clientbound.PlayerListPacket} to the player
      *
@@ -1,8 +1,11 @@
 package su.plo.voice.api.server.connection;
 
+import org.jetbrains.annotations.NotNull;
+import su.plo.lib.api.server.world.ServerPos3d;
 import su.plo.voice.api.server.player.VoiceServerPlayer;
 import su.plo.voice.api.server.socket.UdpServerConnection;
 
+import java.util.Collection;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -22,4 +25,13 @@ public interface UdpServerConnectionManager extends UdpConnectionManager<VoiceSe
     boolean removeConnection(UUID secret);
 
     void clearConnections();
+
+    /**
+     * Gets connections of players in the same world within the distance of the position
+     * <br/>
+     * Player positions are taken from the proximity index, which is updated once per tick
+     *
+     * @return the mutable collection of connections
+     */
+    Collection<UdpServerConnection> getConnectionsInRange(@NotNull ServerPos3d position, double distance);
 }
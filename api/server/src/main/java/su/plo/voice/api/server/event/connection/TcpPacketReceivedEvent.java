@@ -11,6 +11,8 @@ import static com.google.common.base.Preconditions.checkNotNull;
 /**
  * This event is fired once the PlayerChannelHandler
  * is received the packet, but not handled yet
+ * <br/>
+ * This event is fired on the voice channel worker, not on the main thread
  */
 public final class TcpPacketReceivedEvent extends EventCancellableBase {
 
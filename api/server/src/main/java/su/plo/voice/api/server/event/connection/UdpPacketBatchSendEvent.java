@@ -0,0 +1,33 @@
+package su.plo.voice.api.server.event.connection;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import su.plo.voice.api.event.Event;
+import su.plo.voice.api.server.socket.UdpServerConnection;
+import su.plo.voice.proto.packets.Packet;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * This event is fired once the {@link su.plo.voice.api.server.socket.UdpServer}
+ * sent the same packet to multiple {@link UdpServerConnection}
+ * <br/>
+ * Unlike {@link UdpPacketSendEvent}, it is fired only once for all recipients of the packet
+ */
+public final class UdpPacketBatchSendEvent implements Event {
+
+    @Getter
+    private final Packet<?> packet;
+
+    @Getter
+    private final Collection<? extends UdpServerConnection> connections;
+
+    public UdpPacketBatchSendEvent(@NotNull Packet<?> packet,
+                                   @NotNull Collection<? extends UdpServerConnection> connections) {
+        this.packet = checkNotNull(packet, "packet cannot be null");
+        this.connections = Collections.unmodifiableCollection(checkNotNull(connections, "connections cannot be null"));
+    }
+}
@@ -58,7 +58,26 @@ subprojects {
     }
 
     tasks.test {
-        useJUnitPlatform()
+        useJUnitPlatform {
+            excludeTags("benchmark")
+        }
+        testLogging {
+            events("passed", "skipped", "failed")
+        }
+    }
+
+    // timing loops are tagged as benchmarks and are run only by this task
+    tasks.register<Test>("benchmark") {
+        group = "verification"
+        description = "Runs the tests tagged as benchmarks."
+
+        val test = the<SourceSetContainer>()["test"]
+        testClassesDirs = test.output.classesDirs
+        classpath = test.runtimeClasspath
+
+        useJUnitPlatform {
+            includeTags("benchmark")
+        }
         testLogging {
             events("passed", "skipped", "failed")
         }
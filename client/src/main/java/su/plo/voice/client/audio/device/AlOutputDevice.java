@@ -24,6 +24,7 @@ import su.plo.voice.api.event.EventPriority;
 import su.plo.voice.api.event.EventSubscribe;
 import su.plo.voice.api.util.Params;
 import su.plo.voice.client.audio.AlUtil;
+import su.plo.voice.client.audio.device.source.AlStreamScheduler;
 import su.plo.voice.client.audio.device.source.StreamAlSource;
 
 import javax.sound.sampled.AudioFormat;
@@ -44,7 +45,9 @@ public final class AlOutputDevice
 
     private static final Logger LOGGER = LogManager.getLogger(AlOutputDevice.class);
 
-    private final ExecutorService executor;
+    private final ScheduledExecutorService executor;
+    @Getter
+    private final AlStreamScheduler streamScheduler;
     @Getter
     private final Listener listener = new AlListener();
     private final Set<AlSource> sources = new CopyOnWriteArraySet<>();
@@ -67,6 +70,7 @@ public final class AlOutputDevice
 
             return thread;
         });
+        this.streamScheduler = new AlStreamScheduler(executor);
     }
 
     @Override
@@ -206,7 +210,7 @@ public final class AlOutputDevice
         }
 
         try {
-            AlSource source = StreamAlSource.create(this, client, stereo, numBuffers);
+            AlSource source = StreamAlSource.create(this, streamScheduler, client, stereo, numBuffers);
             sources.add(source);
             return source;
         } catch (RuntimeException e) {
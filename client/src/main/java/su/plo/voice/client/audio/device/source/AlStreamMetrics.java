@@ -0,0 +1,98 @@
+package su.plo.voice.client.audio.device.source;
+
+import lombok.ToString;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streaming cost counters of {@link AlStreamScheduler}
+ */
+@ToString
+public final class AlStreamMetrics {
+
+    // number of scheduler wakeups
+    private final LongAdder ticks = new LongAdder();
+    // number of times the source ran out of buffers and was restarted
+    private final LongAdder underruns = new LongAdder();
+    private final LongAdder serviceNanos = new LongAdder();
+    private final AtomicLong maxServiceNanos = new AtomicLong();
+    // difference between the planned and actual wakeup time
+    private final LongAdder wakeupLatencyNanos = new LongAdder();
+    private final AtomicLong maxWakeupLatencyNanos = new AtomicLong();
+
+    private volatile int sources;
+
+    void onTick(long serviceNanos, long wakeupLatencyNanos) {
+        ticks.increment();
+        this.serviceNanos.add(serviceNanos);
+        maxServiceNanos.accumulateAndGet(serviceNanos, Math::max);
+
+        wakeupLatencyNanos = Math.max(0L, wakeupLatencyNanos);
+        this.wakeupLatencyNanos.add(wakeupLatencyNanos);
+        maxWakeupLatencyNanos.accumulateAndGet(wakeupLatencyNanos, Math::max);
+    }
+
+    void onUnderrun() {
+        underruns.increment();
+    }
+
+    void setSources(int sources) {
+        this.sources = sources;
+    }
+
+    /**
+     * @return number of threads used to stream the sources of the device
+     */
+    public int getThreads() {
+        return 1;
+    }
+
+    /**
+     * @return number of streaming sources
+     */
+    public int getSources() {
+        return sources;
+    }
+
+    public long getTicks() {
+        return ticks.sum();
+    }
+
+    public long getUnderruns() {
+        return underruns.sum();
+    }
+
+    /**
+     * @return average time spent on servicing all sources in one tick in microseconds
+     */
+    public double getAverageServiceMicros() {
+        long ticks = getTicks();
+        return ticks == 0 ? 0D : serviceNanos.sum() / 1_000D / ticks;
+    }
+
+    public double getMaxServiceMicros() {
+        return maxServiceNanos.get() / 1_000D;
+    }
+
+    /**
+     * @return average delay between the time when buffers should be refilled and the actual wakeup in microseconds
+     */
+    public double getAverageWakeupLatencyMicros() {
+        long ticks = getTicks();
+        return ticks == 0 ? 0D : wakeupLatencyNanos.sum() / 1_000D / ticks;
+    }
+
+    public double getMaxWakeupLatencyMicros() {
+        return maxWakeupLatencyNanos.get() / 1_000D;
+    }
+
+    public void reset() {
+        ticks.reset();
+        underruns.reset();
+        serviceNanos.reset();
+        maxServiceNanos.set(0L);
+        wakeupLatencyNanos.reset();
+        maxWakeupLatencyNanos.set(0L);
+    }
+}
@@ -0,0 +1,108 @@
+package su.plo.voice.client.audio.device.source;
+
+import lombok.Getter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Services all streaming sources of the device on the device thread
+ * <br/>
+ * Processed buffers of all sources are unqueued and refilled in one batch,
+ * then the thread sleeps until the earliest playing buffer runs out.
+ * Sources can be added and removed only by the device thread
+ */
+public final class AlStreamScheduler {
+
+    private static final Logger LOGGER = LogManager.getLogger(AlStreamScheduler.class);
+    private static final StreamAlSource[] EMPTY = new StreamAlSource[0];
+
+    private static final long MIN_DELAY_MICROS = 1_000L;
+    private static final long MAX_DELAY_MICROS = 10_000L;
+
+    private final ScheduledExecutorService executor;
+    @Getter
+    private final AlStreamMetrics metrics = new AlStreamMetrics();
+
+    // accessed only by the device thread, array is replaced when sources are changed
+    private StreamAlSource[] sources = EMPTY;
+    private ScheduledFuture<?> nextTick;
+    private long nextTickAt;
+
+    public AlStreamScheduler(@NotNull ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    void add(@NotNull StreamAlSource source) {
+        for (StreamAlSource streamSource : sources) {
+            if (streamSource == source) return;
+        }
+
+        StreamAlSource[] sources = Arrays.copyOf(this.sources, this.sources.length + 1);
+        sources[sources.length - 1] = source;
+        this.sources = sources;
+        metrics.setSources(sources.length);
+
+        if (nextTick == null) schedule(0L);
+    }
+
+    void remove(@NotNull StreamAlSource source) {
+        for (int i = 0; i < sources.length; i++) {
+            if (sources[i] != source) continue;
+
+            StreamAlSource[] sources = new StreamAlSource[this.sources.length - 1];
+            System.arraycopy(this.sources, 0, sources, 0, i);
+            System.arraycopy(this.sources, i + 1, sources, i, sources.length - i);
+            this.sources = sources;
+            metrics.setSources(sources.length);
+            break;
+        }
+
+        if (sources.length == 0 && nextTick != null) {
+            nextTick.cancel(false);
+            this.nextTick = null;
+        }
+    }
+
+    /**
+     * Services the sources as soon as possible, used when the starving source receives new data
+     */
+    void wakeup() {
+        executor.execute(() -> {
+            if (nextTick == null || nextTickAt - System.nanoTime() <= MIN_DELAY_MICROS * 1_000L) return;
+            if (nextTick.cancel(false)) schedule(0L);
+        });
+    }
+
+    private void schedule(long delayMicros) {
+        this.nextTickAt = System.nanoTime() + delayMicros * 1_000L;
+        this.nextTick = executor.schedule(this::tick, delayMicros, TimeUnit.MICROSECONDS);
+    }
+
+    private void tick() {
+        long start = System.nanoTime();
+        long wakeupLatency = start - nextTickAt;
+        this.nextTick = null;
+
+        long delay = MAX_DELAY_MICROS;
+        for (StreamAlSource source : sources) {
+            try {
+                long remaining = source.service();
+                if (remaining >= 0L) delay = Math.min(delay, remaining);
+            } catch (Exception e) {
+                LOGGER.warn("Failed to service stream source", e);
+            }
+        }
+
+        metrics.onTick(System.nanoTime() - start, wakeupLatency);
+
+        if (sources.length > 0 && nextTick == null) {
+            schedule(Math.max(MIN_DELAY_MICROS, delay));
+        }
+    }
+}
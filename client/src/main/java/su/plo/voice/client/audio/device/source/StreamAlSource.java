@@ -4,7 +4,6 @@ import lombok.Setter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.lwjgl.openal.AL11;
-import org.lwjgl.openal.EXTThreadLocalContext;
 import org.lwjgl.system.MemoryUtil;
 import su.plo.voice.api.client.PlasmoVoiceClient;
 import su.plo.voice.api.client.audio.device.AlAudioDevice;
@@ -15,11 +14,15 @@ import su.plo.voice.client.audio.AlUtil;
 
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Streaming source serviced by {@link AlStreamScheduler} on the device thread
+ */
 public final class StreamAlSource extends BaseAlSource {
 
     private static final Logger LOGGER = LogManager.getLogger(StreamAlSource.class);
@@ -28,7 +31,11 @@ public final class StreamAlSource extends BaseAlSource {
     @Setter
     private long closeTimeoutMs = 25_000L;
 
-    public static AlSource create(AlAudioDevice device, PlasmoVoiceClient client, boolean stereo, int numBuffers) {
+    public static AlSource create(AlAudioDevice device,
+                                  AlStreamScheduler scheduler,
+                                  PlasmoVoiceClient client,
+                                  boolean stereo,
+                                  int numBuffers) {
         CompletableFuture<AlSource> future = new CompletableFuture<>();
 
         device.runInContext(() -> {
@@ -40,7 +47,7 @@ public final class StreamAlSource extends BaseAlSource {
                 return;
             }
 
-            AlSource source = new StreamAlSource(client, device, stereo, numBuffers, pointer[0]);
+            AlSource source = new StreamAlSource(client, device, scheduler, stereo, numBuffers, pointer[0]);
 
             AlSourceCreatedEvent event = new AlSourceCreatedEvent(source);
             client.getEventBus().call(event);
@@ -55,20 +62,33 @@ public final class StreamAlSource extends BaseAlSource {
         }
     }
 
+    private final AlStreamScheduler scheduler;
     private final int numBuffers;
+    private final int frameSize;
     private final LinkedBlockingQueue<ByteBuffer> queue = new LinkedBlockingQueue<>();
     private final AtomicBoolean isStreaming = new AtomicBoolean(false);
     private final byte[] emptyBuffer;
 
-    private Thread thread;
+    // accessed only by the device thread
+    private final ArrayDeque<Integer> queuedFrames = new ArrayDeque<>();
     private int[] buffers;
-    private int[] availableBuffer = new int[1];
-    private AtomicBoolean emptyFilled = new AtomicBoolean(false);
-    private long lastBufferTime;
-
-    private StreamAlSource(PlasmoVoiceClient client, AlAudioDevice device, boolean stereo, int numBuffers, int pointer) {
+    private final int[] availableBuffer = new int[1];
+
+    private final AtomicBoolean emptyFilled = new AtomicBoolean(false);
+    // set by the device thread when all data is played, so writer wakes up the scheduler
+    private volatile boolean starving;
+    private volatile long lastBufferTime;
+
+    private StreamAlSource(PlasmoVoiceClient client,
+                           AlAudioDevice device,
+                           AlStreamScheduler scheduler,
+                           boolean stereo,
+                           int numBuffers,
+                           int pointer) {
         super(client, device, stereo, pointer);
+        this.scheduler = scheduler;
         this.numBuffers = numBuffers == 0 ? DEFAULT_NUM_BUFFERS : numBuffers;
+        this.frameSize = stereo ? 4 : 2;
         this.emptyBuffer = new byte[device.getBufferSize()];
     }
 
@@ -88,11 +108,9 @@ public final class StreamAlSource extends BaseAlSource {
             return;
         } else if (isStreaming) {
             return;
-        } else if (thread != null && !thread.isAlive()) {
-            stop();
         }
 
-        startStreamThread();
+        startStreaming();
     }
 
     @Override
@@ -107,14 +125,9 @@ public final class StreamAlSource extends BaseAlSource {
         AlUtil.checkErrors("Source stop");
 
         isStreaming.set(false);
+        scheduler.remove(this);
 
-        try {
-            thread.interrupt();
-            thread.join();
-        } catch (InterruptedException ignored) {
-        }
-
-        queue.clear();
+        clearQueue();
     }
 
     @Override
@@ -137,17 +150,25 @@ public final class StreamAlSource extends BaseAlSource {
 
         AlSourceWriteEvent event = new AlSourceWriteEvent(this, buffer);
         client.getEventBus().call(event);
-        if (event.isCancelled()) return;
+        if (event.isCancelled()) {
+            MemoryUtil.memFree(buffer);
+            return;
+        }
 
         queue.offer(buffer);
         if (samples != emptyBuffer) {
             this.emptyFilled.set(false);
             this.lastBufferTime = System.currentTimeMillis();
+
+            if (starving) {
+                this.starving = false;
+                scheduler.wakeup();
+            }
         }
 
         if (queue.size() > 1_000) {
             LOGGER.warn("Queue overflow, stopping stream");
-            stop();
+            device.runInContext(this::stop);
         }
     }
 
@@ -173,94 +194,112 @@ public final class StreamAlSource extends BaseAlSource {
         });
     }
 
-    private void startStreamThread() {
+    private void startStreaming() {
         isStreaming.set(true);
 
-        this.thread = new Thread(this::stream);
-        thread.setName("AL Source Stream");
-        thread.setDaemon(false);
-
-        thread.start();
-    }
-
-    private void stream() {
-        EXTThreadLocalContext.alcSetThreadContext(device.getContextPointer().get());
-
-        this.buffers = new int[numBuffers];
-        AL11.alGenBuffers(buffers);
-        AlUtil.checkErrors("Source gen buffers");
+        if (buffers == null) {
+            this.buffers = new int[numBuffers];
+            AL11.alGenBuffers(buffers);
+            AlUtil.checkErrors("Source gen buffers");
+        } else {
+            // source was stopped, so all buffers are processed
+            removeProcessedBuffers();
+        }
 
+        queuedFrames.clear();
         queueWithEmptyBuffers();
         fillQueue();
 
         this.lastBufferTime = System.currentTimeMillis();
         this.availableBuffer[0] = -1;
+        this.starving = false;
 
-        while (isStreaming.get()) {
-            int queueSize = queue.size();
-
-            int processedBuffers = getInt(AL11.AL_BUFFERS_PROCESSED);
-            AlUtil.checkErrors("Get processed buffers");
-
-            while (processedBuffers > 0 || availableBuffer[0] != -1) {
-                if (availableBuffer[0] == -1) {
-                    AL11.alSourceUnqueueBuffers(pointer, availableBuffer);
-                    AlUtil.checkErrors("Unqueue buffer");
-
-                    // Bits can be 0 if the format or parameters are corrupt, avoid division by zero
-                    int bits = AL11.alGetBufferi(availableBuffer[0], AL11.AL_BITS);
-                    AlUtil.checkErrors("Source get buffer int");
-                    if (bits == 0) {
-                        LOGGER.warn("Corrupted stream");
-                        continue;
-                    }
-
-                    if (availableBuffer[0] != -1) {
-                        AlSourceBufferUnqueuedEvent unqueuedEvent = new AlSourceBufferUnqueuedEvent(this, availableBuffer[0]);
-                        client.getEventBus().call(unqueuedEvent);
-                    }
-                }
+        scheduler.add(this);
+    }
+
+    /**
+     * Refills processed buffers of the source, called by {@link AlStreamScheduler} on the device thread
+     *
+     * @return microseconds until the playing buffer runs out or -1 if the source doesn't need servicing
+     */
+    long service() {
+        if (!isStreaming.get()) return -1L;
+
+        int queueSize = queue.size();
 
-                if (availableBuffer[0] != -1 && fillAndPushBuffer(availableBuffer[0])) {
-                    availableBuffer[0] = -1;
+        int processedBuffers = getInt(AL11.AL_BUFFERS_PROCESSED);
+        AlUtil.checkErrors("Get processed buffers");
+
+        while (processedBuffers > 0 || availableBuffer[0] != -1) {
+            if (availableBuffer[0] == -1) {
+                AL11.alSourceUnqueueBuffers(pointer, availableBuffer);
+                AlUtil.checkErrors("Unqueue buffer");
+                queuedFrames.poll();
+
+                // Bits can be 0 if the format or parameters are corrupt, avoid division by zero
+                int bits = AL11.alGetBufferi(availableBuffer[0], AL11.AL_BITS);
+                AlUtil.checkErrors("Source get buffer int");
+                if (bits == 0) {
+                    LOGGER.warn("Corrupted stream");
                     processedBuffers--;
-                } else {
-                    break;
+                    continue;
+                }
+
+                if (availableBuffer[0] != -1) {
+                    AlSourceBufferUnqueuedEvent unqueuedEvent = new AlSourceBufferUnqueuedEvent(this, availableBuffer[0]);
+                    client.getEventBus().call(unqueuedEvent);
                 }
             }
 
-            State state = getState();
-            if (state == State.STOPPED && queueSize == 0 && !emptyFilled.get()) {
-                removeProcessedBuffers();
+            if (availableBuffer[0] != -1 && fillAndPushBuffer(availableBuffer[0])) {
                 availableBuffer[0] = -1;
+                processedBuffers--;
+            } else {
+                break;
+            }
+        }
 
-                queueWithEmptyBuffers();
-                fillQueue();
+        State state = getState();
+        if (state == State.STOPPED && queueSize == 0 && !emptyFilled.get()) {
+            scheduler.getMetrics().onUnderrun();
 
-                client.getEventBus().call(new AlStreamSourceStoppedEvent(this));
+            removeProcessedBuffers();
+            availableBuffer[0] = -1;
 
-                play();
-                AL11.alSourcePlay(pointer);
-                AlUtil.checkErrors("Source play");
-            } else if (state != State.PLAYING && state != State.PAUSED && queueSize > 0) {
-                AL11.alSourcePlay(pointer);
-                AlUtil.checkErrors("Source play");
-            }
+            queuedFrames.clear();
+            queueWithEmptyBuffers();
+            fillQueue();
 
-            if (closeTimeoutMs > 0L && System.currentTimeMillis() - lastBufferTime > closeTimeoutMs) {
-                LOGGER.info("Stream timed out. Closing...");
-                close();
-                break;
-            }
+            client.getEventBus().call(new AlStreamSourceStoppedEvent(this));
 
-            try {
-                Thread.sleep(5L);
-            } catch (InterruptedException e) {
-                break;
-            }
+            play();
+            AL11.alSourcePlay(pointer);
+            AlUtil.checkErrors("Source play");
+        } else if (state != State.PLAYING && state != State.PAUSED && queueSize > 0) {
+            AL11.alSourcePlay(pointer);
+            AlUtil.checkErrors("Source play");
+        }
+
+        if (closeTimeoutMs > 0L && System.currentTimeMillis() - lastBufferTime > closeTimeoutMs) {
+            LOGGER.info("Stream timed out. Closing...");
+            close();
+            return -1L;
         }
 
-        EXTThreadLocalContext.alcSetThreadContext(0L);
+        if (queue.isEmpty()) this.starving = true;
+
+        return getRemainingMicros();
+    }
+
+    private long getRemainingMicros() {
+        Integer frames = queuedFrames.peek();
+        if (frames == null || getState() != State.PLAYING) return -1L;
+
+        int offset = getInt(AL11.AL_SAMPLE_OFFSET);
+        AlUtil.checkErrors("Get sample offset");
+
+        int sampleRate = (int) device.getFormat().get().getSampleRate();
+        return Math.max(0L, (frames - offset) * 1_000_000L / sampleRate);
     }
 
     private void queueWithEmptyBuffers() {
@@ -280,24 +319,39 @@ public final class StreamAlSource extends BaseAlSource {
         ByteBuffer byteBuffer = queue.poll();
         if (byteBuffer == null) return false;
 
-        AL11.alBufferData(buffer, format, byteBuffer, (int) device.getFormat().get().getSampleRate());
-        if (AlUtil.checkErrors("Assigning buffer data")) return false;
+        try {
+            int frames = byteBuffer.remaining() / frameSize;
 
-        AL11.alSourceQueueBuffers(pointer, new int[]{buffer});
-        if (AlUtil.checkErrors("Queue buffer data")) return false;
+            AL11.alBufferData(buffer, format, byteBuffer, (int) device.getFormat().get().getSampleRate());
+            if (AlUtil.checkErrors("Assigning buffer data")) return false;
 
-        AlSourceBufferQueuedEvent event = new AlSourceBufferQueuedEvent(this, byteBuffer, buffer);
-        client.getEventBus().call(event);
+            AL11.alSourceQueueBuffers(pointer, new int[]{buffer});
+            if (AlUtil.checkErrors("Queue buffer data")) return false;
+            queuedFrames.offer(frames);
 
-        return true;
+            AlSourceBufferQueuedEvent event = new AlSourceBufferQueuedEvent(this, byteBuffer, buffer);
+            client.getEventBus().call(event);
+
+            return true;
+        } finally {
+            // data is copied by alBufferData
+            MemoryUtil.memFree(byteBuffer);
+        }
+    }
+
+    private void clearQueue() {
+        ByteBuffer buffer;
+        while ((buffer = queue.poll()) != null) {
+            MemoryUtil.memFree(buffer);
+        }
     }
 
     private void removeProcessedBuffers() {
         int processedBuffers = getInt(AL11.AL_BUFFERS_PROCESSED);
         AlUtil.checkErrors("Get processed buffers");
 
+        int[] buffer = new int[1];
         while (processedBuffers > 0) {
-            int[] buffer = new int[1];
             AL11.alSourceUnqueueBuffers(pointer, buffer);
             AlUtil.checkErrors("Unqueue buffer");
             processedBuffers--;
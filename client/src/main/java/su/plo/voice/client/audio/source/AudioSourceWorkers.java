@@ -0,0 +1,102 @@
+package su.plo.voice.client.audio.source;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded worker pool shared by all client audio sources
+ * <br/>
+ * Each source gets a sequential executor on top of the pool,
+ * so packets of one source are processed in order without a dedicated thread per source
+ */
+public final class AudioSourceWorkers {
+
+    private static final int QUEUE_CAPACITY = 4_096;
+
+    @Getter
+    private static final AudioSourceWorkers shared = new AudioSourceWorkers(
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() / 2))
+    );
+
+    private final ThreadPoolExecutor workers;
+    // used only to schedule tasks on the sequential executors, so one thread is enough
+    @Getter
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder tasks = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public AudioSourceWorkers(int threads) {
+        this.workers = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(QUEUE_CAPACITY),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("Voice Audio Source Worker #%d")
+                        .setDaemon(true)
+                        .build(),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("Voice Audio Source Scheduler")
+                        .setDaemon(true)
+                        .build()
+        );
+    }
+
+    /**
+     * Creates executor which runs tasks one by one in submission order on the shared workers
+     * <br/>
+     * {@link RejectedExecutionException} is thrown if the workers queue is full
+     */
+    public @NotNull Executor newSequentialExecutor() {
+        return MoreExecutors.newSequentialExecutor(this::execute);
+    }
+
+    public int getThreads() {
+        return workers.getPoolSize();
+    }
+
+    public int getActiveThreads() {
+        return workers.getActiveCount();
+    }
+
+    public int getQueueSize() {
+        return workers.getQueue().size();
+    }
+
+    /**
+     * @return average delay between task submission and its start in microseconds
+     */
+    public double getAverageLatencyMicros() {
+        long tasks = this.tasks.sum();
+        return tasks == 0 ? 0D : latencyNanos.sum() / 1_000D / tasks;
+    }
+
+    public double getMaxLatencyMicros() {
+        return maxLatencyNanos.get() / 1_000D;
+    }
+
+    private void execute(@NotNull Runnable task) {
+        long submittedAt = System.nanoTime();
+
+        workers.execute(() -> {
+            long latency = System.nanoTime() - submittedAt;
+            tasks.increment();
+            latencyNanos.add(latency);
+            maxLatencyNanos.accumulateAndGet(latency, Math::max);
+
+            task.run();
+        });
+    }
+}
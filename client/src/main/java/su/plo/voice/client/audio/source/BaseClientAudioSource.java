@@ -43,8 +43,8 @@ import su.plo.voice.proto.packets.udp.clientbound.SourceAudioPacket;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -57,7 +57,8 @@ public abstract class BaseClientAudioSource<T extends SourceInfo> implements Cli
     protected final PlasmoVoiceClient voiceClient;
     protected final ClientConfig config;
 
-    protected final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    // packets are processed in order on the shared workers instead of a thread per source
+    protected final Executor executor = AudioSourceWorkers.getShared().newSequentialExecutor();
 
     protected final float[] playerPosition = new float[3];
     protected final float[] position = new float[3];
@@ -178,17 +179,17 @@ public abstract class BaseClientAudioSource<T extends SourceInfo> implements Cli
     public void process(@NotNull SourceAudioPacket packet) {
         if (isClosed()) return;
 
-        executor.execute(() -> processAudioPacket(packet));
+        execute(() -> processAudioPacket(packet));
     }
 
     @Override
     public void process(@NotNull SourceAudioEndPacket packet) {
         if (isClosed()) return;
 
-        executor.execute(() -> processAudioEndPacket(packet));
+        execute(() -> processAudioEndPacket(packet));
         if (endRequest != null) endRequest.cancel(false);
-        this.endRequest = executor.schedule(
-                this::reset,
+        this.endRequest = AudioSourceWorkers.getShared().getScheduler().schedule(
+                () -> execute(this::reset),
                 100L,
                 TimeUnit.MILLISECONDS
         );
@@ -198,7 +199,10 @@ public abstract class BaseClientAudioSource<T extends SourceInfo> implements Cli
     public synchronized void close() {
         activated.set(false);
         closed.set(true);
-        if (!executor.isShutdown()) executor.shutdown();
+        if (endRequest != null) {
+            endRequest.cancel(false);
+            this.endRequest = null;
+        }
 
         if (decoder != null && decoder.isOpen()) {
             decoder.close();
@@ -248,6 +252,17 @@ public abstract class BaseClientAudioSource<T extends SourceInfo> implements Cli
         reset();
     }
 
+    private void execute(@NotNull Runnable task) {
+        try {
+            executor.execute(() -> {
+                if (isClosed()) return;
+                task.run();
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Audio source workers are overloaded, dropping task");
+        }
+    }
+
     private void processAudioPacket(@NotNull SourceAudioPacket packet) {
         if (sourceInfo == null || packet.getSourceState() != sourceInfo.getState()) {
             LOGGER.info("Drop packet with bad source state");
@@ -25,6 +25,7 @@ import su.plo.voice.api.client.event.socket.UdpClientClosedEvent;
 import su.plo.voice.api.client.event.socket.UdpClientConnectEvent;
 import su.plo.voice.api.client.socket.UdpClient;
 import su.plo.voice.api.encryption.Encryption;
+import su.plo.voice.api.encryption.EncryptionSupplier;
 import su.plo.voice.api.event.EventSubscribe;
 import su.plo.voice.api.util.Params;
 import su.plo.voice.client.BaseVoiceClient;
@@ -36,20 +37,24 @@ import su.plo.voice.proto.data.encryption.EncryptionInfo;
 import su.plo.voice.proto.data.player.VoicePlayerInfo;
 import su.plo.voice.proto.packets.Packet;
 import su.plo.voice.proto.packets.PacketHandler;
+import su.plo.voice.proto.packets.tcp.PacketTcpCodec;
 import su.plo.voice.proto.packets.tcp.clientbound.*;
 import su.plo.voice.proto.packets.tcp.serverbound.LanguageRequestPacket;
 import su.plo.voice.proto.packets.tcp.serverbound.PlayerInfoPacket;
 
 import javax.crypto.Cipher;
 import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 public abstract class BaseServerConnection implements ServerConnection, ClientPacketTcpHandler {
 
@@ -281,6 +286,12 @@ public abstract class BaseServerConnection implements ServerConnection, ClientPa
                 MinecraftUtil.getVersion(),
                 voiceClient.getVersion(),
                 keyPair.getPublic().getEncoded(),
+                voiceClient.getEncryptionManager()
+                        .getAlgorithms()
+                        .stream()
+                        .map(EncryptionSupplier::getName)
+                        .collect(Collectors.toList()),
+                Arrays.asList(BatchPacket.CAPABILITY, PlayerInfoDeltaPacket.CAPABILITY),
                 voiceClient.getConfig().getVoice().getDisabled().value(),
                 voiceClient.getConfig().getVoice().getMicrophoneDisabled().value()
         ));
@@ -315,6 +326,16 @@ public abstract class BaseServerConnection implements ServerConnection, ClientPa
         }
     }
 
+    @Override
+    public void handle(@NotNull PlayerInfoDeltaPacket packet) {
+        VoicePlayerInfo playerInfo = playerById.get(packet.getPlayerId());
+        if (playerInfo == null) return;
+
+        playerInfo = packet.apply(playerInfo);
+        playerById.put(playerInfo.getPlayerId(), playerInfo);
+        voiceClient.getEventBus().call(new VoicePlayerUpdateEvent(playerInfo));
+    }
+
     @Override
     public void handle(@NotNull PlayerDisconnectPacket packet) {
         if (Optional.ofNullable(UMinecraft.getPlayer())
@@ -403,6 +424,18 @@ public abstract class BaseServerConnection implements ServerConnection, ClientPa
         voiceClient.getDistanceVisualizer().render(packet.getRadius(), packet.getHexColor());
     }
 
+    @Override
+    public void handle(@NotNull BatchPacket packet) {
+        for (byte[] frame : packet.getPackets()) {
+            try {
+                Optional<Packet<PacketHandler>> framePacket = PacketTcpCodec.decode(frame);
+                framePacket.ifPresent(this::handle);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to decode batched packet", e);
+            }
+        }
+    }
+
     @EventSubscribe
     public void onUdpClosed(@NotNull UdpClientClosedEvent event) {
         close();
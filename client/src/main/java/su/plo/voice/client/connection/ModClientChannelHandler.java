@@ -1,7 +1,5 @@
 package su.plo.voice.client.connection;
 
-import com.google.common.io.ByteStreams;
-import io.netty.buffer.ByteBufUtil;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.multiplayer.ClientPacketListener;
 import net.minecraft.network.Connection;
@@ -78,10 +76,8 @@ public final class ModClientChannelHandler
             }
         }
 
-        byte[] data = ByteBufUtil.getBytes(buf.duplicate());
-
         try {
-            PacketTcpCodec.decode(ByteStreams.newDataInput(data))
+            PacketTcpCodec.decode(buf.duplicate())
                     .ifPresent(this.connection::handle);
         } catch (IOException e) {
             e.printStackTrace();
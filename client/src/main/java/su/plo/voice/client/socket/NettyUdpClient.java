@@ -2,7 +2,6 @@ package su.plo.voice.client.socket;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
@@ -112,16 +111,14 @@ public final class NettyUdpClient implements UdpClient {
 
     @Override
     public void sendPacket(Packet<?> packet) {
-        byte[] encoded = PacketUdpCodec.encode(packet, secret);
-        if (encoded == null) return;
+        UdpClientPacketSendEvent event = new UdpClientPacketSendEvent(this, packet);
+        if (!voiceClient.getEventBus().call(event)) return;
 
-        ByteBuf buf = Unpooled.wrappedBuffer(encoded);
+        ByteBuf buf = PacketUdpCodec.encode(packet, secret, channel.alloc());
+        if (buf == null) return;
 
         LOGGER.debug("UDP packet {} sent to {}", packet, channel.remoteAddress());
 
-        UdpClientPacketSendEvent event = new UdpClientPacketSendEvent(this, packet);
-        if (!voiceClient.getEventBus().call(event)) return;
-
         channel.writeAndFlush(new DatagramPacket(buf, channel.remoteAddress()));
     }
 
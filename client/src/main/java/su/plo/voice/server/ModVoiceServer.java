@@ -81,7 +81,7 @@ public final class ModVoiceServer
         super.onShutdown();
         this.server = null;
         minecraftServerLib.onShutdown();
-        handler.clear();
+        handler.close();
     }
 
     private void onCommandRegister(@NotNull CommandDispatcher<CommandSourceStack> dispatcher) {
@@ -1,7 +1,5 @@
 package su.plo.voice.server.connection;
 
-import com.google.common.io.ByteStreams;
-import io.netty.buffer.ByteBufUtil;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.server.level.ServerPlayer;
@@ -56,10 +54,8 @@ public final class ModServerChannelHandler
     }
 
     private void receive(ServerPlayer player, FriendlyByteBuf buf) {
-        byte[] data = ByteBufUtil.getBytes(buf.duplicate());
-
         try {
-            PacketTcpCodec.decode(ByteStreams.newDataInput(data))
+            PacketTcpCodec.decode(buf.duplicate())
                     .ifPresent(packet -> {
 //                        LogManager.getLogger().info("Channel packet received {}", packet);
 
@@ -67,10 +63,15 @@ public final class ModServerChannelHandler
 
                         PlayerChannelHandler channel = channels.computeIfAbsent(
                                 player.getUUID(),
-                                (playerId) -> new PlayerChannelHandler(voiceServer, voicePlayer)
+                                (playerId) -> new PlayerChannelHandler(
+                                        voiceServer,
+                                        voiceServer.getAudioEncryption(),
+                                        voicePlayer,
+                                        packetWorkers
+                                )
                         );
 
-                        channel.handlePacket(packet);
+                        channel.queuePacket(packet);
                     });
         } catch (IOException e) {
             e.printStackTrace();
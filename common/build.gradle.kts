@@ -8,4 +8,5 @@ dependencies {
     implementation(rootProject.libs.opus)
 
     testImplementation(project(":api:common"))
+    testImplementation(rootProject.libs.netty)
 }
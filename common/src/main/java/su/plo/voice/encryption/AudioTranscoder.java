@@ -0,0 +1,54 @@
+package su.plo.voice.encryption;
+
+import org.jetbrains.annotations.NotNull;
+import su.plo.voice.api.encryption.Encryption;
+import su.plo.voice.api.encryption.EncryptionException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encrypts audio with the other encryption
+ * <br/>
+ * Audio is decrypted and encrypted again into the buffers reused by the thread,
+ * so only the transcoded data is allocated
+ */
+public final class AudioTranscoder {
+
+    // iv, padding and authentication tag of the supported algorithms fit into it
+    private static final int MAX_OVERHEAD = 64;
+    private static final int MIN_BUFFER_SIZE = 2048;
+
+    private static final ThreadLocal<ByteBuffer> DECRYPTED_BUFFERS = new ThreadLocal<>();
+    private static final ThreadLocal<ByteBuffer> ENCRYPTED_BUFFERS = new ThreadLocal<>();
+
+    private AudioTranscoder() {
+    }
+
+    /**
+     * Decrypts the data with the first encryption and encrypts it with the second one
+     */
+    public static byte[] transcode(@NotNull Encryption from, @NotNull Encryption to, byte[] data)
+            throws EncryptionException {
+        ByteBuffer decrypted = buffer(DECRYPTED_BUFFERS, data.length);
+        from.decrypt(ByteBuffer.wrap(data), decrypted);
+        decrypted.flip();
+
+        ByteBuffer encrypted = buffer(ENCRYPTED_BUFFERS, decrypted.remaining() + MAX_OVERHEAD);
+        byte[] transcoded = new byte[to.encrypt(decrypted, encrypted)];
+        encrypted.flip();
+        encrypted.get(transcoded);
+
+        return transcoded;
+    }
+
+    private static ByteBuffer buffer(ThreadLocal<ByteBuffer> buffers, int size) {
+        ByteBuffer buffer = buffers.get();
+        if (buffer == null || buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(Math.max(MIN_BUFFER_SIZE, Integer.highestOneBit(size) << 1));
+            buffers.set(buffer);
+        }
+
+        buffer.clear();
+        return buffer;
+    }
+}
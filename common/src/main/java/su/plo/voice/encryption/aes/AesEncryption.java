@@ -4,13 +4,19 @@ import su.plo.voice.api.encryption.Encryption;
 import su.plo.voice.api.encryption.EncryptionException;
 
 import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 
 public final class AesEncryption implements Encryption {
 
-    private static final String CIPHER = "AES/CBC/PKCS5Padding";
+    public static final String CIPHER = "AES/CBC/PKCS5Padding";
+    private static final int IV_LENGTH = 16;
+
+    // cipher instances are not thread-safe, but can be reinitialized instead of creating new ones
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(AesEncryption::createCipher);
 
     private final SecretKeySpec key;
     private final SecureRandom random = new SecureRandom();
@@ -22,16 +28,21 @@ public final class AesEncryption implements Encryption {
     @Override
     public byte[] encrypt(byte[] data) throws EncryptionException {
         try {
-            IvParameterSpec iv = generateIv();
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
 
             // initialize cipher
-            Cipher cipher = Cipher.getInstance(CIPHER);
-            cipher.init(Cipher.ENCRYPT_MODE, key, iv);
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
 
-            // encrypt data
-            byte[] encrypted = cipher.doFinal(data);
+            // encrypt data right after iv
+            byte[] encrypted = new byte[IV_LENGTH + cipher.getOutputSize(data.length)];
+            System.arraycopy(iv, 0, encrypted, 0, IV_LENGTH);
+            int length = cipher.doFinal(data, 0, data.length, encrypted, IV_LENGTH);
 
-            return copyIvEncrypted(iv, encrypted);
+            return length + IV_LENGTH == encrypted.length
+                    ? encrypted
+                    : copyOf(encrypted, length + IV_LENGTH);
         } catch (Exception e) {
             throw new EncryptionException("Failed to encrypt data", e);
         }
@@ -40,48 +51,27 @@ public final class AesEncryption implements Encryption {
     @Override
     public byte[] decrypt(byte[] encrypted) throws EncryptionException {
         try {
-            IvParameterSpec iv = ivFromEncrypted(encrypted);
-
             // initialize cipher
-            Cipher cipher = Cipher.getInstance(CIPHER);
-            cipher.init(Cipher.DECRYPT_MODE, key, iv);
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(encrypted, 0, IV_LENGTH));
 
-            encrypted = dataFromEncrypted(encrypted);
-            return cipher.doFinal(encrypted);
+            return cipher.doFinal(encrypted, IV_LENGTH, encrypted.length - IV_LENGTH);
         } catch (Exception e) {
             throw new EncryptionException("Failed to decrypt data", e);
         }
     }
 
-    private IvParameterSpec generateIv() {
-        byte[] iv = new byte[16];
-        random.nextBytes(iv);
-        return new IvParameterSpec(iv);
-    }
-
-    /**
-     * Copies iv and encrypted data to new byte array
-     *
-     * @return the byte array
-     */
-    private byte[] copyIvEncrypted(IvParameterSpec iv, byte[] encrypted) {
-        byte[] encryptedIv = new byte[iv.getIV().length + encrypted.length];
-
-        System.arraycopy(iv.getIV(), 0, encryptedIv, 0, iv.getIV().length);
-        System.arraycopy(encrypted, 0, encryptedIv, iv.getIV().length, encrypted.length);
-
-        return encryptedIv;
-    }
-
-    private IvParameterSpec ivFromEncrypted(byte[] encrypted) {
-        byte[] iv = new byte[16];
-        System.arraycopy(encrypted, 0, iv, 0, iv.length);
-        return new IvParameterSpec(iv);
+    private static byte[] copyOf(byte[] data, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(data, 0, copy, 0, length);
+        return copy;
     }
 
-    private byte[] dataFromEncrypted(byte[] encrypted) {
-        byte[] data = new byte[encrypted.length - 16];
-        System.arraycopy(encrypted, 16, data, 0, data.length);
-        return data;
+    private static Cipher createCipher() {
+        try {
+            return Cipher.getInstance(CIPHER);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
@@ -0,0 +1,129 @@
+package su.plo.voice.encryption.aes;
+
+import su.plo.voice.api.encryption.Encryption;
+import su.plo.voice.api.encryption.EncryptionException;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AES-GCM encryption
+ * <br/>
+ * Encrypted data is 12 bytes iv, ciphertext and 16 bytes authentication tag.
+ * Iv is 4 random bytes and 8 bytes counter starting from the random value,
+ * so ivs don't repeat within the instance and are unlikely to collide between the instances with the same key
+ */
+public final class AesGcmEncryption implements Encryption {
+
+    public static final String CIPHER = "AES/GCM/NoPadding";
+    public static final int IV_LENGTH = 12;
+    public static final int TAG_LENGTH = 16;
+
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(AesGcmEncryption::createCipher);
+    private static final ThreadLocal<byte[]> IVS = ThreadLocal.withInitial(() -> new byte[IV_LENGTH]);
+
+    private final SecretKeySpec key;
+    private final int salt;
+    private final AtomicLong counter;
+
+    public AesGcmEncryption(byte[] key) {
+        this.key = new SecretKeySpec(key, "AES");
+
+        SecureRandom random = new SecureRandom();
+        this.salt = random.nextInt();
+        this.counter = new AtomicLong(random.nextLong());
+    }
+
+    @Override
+    public byte[] encrypt(byte[] data) throws EncryptionException {
+        try {
+            byte[] iv = nextIv();
+
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, iv));
+
+            byte[] encrypted = new byte[IV_LENGTH + cipher.getOutputSize(data.length)];
+            System.arraycopy(iv, 0, encrypted, 0, IV_LENGTH);
+            cipher.doFinal(data, 0, data.length, encrypted, IV_LENGTH);
+
+            return encrypted;
+        } catch (Exception e) {
+            throw new EncryptionException("Failed to encrypt data", e);
+        }
+    }
+
+    @Override
+    public byte[] decrypt(byte[] encrypted) throws EncryptionException {
+        if (encrypted.length < IV_LENGTH + TAG_LENGTH) throw new EncryptionException("Encrypted data is too short");
+
+        try {
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, encrypted, 0, IV_LENGTH));
+
+            return cipher.doFinal(encrypted, IV_LENGTH, encrypted.length - IV_LENGTH);
+        } catch (Exception e) {
+            throw new EncryptionException("Failed to decrypt data", e);
+        }
+    }
+
+    @Override
+    public int encrypt(ByteBuffer data, ByteBuffer out) throws EncryptionException {
+        try {
+            byte[] iv = nextIv();
+
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, iv));
+
+            out.put(iv);
+            return IV_LENGTH + cipher.doFinal(data, out);
+        } catch (Exception e) {
+            throw new EncryptionException("Failed to encrypt data", e);
+        }
+    }
+
+    @Override
+    public int decrypt(ByteBuffer encrypted, ByteBuffer out) throws EncryptionException {
+        if (encrypted.remaining() < IV_LENGTH + TAG_LENGTH) throw new EncryptionException("Encrypted data is too short");
+
+        try {
+            byte[] iv = IVS.get();
+            encrypted.get(iv);
+
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, iv));
+
+            return cipher.doFinal(encrypted, out);
+        } catch (Exception e) {
+            throw new EncryptionException("Failed to decrypt data", e);
+        }
+    }
+
+    private byte[] nextIv() {
+        long counter = this.counter.getAndIncrement();
+
+        byte[] iv = IVS.get();
+        iv[0] = (byte) (salt >>> 24);
+        iv[1] = (byte) (salt >>> 16);
+        iv[2] = (byte) (salt >>> 8);
+        iv[3] = (byte) salt;
+        for (int i = 0; i < 8; i++) {
+            iv[IV_LENGTH - 1 - i] = (byte) (counter >>> (i * 8));
+        }
+
+        return iv;
+    }
+
+    private static Cipher createCipher() {
+        try {
+            return Cipher.getInstance(CIPHER);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
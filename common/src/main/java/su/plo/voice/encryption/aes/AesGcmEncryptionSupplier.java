@@ -0,0 +1,18 @@
+package su.plo.voice.encryption.aes;
+
+import org.jetbrains.annotations.NotNull;
+import su.plo.voice.api.encryption.Encryption;
+import su.plo.voice.api.encryption.EncryptionSupplier;
+
+public final class AesGcmEncryptionSupplier implements EncryptionSupplier {
+
+    @Override
+    public @NotNull Encryption create(byte[] data) {
+        return new AesGcmEncryption(data);
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return AesGcmEncryption.CIPHER;
+    }
+}
@@ -1,6 +1,5 @@
 package su.plo.voice.event;
 
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -9,30 +8,36 @@ import su.plo.voice.addon.VoiceAddonManager;
 import su.plo.voice.api.PlasmoVoice;
 import su.plo.voice.api.event.*;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.AccessibleObject;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
 public final class VoiceEventBus implements EventBus {
 
     private static final Logger LOGGER = LogManager.getLogger(VoiceAddonManager.class);
+    private static final Subscription[] EMPTY = new Subscription[0];
 
     // listener -> event handlers
-    private final Map<Object, List<EventHandler<?>>> registeredListeners = Maps.newConcurrentMap();
+    private final Map<Object, List<Subscription>> registeredListeners = Maps.newHashMap();
 
     // addon -> listeners
-    private final Map<Object, List<Object>> registeredAddonListeners = Maps.newConcurrentMap();
+    private final Map<Object, List<Object>> registeredAddonListeners = Maps.newHashMap();
 
     // addon -> event handlers
-    private final Map<Object, List<EventHandler<?>>> registeredAddonHandlers = Maps.newConcurrentMap();
+    private final Map<Object, List<Subscription>> registeredAddonHandlers = Maps.newHashMap();
 
-    // class -> handlers
-    private final Map<Class<?>, EnumMap<EventPriority, List<EventHandler<?>>>> handlers = Maps.newConcurrentMap();
+    // class -> handlers, modified only under the lock
+    private final Map<Class<?>, List<Subscription>> subscriptions = Maps.newHashMap();
+
+    // class -> handlers sorted by priority, array is replaced every time handlers of the class are changed
+    private final Map<Class<?>, Subscription[]> handlers = Maps.newConcurrentMap();
 
     private final Executor asyncExecutor = Executors.newSingleThreadExecutor();
 
@@ -44,19 +49,22 @@ public final class VoiceEventBus implements EventBus {
 
     @Override
     public <E extends Event> boolean call(@NotNull E event) {
-        if (!this.handlers.containsKey(event.getClass())) return true;
+        Subscription[] handlers = this.handlers.get(event.getClass());
+        if (handlers == null) return true;
 
-        for (Map.Entry<EventPriority, List<EventHandler<?>>> entry :
-                this.handlers.get(event.getClass()).entrySet()) {
-            List<EventHandler<?>> listeners = entry.getValue();
+        if (event instanceof EventCancellable) {
+            EventCancellable cancellable = (EventCancellable) event;
 
-            for (EventHandler listener : listeners) {
-                listener.execute(event);
+            for (Subscription handler : handlers) {
+                if (handler.ignoreCancelled && cancellable.isCancelled()) continue;
+                handler.execute(event);
             }
+
+            return !cancellable.isCancelled();
         }
 
-        if (event instanceof EventCancellable) {
-            return !((EventCancellable) event).isCancelled();
+        for (Subscription handler : handlers) {
+            handler.execute(event);
         }
 
         return true;
@@ -69,6 +77,11 @@ public final class VoiceEventBus implements EventBus {
         asyncExecutor.execute(() -> call(event));
     }
 
+    @Override
+    public boolean hasListeners(@NotNull Class<? extends Event> eventClass) {
+        return handlers.containsKey(eventClass);
+    }
+
     @Override
     public void register(@NotNull Object addon, @NotNull Object listener) {
         checkIfAddon(addon);
@@ -80,6 +93,7 @@ public final class VoiceEventBus implements EventBus {
         Collections.addAll(methods, publicMethods);
         Collections.addAll(methods, privateMethods);
 
+        List<Subscription> listenerHandlers = new ArrayList<>();
         for (Method method : methods) {
             EventSubscribe entry = method.getAnnotation(EventSubscribe.class);
             if (entry == null || method.isBridge() || method.isSynthetic())
@@ -93,55 +107,26 @@ public final class VoiceEventBus implements EventBus {
 
             final Class<? extends Event> eventClass = clazz.asSubclass(Event.class);
 
-            method.setAccessible(true);
-            EventHandler<?> handler = (event) -> {
-                if (entry.ignoreCancelled() &&
-                        event instanceof EventCancellable &&
-                        ((EventCancellable) event).isCancelled()
-                ) return;
-
-                try {
-                    method.invoke(listener, event);
-                } catch (Throwable e) {
-                    LOGGER.warn("Failed to call an event: {}", e.getMessage());
-                    e.printStackTrace();
-                }
-            };
-
-            EnumMap<EventPriority, List<EventHandler<?>>> listeners = this.handlers.get(eventClass);
-            if (listeners == null) {
-                listeners = new EnumMap<>(EventPriority.class);
-                handlers.put(eventClass, listeners);
+            EventHandler<Event> handler;
+            try {
+                handler = createHandler(listener, method, eventClass);
+            } catch (Throwable e) {
+                LOGGER.warn("Failed to register an event handler {}: {}", method, e.getMessage());
+                continue;
             }
 
-            listeners.compute(
-                    entry.priority(),
-                    (p, eventHandlers) -> {
-                        if (eventHandlers == null) eventHandlers = new CopyOnWriteArrayList<>();
-                        eventHandlers.add(handler);
-                        return eventHandlers;
-                    }
-            );
-
-            this.registeredListeners.compute(
-                    listener,
-                    (l, listenerHandlers) -> {
-                        if (listenerHandlers == null) listenerHandlers = new CopyOnWriteArrayList<>();
-                        listenerHandlers.add(handler);
-                        return listenerHandlers;
-                    }
-            );
+            listenerHandlers.add(new Subscription(eventClass, entry.priority(), entry.ignoreCancelled(), true, handler));
         }
 
-        if (registeredListeners.containsKey(listener)) {
-            registeredAddonListeners.compute(
-                    addon,
-                    (a, addonListeners) -> {
-                        if (addonListeners == null) addonListeners = new CopyOnWriteArrayList<>();
-                        addonListeners.add(listener);
-                        return addonListeners;
-                    }
-            );
+        if (listenerHandlers.isEmpty()) return;
+
+        synchronized (this) {
+            registeredListeners.computeIfAbsent(listener, (l) -> new ArrayList<>())
+                    .addAll(listenerHandlers);
+            registeredAddonListeners.computeIfAbsent(addon, (a) -> new ArrayList<>())
+                    .add(listener);
+
+            addSubscriptions(listenerHandlers);
         }
     }
 
@@ -149,73 +134,74 @@ public final class VoiceEventBus implements EventBus {
     public <E extends Event> void register(@NotNull Object addon, Class<E> eventClass, EventPriority priority, @NotNull EventHandler<E> handler) {
         checkIfAddon(addon);
 
-        EnumMap<EventPriority, List<EventHandler<?>>> listeners = this.handlers.get(eventClass);
-        if (listeners == null) {
-            listeners = new EnumMap<>(EventPriority.class);
-            handlers.put(eventClass, listeners);
-        }
+        Subscription subscription = new Subscription(eventClass, priority, false, false, handler);
 
-        listeners.compute(
-                priority,
-                (p, eventHandlers) -> {
-                    if (eventHandlers == null) eventHandlers = new CopyOnWriteArrayList<>();
-                    eventHandlers.add(handler);
-                    return eventHandlers;
-                }
-        );
-
-        registeredAddonHandlers.compute(
-                addon,
-                (a, addonHandlers) -> {
-                    if (addonHandlers == null) addonHandlers = new CopyOnWriteArrayList<>();
-                    addonHandlers.add(handler);
-                    return addonHandlers;
-                }
-        );
+        synchronized (this) {
+            registeredAddonHandlers.computeIfAbsent(addon, (a) -> new ArrayList<>())
+                    .add(subscription);
+
+            addSubscriptions(Collections.singletonList(subscription));
+        }
     }
 
     @Override
     public void unregister(@NotNull Object addon) {
         checkIfAddon(addon);
 
-        List<EventHandler<?>> handlersToRemove = new ArrayList<>();
+        List<Subscription> handlersToRemove = new ArrayList<>();
 
-        List<Object> addonListeners = registeredAddonListeners.remove(addon);
-        if (addonListeners != null) {
-            for (Object listener : addonListeners) {
-                List<EventHandler<?>> handlers = registeredListeners.remove(listener);
-                if (handlers != null) handlersToRemove.addAll(handlers);
+        synchronized (this) {
+            List<Object> addonListeners = registeredAddonListeners.remove(addon);
+            if (addonListeners != null) {
+                for (Object listener : addonListeners) {
+                    List<Subscription> handlers = registeredListeners.remove(listener);
+                    if (handlers != null) handlersToRemove.addAll(handlers);
+                }
             }
-        }
 
-        List<EventHandler<?>> addonHandlers = registeredAddonHandlers.remove(addon);
-        if (addonHandlers != null) handlersToRemove.addAll(addonHandlers);
+            List<Subscription> addonHandlers = registeredAddonHandlers.remove(addon);
+            if (addonHandlers != null) handlersToRemove.addAll(addonHandlers);
 
-        if (handlersToRemove.size() > 0) removeHandlers(handlersToRemove);
+            if (handlersToRemove.size() > 0) removeSubscriptions(handlersToRemove);
+        }
     }
 
     @Override
     public void unregister(@NotNull Object addon, @NotNull Object listener) {
         checkIfAddon(addon);
 
-        List<Object> addonListeners = registeredAddonListeners.get(addon);
-        addonListeners.remove(listener);
-        if (addonListeners.size() == 0) registeredAddonListeners.remove(addon);
+        synchronized (this) {
+            List<Object> addonListeners = registeredAddonListeners.get(addon);
+            if (addonListeners != null) {
+                addonListeners.remove(listener);
+                if (addonListeners.size() == 0) registeredAddonListeners.remove(addon);
+            }
 
-        List<EventHandler<?>> listenerHandlers = registeredListeners.remove(listener);
+            List<Subscription> listenerHandlers = registeredListeners.remove(listener);
 
-        if (listenerHandlers != null && listenerHandlers.size() > 0) removeHandlers(listenerHandlers);
+            if (listenerHandlers != null && listenerHandlers.size() > 0) removeSubscriptions(listenerHandlers);
+        }
     }
 
     @Override
     public void unregister(@NotNull Object addon, @NotNull EventHandler<?> handler) {
         checkIfAddon(addon);
 
-        List<EventHandler<?>> addonHandlers = registeredAddonHandlers.get(addon);
-        addonHandlers.remove(handler);
-        if (addonHandlers.size() == 0) registeredAddonHandlers.remove(addon);
+        synchronized (this) {
+            List<Subscription> addonHandlers = registeredAddonHandlers.get(addon);
+            if (addonHandlers == null) return;
 
-        removeHandlers(ImmutableList.of(handler));
+            List<Subscription> handlersToRemove = new ArrayList<>();
+            addonHandlers.removeIf((subscription) -> {
+                if (subscription.handler != handler) return false;
+
+                handlersToRemove.add(subscription);
+                return true;
+            });
+            if (addonHandlers.size() == 0) registeredAddonHandlers.remove(addon);
+
+            if (handlersToRemove.size() > 0) removeSubscriptions(handlersToRemove);
+        }
     }
 
     private void checkIfAddon(@NotNull Object addon) {
@@ -223,38 +209,150 @@ public final class VoiceEventBus implements EventBus {
                 .orElseThrow(() -> new IllegalArgumentException("object " + addon.getClass() + " is not annotated with @Addon"));
     }
 
-    private void removeHandlers(List<EventHandler<?>> handlersToRemove) {
-        List<Class<?>> eventsToRemove = new ArrayList<>();
+    private void addSubscriptions(@NotNull List<Subscription> subscriptionsToAdd) {
+        Set<Class<?>> changedEvents = new HashSet<>();
 
-        handlers.forEach((eventClass, listeners) -> {
-            List<EventPriority> listenersToRemove = new ArrayList<>();
+        for (Subscription subscription : subscriptionsToAdd) {
+            subscriptions.computeIfAbsent(subscription.eventClass, (eventClass) -> new ArrayList<>())
+                    .add(subscription);
+            changedEvents.add(subscription.eventClass);
+        }
 
-            listeners.forEach((priority, handlers) -> {
-                handlers.removeAll(handlersToRemove);
-                if (handlers.size() == 0) {
-                    listenersToRemove.add(priority);
-                }
-            });
+        changedEvents.forEach(this::publishHandlers);
+    }
+
+    private void removeSubscriptions(@NotNull List<Subscription> subscriptionsToRemove) {
+        Set<Class<?>> changedEvents = new HashSet<>();
+
+        for (Subscription subscription : subscriptionsToRemove) {
+            List<Subscription> eventSubscriptions = subscriptions.get(subscription.eventClass);
+            if (eventSubscriptions == null || !eventSubscriptions.remove(subscription)) continue;
+
+            if (eventSubscriptions.isEmpty()) subscriptions.remove(subscription.eventClass);
+            changedEvents.add(subscription.eventClass);
+        }
+
+        changedEvents.forEach(this::publishHandlers);
+    }
+
+    private void publishHandlers(@NotNull Class<?> eventClass) {
+        List<Subscription> eventSubscriptions = subscriptions.get(eventClass);
+        if (eventSubscriptions == null || eventSubscriptions.isEmpty()) {
+            handlers.remove(eventClass);
+            return;
+        }
+
+        // sort is stable, so handlers with the same priority are called in registration order
+        Subscription[] sorted = eventSubscriptions.toArray(EMPTY);
+        Arrays.sort(sorted, Comparator.comparingInt((Subscription subscription) -> subscription.priority.ordinal()));
+
+        handlers.put(eventClass, sorted);
+    }
+
+    /**
+     * Creates the handler which calls the listener method without reflection
+     * <br/>
+     * Public methods visible to this class loader are called by lambda generated with {@link LambdaMetafactory},
+     * other methods are called by {@link MethodHandle}
+     */
+    @SuppressWarnings("unchecked")
+    private EventHandler<Event> createHandler(@NotNull Object listener,
+                                              @NotNull Method method,
+                                              @NotNull Class<? extends Event> eventClass) throws Throwable {
+        method.setAccessible(true);
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle target = lookup.unreflect(method);
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+
+        if (!isStatic && canGenerateLambda(method)) {
+            try {
+                CallSite callSite = LambdaMetafactory.metafactory(
+                        lookup,
+                        "execute",
+                        MethodType.methodType(EventHandler.class, method.getDeclaringClass()),
+                        MethodType.methodType(void.class, Event.class),
+                        target,
+                        MethodType.methodType(void.class, eventClass)
+                );
+
+                return (EventHandler<Event>) callSite.getTarget().invoke(listener);
+            } catch (Throwable ignored) {
+                // fallback to method handle
+            }
+        }
+
+        MethodHandle handle = (isStatic ? target : target.bindTo(listener))
+                .asType(MethodType.methodType(void.class, Event.class));
 
-            listenersToRemove.forEach(listeners::remove);
-            if (listeners.size() == 0) {
-                eventsToRemove.add(eventClass);
+        return (event) -> {
+            try {
+                handle.invokeExact(event);
+            } catch (Throwable e) {
+                throw new EventHandlerException(e);
             }
-        });
+        };
+    }
 
-        eventsToRemove.forEach(handlers::remove);
+    private boolean canGenerateLambda(@NotNull Method method) {
+        Class<?> declaringClass = method.getDeclaringClass();
+        if (!Modifier.isPublic(method.getModifiers()) || !Modifier.isPublic(declaringClass.getModifiers())) {
+            return false;
+        }
+
+        // generated lambda is defined in this class loader, so it should be able to see the listener class
+        try {
+            return Class.forName(declaringClass.getName(), false, getClass().getClassLoader()) == declaringClass;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
     }
 
-    private Annotation getAnnotation(AccessibleObject object, Class annotationClass) {
-        for (Annotation a : object.getAnnotations()) {
-            if (a.annotationType().getCanonicalName().equals(annotationClass.getCanonicalName()))
-                return a;
+    private static final class Subscription {
+
+        private final Class<?> eventClass;
+        private final EventPriority priority;
+        private final boolean ignoreCancelled;
+        private final boolean catchErrors;
+        private final EventHandler<Event> handler;
+
+        // handler is subscribed to the event class, so it's executed only with the events of that class
+        @SuppressWarnings("unchecked")
+        private Subscription(@NotNull Class<?> eventClass,
+                             @NotNull EventPriority priority,
+                             boolean ignoreCancelled,
+                             boolean catchErrors,
+                             @NotNull EventHandler<?> handler) {
+            this.eventClass = eventClass;
+            this.priority = priority;
+            this.ignoreCancelled = ignoreCancelled;
+            this.catchErrors = catchErrors;
+            this.handler = (EventHandler<Event>) handler;
         }
 
-        return null;
+        private void execute(@NotNull Event event) {
+            if (!catchErrors) {
+                handler.execute(event);
+                return;
+            }
+
+            try {
+                handler.execute(event);
+            } catch (Throwable e) {
+                Throwable cause = e instanceof EventHandlerException ? e.getCause() : e;
+
+                LOGGER.warn("Failed to call an event: {}", cause.getMessage());
+                cause.printStackTrace();
+            }
+        }
     }
 
-    private <T> T getAnnotationFieldWithReflection(Annotation annotation, String fieldName) throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
-        return (T) annotation.annotationType().getMethod(fieldName).invoke(annotation);
+    private static final class EventHandlerException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private EventHandlerException(Throwable cause) {
+            super(cause);
+        }
     }
 }
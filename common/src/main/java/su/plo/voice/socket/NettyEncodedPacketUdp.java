@@ -0,0 +1,82 @@
+package su.plo.voice.socket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import su.plo.voice.proto.packets.Packet;
+import su.plo.voice.proto.packets.udp.PacketUdp;
+import su.plo.voice.proto.packets.udp.PacketUdpCodec;
+
+import java.net.InetSocketAddress;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * UDP packet encoded once to be sent to multiple connections
+ * <br/>
+ * Only the secret and the timestamp in the header differ between datagrams,
+ * so the rest of the encoded packet is shared by all recipients.
+ * Timestamp is written when the datagram is created, so the packet can be kept and sent after {@link PacketUdp#TTL}
+ */
+public final class NettyEncodedPacketUdp {
+
+    private static final UUID EMPTY_SECRET = new UUID(0L, 0L);
+
+    public static Optional<NettyEncodedPacketUdp> encode(@NotNull Packet<?> packet, @NotNull ByteBufAllocator allocator) {
+        ByteBuf encoded = PacketUdpCodec.encode(packet, EMPTY_SECRET, allocator);
+        if (encoded == null) return Optional.empty();
+
+        return Optional.of(new NettyEncodedPacketUdp(packet, encoded));
+    }
+
+    @Getter
+    private final Packet<?> packet;
+    private final ByteBuf encoded;
+
+    private NettyEncodedPacketUdp(@NotNull Packet<?> packet, @NotNull ByteBuf encoded) {
+        this.packet = packet;
+        this.encoded = encoded;
+    }
+
+    /**
+     * Creates a datagram with the recipient's secret and the current timestamp written to the header
+     * <br/>
+     * Native transport sends composite buffers using scatter/gather, so only the header is written
+     * and the body is a retained slice of the encoded packet.
+     * NIO transport copies composite buffers into a direct buffer anyway, so the whole packet is copied
+     */
+    public DatagramPacket toDatagram(@NotNull Channel channel,
+                                     @NotNull UUID secret,
+                                     @NotNull InetSocketAddress recipient) {
+        ByteBufAllocator allocator = channel.alloc();
+        int length = encoded.readableBytes();
+        int bodyIndex = PacketUdpCodec.HEADER_SIZE;
+        boolean copyBody = channel instanceof NioDatagramChannel;
+
+        ByteBuf header = allocator.directBuffer(copyBody ? length : bodyIndex);
+        header.writeBytes(encoded, 0, PacketUdpCodec.SECRET_INDEX);
+        header.writeLong(secret.getMostSignificantBits());
+        header.writeLong(secret.getLeastSignificantBits());
+        header.writeLong(System.currentTimeMillis());
+
+        if (copyBody) {
+            header.writeBytes(encoded, bodyIndex, length - bodyIndex);
+            return new DatagramPacket(header, recipient);
+        }
+
+        CompositeByteBuf buf = allocator.compositeDirectBuffer(2);
+        buf.addComponent(true, header);
+        buf.addComponent(true, encoded.retainedSlice(bodyIndex, length - bodyIndex));
+
+        return new DatagramPacket(buf, recipient);
+    }
+
+    public void release() {
+        encoded.release();
+    }
+}
@@ -1,17 +1,61 @@
 package su.plo.voice.socket;
 
 import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.ReferenceCounted;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import su.plo.voice.proto.packets.udp.PacketUdp;
 
+/**
+ * Decoded UDP packet which holds the reference to the received datagram
+ * <br/>
+ * The packet body is read from the datagram content,
+ * so the packet should be read before the datagram is released
+ */
 @RequiredArgsConstructor
-public final class NettyPacketUdp {
+public final class NettyPacketUdp implements ReferenceCounted {
 
     @Getter
     private final DatagramPacket datagramPacket;
     @Getter
-    private final byte[] packetData;
-    @Getter
     private final PacketUdp packetUdp;
+
+    @Override
+    public int refCnt() {
+        return datagramPacket.refCnt();
+    }
+
+    @Override
+    public NettyPacketUdp retain() {
+        datagramPacket.retain();
+        return this;
+    }
+
+    @Override
+    public NettyPacketUdp retain(int increment) {
+        datagramPacket.retain(increment);
+        return this;
+    }
+
+    @Override
+    public NettyPacketUdp touch() {
+        datagramPacket.touch();
+        return this;
+    }
+
+    @Override
+    public NettyPacketUdp touch(Object hint) {
+        datagramPacket.touch(hint);
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return datagramPacket.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return datagramPacket.release(decrement);
+    }
 }
@@ -1,28 +1,68 @@
 package su.plo.voice.socket;
 
-import com.google.common.io.ByteStreams;
-import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.socket.DatagramPacket;
 import io.netty.handler.codec.MessageToMessageDecoder;
+import org.jetbrains.annotations.Nullable;
 import su.plo.voice.proto.packets.udp.PacketUdp;
 import su.plo.voice.proto.packets.udp.PacketUdpCodec;
 
 import java.util.List;
 import java.util.Optional;
 
+/**
+ * Streaming UDP frame decoder
+ * <br/>
+ * Magic number, packet type, TTL and the secret are validated right on the datagram content,
+ * so invalid and unauthenticated packets are dropped without any allocations.
+ * The packet body is not copied, handlers receive the retained datagram
+ */
 public final class NettyPacketUdpDecoder extends MessageToMessageDecoder<DatagramPacket> {
 
+    private final boolean pooled;
+    private final @Nullable SecretFilter secretFilter;
+
+    public NettyPacketUdpDecoder() {
+        this(false, null);
+    }
+
+    /**
+     * @param pooled if true, audio packet instances are reused,
+     *               so it should be enabled only if packets are handled right on the event loop
+     *               and are not retained by the handlers
+     * @param secretFilter packets with the secrets not accepted by the filter are dropped before decoding
+     */
+    public NettyPacketUdpDecoder(boolean pooled, @Nullable SecretFilter secretFilter) {
+        this.pooled = pooled;
+        this.secretFilter = secretFilter;
+    }
+
     @Override
     protected void decode(ChannelHandlerContext ctx, DatagramPacket packet, List<Object> out) throws Exception {
-        byte[] bytes = ByteBufUtil.getBytes(packet.content());
+        ByteBuf content = packet.content();
+        if (PacketUdpCodec.getType(content) < 0) return;
 
-        Optional<PacketUdp> packetUdp = PacketUdpCodec.decode(ByteStreams.newDataInput(bytes));
+        if (System.currentTimeMillis() - PacketUdpCodec.getTimestamp(content) > PacketUdp.TTL) return;
+
+        if (secretFilter != null && !secretFilter.test(
+                PacketUdpCodec.getSecretMostSignificantBits(content),
+                PacketUdpCodec.getSecretLeastSignificantBits(content)
+        )) return;
+
+        Optional<PacketUdp> packetUdp = PacketUdpCodec.decode(content, pooled);
         if (!packetUdp.isPresent()) return;
-        PacketUdp decoded = packetUdp.get();
 
-        if (System.currentTimeMillis() - decoded.getTimestamp() > PacketUdp.TTL) return;
+        // packet body is a slice of the datagram content, so datagram is released with NettyPacketUdp
+        out.add(new NettyPacketUdp(packet.retain(), packetUdp.get()));
+    }
+
+    @FunctionalInterface
+    public interface SecretFilter {
 
-        out.add(new NettyPacketUdp(packet, bytes, decoded));
+        /**
+         * @return true if the secret belongs to the known session and the packet should be decoded
+         */
+        boolean test(long secretMostSignificantBits, long secretLeastSignificantBits);
     }
 }
@@ -0,0 +1,109 @@
+package su.plo.voice.socket;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import lombok.Getter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Event loop group and channel type used by UDP servers
+ * <br/>
+ * Native transport binds one channel per event loop to the same port using SO_REUSEPORT,
+ * so the kernel spreads datagrams between the event loops.
+ * NIO transport binds only one channel
+ */
+public final class NettyUdpTransport {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * Creates the transport
+     *
+     * @param nativeTransport use epoll transport if it's available
+     * @param threads number of event loops used by native transport, 0 means number of available processors
+     */
+    public static NettyUdpTransport create(boolean nativeTransport, int threads) {
+        if (threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+
+        if (nativeTransport) {
+            if (isEpollAvailable()) {
+                return new NettyUdpTransport(new EpollEventLoopGroup(threads), EpollDatagramChannel.class, threads, true);
+            }
+
+            LOGGER.warn("Native transport is not available, falling back to NIO");
+        }
+
+        // only one channel can be bound to the port, so other event loops won't be used
+        return new NettyUdpTransport(new NioEventLoopGroup(1), NioDatagramChannel.class, 1, false);
+    }
+
+    private static boolean isEpollAvailable() {
+        try {
+            return Epoll.isAvailable();
+        } catch (Throwable e) {
+            // epoll classes can be missing on some platforms
+            return false;
+        }
+    }
+
+    @Getter
+    private final EventLoopGroup loopGroup;
+    private final Class<? extends DatagramChannel> channelClass;
+    @Getter
+    private final int channelCount;
+    @Getter
+    private final boolean nativeTransport;
+
+    private NettyUdpTransport(@NotNull EventLoopGroup loopGroup,
+                              @NotNull Class<? extends DatagramChannel> channelClass,
+                              int channelCount,
+                              boolean nativeTransport) {
+        this.loopGroup = loopGroup;
+        this.channelClass = channelClass;
+        this.channelCount = channelCount;
+        this.nativeTransport = nativeTransport;
+    }
+
+    /**
+     * Creates a bootstrap with the transport group, channel and options
+     * <br/>
+     * Bootstrap should be bound {@link #getChannelCount()} times to the same port
+     */
+    public Bootstrap bootstrap() {
+        Bootstrap bootstrap = new Bootstrap()
+                .group(loopGroup)
+                .channel(channelClass)
+                .option(ChannelOption.SO_BROADCAST, true);
+
+        if (nativeTransport) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+
+        return bootstrap;
+    }
+
+    /**
+     * Creates a bootstrap for the connected sockets
+     * <br/>
+     * Connected sockets are bound to the ephemeral ports, so SO_REUSEPORT is not set
+     */
+    public Bootstrap connectedBootstrap() {
+        return new Bootstrap()
+                .group(loopGroup)
+                .channel(channelClass);
+    }
+
+    public void shutdown() {
+        loopGroup.shutdownGracefully();
+    }
+}
@@ -0,0 +1,134 @@
+package su.plo.voice.socket;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * UDP sessions indexed by the compact session id
+ * <br/>
+ * Session id is the index of the slot and is stored in the most significant 32 bits of the secret.
+ * The rest of the secret is random and works as the tag, so the whole 128-bit secret is still checked,
+ * but the session of the datagram is found by the array index without any allocations.
+ * Wire format is not changed, clients send the secret they received from the server as before
+ */
+public final class UdpSessionTable<T> {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private volatile AtomicReferenceArray<Session<T>> slots = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+
+    // guarded by this
+    private final Deque<Integer> freeIndexes = new ArrayDeque<>();
+    private int nextIndex;
+    private int size;
+
+    /**
+     * Allocates the new session with the random secret
+     */
+    public synchronized @NotNull Session<T> allocate(@NotNull UUID playerId) {
+        Integer freeIndex = freeIndexes.poll();
+        int index = freeIndex != null ? freeIndex : nextIndex++;
+
+        AtomicReferenceArray<Session<T>> slots = this.slots;
+        if (index >= slots.length()) {
+            AtomicReferenceArray<Session<T>> grown = new AtomicReferenceArray<>(slots.length() * 2);
+            for (int i = 0; i < slots.length(); i++) grown.set(i, slots.get(i));
+
+            this.slots = slots = grown;
+        }
+
+        UUID random = UUID.randomUUID();
+        UUID secret = new UUID(
+                ((long) index << 32) | (random.getMostSignificantBits() & 0xFFFFFFFFL),
+                random.getLeastSignificantBits()
+        );
+
+        Session<T> session = new Session<>(index, secret, playerId);
+        slots.set(index, session);
+        size++;
+
+        return session;
+    }
+
+    /**
+     * Gets the session by the secret halves without allocations
+     *
+     * @return the session or null if the secret doesn't belong to any session
+     */
+    public @Nullable Session<T> get(long secretMostSignificantBits, long secretLeastSignificantBits) {
+        int index = (int) (secretMostSignificantBits >>> 32);
+
+        AtomicReferenceArray<Session<T>> slots = this.slots;
+        if (index < 0 || index >= slots.length()) return null;
+
+        Session<T> session = slots.get(index);
+        if (session == null ||
+                session.secretMostSignificantBits != secretMostSignificantBits ||
+                session.secretLeastSignificantBits != secretLeastSignificantBits
+        ) return null;
+
+        return session;
+    }
+
+    public @Nullable Session<T> get(@NotNull UUID secret) {
+        return get(secret.getMostSignificantBits(), secret.getLeastSignificantBits());
+    }
+
+    /**
+     * Frees the slot of the session, the slot can be reused by the new session with the different tag
+     */
+    public synchronized void free(@NotNull Session<T> session) {
+        session.setConnection(null);
+
+        AtomicReferenceArray<Session<T>> slots = this.slots;
+        if (!slots.compareAndSet(session.index, session, null)) return;
+
+        freeIndexes.add(session.index);
+        size--;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        this.slots = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+        freeIndexes.clear();
+        this.nextIndex = 0;
+        this.size = 0;
+    }
+
+    @ToString(of = {"index", "playerId"})
+    public static final class Session<T> {
+
+        @Getter
+        private final int index;
+        @Getter
+        private final UUID secret;
+        @Getter
+        private final UUID playerId;
+
+        private final long secretMostSignificantBits;
+        private final long secretLeastSignificantBits;
+
+        @Getter
+        @Setter
+        private volatile @Nullable T connection;
+
+        private Session(int index, @NotNull UUID secret, @NotNull UUID playerId) {
+            this.index = index;
+            this.secret = secret;
+            this.playerId = playerId;
+            this.secretMostSignificantBits = secret.getMostSignificantBits();
+            this.secretLeastSignificantBits = secret.getLeastSignificantBits();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package su.plo.voice.encryption;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import su.plo.voice.api.encryption.Encryption;
+import su.plo.voice.api.encryption.EncryptionException;
+import su.plo.voice.encryption.aes.AesEncryption;
+import su.plo.voice.encryption.aes.AesGcmEncryption;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+
+public final class TestEncryption {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    @Test
+    void cbcRoundTrip() throws Exception {
+        Encryption encryption = new AesEncryption(randomBytes(16));
+        byte[] data = randomBytes(100);
+
+        byte[] encrypted = encryption.encrypt(data);
+        Assertions.assertEquals(16 + 112, encrypted.length);
+        Assertions.assertArrayEquals(data, encryption.decrypt(encrypted));
+    }
+
+    @Test
+    void gcmRoundTrip() throws Exception {
+        byte[] key = randomBytes(16);
+        Encryption encryption = new AesGcmEncryption(key);
+        byte[] data = randomBytes(100);
+
+        byte[] encrypted = encryption.encrypt(data);
+        Assertions.assertEquals(AesGcmEncryption.IV_LENGTH + 100 + AesGcmEncryption.TAG_LENGTH, encrypted.length);
+        // other instance with the same key should decrypt it
+        Assertions.assertArrayEquals(data, new AesGcmEncryption(key).decrypt(encrypted));
+
+        // counter iv
+        Assertions.assertFalse(ByteBuffer.wrap(encrypted, 0, AesGcmEncryption.IV_LENGTH)
+                .equals(ByteBuffer.wrap(encryption.encrypt(data), 0, AesGcmEncryption.IV_LENGTH)));
+
+        // tag
+        encrypted[encrypted.length - 1] ^= 1;
+        Assertions.assertThrows(EncryptionException.class, () -> encryption.decrypt(encrypted));
+    }
+
+    @Test
+    void gcmInPlace() throws Exception {
+        Encryption encryption = new AesGcmEncryption(randomBytes(16));
+        byte[] data = randomBytes(100);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+        buffer.put(data).flip();
+
+        ByteBuffer out = ByteBuffer.allocateDirect(256);
+        int length = encryption.encrypt(buffer, out);
+        out.flip();
+        Assertions.assertEquals(out.remaining(), length);
+
+        // decrypt into the same buffer
+        ByteBuffer decrypted = out.duplicate();
+        decrypted.clear();
+        length = encryption.decrypt(out, decrypted);
+        decrypted.flip();
+
+        byte[] result = new byte[length];
+        decrypted.get(result);
+        Assertions.assertArrayEquals(data, result);
+    }
+
+    @Test
+    void transcode() throws Exception {
+        byte[] key = randomBytes(16);
+        Encryption cbc = new AesEncryption(key);
+        Encryption gcm = new AesGcmEncryption(key);
+
+        // buffers are reused and grown for the larger data
+        for (int length : new int[]{80, 100, 4000, 80}) {
+            byte[] data = randomBytes(length);
+
+            byte[] transcoded = AudioTranscoder.transcode(cbc, gcm, cbc.encrypt(data));
+            Assertions.assertArrayEquals(data, gcm.decrypt(transcoded));
+            Assertions.assertArrayEquals(data, cbc.decrypt(AudioTranscoder.transcode(gcm, cbc, transcoded)));
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void benchmark(TestReporter reporter) throws Exception {
+        byte[] key = randomBytes(16);
+        // opus frame size with default bitrate
+        byte[] frame = randomBytes(80);
+
+        Encryption cbc = new AesEncryption(key);
+        Encryption gcm = new AesGcmEncryption(key);
+
+        ByteBuffer in = ByteBuffer.allocateDirect(256);
+        ByteBuffer out = ByteBuffer.allocateDirect(256);
+
+        int iterations = 100_000;
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                decryptBaseline(key, encryptBaseline(key, frame));
+            }
+            long baselineTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                cbc.decrypt(cbc.encrypt(frame));
+            }
+            long cbcTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                gcm.decrypt(gcm.encrypt(frame));
+            }
+            long gcmTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                in.clear();
+                in.put(frame).flip();
+                out.clear();
+                gcm.encrypt(in, out);
+                out.flip();
+                in.clear();
+                gcm.decrypt(out, in);
+            }
+            long gcmBufferTime = System.nanoTime() - start;
+
+            reporter.publishEntry("round " + round, String.format(
+                    "cbc baseline %.2f us, cbc %.2f us, gcm %.2f us, gcm buffers %.2f us per encrypt + decrypt",
+                    baselineTime / 1_000D / iterations,
+                    cbcTime / 1_000D / iterations,
+                    gcmTime / 1_000D / iterations,
+                    gcmBufferTime / 1_000D / iterations
+            ));
+        }
+    }
+
+    // encryption used before ciphers were reused: new cipher, iv and copies for every frame
+    private static byte[] encryptBaseline(byte[] key, byte[] data) throws Exception {
+        byte[] iv = randomBytes(16);
+
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(
+                Cipher.ENCRYPT_MODE,
+                new SecretKeySpec(key, "AES"),
+                new IvParameterSpec(iv)
+        );
+        byte[] encrypted = cipher.doFinal(data);
+
+        byte[] encryptedIv = new byte[iv.length + encrypted.length];
+        System.arraycopy(iv, 0, encryptedIv, 0, iv.length);
+        System.arraycopy(encrypted, 0, encryptedIv, iv.length, encrypted.length);
+        return encryptedIv;
+    }
+
+    private static byte[] decryptBaseline(byte[] key, byte[] encrypted) throws Exception {
+        byte[] iv = new byte[16];
+        System.arraycopy(encrypted, 0, iv, 0, iv.length);
+
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(
+                Cipher.DECRYPT_MODE,
+                new SecretKeySpec(key, "AES"),
+                new IvParameterSpec(iv)
+        );
+
+        byte[] data = new byte[encrypted.length - 16];
+        System.arraycopy(encrypted, 16, data, 0, data.length);
+        return cipher.doFinal(data);
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        RANDOM.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -1,6 +1,13 @@
 package su.plo.voice.event;
 
+import lombok.Getter;
 import su.plo.voice.api.event.Event;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class TestEvent implements Event {
+
+    @Getter
+    private final List<String> calls = new ArrayList<>();
 }
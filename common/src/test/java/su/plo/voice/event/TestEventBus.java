@@ -1,25 +1,170 @@
 package su.plo.voice.event;
 
+import com.google.common.collect.Maps;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import su.plo.voice.addon.TestAddon;
+import su.plo.voice.api.PlasmoVoice;
+import su.plo.voice.api.addon.AddonContainer;
+import su.plo.voice.api.addon.AddonManager;
+import su.plo.voice.api.event.Event;
+import su.plo.voice.api.event.EventBus;
+import su.plo.voice.api.event.EventHandler;
+import su.plo.voice.api.event.EventPriority;
+import su.plo.voice.api.event.EventSubscribe;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class TestEventBus {
+
     @Test
     void testEventBus() {
-//        EventBus bus = new VoiceEventBus();
-//
-//        TestAddon addon = new TestAddon();
-//
-//        TestEventListener eventListener = new TestEventListener();
-//        bus.register(addon, eventListener);
-//
-//        EventHandler<TestEvent> eventHandler = (event) -> {
-//            System.out.println("event called");
-//        };
-//
-//        bus.register(addon, TestEvent.class, EventPriority.HIGHEST, eventHandler);
-//
-//        bus.call(new TestEvent());
+        EventBus bus = new VoiceEventBus(createVoice());
+
+        TestAddon addon = new TestAddon();
+        Assertions.assertFalse(bus.hasListeners(TestEvent.class));
+
+        TestEventListener eventListener = new TestEventListener();
+        bus.register(addon, eventListener);
+        Assertions.assertTrue(bus.hasListeners(TestEvent.class));
+
+        EventHandler<TestEvent> eventHandler = (event) -> event.getCalls().add("handler");
+        bus.register(addon, TestEvent.class, EventPriority.HIGH, eventHandler);
+
+        TestEvent event = new TestEvent();
+        Assertions.assertTrue(bus.call(event));
+        Assertions.assertEquals(Arrays.asList("lowest", "normal", "handler", "highest"), event.getCalls());
+
+        bus.unregister(addon, eventListener);
+
+        event = new TestEvent();
+        bus.call(event);
+        Assertions.assertEquals(Arrays.asList("handler"), event.getCalls());
+
+        bus.unregister(addon, eventHandler);
+
+        event = new TestEvent();
+        bus.call(event);
+        Assertions.assertTrue(event.getCalls().isEmpty());
+        Assertions.assertFalse(bus.hasListeners(TestEvent.class));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void benchmark(TestReporter reporter) {
+        BenchmarkListener listener = new BenchmarkListener();
+
+        EventBus bus = new VoiceEventBus(createVoice());
+        bus.register(new TestAddon(), listener);
+
+        // dispatch used before handlers were generated: EnumMap iteration and Method.invoke
+        Map<Class<?>, EnumMap<EventPriority, List<EventHandler<?>>>> reflectiveHandlers = Maps.newConcurrentMap();
+        for (Method method : BenchmarkListener.class.getMethods()) {
+            EventSubscribe entry = method.getAnnotation(EventSubscribe.class);
+            if (entry == null) continue;
+
+            method.setAccessible(true);
+            EventHandler<?> handler = (event) -> {
+                try {
+                    method.invoke(listener, event);
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+            };
+
+            reflectiveHandlers.computeIfAbsent(method.getParameterTypes()[0], (c) -> new EnumMap<>(EventPriority.class))
+                    .computeIfAbsent(entry.priority(), (p) -> new CopyOnWriteArrayList<>())
+                    .add(handler);
+        }
+
+        TestEvent event = new TestEvent();
+        int iterations = 5_000_000;
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                callReflective(reflectiveHandlers, event);
+            }
+            long reflectionTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                bus.call(event);
+            }
+            long busTime = System.nanoTime() - start;
+
+            reporter.publishEntry("round " + round, String.format(
+                    "reflection %.2f ns/call, event bus %.2f ns/call",
+                    reflectionTime / (double) iterations,
+                    busTime / (double) iterations
+            ));
+        }
+
+        Assertions.assertEquals(iterations * 3L * 2L * 4L, listener.calls);
     }
 
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private void callReflective(Map<Class<?>, EnumMap<EventPriority, List<EventHandler<?>>>> handlers, Event event) {
+        if (!handlers.containsKey(event.getClass())) return;
+
+        for (Map.Entry<EventPriority, List<EventHandler<?>>> entry : handlers.get(event.getClass()).entrySet()) {
+            for (EventHandler handler : entry.getValue()) {
+                handler.execute(event);
+            }
+        }
+    }
+
+    private PlasmoVoice createVoice() {
+        AddonContainer addonContainer = (AddonContainer) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class[]{AddonContainer.class},
+                (proxy, method, args) -> null
+        );
+
+        AddonManager addonManager = (AddonManager) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class[]{AddonManager.class},
+                (proxy, method, args) -> method.getName().equals("getAddon")
+                        ? Optional.of(addonContainer)
+                        : null
+        );
 
+        return (PlasmoVoice) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class[]{PlasmoVoice.class},
+                (proxy, method, args) -> method.getName().equals("getAddonManager")
+                        ? addonManager
+                        : null
+        );
+    }
+
+    public static class BenchmarkListener {
+
+        private long calls;
+
+        @EventSubscribe(priority = EventPriority.LOW)
+        public void onTestEventLow(TestEvent event) {
+            calls++;
+        }
+
+        @EventSubscribe
+        public void onTestEvent(TestEvent event) {
+            calls++;
+        }
+
+        @EventSubscribe(priority = EventPriority.HIGH)
+        public void onTestEventHigh(TestEvent event) {
+            calls++;
+        }
+
+        @EventSubscribe(priority = EventPriority.HIGHEST)
+        public void onTestEventHighest(TestEvent event) {
+            calls++;
+        }
+    }
 }
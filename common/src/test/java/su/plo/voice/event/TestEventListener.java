@@ -6,11 +6,16 @@ import su.plo.voice.api.event.EventSubscribe;
 public class TestEventListener {
     @EventSubscribe
     public void onTestEvent(TestEvent event) {
-        System.out.println("test event called normal");
+        event.getCalls().add("normal");
     }
 
     @EventSubscribe(priority = EventPriority.HIGHEST)
     public void onTestEventHigh(TestEvent event) {
-        System.out.println("test event called highest");
+        event.getCalls().add("highest");
+    }
+
+    @EventSubscribe(priority = EventPriority.LOWEST)
+    private void onTestEventLowest(TestEvent event) {
+        event.getCalls().add("lowest");
     }
 }
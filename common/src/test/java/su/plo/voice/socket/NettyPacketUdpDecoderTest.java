@@ -0,0 +1,152 @@
+package su.plo.voice.socket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import su.plo.voice.proto.packets.Packet;
+import su.plo.voice.proto.packets.udp.PacketUdp;
+import su.plo.voice.proto.packets.udp.PacketUdpCodec;
+import su.plo.voice.proto.packets.udp.bothbound.PingPacket;
+import su.plo.voice.proto.packets.udp.clientbound.SourceAudioPacket;
+
+import java.net.InetSocketAddress;
+import java.util.UUID;
+
+public class NettyPacketUdpDecoderTest {
+
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 60606);
+
+    @Test
+    public void testDecode() throws Exception {
+        UUID secret = UUID.randomUUID();
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyPacketUdpDecoder(
+                false,
+                (most, least) -> most == secret.getMostSignificantBits() && least == secret.getLeastSignificantBits()
+        ));
+
+        ByteBuf encoded = PacketUdpCodec.encode(audioPacket(), secret, ByteBufAllocator.DEFAULT);
+        DatagramPacket datagram = new DatagramPacket(encoded, ADDRESS);
+        Assertions.assertTrue(channel.writeInbound(datagram));
+
+        NettyPacketUdp packet = channel.readInbound();
+        try {
+            Assertions.assertEquals(secret, packet.getPacketUdp().getSecret());
+            Assertions.assertTrue((Packet<?>) packet.getPacketUdp().getPacket() instanceof SourceAudioPacket);
+
+            // body is not copied
+            Assertions.assertSame(encoded, packet.getDatagramPacket().content());
+        } finally {
+            packet.release();
+        }
+
+        Assertions.assertEquals(0, encoded.refCnt());
+        Assertions.assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testDrop() {
+        UUID secret = UUID.randomUUID();
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyPacketUdpDecoder(
+                false,
+                (most, least) -> most == secret.getMostSignificantBits() && least == secret.getLeastSignificantBits()
+        ));
+
+        // unknown secret
+        ByteBuf unauthenticated = PacketUdpCodec.encode(audioPacket(), UUID.randomUUID(), ByteBufAllocator.DEFAULT);
+        Assertions.assertFalse(channel.writeInbound(new DatagramPacket(unauthenticated, ADDRESS)));
+        Assertions.assertEquals(0, unauthenticated.refCnt());
+
+        // expired
+        ByteBuf expired = PacketUdpCodec.encode(audioPacket(), secret, ByteBufAllocator.DEFAULT);
+        expired.setLong(expired.readerIndex() + PacketUdpCodec.SECRET_INDEX + 16, System.currentTimeMillis() - PacketUdp.TTL - 1_000L);
+        Assertions.assertFalse(channel.writeInbound(new DatagramPacket(expired, ADDRESS)));
+
+        // not a PV packet
+        Assertions.assertFalse(channel.writeInbound(new DatagramPacket(Unpooled.wrappedBuffer(new byte[64]), ADDRESS)));
+
+        // truncated header
+        ByteBuf truncated = PacketUdpCodec.encode(audioPacket(), secret, ByteBufAllocator.DEFAULT);
+        truncated.writerIndex(PacketUdpCodec.HEADER_SIZE - 1);
+        Assertions.assertFalse(channel.writeInbound(new DatagramPacket(truncated, ADDRESS)));
+
+        Assertions.assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testEncodedPacketTimestamp() throws Exception {
+        UUID secret = UUID.randomUUID();
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyPacketUdpDecoder());
+
+        // keep alive encodes the ping once and sends it for the whole lifetime of the server
+        NettyEncodedPacketUdp ping = NettyEncodedPacketUdp.encode(new PingPacket(), ByteBufAllocator.DEFAULT)
+                .orElseThrow(IllegalStateException::new);
+        try {
+            Thread.sleep(PacketUdp.TTL + 100L);
+
+            Assertions.assertTrue(channel.writeInbound(ping.toDatagram(channel, secret, ADDRESS)));
+        } finally {
+            ping.release();
+        }
+
+        NettyPacketUdp packet = channel.readInbound();
+        try {
+            Assertions.assertEquals(secret, packet.getPacketUdp().getSecret());
+            Assertions.assertTrue((Packet<?>) packet.getPacketUdp().getPacket() instanceof PingPacket);
+        } finally {
+            packet.release();
+        }
+
+        Assertions.assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testEncodedPacketBody() throws Exception {
+        UUID secret = UUID.randomUUID();
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyPacketUdpDecoder());
+
+        NettyEncodedPacketUdp encoded = NettyEncodedPacketUdp.encode(audioPacket(), ByteBufAllocator.DEFAULT)
+                .orElseThrow(IllegalStateException::new);
+        DatagramPacket shared;
+        DatagramPacket copied;
+        NioDatagramChannel nioChannel = new NioDatagramChannel();
+        try {
+            shared = encoded.toDatagram(channel, secret, ADDRESS);
+            copied = encoded.toDatagram(nioChannel, secret, ADDRESS);
+        } finally {
+            encoded.release();
+            nioChannel.unsafe().closeForcibly();
+        }
+
+        // body of the native datagram is a slice of the encoded packet
+        Assertions.assertTrue(shared.content() instanceof CompositeByteBuf);
+        Assertions.assertEquals(2, ((CompositeByteBuf) shared.content()).numComponents());
+        Assertions.assertFalse(copied.content() instanceof CompositeByteBuf);
+        Assertions.assertEquals(copied.content(), shared.content());
+
+        Assertions.assertTrue(channel.writeInbound(shared));
+        NettyPacketUdp packet = channel.readInbound();
+        try {
+            Assertions.assertEquals(secret, packet.getPacketUdp().getSecret());
+            Assertions.assertArrayEquals(
+                    new byte[]{1, 2, 3},
+                    ((SourceAudioPacket) (Packet<?>) packet.getPacketUdp().getPacket()).getData()
+            );
+        } finally {
+            packet.release();
+        }
+
+        Assertions.assertEquals(0, shared.content().refCnt());
+        copied.release();
+        Assertions.assertFalse(channel.finish());
+    }
+
+    private static SourceAudioPacket audioPacket() {
+        return new SourceAudioPacket(1L, (byte) 1, new byte[]{1, 2, 3}, UUID.randomUUID(), (short) 16);
+    }
+}
@@ -0,0 +1,220 @@
+package su.plo.voice.socket;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import su.plo.voice.proto.packets.Packet;
+import su.plo.voice.proto.packets.udp.PacketUdp;
+import su.plo.voice.proto.packets.udp.PacketUdpCodec;
+import su.plo.voice.proto.packets.udp.serverbound.PlayerAudioPacket;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class NettyUdpTransportTest {
+
+    private static final UUID SECRET = UUID.randomUUID();
+
+    @Test
+    void testEcho() throws Exception {
+        NettyUdpTransport transport = NettyUdpTransport.create(true, 2);
+        NioEventLoopGroup clientGroup = new NioEventLoopGroup(1);
+
+        try {
+            int port = startServer(transport);
+
+            LoadClient client = new LoadClient(100);
+            Channel channel = client.connect(clientGroup, port);
+
+            for (int i = 0; i < 100; i++) {
+                channel.writeAndFlush(client.createPacket(channel));
+            }
+
+            Assertions.assertTrue(client.received.await(5L, TimeUnit.SECONDS));
+        } finally {
+            clientGroup.shutdownGracefully();
+            transport.shutdown();
+        }
+    }
+
+    /**
+     * Load generator, tuned by the voice.udp-load.* system properties
+     * <br/>
+     * Every client sends a burst of audio packets every millisecond,
+     * server decodes them and sends them back to the client
+     */
+    @Test
+    @Tag("benchmark")
+    void load(TestReporter reporter) throws Exception {
+        boolean nativeTransport = Boolean.getBoolean("voice.udp-load.native");
+        int threads = Integer.getInteger("voice.udp-load.threads", 0);
+        int clients = Integer.getInteger("voice.udp-load.clients", 32);
+        int burst = Integer.getInteger("voice.udp-load.burst", 2);
+        int seconds = Integer.getInteger("voice.udp-load.seconds", 10);
+
+        NettyUdpTransport transport = NettyUdpTransport.create(nativeTransport, threads);
+        NioEventLoopGroup clientGroup = new NioEventLoopGroup(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+        try {
+            int port = startServer(transport);
+
+            List<LoadClient> loadClients = new ArrayList<>();
+            List<ScheduledFuture<?>> senders = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                LoadClient client = new LoadClient(Integer.MAX_VALUE);
+                Channel channel = client.connect(clientGroup, port);
+
+                loadClients.add(client);
+                senders.add(channel.eventLoop().scheduleAtFixedRate(() -> {
+                    for (int j = 0; j < burst; j++) {
+                        channel.write(client.createPacket(channel));
+                        client.sent++;
+                    }
+                    channel.flush();
+                }, 1L, 1L, TimeUnit.MILLISECONDS));
+            }
+
+            Thread.sleep(seconds * 1_000L);
+            senders.forEach((sender) -> sender.cancel(false));
+            Thread.sleep(500L);
+
+            long sent = 0L;
+            long received = 0L;
+            List<long[]> latencies = new ArrayList<>();
+            for (LoadClient client : loadClients) {
+                sent += client.sent;
+                received += client.count;
+                latencies.add(Arrays.copyOf(client.latencies, client.count));
+            }
+
+            long[] allLatencies = latencies.stream()
+                    .flatMapToLong(Arrays::stream)
+                    .sorted()
+                    .toArray();
+
+            reporter.publishEntry("load", String.format(
+                    "%s transport, %d channels, %d clients: sent %d pps, received %d pps (%.2f%% lost), p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                    transport.isNativeTransport() ? "epoll" : "NIO",
+                    transport.getChannelCount(),
+                    clients,
+                    sent / seconds,
+                    received / seconds,
+                    sent == 0 ? 0D : (sent - received) * 100D / sent,
+                    percentile(allLatencies, 0.5D),
+                    percentile(allLatencies, 0.99D),
+                    percentile(allLatencies, 1D)
+            ));
+        } finally {
+            clientGroup.shutdownGracefully();
+            transport.shutdown();
+        }
+    }
+
+    private int startServer(@NotNull NettyUdpTransport transport) throws InterruptedException {
+        Bootstrap bootstrap = transport.bootstrap();
+        bootstrap.handler(new ChannelInitializer<DatagramChannel>() {
+            @Override
+            protected void initChannel(@NotNull DatagramChannel ch) {
+                ch.pipeline().addLast("flush", new FlushConsolidationHandler(256, true));
+                ch.pipeline().addLast("decoder", new NettyPacketUdpDecoder());
+                ch.pipeline().addLast("handler", new EchoHandler());
+            }
+        });
+
+        Channel channel = bootstrap.bind("127.0.0.1", 0).sync().channel();
+        int port = ((InetSocketAddress) channel.localAddress()).getPort();
+
+        for (int i = 1; i < transport.getChannelCount(); i++) {
+            bootstrap.bind("127.0.0.1", port).sync();
+        }
+
+        return port;
+    }
+
+    private double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) return 0D;
+
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(sorted.length * percentile) - 1);
+        return sorted[Math.max(0, index)] / 1_000_000D;
+    }
+
+    private static final class EchoHandler extends SimpleChannelInboundHandler<NettyPacketUdp> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, NettyPacketUdp packet) throws Exception {
+            PlayerAudioPacket audioPacket = (PlayerAudioPacket) (Packet<?>) packet.getPacketUdp().getPacket();
+
+            ByteBuf encoded = PacketUdpCodec.encode(audioPacket, packet.getPacketUdp().getSecret(), ctx.alloc());
+            if (encoded == null) return;
+
+            ctx.writeAndFlush(new DatagramPacket(encoded, packet.getDatagramPacket().sender()));
+        }
+    }
+
+    private static final class LoadClient extends SimpleChannelInboundHandler<DatagramPacket> {
+
+        private final CountDownLatch received;
+        private final UUID activationId = UUID.randomUUID();
+        private final byte[] data = new byte[120]; // size of the opus frame
+
+        private long[] latencies = new long[1024];
+        private volatile int count;
+        private volatile long sent;
+
+        private LoadClient(int expected) {
+            this.received = new CountDownLatch(expected);
+        }
+
+        private Channel connect(@NotNull EventLoopGroup group, int port) throws InterruptedException {
+            return new Bootstrap()
+                    .group(group)
+                    .channel(NioDatagramChannel.class)
+                    .handler(this)
+                    .connect("127.0.0.1", port)
+                    .sync()
+                    .channel();
+        }
+
+        private ByteBuf createPacket(@NotNull Channel channel) {
+            PlayerAudioPacket packet = new PlayerAudioPacket(System.nanoTime(), data, activationId, (short) 16, false);
+            return PacketUdpCodec.encode(packet, SECRET, channel.alloc());
+        }
+
+        @Override
+        public boolean isSharable() {
+            return true;
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket datagram) throws Exception {
+            Optional<PacketUdp> packet = PacketUdpCodec.decode(datagram.content());
+            if (!packet.isPresent()) return;
+
+            PlayerAudioPacket audioPacket = (PlayerAudioPacket) (Packet<?>) packet.get().getPacket();
+            long latency = System.nanoTime() - audioPacket.getSequenceNumber();
+
+            if (count == latencies.length) latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            latencies[count] = latency;
+            count++;
+
+            received.countDown();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package su.plo.voice.socket;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class UdpSessionTableTest {
+
+    @Test
+    public void testLookup() {
+        UdpSessionTable<String> sessions = new UdpSessionTable<>();
+
+        List<UdpSessionTable.Session<String>> allocated = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            UdpSessionTable.Session<String> session = sessions.allocate(UUID.randomUUID());
+            session.setConnection("connection" + i);
+            allocated.add(session);
+        }
+
+        for (UdpSessionTable.Session<String> session : allocated) {
+            UUID secret = session.getSecret();
+            Assertions.assertSame(session, sessions.get(secret.getMostSignificantBits(), secret.getLeastSignificantBits()));
+
+            // index is right, but the tag is wrong
+            Assertions.assertNull(sessions.get(secret.getMostSignificantBits(), secret.getLeastSignificantBits() ^ 1L));
+            Assertions.assertNull(sessions.get(secret.getMostSignificantBits() ^ 1L, secret.getLeastSignificantBits()));
+        }
+
+        Assertions.assertNull(sessions.get(UUID.randomUUID()));
+        Assertions.assertNull(sessions.get(-1L, 0L));
+    }
+
+    @Test
+    public void testFree() {
+        UdpSessionTable<String> sessions = new UdpSessionTable<>();
+
+        UdpSessionTable.Session<String> first = sessions.allocate(UUID.randomUUID());
+        first.setConnection("first");
+        sessions.free(first);
+
+        Assertions.assertNull(first.getConnection());
+        Assertions.assertNull(sessions.get(first.getSecret()));
+        Assertions.assertEquals(0, sessions.size());
+
+        // slot is reused, but the stale secret is still rejected
+        UdpSessionTable.Session<String> second = sessions.allocate(UUID.randomUUID());
+        Assertions.assertEquals(first.getIndex(), second.getIndex());
+        Assertions.assertNull(sessions.get(first.getSecret()));
+        Assertions.assertSame(second, sessions.get(second.getSecret()));
+
+        // freeing the stale session doesn't free the new one
+        sessions.free(first);
+        Assertions.assertSame(second, sessions.get(second.getSecret()));
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmarkLookup(TestReporter reporter) {
+        int connections = 2_000;
+        int lookups = 5_000_000;
+
+        UdpSessionTable<String> sessions = new UdpSessionTable<>();
+        Map<UUID, String> connectionBySecret = new HashMap<>();
+        long[] most = new long[connections];
+        long[] least = new long[connections];
+
+        for (int i = 0; i < connections; i++) {
+            UdpSessionTable.Session<String> session = sessions.allocate(UUID.randomUUID());
+            session.setConnection("connection" + i);
+            connectionBySecret.put(session.getSecret(), session.getConnection());
+
+            most[i] = session.getSecret().getMostSignificantBits();
+            least[i] = session.getSecret().getLeastSignificantBits();
+        }
+
+        for (int round = 0; round < 3; round++) {
+            int found = 0;
+
+            long start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                int index = i % connections;
+                // datagram header is read into the new UUID
+                if (connectionBySecret.get(new UUID(most[index], least[index])) != null) found++;
+            }
+            long mapTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                int index = i % connections;
+                if (sessions.get(most[index], least[index]) != null) found++;
+            }
+            long tableTime = System.nanoTime() - start;
+
+            Assertions.assertEquals(lookups * 2, found);
+            reporter.publishEntry("round " + round, String.format(
+                    "%d lookups: uuid map %.2f ns/op, session table %.2f ns/op",
+                    lookups,
+                    mapTime / (double) lookups,
+                    tableTime / (double) lookups
+            ));
+        }
+    }
+}
@@ -1,2 +1,8 @@
 val mavenGroup: String by rootProject
 group = "$mavenGroup.proto"
+
+dependencies {
+    compileOnly(rootProject.libs.netty)
+
+    testImplementation(rootProject.libs.netty)
+}
@@ -0,0 +1,137 @@
+package su.plo.voice.proto.packets;
+
+import com.google.common.io.ByteArrayDataInput;
+import io.netty.buffer.ByteBuf;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+
+/**
+ * Guava {@link ByteArrayDataInput} backed by {@link ByteBuf}
+ * <br/>
+ * Used to read packets which doesn't implement {@link Packet#read(ByteBuf)}.
+ * Reading past the end throws {@link IllegalStateException} caused by {@link EOFException},
+ * same as {@link com.google.common.io.ByteStreams#newDataInput(byte[])}
+ */
+@RequiredArgsConstructor
+public final class ByteBufDataInput implements ByteArrayDataInput {
+
+    private final ByteBuf in;
+
+    /**
+     * @return true if there are bytes left to read
+     */
+    public boolean isReadable() {
+        return in.isReadable();
+    }
+
+    @Override
+    public void readFully(byte[] bytes) {
+        require(bytes.length).readBytes(bytes);
+    }
+
+    @Override
+    public void readFully(byte[] bytes, int offset, int length) {
+        require(length).readBytes(bytes, offset, length);
+    }
+
+    @Override
+    public int skipBytes(int n) {
+        int skipped = Math.min(n, in.readableBytes());
+        in.skipBytes(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean readBoolean() {
+        return require(1).readBoolean();
+    }
+
+    @Override
+    public byte readByte() {
+        return require(1).readByte();
+    }
+
+    @Override
+    public int readUnsignedByte() {
+        return require(1).readUnsignedByte();
+    }
+
+    @Override
+    public short readShort() {
+        return require(2).readShort();
+    }
+
+    @Override
+    public int readUnsignedShort() {
+        return require(2).readUnsignedShort();
+    }
+
+    @Override
+    public char readChar() {
+        return require(2).readChar();
+    }
+
+    @Override
+    public int readInt() {
+        return require(4).readInt();
+    }
+
+    @Override
+    public long readLong() {
+        return require(8).readLong();
+    }
+
+    @Override
+    public float readFloat() {
+        return require(4).readFloat();
+    }
+
+    @Override
+    public double readDouble() {
+        return require(8).readDouble();
+    }
+
+    /**
+     * Reads the line same as {@link java.io.DataInputStream#readLine()}:
+     * bytes are read as latin-1 chars until {@code \n}, {@code \r} or {@code \r\n}
+     *
+     * @return the line without the terminator or null if there are no bytes left
+     */
+    @Override
+    public @Nullable String readLine() {
+        if (!in.isReadable()) return null;
+
+        StringBuilder line = new StringBuilder();
+        while (in.isReadable()) {
+            char c = (char) in.readUnsignedByte();
+            if (c == '\n') break;
+
+            if (c == '\r') {
+                if (in.isReadable() && in.getByte(in.readerIndex()) == '\n') in.skipBytes(1);
+                break;
+            }
+
+            line.append(c);
+        }
+
+        return line.toString();
+    }
+
+    @Override
+    public @NotNull String readUTF() {
+        // length is checked by PacketUtil#readUTF
+        require(2);
+        return PacketUtil.readUTF(in);
+    }
+
+    private ByteBuf require(int length) {
+        if (in.readableBytes() < length) {
+            throw new IllegalStateException(new EOFException());
+        }
+
+        return in;
+    }
+}
@@ -0,0 +1,98 @@
+package su.plo.voice.proto.packets;
+
+import com.google.common.io.ByteArrayDataOutput;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import lombok.RequiredArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Guava {@link ByteArrayDataOutput} backed by {@link ByteBuf}
+ * <br/>
+ * Used to write packets which doesn't implement {@link Packet#write(ByteBuf)}
+ */
+@RequiredArgsConstructor
+public final class ByteBufDataOutput implements ByteArrayDataOutput {
+
+    private final ByteBuf out;
+
+    @Override
+    public void write(int b) {
+        out.writeByte(b);
+    }
+
+    @Override
+    public void write(byte[] bytes) {
+        out.writeBytes(bytes);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        out.writeBytes(bytes, offset, length);
+    }
+
+    @Override
+    public void writeBoolean(boolean value) {
+        out.writeBoolean(value);
+    }
+
+    @Override
+    public void writeByte(int value) {
+        out.writeByte(value);
+    }
+
+    @Override
+    public void writeShort(int value) {
+        out.writeShort(value);
+    }
+
+    @Override
+    public void writeChar(int value) {
+        out.writeChar(value);
+    }
+
+    @Override
+    public void writeInt(int value) {
+        out.writeInt(value);
+    }
+
+    @Override
+    public void writeLong(long value) {
+        out.writeLong(value);
+    }
+
+    @Override
+    public void writeFloat(float value) {
+        out.writeFloat(value);
+    }
+
+    @Override
+    public void writeDouble(double value) {
+        out.writeDouble(value);
+    }
+
+    @Override
+    public void writeChars(@NotNull String value) {
+        for (int i = 0; i < value.length(); i++) {
+            out.writeChar(value.charAt(i));
+        }
+    }
+
+    @Override
+    public void writeUTF(@NotNull String value) {
+        PacketUtil.writeUTF(out, value);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void writeBytes(@NotNull String value) {
+        for (int i = 0; i < value.length(); i++) {
+            out.writeByte((byte) value.charAt(i));
+        }
+    }
+
+    @Override
+    public byte[] toByteArray() {
+        return ByteBufUtil.getBytes(out);
+    }
+}
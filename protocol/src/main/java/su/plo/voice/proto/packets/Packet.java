@@ -2,6 +2,7 @@ package su.plo.voice.proto.packets;
 
 import com.google.common.io.ByteArrayDataInput;
 import com.google.common.io.ByteArrayDataOutput;
+import io.netty.buffer.ByteBuf;
 
 import java.io.IOException;
 
@@ -11,5 +12,23 @@ public interface Packet<T extends PacketHandler> {
 
     void write(ByteArrayDataOutput out) throws IOException;
 
+    /**
+     * Reads the packet directly from the buffer
+     * <br/>
+     * By default, the buffer is adapted to {@link ByteArrayDataInput} and read by {@link #read(ByteArrayDataInput)}
+     */
+    default void read(ByteBuf in) throws IOException {
+        read(new ByteBufDataInput(in));
+    }
+
+    /**
+     * Writes the packet directly to the buffer
+     * <br/>
+     * By default, the buffer is adapted to {@link ByteArrayDataOutput} and written by {@link #write(ByteArrayDataOutput)}
+     */
+    default void write(ByteBuf out) throws IOException {
+        write(new ByteBufDataOutput(out));
+    }
+
     void handle(T handler);
 }
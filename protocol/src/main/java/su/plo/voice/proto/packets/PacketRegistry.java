@@ -1,35 +1,142 @@
 package su.plo.voice.proto.packets;
 
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
+/**
+ * Packet types indexed by the packet id
+ * <br/>
+ * Packet constructors are resolved once on the registration,
+ * so decoding only calls the factory from the array.
+ * Packets should be registered before the codec is used
+ */
 public class PacketRegistry {
 
-    private final Map<Integer, Class<? extends Packet<?>>> packets = new HashMap<>();
-    private final Map<Class<? extends Packet<?>>, Integer> packetIdByType = new HashMap<>();
+    // generic array can't be created, it's filled only by createFactory, so all elements are packet factories
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Supplier<? extends Packet<?>>[] factories = new Supplier[0];
+    private boolean[] pooled = new boolean[0];
+
+    private final Map<Class<?>, Integer> packetIdByType = new HashMap<>();
+    private final ClassValue<Integer> packetIdCache = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(@NotNull Class<?> type) {
+            synchronized (PacketRegistry.this) {
+                return packetIdByType.getOrDefault(type, -1);
+            }
+        }
+    };
+
+    // pooled packet instances of the current thread indexed by the packet id
+    private final ThreadLocal<Packet<?>[]> pool = new ThreadLocal<>();
 
     public void register(int packetId, Class<? extends Packet<?>> clazz) {
-        packets.put(packetId, clazz);
+        register(packetId, clazz, false);
+    }
+
+    /**
+     * Registers the packet
+     *
+     * @param pooled if true, {@link #byTypePooled(int)} reuses the packet instance on the same thread
+     */
+    public synchronized void register(int packetId, Class<? extends Packet<?>> clazz, boolean pooled) {
+        if (packetId < 0) throw new IllegalArgumentException("Packet id cannot be negative");
+
+        if (packetId >= factories.length) {
+            this.factories = Arrays.copyOf(factories, packetId + 1);
+            this.pooled = Arrays.copyOf(this.pooled, packetId + 1);
+        }
+
+        factories[packetId] = createFactory(clazz);
+        this.pooled[packetId] = pooled;
+
         packetIdByType.put(clazz, packetId);
+        packetIdCache.remove(clazz);
     }
 
-    public Packet<?> byType(int type) {
-        Class<? extends Packet<?>> clazz = packets.get(type);
-        if (clazz != null) {
-            try {
-                return clazz.getDeclaredConstructor().newInstance();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+    /**
+     * @return the new packet instance or null if packet is not registered
+     */
+    public @Nullable Packet<?> byType(int type) {
+        Supplier<? extends Packet<?>>[] factories = this.factories;
+        if (type < 0 || type >= factories.length || factories[type] == null) return null;
+
+        return factories[type].get();
+    }
+
+    /**
+     * Gets the packet instance, pooled packets are reused by the next call on the same thread
+     * <br/>
+     * Pooled packets should be handled synchronously and must not be retained after that
+     *
+     * @return the packet instance or null if packet is not registered
+     */
+    public @Nullable Packet<?> byTypePooled(int type) {
+        boolean[] pooled = this.pooled;
+        if (type < 0 || type >= pooled.length || !pooled[type]) return byType(type);
+
+        Packet<?>[] packets = pool.get();
+        if (packets == null || packets.length <= type) {
+            packets = packets == null ? new Packet<?>[pooled.length] : Arrays.copyOf(packets, pooled.length);
+            pool.set(packets);
         }
 
-        return null;
+        Packet<?> packet = packets[type];
+        if (packet == null) {
+            packet = byType(type);
+            packets[type] = packet;
+        }
+
+        return packet;
+    }
+
+    public boolean isRegistered(int type) {
+        Supplier<? extends Packet<?>>[] factories = this.factories;
+        return type >= 0 && type < factories.length && factories[type] != null;
     }
 
+    /**
+     * @return the packet id or -1 if packet is not registered
+     */
     public int getType(Packet<?> packet) {
-        Integer id = packetIdByType.get(packet.getClass());
-        if (id == null) return -1;
+        return getType(packet.getClass());
+    }
+
+    /**
+     * @return the packet id or -1 if packet is not registered
+     */
+    public int getType(Class<?> packetClass) {
+        return packetIdCache.get(packetClass);
+    }
 
-        return id;
+    @SuppressWarnings("unchecked")
+    private static Supplier<? extends Packet<?>> createFactory(Class<? extends Packet<?>> clazz) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle constructor = lookup.findConstructor(clazz, MethodType.methodType(void.class));
+
+            CallSite callSite = LambdaMetafactory.metafactory(
+                    lookup,
+                    "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class),
+                    constructor,
+                    MethodType.methodType(clazz)
+            );
+
+            return (Supplier<? extends Packet<?>>) callSite.getTarget().invoke();
+        } catch (Throwable e) {
+            throw new IllegalArgumentException("Packet " + clazz + " should have the public no-args constructor", e);
+        }
     }
 }
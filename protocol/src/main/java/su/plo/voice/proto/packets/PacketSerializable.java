@@ -2,6 +2,7 @@ package su.plo.voice.proto.packets;
 
 import com.google.common.io.ByteArrayDataInput;
 import com.google.common.io.ByteArrayDataOutput;
+import io.netty.buffer.ByteBuf;
 import org.jetbrains.annotations.ApiStatus;
 
 import java.io.IOException;
@@ -13,4 +14,14 @@ public interface PacketSerializable {
 
     @ApiStatus.Internal
     void serialize(ByteArrayDataOutput out) throws IOException;
+
+    @ApiStatus.Internal
+    default void deserialize(ByteBuf in) throws IOException {
+        deserialize(new ByteBufDataInput(in));
+    }
+
+    @ApiStatus.Internal
+    default void serialize(ByteBuf out) throws IOException {
+        serialize(new ByteBufDataOutput(out));
+    }
 }
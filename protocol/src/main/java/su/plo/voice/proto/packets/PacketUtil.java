@@ -3,6 +3,7 @@ package su.plo.voice.proto.packets;
 import com.google.common.io.ByteArrayDataInput;
 import com.google.common.io.ByteArrayDataOutput;
 import com.google.common.io.ByteStreams;
+import io.netty.buffer.ByteBuf;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
@@ -82,6 +83,127 @@ public class PacketUtil {
         return null;
     }
 
+    // ByteBuf
+
+    public static int readSafeInt(ByteBuf in, int minInt, int maxInt) throws IOException {
+        int value = in.readInt();
+        if (value < minInt || value > maxInt) {
+            throw new IOException("Invalid int value (min: " + minInt + ", max: " + maxInt + ", value: " + value + ")");
+        }
+        return value;
+    }
+
+    public static void writeBytes(ByteBuf out, byte[] bytes) {
+        out.writeInt(bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    public static byte[] readBytes(ByteBuf in, int max) throws IOException {
+        int length = readSafeInt(in, 0, max);
+        if (length > in.readableBytes()) {
+            throw new IOException("Not enough bytes to read (length: " + length + ", readable: " + in.readableBytes() + ")");
+        }
+
+        byte[] bytes = new byte[length];
+        in.readBytes(bytes);
+        return bytes;
+    }
+
+    public static void writeUUID(ByteBuf out, UUID uuid) {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    public static UUID readUUID(ByteBuf in) {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    /**
+     * Writes the string in modified UTF-8 compatible with {@link java.io.DataOutput#writeUTF(String)}
+     */
+    public static void writeUTF(ByteBuf out, String str) {
+        int lengthIndex = out.writerIndex();
+        out.writeShort(0);
+
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+
+            if (c >= 0x0001 && c <= 0x007F) {
+                out.writeByte(c);
+            } else if (c > 0x07FF) {
+                out.writeByte(0xE0 | ((c >> 12) & 0x0F));
+                out.writeByte(0x80 | ((c >> 6) & 0x3F));
+                out.writeByte(0x80 | (c & 0x3F));
+            } else {
+                out.writeByte(0xC0 | ((c >> 6) & 0x1F));
+                out.writeByte(0x80 | (c & 0x3F));
+            }
+        }
+
+        int length = out.writerIndex() - lengthIndex - 2;
+        if (length > 65535) {
+            out.writerIndex(lengthIndex);
+            throw new IllegalArgumentException("Encoded string too long: " + length + " bytes");
+        }
+
+        out.setShort(lengthIndex, length);
+    }
+
+    /**
+     * Reads the string in modified UTF-8 compatible with {@link java.io.DataInput#readUTF()}
+     */
+    public static String readUTF(ByteBuf in) {
+        int length = in.readUnsignedShort();
+        int end = in.readerIndex() + length;
+        if (end > in.writerIndex()) {
+            throw new IllegalStateException("Not enough bytes to read string (length: " + length + ", readable: " + in.readableBytes() + ")");
+        }
+
+        char[] chars = new char[length];
+        int charsLength = 0;
+
+        while (in.readerIndex() < end) {
+            int a = in.readUnsignedByte();
+
+            if ((a & 0x80) == 0) {
+                chars[charsLength++] = (char) a;
+            } else if ((a & 0xE0) == 0xC0) {
+                int b = readUTFContinuation(in, end);
+                chars[charsLength++] = (char) (((a & 0x1F) << 6) | (b & 0x3F));
+            } else if ((a & 0xF0) == 0xE0) {
+                int b = readUTFContinuation(in, end);
+                int c = readUTFContinuation(in, end);
+                chars[charsLength++] = (char) (((a & 0x0F) << 12) | ((b & 0x3F) << 6) | (c & 0x3F));
+            } else {
+                throw new IllegalStateException("Malformed input around byte " + (in.readerIndex() - 1));
+            }
+        }
+
+        return new String(chars, 0, charsLength);
+    }
+
+    public static void writeNullableString(ByteBuf out, @Nullable String str) {
+        out.writeBoolean(str != null);
+        if (str != null) writeUTF(out, str);
+    }
+
+    public static @Nullable String readNullableString(ByteBuf in) {
+        if (in.readBoolean()) return readUTF(in);
+        return null;
+    }
+
+    private static int readUTFContinuation(ByteBuf in, int end) {
+        if (in.readerIndex() >= end) {
+            throw new IllegalStateException("Malformed input: partial character at end");
+        }
+
+        int b = in.readUnsignedByte();
+        if ((b & 0xC0) != 0x80) {
+            throw new IllegalStateException("Malformed input around byte " + (in.readerIndex() - 1));
+        }
+        return b;
+    }
+
     private PacketUtil() {
     }
 }
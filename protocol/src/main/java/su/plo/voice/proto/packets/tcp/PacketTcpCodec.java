@@ -1,8 +1,10 @@
 package su.plo.voice.proto.packets.tcp;
 
 import com.google.common.io.ByteArrayDataInput;
-import com.google.common.io.ByteArrayDataOutput;
-import com.google.common.io.ByteStreams;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import su.plo.voice.proto.packets.Packet;
 import su.plo.voice.proto.packets.PacketHandler;
 import su.plo.voice.proto.packets.PacketRegistry;
@@ -49,24 +51,73 @@ public class PacketTcpCodec {
         PACKETS.register(++lastPacketId, SourceLinePlayerAddPacket.class);
         PACKETS.register(++lastPacketId, SourceLinePlayerRemovePacket.class);
         PACKETS.register(++lastPacketId, SourceLinePlayersListPacket.class);
+
+        PACKETS.register(++lastPacketId, BatchPacket.class);
+        PACKETS.register(++lastPacketId, PlayerInfoDeltaPacket.class);
     }
 
     public static byte[] encode(Packet<?> packet) {
+        ByteBuf buf = encode(packet, ByteBufAllocator.DEFAULT);
+        if (buf == null) return null;
+
+        try {
+            return ByteBufUtil.getBytes(buf);
+        } finally {
+            buf.release();
+        }
+    }
+
+    /**
+     * Encodes the packet to the buffer allocated by the allocator
+     *
+     * @return the encoded packet or null if packet is not registered
+     */
+    public static ByteBuf encode(Packet<?> packet, ByteBufAllocator allocator) {
         int type = PACKETS.getType(packet);
         if (type < 0) return null;
 
-        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        ByteBuf out = allocator.buffer();
         out.writeByte(type);
         try {
             packet.write(out);
         } catch (IOException e) {
             e.printStackTrace();
         }
-        return out.toByteArray();
+        return out;
+    }
+
+    /**
+     * Reads the packet type of the encoded packet without decoding it
+     *
+     * @return the packet type or -1 if the data is empty
+     */
+    public static int peekType(byte[] data) {
+        return data.length > 0 ? data[0] : -1;
+    }
+
+    /**
+     * @return the packet type or -1 if packet is not registered
+     */
+    public static int getType(Class<? extends Packet<?>> packetClass) {
+        return PACKETS.getType(packetClass);
+    }
+
+    public static <T extends PacketHandler> Optional<Packet<T>> decode(byte[] data) throws IOException {
+        return decode(Unpooled.wrappedBuffer(data));
+    }
+
+    public static <T extends PacketHandler> Optional<Packet<T>> decode(ByteBuf buf) throws IOException {
+        Packet<T> packet = byType(buf.readByte());
+        if (packet != null) {
+            packet.read(buf);
+            return Optional.of(packet);
+        }
+
+        return Optional.empty();
     }
 
     public static <T extends PacketHandler> Optional<Packet<T>> decode(ByteArrayDataInput buf) throws IOException {
-        Packet<T> packet = (Packet<T>) PACKETS.byType(buf.readByte());
+        Packet<T> packet = byType(buf.readByte());
         if (packet != null) {
             packet.read(buf);
             return Optional.of(packet);
@@ -75,6 +126,12 @@ public class PacketTcpCodec {
         return Optional.empty();
     }
 
+    // packets of both sides share the registry, so the handler type is chosen by the caller
+    @SuppressWarnings("unchecked")
+    private static <T extends PacketHandler> Packet<T> byType(int type) {
+        return (Packet<T>) PACKETS.byType(type);
+    }
+
     private PacketTcpCodec() {
     }
 }
@@ -0,0 +1,61 @@
+package su.plo.voice.proto.packets.tcp.clientbound;
+
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import su.plo.voice.proto.packets.Packet;
+import su.plo.voice.proto.packets.PacketUtil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Packets sent to the player within one tick framed into one channel message
+ * <br/>
+ * Each frame is the packet encoded by {@link su.plo.voice.proto.packets.tcp.PacketTcpCodec},
+ * so frames with unknown packets can be skipped
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public final class BatchPacket implements Packet<ClientPacketTcpHandler> {
+
+    /**
+     * Capability sent by the clients which can handle this packet
+     */
+    public static final String CAPABILITY = "batch";
+
+    private static final int MAX_FRAMES = 4_096;
+    private static final int MAX_FRAME_SIZE = 1 << 20;
+
+    @Getter
+    private List<byte[]> packets;
+
+    @Override
+    public void read(ByteArrayDataInput in) throws IOException {
+        int size = PacketUtil.readSafeInt(in, 0, MAX_FRAMES);
+        this.packets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            packets.add(PacketUtil.readBytes(in, MAX_FRAME_SIZE));
+        }
+    }
+
+    @Override
+    public void write(ByteArrayDataOutput out) throws IOException {
+        out.writeInt(checkNotNull(packets).size());
+        for (byte[] packet : packets) {
+            PacketUtil.writeBytes(out, packet);
+        }
+    }
+
+    @Override
+    public void handle(ClientPacketTcpHandler handler) {
+        handler.handle(this);
+    }
+}
@@ -19,6 +19,8 @@ public interface ClientPacketTcpHandler extends PacketTcpHandler {
 
     void handle(@NotNull PlayerInfoUpdatePacket packet);
 
+    void handle(@NotNull PlayerInfoDeltaPacket packet);
+
     void handle(@NotNull PlayerDisconnectPacket packet);
 
     void handle(@NotNull SourceAudioEndPacket packet);
@@ -42,4 +44,6 @@ public interface ClientPacketTcpHandler extends PacketTcpHandler {
     void handle(@NotNull ActivationUnregisterPacket packet);
 
     void handle(@NotNull DistanceVisualizePacket packet);
+
+    void handle(@NotNull BatchPacket packet);
 }
@@ -0,0 +1,94 @@
+package su.plo.voice.proto.packets.tcp.clientbound;
+
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import su.plo.voice.proto.data.player.VoicePlayerInfo;
+import su.plo.voice.proto.packets.Packet;
+import su.plo.voice.proto.packets.PacketUtil;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Changed fields of the player info already known by the client
+ * <br/>
+ * Flags are always written, nick is written only if it's changed
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public final class PlayerInfoDeltaPacket implements Packet<ClientPacketTcpHandler> {
+
+    /**
+     * Capability sent by the clients which can handle this packet
+     */
+    public static final String CAPABILITY = "player_delta";
+
+    private static final int NICK = 0x1;
+    private static final int MUTED = 0x2;
+    private static final int VOICE_DISABLED = 0x4;
+    private static final int MICROPHONE_MUTED = 0x8;
+
+    @Getter
+    private UUID playerId;
+    private @Nullable String playerNick;
+    private int flags;
+
+    /**
+     * @return the packet with fields of {@code current} which differ from {@code previous}
+     */
+    public static PlayerInfoDeltaPacket diff(@NotNull VoicePlayerInfo previous, @NotNull VoicePlayerInfo current) {
+        int flags = 0;
+        if (current.isMuted()) flags |= MUTED;
+        if (current.isVoiceDisabled()) flags |= VOICE_DISABLED;
+        if (current.isMicrophoneMuted()) flags |= MICROPHONE_MUTED;
+
+        String playerNick = null;
+        if (!current.getPlayerNick().equals(previous.getPlayerNick())) {
+            playerNick = current.getPlayerNick();
+            flags |= NICK;
+        }
+
+        return new PlayerInfoDeltaPacket(current.getPlayerId(), playerNick, flags);
+    }
+
+    /**
+     * @return new player info with the changes applied
+     */
+    public @NotNull VoicePlayerInfo apply(@NotNull VoicePlayerInfo playerInfo) {
+        return new VoicePlayerInfo(
+                playerInfo.getPlayerId(),
+                playerNick != null ? playerNick : playerInfo.getPlayerNick(),
+                (flags & MUTED) != 0,
+                (flags & VOICE_DISABLED) != 0,
+                (flags & MICROPHONE_MUTED) != 0
+        );
+    }
+
+    @Override
+    public void read(ByteArrayDataInput in) throws IOException {
+        this.playerId = PacketUtil.readUUID(in);
+        this.flags = in.readUnsignedByte();
+        this.playerNick = (flags & NICK) != 0 ? in.readUTF() : null;
+    }
+
+    @Override
+    public void write(ByteArrayDataOutput out) throws IOException {
+        PacketUtil.writeUUID(out, checkNotNull(playerId));
+        out.writeByte(flags);
+        if (playerNick != null) out.writeUTF(playerNick);
+    }
+
+    @Override
+    public void handle(ClientPacketTcpHandler handler) {
+        handler.handle(this);
+    }
+}
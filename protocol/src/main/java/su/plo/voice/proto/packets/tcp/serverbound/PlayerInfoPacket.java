@@ -2,13 +2,19 @@ package su.plo.voice.proto.packets.tcp.serverbound;
 
 import com.google.common.io.ByteArrayDataInput;
 import com.google.common.io.ByteArrayDataOutput;
+import io.netty.buffer.ByteBuf;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import lombok.ToString;
+import su.plo.voice.proto.packets.ByteBufDataInput;
 import su.plo.voice.proto.packets.PacketUtil;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -22,10 +28,18 @@ public final class PlayerInfoPacket extends PlayerStatePacket {
     private String version;
     @Getter
     private byte[] publicKey;
+    // old clients don't send supported algorithms, so the list is empty for them
+    @Getter
+    private List<String> encryptionAlgorithms = Collections.emptyList();
+    // optional protocol features supported by the client, see BatchPacket#CAPABILITY
+    @Getter
+    private List<String> capabilities = Collections.emptyList();
 
     public PlayerInfoPacket(@NonNull String minecraftVersion,
                             @NonNull String version,
                             @NonNull byte[] publicKey,
+                            @NonNull List<String> encryptionAlgorithms,
+                            @NonNull List<String> capabilities,
                             boolean voiceDisabled,
                             boolean microphoneDisabled) {
         super(voiceDisabled, microphoneDisabled);
@@ -33,10 +47,24 @@ public final class PlayerInfoPacket extends PlayerStatePacket {
         this.minecraftVersion = minecraftVersion;
         this.version = version;
         this.publicKey = publicKey;
+        this.encryptionAlgorithms = encryptionAlgorithms;
+        this.capabilities = capabilities;
     }
 
     @Override
     public void read(ByteArrayDataInput in) throws IOException {
+        readInfo(in);
+
+        this.encryptionAlgorithms = readOptionalStrings(in);
+        this.capabilities = readOptionalStrings(in);
+    }
+
+    @Override
+    public void read(ByteBuf in) throws IOException {
+        read(new ByteBufDataInput(in));
+    }
+
+    private void readInfo(ByteArrayDataInput in) throws IOException {
         super.read(in);
 
         this.minecraftVersion = in.readUTF();
@@ -47,6 +75,39 @@ public final class PlayerInfoPacket extends PlayerStatePacket {
         in.readFully(publicKey);
     }
 
+    /**
+     * Reads the optional trailing list, older clients don't send it
+     * <br/>
+     * {@link ByteBufDataInput} tells if there are bytes left.
+     * Plain guava input doesn't, so the missing list is detected by the end of the input on its size
+     */
+    private List<String> readOptionalStrings(ByteArrayDataInput in) throws IOException {
+        if (in instanceof ByteBufDataInput) {
+            return ((ByteBufDataInput) in).isReadable()
+                    ? readStrings(in, PacketUtil.readSafeInt(in, 0, 16))
+                    : Collections.emptyList();
+        }
+
+        int size;
+        try {
+            size = PacketUtil.readSafeInt(in, 0, 16);
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof EOFException) return Collections.emptyList();
+            throw e;
+        }
+
+        return readStrings(in, size);
+    }
+
+    private List<String> readStrings(ByteArrayDataInput in, int size) throws IOException {
+        List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(in.readUTF());
+        }
+
+        return strings;
+    }
+
     @Override
     public void write(ByteArrayDataOutput out) throws IOException {
         super.write(out);
@@ -57,6 +118,16 @@ public final class PlayerInfoPacket extends PlayerStatePacket {
         checkNotNull(publicKey);
         out.writeInt(publicKey.length);
         out.write(publicKey);
+
+        writeStrings(out, encryptionAlgorithms);
+        writeStrings(out, capabilities);
+    }
+
+    private void writeStrings(ByteArrayDataOutput out, List<String> strings) {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
     }
 
     @Override
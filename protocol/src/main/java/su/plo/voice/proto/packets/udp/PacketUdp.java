@@ -1,6 +1,6 @@
 package su.plo.voice.proto.packets.udp;
 
-import com.google.common.io.ByteArrayDataInput;
+import io.netty.buffer.ByteBuf;
 import lombok.Getter;
 import lombok.ToString;
 import org.jetbrains.annotations.NotNull;
@@ -15,34 +15,51 @@ public class PacketUdp {
 
     public static final int TTL = 2_000;
 
+    // secret is kept as two longs, so connection can be looked up without allocating the UUID
     @Getter
-    private final UUID secret;
+    private final long secretMostSignificantBits;
+    @Getter
+    private final long secretLeastSignificantBits;
     @Getter
     private final long timestamp;
     private final Packet<?> packet;
 
     @Getter
-    private ByteArrayDataInput input;
+    private ByteBuf input;
     @Getter
     private boolean read;
 
     public PacketUdp(@NotNull UUID secret,
                      long timestamp,
                      @NotNull Packet<?> packet,
-                     @NotNull ByteArrayDataInput input) {
-        this.secret = secret;
+                     @NotNull ByteBuf input) {
+        this(secret.getMostSignificantBits(), secret.getLeastSignificantBits(), timestamp, packet, input);
+    }
+
+    public PacketUdp(long secretMostSignificantBits,
+                     long secretLeastSignificantBits,
+                     long timestamp,
+                     @NotNull Packet<?> packet,
+                     @NotNull ByteBuf input) {
+        this.secretMostSignificantBits = secretMostSignificantBits;
+        this.secretLeastSignificantBits = secretLeastSignificantBits;
         this.timestamp = timestamp;
         this.packet = packet;
         this.input = input;
     }
 
+    public UUID getSecret() {
+        return new UUID(secretMostSignificantBits, secretLeastSignificantBits);
+    }
+
     public <T extends PacketHandler> Packet<T> getPacket() throws IOException {
         if (!read) readPacket();
 
         return (Packet<T>) packet;
     }
 
-    private synchronized void readPacket() throws IOException {
+    // packet is handled by one thread at a time, netty pipeline hands it over with happens-before
+    private void readPacket() throws IOException {
         if (input == null) return;
 
         this.read = true;
@@ -1,8 +1,9 @@
 package su.plo.voice.proto.packets.udp;
 
-import com.google.common.io.ByteArrayDataInput;
-import com.google.common.io.ByteArrayDataOutput;
-import com.google.common.io.ByteStreams;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import su.plo.voice.proto.packets.Packet;
 import su.plo.voice.proto.packets.PacketRegistry;
 import su.plo.voice.proto.packets.PacketUtil;
@@ -20,32 +21,62 @@ public class PacketUdpCodec {
 
     // magic number is used to filter packets received not from PV
     private static final int MAGIC_NUMBER = 0x4e9004e9;
+    // secret is written right after the magic number and the packet type
+    public static final int SECRET_INDEX = 5;
+    // magic number + packet type + secret + timestamp
+    public static final int HEADER_SIZE = SECRET_INDEX + 16 + 8;
+
     private static final PacketRegistry PACKETS = new PacketRegistry();
 
     static {
         int lastPacketId = 0x0;
 
         PACKETS.register(++lastPacketId, PingPacket.class);
-        PACKETS.register(++lastPacketId, PlayerAudioPacket.class);
-        PACKETS.register(++lastPacketId, SourceAudioPacket.class);
+        // audio packets can be reused on the hot path, see decode(ByteBuf, boolean)
+        PACKETS.register(++lastPacketId, PlayerAudioPacket.class, true);
+        PACKETS.register(++lastPacketId, SourceAudioPacket.class, true);
         PACKETS.register(++lastPacketId, SelfAudioInfoPacket.class);
         PACKETS.register(0x100, CustomPacket.class);
     }
 
     public static byte[] replaceSecret(byte[] data, UUID secret) {
-        ByteArrayDataOutput out = ByteStreams.newDataOutput();
-        PacketUtil.writeUUID(out, secret);
-
-        System.arraycopy(out.toByteArray(), 0, data, 5, 16);
+        replaceSecret(Unpooled.wrappedBuffer(data), secret);
         return data;
     }
 
+    /**
+     * Replaces the secret of the encoded packet in place
+     */
+    public static ByteBuf replaceSecret(ByteBuf buf, UUID secret) {
+        int secretIndex = buf.readerIndex() + SECRET_INDEX;
+
+        buf.setLong(secretIndex, secret.getMostSignificantBits());
+        buf.setLong(secretIndex + 8, secret.getLeastSignificantBits());
+        return buf;
+    }
+
     public static byte[] encode(Packet<?> packet, UUID secret) {
-        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        ByteBuf buf = encode(packet, secret, ByteBufAllocator.DEFAULT);
+        if (buf == null) return null;
 
+        try {
+            return ByteBufUtil.getBytes(buf);
+        } finally {
+            buf.release();
+        }
+    }
+
+    /**
+     * Encodes the packet to the direct buffer allocated by the allocator
+     *
+     * @return the encoded packet or null if packet is not registered or can't be encoded
+     */
+    public static ByteBuf encode(Packet<?> packet, UUID secret, ByteBufAllocator allocator) {
         int type = PACKETS.getType(packet);
         if (type < 0) return null;
 
+        ByteBuf out = allocator.directBuffer();
+
         out.writeInt(MAGIC_NUMBER);
         out.writeByte(type);
         PacketUtil.writeUUID(out, secret);
@@ -55,23 +86,78 @@ public class PacketUdpCodec {
             packet.write(out);
         } catch (IOException e) {
             e.printStackTrace();
+            out.release();
+            return null;
         }
 
-        return out.toByteArray();
+        return out;
     }
 
-    public static Optional<PacketUdp> decode(ByteArrayDataInput in) throws IOException {
-        if (in.readInt() != MAGIC_NUMBER) return Optional.empty(); // bad packet
+    /**
+     * Decodes the packet header without changing the reader index of the buffer
+     * <br/>
+     * The packet body is read from the slice of the buffer
+     * when {@link PacketUdp#getPacket()} is called.
+     * The slice is not retained: it shares the reference count of the buffer and the caller keeps owning the buffer,
+     * so the buffer must not be released before the packet is read
+     * and the returned {@link PacketUdp} must not be used after that
+     */
+    public static Optional<PacketUdp> decode(ByteBuf in) {
+        return decode(in, false);
+    }
 
-        Packet<?> packet = PACKETS.byType(in.readByte());
-        if (packet != null) {
-            UUID secret = PacketUtil.readUUID(in);
-            long timestamp = in.readLong();
+    /**
+     * Decodes the packet header without changing the reader index of the buffer
+     *
+     * @param pooled if true, audio packet instances are reused by the next decode on the same thread,
+     *               so the packet should be handled synchronously on the decoding thread and must not be retained
+     * @see #decode(ByteBuf) the ownership of the buffer
+     */
+    public static Optional<PacketUdp> decode(ByteBuf in, boolean pooled) {
+        int type = getType(in);
+        if (type < 0) return Optional.empty();
+
+        Packet<?> packet = pooled ? PACKETS.byTypePooled(type) : PACKETS.byType(type);
+        if (packet == null) return Optional.empty();
+
+        int index = in.readerIndex();
+        return Optional.of(new PacketUdp(
+                getSecretMostSignificantBits(in),
+                getSecretLeastSignificantBits(in),
+                getTimestamp(in),
+                packet,
+                in.slice(index + HEADER_SIZE, in.readableBytes() - HEADER_SIZE)
+        ));
+    }
 
-            return Optional.of(new PacketUdp(secret, timestamp, packet, in));
-        }
+    /**
+     * Validates the packet header without changing the reader index of the buffer and without allocations
+     *
+     * @return the packet type or -1 if the buffer is not a PV packet or the packet is not registered
+     */
+    public static int getType(ByteBuf in) {
+        int index = in.readerIndex();
+        if (in.readableBytes() < HEADER_SIZE) return -1;
+
+        if (in.getInt(index) != MAGIC_NUMBER) return -1; // bad packet
+
+        int type = in.getByte(index + 4);
+        return PACKETS.isRegistered(type) ? type : -1;
+    }
+
+    /**
+     * Header getters don't validate the header, so {@link #getType(ByteBuf)} should be checked first
+     */
+    public static long getSecretMostSignificantBits(ByteBuf in) {
+        return in.getLong(in.readerIndex() + SECRET_INDEX);
+    }
+
+    public static long getSecretLeastSignificantBits(ByteBuf in) {
+        return in.getLong(in.readerIndex() + SECRET_INDEX + 8);
+    }
 
-        return Optional.empty();
+    public static long getTimestamp(ByteBuf in) {
+        return in.getLong(in.readerIndex() + SECRET_INDEX + 16);
     }
 
     private PacketUdpCodec() {
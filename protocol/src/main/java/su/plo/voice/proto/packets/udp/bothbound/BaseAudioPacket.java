@@ -2,6 +2,7 @@ package su.plo.voice.proto.packets.udp.bothbound;
 
 import com.google.common.io.ByteArrayDataInput;
 import com.google.common.io.ByteArrayDataOutput;
+import io.netty.buffer.ByteBuf;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
@@ -42,4 +43,20 @@ public abstract class BaseAudioPacket<T extends PacketHandler> implements Packet
         out.writeInt(data.length);
         out.write(data);
     }
+
+    @Override
+    public void read(ByteBuf in) throws IOException {
+        this.sequenceNumber = in.readLong();
+
+        int length = PacketUtil.readSafeInt(in, 1, 2048);
+        byte[] data = new byte[length];
+        in.readBytes(data);
+        this.data = data;
+    }
+
+    @Override
+    public void write(ByteBuf out) throws IOException {
+        out.writeLong(sequenceNumber);
+        PacketUtil.writeBytes(out, data);
+    }
 }
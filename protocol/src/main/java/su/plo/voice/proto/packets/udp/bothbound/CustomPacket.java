@@ -2,11 +2,13 @@ package su.plo.voice.proto.packets.udp.bothbound;
 
 import com.google.common.io.ByteArrayDataInput;
 import com.google.common.io.ByteArrayDataOutput;
+import io.netty.buffer.ByteBuf;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
 import su.plo.voice.proto.packets.Packet;
+import su.plo.voice.proto.packets.PacketUtil;
 import su.plo.voice.proto.packets.udp.PacketUdpHandler;
 
 import java.io.IOException;
@@ -38,6 +40,20 @@ public class CustomPacket implements Packet<PacketUdpHandler> {
         out.write(payload);
     }
 
+    @Override
+    public void read(ByteBuf in) throws IOException {
+        this.addonId = PacketUtil.readUTF(in);
+    }
+
+    @Override
+    public void write(ByteBuf out) throws IOException {
+        checkNotNull(addonId, "addonId cannot be null");
+        checkNotNull(payload, "payload cannot be null");
+
+        PacketUtil.writeUTF(out, addonId);
+        PacketUtil.writeBytes(out, payload);
+    }
+
     @Override
     public void handle(PacketUdpHandler handler) {
         handler.handle(this);
@@ -2,6 +2,7 @@ package su.plo.voice.proto.packets.udp.bothbound;
 
 import com.google.common.io.ByteArrayDataInput;
 import com.google.common.io.ByteArrayDataOutput;
+import io.netty.buffer.ByteBuf;
 import lombok.Getter;
 import lombok.ToString;
 import su.plo.voice.proto.packets.Packet;
@@ -25,6 +26,16 @@ public class PingPacket implements Packet<PacketUdpHandler> {
         out.writeLong(time);
     }
 
+    @Override
+    public void read(ByteBuf in) throws IOException {
+        this.time = in.readLong();
+    }
+
+    @Override
+    public void write(ByteBuf out) throws IOException {
+        out.writeLong(time);
+    }
+
     @Override
     public void handle(PacketUdpHandler handler) {
         handler.handle(this);
@@ -2,6 +2,7 @@ package su.plo.voice.proto.packets.udp.clientbound;
 
 import com.google.common.io.ByteArrayDataInput;
 import com.google.common.io.ByteArrayDataOutput;
+import io.netty.buffer.ByteBuf;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -57,6 +58,30 @@ public final class SelfAudioInfoPacket implements Packet<ClientPacketUdpHandler>
         out.writeShort(distance);
     }
 
+    @Override
+    public void read(ByteBuf in) throws IOException {
+        this.sourceId = PacketUtil.readUUID(in);
+        this.sequenceNumber = in.readLong();
+        if (in.readBoolean()) {
+            int length = PacketUtil.readSafeInt(in, 1, 2048);
+            byte[] data = new byte[length];
+            in.readBytes(data);
+            this.data = data;
+        }
+        this.distance = in.readShort();
+    }
+
+    @Override
+    public void write(ByteBuf out) throws IOException {
+        PacketUtil.writeUUID(out, checkNotNull(sourceId, "sourceId"));
+        out.writeLong(sequenceNumber);
+        out.writeBoolean(data != null);
+        if (data != null) {
+            PacketUtil.writeBytes(out, data);
+        }
+        out.writeShort(distance);
+    }
+
     @Override
     public void handle(ClientPacketUdpHandler handler) {
         handler.handle(this);
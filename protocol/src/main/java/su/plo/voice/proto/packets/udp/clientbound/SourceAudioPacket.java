@@ -2,6 +2,7 @@ package su.plo.voice.proto.packets.udp.clientbound;
 
 import com.google.common.io.ByteArrayDataInput;
 import com.google.common.io.ByteArrayDataOutput;
+import io.netty.buffer.ByteBuf;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -53,6 +54,24 @@ public final class SourceAudioPacket extends BaseAudioPacket<ClientPacketUdpHand
         out.writeShort(distance);
     }
 
+    @Override
+    public void read(ByteBuf in) throws IOException {
+        super.read(in);
+
+        this.sourceId = PacketUtil.readUUID(in);
+        this.sourceState = in.readByte();
+        this.distance = in.readShort();
+    }
+
+    @Override
+    public void write(ByteBuf out) throws IOException {
+        super.write(out);
+
+        PacketUtil.writeUUID(out, checkNotNull(sourceId, "sourceId"));
+        out.writeByte(sourceState);
+        out.writeShort(distance);
+    }
+
     @Override
     public void handle(ClientPacketUdpHandler handler) {
         handler.handle(this);
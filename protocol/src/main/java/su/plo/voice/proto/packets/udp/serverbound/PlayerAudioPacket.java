@@ -2,6 +2,7 @@ package su.plo.voice.proto.packets.udp.serverbound;
 
 import com.google.common.io.ByteArrayDataInput;
 import com.google.common.io.ByteArrayDataOutput;
+import io.netty.buffer.ByteBuf;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
@@ -51,6 +52,24 @@ public final class PlayerAudioPacket extends BaseAudioPacket<ServerPacketUdpHand
         out.writeBoolean(stereo);
     }
 
+    @Override
+    public void read(ByteBuf in) throws IOException {
+        super.read(in);
+
+        this.activationId = PacketUtil.readUUID(in);
+        this.distance = in.readShort();
+        this.stereo = in.readBoolean();
+    }
+
+    @Override
+    public void write(ByteBuf out) throws IOException {
+        super.write(out);
+
+        PacketUtil.writeUUID(out, checkNotNull(activationId));
+        out.writeShort(distance);
+        out.writeBoolean(stereo);
+    }
+
     @Override
     public void handle(ServerPacketUdpHandler handler) {
         handler.handle(this);
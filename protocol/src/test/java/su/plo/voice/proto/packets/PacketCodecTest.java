@@ -0,0 +1,215 @@
+package su.plo.voice.proto.packets;
+
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import su.plo.voice.proto.data.player.VoicePlayerInfo;
+import su.plo.voice.proto.packets.tcp.PacketTcpCodec;
+import su.plo.voice.proto.packets.tcp.clientbound.BatchPacket;
+import su.plo.voice.proto.packets.tcp.clientbound.PlayerDisconnectPacket;
+import su.plo.voice.proto.packets.tcp.clientbound.PlayerInfoDeltaPacket;
+import su.plo.voice.proto.packets.tcp.serverbound.PlayerInfoPacket;
+import su.plo.voice.proto.packets.udp.PacketUdp;
+import su.plo.voice.proto.packets.udp.PacketUdpCodec;
+import su.plo.voice.proto.packets.udp.clientbound.SourceAudioPacket;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+public class PacketCodecTest {
+
+    private static final String[] STRINGS = new String[]{"", "plasmo voice", "\u0000 null", "§a цвет", "🔊"};
+
+    @Test
+    public void testUTF() {
+        for (String str : STRINGS) {
+            // ByteBuf -> Guava
+            ByteBuf buf = Unpooled.buffer();
+            PacketUtil.writeUTF(buf, str);
+
+            byte[] bytes = new byte[buf.readableBytes()];
+            buf.getBytes(0, bytes);
+            Assertions.assertEquals(str, ByteStreams.newDataInput(bytes).readUTF());
+
+            // Guava -> ByteBuf
+            ByteArrayDataOutput out = ByteStreams.newDataOutput();
+            out.writeUTF(str);
+            Assertions.assertArrayEquals(out.toByteArray(), bytes);
+            Assertions.assertEquals(str, PacketUtil.readUTF(Unpooled.wrappedBuffer(out.toByteArray())));
+        }
+    }
+
+    @Test
+    public void testUdp() throws IOException {
+        UUID secret = UUID.randomUUID();
+        UUID sourceId = UUID.randomUUID();
+        SourceAudioPacket packet = new SourceAudioPacket(10L, (byte) 1, new byte[]{1, 2, 3}, sourceId, (short) 16);
+
+        ByteBuf encoded = PacketUdpCodec.encode(packet, secret, ByteBufAllocator.DEFAULT);
+        Assertions.assertNotNull(encoded);
+
+        try {
+            // guava path must produce the same bytes
+            ByteArrayDataOutput guavaOut = ByteStreams.newDataOutput();
+            packet.write(guavaOut);
+            Assertions.assertArrayEquals(
+                    guavaOut.toByteArray(),
+                    ByteBufUtil.getBytes(encoded, PacketUdpCodec.HEADER_SIZE, encoded.readableBytes() - PacketUdpCodec.HEADER_SIZE)
+            );
+
+            PacketUdp packetUdp = PacketUdpCodec.decode(encoded).orElseThrow(IllegalStateException::new);
+            Assertions.assertEquals(secret, packetUdp.getSecret());
+            Assertions.assertEquals(0, encoded.readerIndex());
+
+            SourceAudioPacket decoded = (SourceAudioPacket) (Packet<?>) packetUdp.getPacket();
+            Assertions.assertEquals(packet.getSequenceNumber(), decoded.getSequenceNumber());
+            Assertions.assertArrayEquals(packet.getData(), decoded.getData());
+            Assertions.assertEquals(sourceId, decoded.getSourceId());
+            Assertions.assertEquals(packet.getDistance(), decoded.getDistance());
+
+            UUID newSecret = UUID.randomUUID();
+            PacketUdpCodec.replaceSecret(encoded, newSecret);
+            Assertions.assertEquals(newSecret, PacketUdpCodec.decode(encoded).orElseThrow(IllegalStateException::new).getSecret());
+        } finally {
+            encoded.release();
+        }
+    }
+
+    @Test
+    public void testTcpGuavaAdapter() throws IOException {
+        UUID playerId = UUID.randomUUID();
+        byte[] encoded = PacketTcpCodec.encode(new PlayerDisconnectPacket(playerId));
+
+        // packets without ByteBuf implementation are read by guava adapter
+        ByteArrayDataInput in = ByteStreams.newDataInput(encoded);
+        PlayerDisconnectPacket guava = (PlayerDisconnectPacket) (Packet<?>) PacketTcpCodec.decode(in).orElseThrow(IllegalStateException::new);
+        PlayerDisconnectPacket netty = (PlayerDisconnectPacket) (Packet<?>) PacketTcpCodec.decode(encoded).orElseThrow(IllegalStateException::new);
+
+        Assertions.assertEquals(playerId, guava.getPlayerId());
+        Assertions.assertEquals(playerId, netty.getPlayerId());
+    }
+
+    @Test
+    public void testDataInputMatchesGuava() {
+        byte[] bytes = "first\nsecond\r\nthird\rlast".getBytes();
+        ByteArrayDataInput guava = ByteStreams.newDataInput(bytes);
+        ByteArrayDataInput netty = new ByteBufDataInput(Unpooled.wrappedBuffer(bytes));
+
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(guava.readLine(), netty.readLine());
+        }
+
+        // addon packets catch the same exception on the end of the input
+        IllegalStateException guavaException = Assertions.assertThrows(IllegalStateException.class, guava::readInt);
+        IllegalStateException nettyException = Assertions.assertThrows(IllegalStateException.class, netty::readInt);
+        Assertions.assertEquals(guavaException.getCause().getClass(), nettyException.getCause().getClass());
+        Assertions.assertThrows(IllegalStateException.class, netty::readUTF);
+    }
+
+    @Test
+    public void testPlayerInfoEncryptionAlgorithms() throws IOException {
+        PlayerInfoPacket packet = new PlayerInfoPacket(
+                "1.19.2",
+                "2.0.0",
+                new byte[]{1, 2, 3},
+                Collections.singletonList("AES/GCM/NoPadding"),
+                Collections.singletonList(BatchPacket.CAPABILITY),
+                false,
+                false
+        );
+        byte[] encoded = PacketTcpCodec.encode(packet);
+        int capabilitiesLength = 4 + 2 + BatchPacket.CAPABILITY.length();
+
+        PlayerInfoPacket guava = (PlayerInfoPacket) (Packet<?>) PacketTcpCodec.decode(new ByteBufDataInput(Unpooled.wrappedBuffer(encoded))).orElseThrow(IllegalStateException::new);
+        PlayerInfoPacket netty = (PlayerInfoPacket) (Packet<?>) PacketTcpCodec.decode(encoded).orElseThrow(IllegalStateException::new);
+        Assertions.assertEquals(packet.getEncryptionAlgorithms(), guava.getEncryptionAlgorithms());
+        Assertions.assertEquals(packet.getEncryptionAlgorithms(), netty.getEncryptionAlgorithms());
+        Assertions.assertEquals(packet.getCapabilities(), guava.getCapabilities());
+        Assertions.assertEquals(packet.getCapabilities(), netty.getCapabilities());
+
+        // plain guava input reads the trailing lists until the end of the input
+        PlayerInfoPacket unsized = (PlayerInfoPacket) (Packet<?>) PacketTcpCodec.decode(ByteStreams.newDataInput(encoded)).orElseThrow(IllegalStateException::new);
+        Assertions.assertEquals("2.0.0", unsized.getVersion());
+        Assertions.assertEquals(packet.getEncryptionAlgorithms(), unsized.getEncryptionAlgorithms());
+        Assertions.assertEquals(packet.getCapabilities(), unsized.getCapabilities());
+
+        // clients without capabilities
+        byte[] withoutCapabilities = Arrays.copyOf(encoded, encoded.length - capabilitiesLength);
+
+        guava = (PlayerInfoPacket) (Packet<?>) PacketTcpCodec.decode(new ByteBufDataInput(Unpooled.wrappedBuffer(withoutCapabilities))).orElseThrow(IllegalStateException::new);
+        netty = (PlayerInfoPacket) (Packet<?>) PacketTcpCodec.decode(withoutCapabilities).orElseThrow(IllegalStateException::new);
+        Assertions.assertEquals(packet.getEncryptionAlgorithms(), guava.getEncryptionAlgorithms());
+        Assertions.assertEquals(packet.getEncryptionAlgorithms(), netty.getEncryptionAlgorithms());
+        Assertions.assertTrue(guava.getCapabilities().isEmpty());
+        Assertions.assertTrue(netty.getCapabilities().isEmpty());
+
+        unsized = (PlayerInfoPacket) (Packet<?>) PacketTcpCodec.decode(ByteStreams.newDataInput(withoutCapabilities)).orElseThrow(IllegalStateException::new);
+        Assertions.assertEquals(packet.getEncryptionAlgorithms(), unsized.getEncryptionAlgorithms());
+        Assertions.assertTrue(unsized.getCapabilities().isEmpty());
+
+        // old clients don't send the algorithms
+        byte[] old = Arrays.copyOf(encoded, encoded.length - capabilitiesLength - 4 - 2 - "AES/GCM/NoPadding".length());
+
+        guava = (PlayerInfoPacket) (Packet<?>) PacketTcpCodec.decode(new ByteBufDataInput(Unpooled.wrappedBuffer(old))).orElseThrow(IllegalStateException::new);
+        netty = (PlayerInfoPacket) (Packet<?>) PacketTcpCodec.decode(old).orElseThrow(IllegalStateException::new);
+        Assertions.assertTrue(guava.getEncryptionAlgorithms().isEmpty());
+        Assertions.assertTrue(netty.getEncryptionAlgorithms().isEmpty());
+        Assertions.assertEquals("2.0.0", netty.getVersion());
+
+        unsized = (PlayerInfoPacket) (Packet<?>) PacketTcpCodec.decode(ByteStreams.newDataInput(old)).orElseThrow(IllegalStateException::new);
+        Assertions.assertTrue(unsized.getEncryptionAlgorithms().isEmpty());
+        Assertions.assertTrue(unsized.getCapabilities().isEmpty());
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+        UUID playerId = UUID.randomUUID();
+
+        BatchPacket packet = new BatchPacket(Arrays.asList(
+                PacketTcpCodec.encode(new PlayerDisconnectPacket(playerId)),
+                // unknown packet type
+                new byte[]{(byte) 0x7F, 1, 2, 3}
+        ));
+        byte[] encoded = PacketTcpCodec.encode(packet);
+
+        BatchPacket guava = (BatchPacket) (Packet<?>) PacketTcpCodec.decode(ByteStreams.newDataInput(encoded)).orElseThrow(IllegalStateException::new);
+        BatchPacket netty = (BatchPacket) (Packet<?>) PacketTcpCodec.decode(encoded).orElseThrow(IllegalStateException::new);
+
+        for (BatchPacket batch : Arrays.asList(guava, netty)) {
+            Assertions.assertEquals(2, batch.getPackets().size());
+
+            PlayerDisconnectPacket disconnect = (PlayerDisconnectPacket) (Packet<?>) PacketTcpCodec.decode(batch.getPackets().get(0))
+                    .orElseThrow(IllegalStateException::new);
+            Assertions.assertEquals(playerId, disconnect.getPlayerId());
+            Assertions.assertFalse(PacketTcpCodec.decode(batch.getPackets().get(1)).isPresent());
+        }
+    }
+
+    @Test
+    public void testPlayerInfoDelta() throws IOException {
+        VoicePlayerInfo previous = new VoicePlayerInfo(UUID.randomUUID(), "player", false, false, true);
+        VoicePlayerInfo current = new VoicePlayerInfo(previous.getPlayerId(), "player", true, false, false);
+
+        byte[] encoded = PacketTcpCodec.encode(PlayerInfoDeltaPacket.diff(previous, current));
+        // only uuid and flags are written if nick is not changed
+        Assertions.assertEquals(1 + 16 + 1, encoded.length);
+
+        PlayerInfoDeltaPacket delta = (PlayerInfoDeltaPacket) (Packet<?>) PacketTcpCodec.decode(encoded)
+                .orElseThrow(IllegalStateException::new);
+        Assertions.assertEquals(current, delta.apply(previous));
+
+        current.setPlayerNick("renamed");
+        delta = (PlayerInfoDeltaPacket) (Packet<?>) PacketTcpCodec.decode(ByteStreams.newDataInput(
+                PacketTcpCodec.encode(PlayerInfoDeltaPacket.diff(previous, current))
+        )).orElseThrow(IllegalStateException::new);
+        Assertions.assertEquals(current, delta.apply(previous));
+    }
+}
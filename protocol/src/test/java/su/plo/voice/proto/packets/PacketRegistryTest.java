@@ -0,0 +1,144 @@
+package su.plo.voice.proto.packets;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import su.plo.voice.proto.packets.udp.PacketUdp;
+import su.plo.voice.proto.packets.udp.PacketUdpCodec;
+import su.plo.voice.proto.packets.udp.bothbound.PingPacket;
+import su.plo.voice.proto.packets.udp.clientbound.SelfAudioInfoPacket;
+import su.plo.voice.proto.packets.udp.clientbound.SourceAudioPacket;
+import su.plo.voice.proto.packets.udp.serverbound.PlayerAudioPacket;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class PacketRegistryTest {
+
+    @Test
+    public void testRegistry() {
+        PacketRegistry registry = new PacketRegistry();
+        registry.register(1, PingPacket.class);
+        registry.register(0x10, SourceAudioPacket.class, true);
+
+        Assertions.assertEquals(1, registry.getType(new PingPacket()));
+        Assertions.assertEquals(0x10, registry.getType(new SourceAudioPacket()));
+        Assertions.assertEquals(-1, registry.getType(new PlayerAudioPacket()));
+
+        Assertions.assertTrue(registry.byType(1) instanceof PingPacket);
+        Assertions.assertNotSame(registry.byType(1), registry.byType(1));
+        Assertions.assertNull(registry.byType(0));
+        Assertions.assertNull(registry.byType(-1));
+        Assertions.assertNull(registry.byType(0x11));
+
+        // packet registered after the type lookup
+        registry.register(2, PlayerAudioPacket.class);
+        Assertions.assertEquals(2, registry.getType(new PlayerAudioPacket()));
+    }
+
+    @Test
+    public void testPooled() throws InterruptedException {
+        PacketRegistry registry = new PacketRegistry();
+        registry.register(1, PingPacket.class);
+        registry.register(2, SourceAudioPacket.class, true);
+
+        Packet<?> pooled = registry.byTypePooled(2);
+        Assertions.assertTrue(pooled instanceof SourceAudioPacket);
+        Assertions.assertSame(pooled, registry.byTypePooled(2));
+        Assertions.assertNotSame(pooled, registry.byType(2));
+
+        // not pooled packets are always created
+        Assertions.assertNotSame(registry.byTypePooled(1), registry.byTypePooled(1));
+
+        // every thread has its own instance
+        AtomicReference<Packet<?>> otherThread = new AtomicReference<>();
+        Thread thread = new Thread(() -> otherThread.set(registry.byTypePooled(2)));
+        thread.start();
+        thread.join();
+        Assertions.assertNotNull(otherThread.get());
+        Assertions.assertNotSame(pooled, otherThread.get());
+    }
+
+    @Test
+    public void testPooledDecode() throws IOException {
+        UUID secret = UUID.randomUUID();
+
+        ByteBuf first = PacketUdpCodec.encode(audioPacket(1L), secret, ByteBufAllocator.DEFAULT);
+        ByteBuf second = PacketUdpCodec.encode(audioPacket(2L), secret, ByteBufAllocator.DEFAULT);
+
+        try {
+            SourceAudioPacket firstPacket = (SourceAudioPacket) (Packet<?>) PacketUdpCodec.decode(first, true)
+                    .orElseThrow(IllegalStateException::new)
+                    .getPacket();
+            Assertions.assertEquals(1L, firstPacket.getSequenceNumber());
+
+            SourceAudioPacket secondPacket = (SourceAudioPacket) (Packet<?>) PacketUdpCodec.decode(second, true)
+                    .orElseThrow(IllegalStateException::new)
+                    .getPacket();
+            Assertions.assertSame(firstPacket, secondPacket);
+            Assertions.assertEquals(2L, secondPacket.getSequenceNumber());
+        } finally {
+            first.release();
+            second.release();
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmarkUdpCodec(TestReporter reporter) throws IOException {
+        int iterations = 500_000;
+        UUID secret = UUID.randomUUID();
+
+        // CustomPacket is not included, its id doesn't fit the packet type byte
+        List<Packet<?>> packets = Arrays.asList(
+                new PingPacket(),
+                new PlayerAudioPacket(1L, new byte[128], UUID.randomUUID(), (short) 16, false),
+                audioPacket(1L),
+                new SelfAudioInfoPacket(UUID.randomUUID(), 1L, new byte[128], (short) 16)
+        );
+
+        for (int round = 0; round < 3; round++) {
+            for (Packet<?> packet : packets) {
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    PacketUdpCodec.encode(packet, secret, ByteBufAllocator.DEFAULT).release();
+                }
+                long encodeTime = System.nanoTime() - start;
+
+                ByteBuf encoded = PacketUdpCodec.encode(packet, secret, ByteBufAllocator.DEFAULT);
+                long[] decodeTimes = new long[2];
+                try {
+                    for (int pooled = 0; pooled < 2; pooled++) {
+                        start = System.nanoTime();
+                        for (int i = 0; i < iterations; i++) {
+                            PacketUdp packetUdp = PacketUdpCodec.decode(encoded, pooled == 1)
+                                    .orElseThrow(IllegalStateException::new);
+                            Assertions.assertSame(packet.getClass(), packetUdp.getPacket().getClass());
+                        }
+                        decodeTimes[pooled] = System.nanoTime() - start;
+                    }
+                } finally {
+                    encoded.release();
+                }
+
+                reporter.publishEntry("round " + round, String.format(
+                        "%s: encode %.0f ops/ms, decode %.0f ops/ms, pooled decode %.0f ops/ms",
+                        packet.getClass().getSimpleName(),
+                        iterations / (encodeTime / 1_000_000D),
+                        iterations / (decodeTimes[0] / 1_000_000D),
+                        iterations / (decodeTimes[1] / 1_000_000D)
+                ));
+            }
+        }
+    }
+
+    private static SourceAudioPacket audioPacket(long sequenceNumber) {
+        return new SourceAudioPacket(sequenceNumber, (byte) 1, new byte[128], UUID.randomUUID(), (short) 16);
+    }
+}
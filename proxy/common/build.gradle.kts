@@ -15,4 +15,6 @@ dependencies {
     compileOnly(rootProject.libs.netty)
 
     implementation(project(":protocol"))
+
+    testImplementation(rootProject.libs.netty)
 }
@@ -9,7 +9,6 @@ import su.plo.voice.BaseVoice;
 import su.plo.voice.api.addon.AddonScope;
 import su.plo.voice.api.proxy.PlasmoVoiceProxy;
 import su.plo.voice.api.proxy.audio.source.ProxySourceManager;
-import su.plo.voice.api.proxy.connection.UdpProxyConnectionManager;
 import su.plo.voice.api.proxy.event.VoiceProxyInitializeEvent;
 import su.plo.voice.api.proxy.event.VoiceProxyShutdownEvent;
 import su.plo.voice.api.proxy.event.config.VoiceProxyConfigLoadedEvent;
@@ -45,7 +44,7 @@ public abstract class BaseVoiceProxy extends BaseVoice implements PlasmoVoicePro
     protected static final ConfigurationProvider TOML = ConfigurationProvider.getProvider(TomlConfiguration.class);
 
     @Getter
-    private final UdpProxyConnectionManager udpConnectionManager = new VoiceUdpProxyConnectionManager();
+    private final VoiceUdpProxyConnectionManager udpConnectionManager = new VoiceUdpProxyConnectionManager();
     @Getter
     private final RemoteServerManager remoteServerManager = new VoiceRemoteServerManager();
 
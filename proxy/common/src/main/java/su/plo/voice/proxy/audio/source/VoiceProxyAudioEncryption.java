@@ -0,0 +1,95 @@
+package su.plo.voice.proxy.audio.source;
+
+import com.google.common.collect.Maps;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import su.plo.voice.api.encryption.Encryption;
+import su.plo.voice.api.encryption.EncryptionException;
+import su.plo.voice.api.proxy.PlasmoVoiceProxy;
+import su.plo.voice.api.server.socket.UdpConnection;
+import su.plo.voice.encryption.AudioTranscoder;
+import su.plo.voice.encryption.aes.AesEncryption;
+import su.plo.voice.proxy.socket.NettyUdpProxyConnection;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Encryption of the audio routed by the proxy
+ * <br/>
+ * All backend servers use the proxy key, but each of them negotiates the algorithm with the player,
+ * so the speaker and the listeners can use different algorithms with the same key
+ */
+final class VoiceProxyAudioEncryption {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final PlasmoVoiceProxy voiceProxy;
+
+    // key is replaced on the config reload, so encryptions are recreated when it's changed
+    private volatile Keyed keyed;
+
+    VoiceProxyAudioEncryption(@NotNull PlasmoVoiceProxy voiceProxy) {
+        this.voiceProxy = voiceProxy;
+    }
+
+    /**
+     * @return the encryption algorithm negotiated with the player of the connection,
+     * AES-CBC if the config wasn't received from the backend server yet
+     */
+    static @NotNull String getAlgorithm(@Nullable UdpConnection connection) {
+        if (connection instanceof NettyUdpProxyConnection) {
+            String algorithm = ((NettyUdpProxyConnection) connection).getEncryption();
+            if (algorithm != null) return algorithm;
+        }
+
+        return AesEncryption.CIPHER;
+    }
+
+    /**
+     * Decrypts the audio with the algorithm of the speaker and encrypts it with the algorithm of the listener
+     *
+     * @return the transcoded data or empty if data can't be decrypted
+     */
+    Optional<byte[]> transcode(byte[] data, @NotNull String fromAlgorithm, @NotNull String toAlgorithm) {
+        Keyed keyed = getKeyed();
+
+        try {
+            return Optional.of(AudioTranscoder.transcode(keyed.get(fromAlgorithm), keyed.get(toAlgorithm), data));
+        } catch (EncryptionException | IllegalArgumentException e) {
+            LOGGER.debug("Failed to transcode audio: {}", e.toString());
+            return Optional.empty();
+        }
+    }
+
+    private Keyed getKeyed() {
+        byte[] key = voiceProxy.getConfig().aesEncryptionKey();
+
+        Keyed keyed = this.keyed;
+        if (keyed == null || keyed.key != key) {
+            keyed = new Keyed(key);
+            this.keyed = keyed;
+        }
+
+        return keyed;
+    }
+
+    private final class Keyed {
+
+        private final byte[] key;
+        private final Map<String, Encryption> encryptionByAlgorithm = Maps.newConcurrentMap();
+
+        private Keyed(byte[] key) {
+            this.key = key;
+        }
+
+        private Encryption get(@NotNull String algorithm) {
+            return encryptionByAlgorithm.computeIfAbsent(
+                    algorithm,
+                    (name) -> voiceProxy.getEncryptionManager().create(name, key)
+            );
+        }
+    }
+}
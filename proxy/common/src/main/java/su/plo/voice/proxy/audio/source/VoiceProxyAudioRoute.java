@@ -0,0 +1,140 @@
+package su.plo.voice.proxy.audio.source;
+
+import com.google.common.collect.Maps;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import su.plo.voice.api.addon.AddonContainer;
+import su.plo.voice.api.proxy.audio.source.ProxyAudioRoute;
+import su.plo.voice.api.server.audio.capture.ServerActivation;
+import su.plo.voice.api.server.audio.line.ServerSourceLine;
+import su.plo.voice.api.server.audio.source.ServerDirectSource;
+import su.plo.voice.api.server.player.VoicePlayer;
+import su.plo.voice.proto.packets.tcp.clientbound.SourceAudioEndPacket;
+import su.plo.voice.proto.packets.tcp.serverbound.PlayerAudioEndPacket;
+import su.plo.voice.proto.packets.udp.clientbound.SourceAudioPacket;
+import su.plo.voice.proto.packets.udp.serverbound.PlayerAudioPacket;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+public final class VoiceProxyAudioRoute implements ProxyAudioRoute {
+
+    private final VoiceProxySourceManager sourceManager;
+
+    @Getter
+    private final AddonContainer addon;
+    @Getter
+    private final ServerActivation activation;
+    @Getter
+    private final ServerSourceLine line;
+
+    private final List<Predicate<VoicePlayer>> filters = new CopyOnWriteArrayList<>();
+    private final Map<UUID, ServerDirectSource> sourceByPlayerId = Maps.newConcurrentMap();
+
+    private volatile @Nullable Supplier<Collection<VoicePlayer>> playersSupplier;
+
+    public VoiceProxyAudioRoute(@NotNull VoiceProxySourceManager sourceManager,
+                                @NotNull AddonContainer addon,
+                                @NotNull ServerActivation activation,
+                                @NotNull ServerSourceLine line) {
+        this.sourceManager = sourceManager;
+        this.addon = addon;
+        this.activation = activation;
+        this.line = line;
+    }
+
+    @Override
+    public void setPlayers(@Nullable Supplier<Collection<VoicePlayer>> playersSupplier) {
+        this.playersSupplier = playersSupplier;
+        sourceByPlayerId.values().forEach(source -> source.setPlayers(playersSupplier));
+    }
+
+    @Override
+    public void addFilter(@NotNull Predicate<VoicePlayer> filter) {
+        filters.add(filter);
+    }
+
+    @Override
+    public void removeFilter(@NotNull Predicate<VoicePlayer> filter) {
+        filters.remove(filter);
+    }
+
+    @Override
+    public boolean sendAudioPacket(@NotNull VoicePlayer player, @NotNull PlayerAudioPacket packet) {
+        if (!packet.getActivationId().equals(activation.getId()) || !activation.checkPermissions(player)) {
+            return false;
+        }
+
+        ServerDirectSource source = getSource(player);
+        source.setStereo(packet.isStereo() && activation.isStereoSupported());
+
+        // audio data is encrypted with the proxy key shared by all backend servers,
+        // so it's transcoded by the source only for the listeners using the other algorithm than the player
+        SourceAudioPacket sourcePacket = new SourceAudioPacket(
+                packet.getSequenceNumber(),
+                (byte) source.getState(),
+                packet.getData(),
+                source.getId(),
+                packet.getDistance()
+        );
+        source.sendAudioPacket(sourcePacket, packet.getActivationId());
+
+        return true;
+    }
+
+    @Override
+    public boolean sendAudioEndPacket(@NotNull VoicePlayer player, @NotNull PlayerAudioEndPacket packet) {
+        if (!packet.getActivationId().equals(activation.getId())) return false;
+
+        ServerDirectSource source = sourceByPlayerId.get(player.getInstance().getUUID());
+        if (source != null) {
+            source.sendPacket(new SourceAudioEndPacket(source.getId(), packet.getSequenceNumber()));
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes the source of the player
+     */
+    void removeSource(@NotNull UUID playerId) {
+        ServerDirectSource source = sourceByPlayerId.remove(playerId);
+        if (source != null) sourceManager.remove(source);
+    }
+
+    /**
+     * Removes the sources of all players
+     */
+    void clear() {
+        sourceByPlayerId.keySet().forEach(this::removeSource);
+    }
+
+    private ServerDirectSource getSource(@NotNull VoicePlayer player) {
+        UUID playerId = player.getInstance().getUUID();
+
+        return sourceByPlayerId.computeIfAbsent(playerId, (id) -> {
+            ServerDirectSource source = sourceManager.createRouteSource(addon, line, playerId);
+            source.setSender(player);
+            source.setPlayers(playersSupplier);
+            source.addFilter((listener) -> testListener(playerId, listener));
+
+            return source;
+        });
+    }
+
+    private boolean testListener(@NotNull UUID playerId, @NotNull VoicePlayer listener) {
+        if (listener.getInstance().getUUID().equals(playerId)) return false;
+
+        for (Predicate<VoicePlayer> filter : filters) {
+            if (!filter.test(listener)) return false;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,105 @@
+package su.plo.voice.proxy.audio.source;
+
+import com.google.common.collect.Maps;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import su.plo.voice.api.proxy.PlasmoVoiceProxy;
+import su.plo.voice.api.proxy.player.VoiceProxyPlayer;
+import su.plo.voice.api.proxy.socket.UdpProxyConnection;
+import su.plo.voice.api.server.connection.UdpConnectionManager;
+import su.plo.voice.api.server.socket.UdpConnection;
+import su.plo.voice.proto.packets.Packet;
+import su.plo.voice.proto.packets.udp.clientbound.ClientPacketUdpHandler;
+import su.plo.voice.proto.packets.udp.clientbound.SourceAudioPacket;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * Connections of the route source of the speaker
+ * <br/>
+ * Audio is sent as is to the listeners using the same encryption algorithm as the speaker
+ * and is transcoded once per algorithm for the other listeners
+ */
+final class VoiceProxyRouteConnections implements UdpConnectionManager<VoiceProxyPlayer, UdpProxyConnection> {
+
+    private final PlasmoVoiceProxy voiceProxy;
+    private final VoiceProxyAudioEncryption encryption;
+    private final UUID speakerId;
+
+    VoiceProxyRouteConnections(@NotNull PlasmoVoiceProxy voiceProxy,
+                               @NotNull VoiceProxyAudioEncryption encryption,
+                               @NotNull UUID speakerId) {
+        this.voiceProxy = voiceProxy;
+        this.encryption = encryption;
+        this.speakerId = speakerId;
+    }
+
+    @Override
+    public Optional<UdpProxyConnection> getConnectionByPlayerId(@NotNull UUID playerId) {
+        return voiceProxy.getUdpConnectionManager().getConnectionByPlayerId(playerId);
+    }
+
+    @Override
+    public Optional<UdpProxyConnection> getConnectionBySecret(@NotNull UUID secret) {
+        return voiceProxy.getUdpConnectionManager().getConnectionBySecret(secret);
+    }
+
+    @Override
+    public Collection<UdpProxyConnection> getConnections() {
+        return voiceProxy.getUdpConnectionManager().getConnections();
+    }
+
+    @Override
+    public void broadcast(@NotNull Packet<ClientPacketUdpHandler> packet, @Nullable Predicate<VoiceProxyPlayer> filter) {
+        voiceProxy.getUdpConnectionManager().broadcast(packet, filter);
+    }
+
+    @Override
+    public void sendPacket(@NotNull Packet<?> packet, @NotNull Collection<? extends UdpConnection> connections) {
+        if (!(packet instanceof SourceAudioPacket)) {
+            voiceProxy.getUdpConnectionManager().sendPacket(packet, connections);
+            return;
+        }
+
+        String speakerAlgorithm = VoiceProxyAudioEncryption.getAlgorithm(
+                getConnectionByPlayerId(speakerId).orElse(null)
+        );
+
+        List<UdpConnection> sameConnections = new ArrayList<>(connections.size());
+        Map<String, List<UdpConnection>> transcodedConnections = null;
+        for (UdpConnection connection : connections) {
+            String algorithm = VoiceProxyAudioEncryption.getAlgorithm(connection);
+            if (algorithm.equals(speakerAlgorithm)) {
+                sameConnections.add(connection);
+                continue;
+            }
+
+            if (transcodedConnections == null) transcodedConnections = Maps.newHashMap();
+            transcodedConnections.computeIfAbsent(algorithm, (key) -> new ArrayList<>()).add(connection);
+        }
+
+        voiceProxy.getUdpConnectionManager().sendPacket(packet, sameConnections);
+        if (transcodedConnections == null) return;
+
+        SourceAudioPacket audioPacket = (SourceAudioPacket) packet;
+        transcodedConnections.forEach((algorithm, algorithmConnections) ->
+                encryption.transcode(audioPacket.getData(), speakerAlgorithm, algorithm)
+                        .ifPresent(data -> voiceProxy.getUdpConnectionManager().sendPacket(
+                                new SourceAudioPacket(
+                                        audioPacket.getSequenceNumber(),
+                                        audioPacket.getSourceState(),
+                                        data,
+                                        audioPacket.getSourceId(),
+                                        audioPacket.getDistance()
+                                ),
+                                algorithmConnections
+                        ))
+        );
+    }
+}
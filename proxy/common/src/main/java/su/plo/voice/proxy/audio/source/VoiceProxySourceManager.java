@@ -1,29 +1,45 @@
 package su.plo.voice.proxy.audio.source;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
-import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import su.plo.voice.api.addon.AddonContainer;
+import su.plo.voice.api.event.EventSubscribe;
 import su.plo.voice.api.proxy.PlasmoVoiceProxy;
+import su.plo.voice.api.proxy.audio.source.ProxyAudioRoute;
 import su.plo.voice.api.proxy.audio.source.ProxySourceManager;
+import su.plo.voice.api.server.audio.capture.ServerActivation;
 import su.plo.voice.api.server.audio.line.ServerSourceLine;
 import su.plo.voice.api.server.audio.source.ServerAudioSource;
 import su.plo.voice.api.server.audio.source.ServerDirectSource;
+import su.plo.voice.api.server.connection.UdpConnectionManager;
+import su.plo.voice.api.server.event.player.PlayerQuitEvent;
+import su.plo.voice.api.server.player.VoicePlayer;
+import su.plo.voice.api.server.socket.UdpConnection;
 import su.plo.voice.server.audio.source.VoiceServerDirectSource;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
-@RequiredArgsConstructor
 public class VoiceProxySourceManager implements ProxySourceManager {
 
     private final PlasmoVoiceProxy voiceProxy;
+    private final VoiceProxyAudioEncryption audioEncryption;
 
     private final Map<UUID, ServerAudioSource<?>> sourceById = Maps.newConcurrentMap();
 
+    // routes are checked for every player audio packet and rarely changed, so map is copied on write
+    private volatile Map<UUID, VoiceProxyAudioRoute> routeByActivationId = ImmutableMap.of();
+
+    public VoiceProxySourceManager(@NotNull PlasmoVoiceProxy voiceProxy) {
+        this.voiceProxy = voiceProxy;
+        this.audioEncryption = new VoiceProxyAudioEncryption(voiceProxy);
+    }
+
     @Override
     public Optional<ServerAudioSource<?>> getSourceById(@NotNull UUID sourceId) {
         return Optional.ofNullable(sourceById.get(sourceId));
@@ -45,13 +61,41 @@ public class VoiceProxySourceManager implements ProxySourceManager {
                                                           @NotNull ServerSourceLine line,
                                                           @Nullable String codec,
                                                           boolean stereo) {
-        Optional<AddonContainer> addon = voiceProxy.getAddonManager().getAddon(addonObject);
-        if (!addon.isPresent()) throw new IllegalArgumentException("addonObject is not an addon");
+        return createDirectSource(getAddon(addonObject), line, codec, stereo);
+    }
 
+    public @NotNull ServerDirectSource createDirectSource(@NotNull AddonContainer addon,
+                                                          @NotNull ServerSourceLine line,
+                                                          @Nullable String codec,
+                                                          boolean stereo) {
+        return createDirectSource(addon, line, codec, stereo, voiceProxy.getUdpConnectionManager());
+    }
+
+    /**
+     * Creates the direct source of the route speaker,
+     * audio is transcoded for the listeners using the other encryption algorithm than the speaker
+     */
+    @NotNull ServerDirectSource createRouteSource(@NotNull AddonContainer addon,
+                                                  @NotNull ServerSourceLine line,
+                                                  @NotNull UUID speakerId) {
+        return createDirectSource(
+                addon,
+                line,
+                "opus",
+                false,
+                new VoiceProxyRouteConnections(voiceProxy, audioEncryption, speakerId)
+        );
+    }
+
+    private @NotNull ServerDirectSource createDirectSource(@NotNull AddonContainer addon,
+                                                           @NotNull ServerSourceLine line,
+                                                           @Nullable String codec,
+                                                           boolean stereo,
+                                                           @NotNull UdpConnectionManager<? extends VoicePlayer, ? extends UdpConnection> udpConnections) {
         ServerDirectSource source = new VoiceServerDirectSource(
                 voiceProxy,
-                voiceProxy.getUdpConnectionManager(),
-                addon.get(),
+                udpConnections,
+                addon,
                 line,
                 codec,
                 stereo
@@ -61,6 +105,53 @@ public class VoiceProxySourceManager implements ProxySourceManager {
         return source;
     }
 
+    @Override
+    public synchronized @NotNull ProxyAudioRoute createRoute(@NotNull Object addonObject,
+                                                             @NotNull ServerActivation activation,
+                                                             @NotNull ServerSourceLine line) {
+        VoiceProxyAudioRoute route = new VoiceProxyAudioRoute(this, getAddon(addonObject), activation, line);
+
+        Map<UUID, VoiceProxyAudioRoute> routes = Maps.newHashMap(routeByActivationId);
+        VoiceProxyAudioRoute oldRoute = routes.put(activation.getId(), route);
+        this.routeByActivationId = ImmutableMap.copyOf(routes);
+
+        if (oldRoute != null) oldRoute.clear();
+        return route;
+    }
+
+    @Override
+    public Optional<ProxyAudioRoute> getRouteByActivationId(@NotNull UUID activationId) {
+        return Optional.ofNullable(routeByActivationId.get(activationId));
+    }
+
+    @Override
+    public @NotNull Collection<ProxyAudioRoute> getRoutes() {
+        return Collections.unmodifiableCollection(routeByActivationId.values());
+    }
+
+    @Override
+    public synchronized void removeRoute(@NotNull UUID activationId) {
+        if (!routeByActivationId.containsKey(activationId)) return;
+
+        Map<UUID, VoiceProxyAudioRoute> routes = Maps.newHashMap(routeByActivationId);
+        VoiceProxyAudioRoute route = routes.remove(activationId);
+        this.routeByActivationId = ImmutableMap.copyOf(routes);
+
+        route.clear();
+    }
+
+    @EventSubscribe
+    public void onPlayerQuit(@NotNull PlayerQuitEvent event) {
+        routeByActivationId.values().forEach(route -> route.removeSource(event.getPlayerId()));
+    }
+
+    private AddonContainer getAddon(@NotNull Object addonObject) {
+        Optional<AddonContainer> addon = voiceProxy.getAddonManager().getAddon(addonObject);
+        if (!addon.isPresent()) throw new IllegalArgumentException("addonObject is not an addon");
+
+        return addon.get();
+    }
+
     @Override
     public void remove(@NotNull UUID sourceId) {
         sourceById.remove(sourceId);
@@ -96,6 +96,16 @@ public final class VoiceProxyConfig implements ProxyConfig {
         @ConfigField(path = "public")
         private @Nullable Public hostPublic = null;
 
+        @ConfigField(path = "native_transport", comment = "Use native epoll transport for the UDP proxy on Linux\nWith native transport, UDP proxy binds one socket per thread using SO_REUSEPORT")
+        private boolean nativeTransport = false;
+
+        @ConfigField(path = "udp_threads", comment = "Number of native transport threads\n0 means number of available processors")
+        @ConfigValidator(value = UdpThreadsValidator.class, allowed = "0-256")
+        private int udpThreads = 0;
+
+        @ConfigField(path = "connected_backends", comment = "Relay the backend traffic of every player by its own socket connected to the backend server\nKernel routes backend packets to the player's shard, but every player uses one more socket")
+        private boolean connectedBackends = false;
+
         @Config
         @Data
         @Accessors(fluent = true)
@@ -119,5 +129,16 @@ public final class VoiceProxyConfig implements ProxyConfig {
                 return port >= 0 && port <= 65535;
             }
         }
+
+        @NoArgsConstructor
+        public static class UdpThreadsValidator implements Predicate<Object> {
+
+            @Override
+            public boolean test(Object o) {
+                if (!(o instanceof Long)) return false;
+                long threads = (long) o;
+                return threads >= 0 && threads <= 256;
+            }
+        }
     }
 }
@@ -1,8 +1,19 @@
 package su.plo.voice.proxy.connection;
 
+/**
+ * Thrown by the channel handlers to cancel forwarding of the handled packet
+ * <br/>
+ * Exception is stackless singleton, so it's not more expensive than the return value
+ */
 public final class CancelForwardingException extends RuntimeException {
 
-    public CancelForwardingException() {
-        super("Cancel forwarding");
+    private static final long serialVersionUID = 1L;
+
+    public static final CancelForwardingException INSTANCE = new CancelForwardingException();
+    // packet was sent to the listeners by the proxy audio route, so it's counted as routed instead of dropped
+    public static final CancelForwardingException ROUTED = new CancelForwardingException();
+
+    private CancelForwardingException() {
+        super("Cancel forwarding", null, false, false);
     }
 }
@@ -0,0 +1,45 @@
+package su.plo.voice.proxy.connection;
+
+import org.jetbrains.annotations.NotNull;
+import su.plo.voice.proto.packets.Packet;
+import su.plo.voice.proto.packets.tcp.PacketTcpCodec;
+
+/**
+ * Static table of the TCP packet types handled by the proxy
+ * <br/>
+ * Plugin messages are peeked by the packet type,
+ * so packets not in the table are forwarded without decoding
+ */
+public final class PacketTypeTable {
+
+    private final boolean[] types = new boolean[128];
+
+    @SafeVarargs
+    public static PacketTypeTable of(@NotNull Class<? extends Packet<?>>... packets) {
+        PacketTypeTable table = new PacketTypeTable();
+        for (Class<? extends Packet<?>> packet : packets) {
+            int type = PacketTcpCodec.getType(packet);
+            if (type < 0 || type >= table.types.length) {
+                throw new IllegalArgumentException("Packet " + packet + " is not registered");
+            }
+
+            table.types[type] = true;
+        }
+
+        return table;
+    }
+
+    public boolean contains(int type) {
+        return type >= 0 && type < types.length && types[type];
+    }
+
+    /**
+     * @return true if the encoded packet is in the table
+     */
+    public boolean contains(byte[] data) {
+        return contains(PacketTcpCodec.peekType(data));
+    }
+
+    private PacketTypeTable() {
+    }
+}
@@ -3,9 +3,11 @@ package su.plo.voice.proxy.connection;
 import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
 import su.plo.voice.api.proxy.PlasmoVoiceProxy;
+import su.plo.voice.api.proxy.audio.source.ProxyAudioRoute;
 import su.plo.voice.api.proxy.player.VoiceProxyPlayer;
 import su.plo.voice.api.server.audio.source.ServerAudioSource;
 import su.plo.voice.api.server.event.audio.source.PlayerSpeakEndEvent;
+import su.plo.voice.proto.packets.tcp.PacketTcpCodec;
 import su.plo.voice.proto.packets.tcp.clientbound.SourceInfoPacket;
 import su.plo.voice.proto.packets.tcp.serverbound.*;
 
@@ -17,9 +19,27 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public final class PlayerToServerChannelHandler implements ServerPacketTcpHandler {
 
+    // other packets are forwarded without decoding
+    private static final PacketTypeTable HANDLED_PACKETS = PacketTypeTable.of(SourceInfoRequestPacket.class);
+    private static final PacketTypeTable SPEAK_END_PACKETS = PacketTypeTable.of(PlayerAudioEndPacket.class);
+
     private final PlasmoVoiceProxy voiceProxy;
     private final VoiceProxyPlayer player;
 
+    /**
+     * @return true if the encoded packet should be decoded and handled by the proxy
+     */
+    public boolean shouldHandle(byte[] data) {
+        int type = PacketTcpCodec.peekType(data);
+        if (HANDLED_PACKETS.contains(type)) return true;
+
+        // audio end is handled only to call the event or to route it by the proxy
+        return SPEAK_END_PACKETS.contains(type) && (
+                voiceProxy.getEventBus().hasListeners(PlayerSpeakEndEvent.class) ||
+                        !voiceProxy.getSourceManager().getRoutes().isEmpty()
+        );
+    }
+
     @Override
     public void handle(@NotNull PlayerInfoPacket packet) {
 
@@ -38,7 +58,12 @@ public final class PlayerToServerChannelHandler implements ServerPacketTcpHandle
     @Override
     public void handle(@NotNull PlayerAudioEndPacket packet) {
         if (!voiceProxy.getEventBus().call(new PlayerSpeakEndEvent(player, packet))) {
-            throw new CancelForwardingException();
+            throw CancelForwardingException.INSTANCE;
+        }
+
+        Optional<ProxyAudioRoute> route = voiceProxy.getSourceManager().getRouteByActivationId(packet.getActivationId());
+        if (route.isPresent() && route.get().sendAudioEndPacket(player, packet)) {
+            throw CancelForwardingException.INSTANCE;
         }
     }
 
@@ -48,7 +73,7 @@ public final class PlayerToServerChannelHandler implements ServerPacketTcpHandle
         if (!source.isPresent()) return;
 
         player.sendPacket(new SourceInfoPacket(source.get().getInfo()));
-        throw new CancelForwardingException();
+        throw CancelForwardingException.INSTANCE;
     }
 
     @Override
@@ -0,0 +1,136 @@
+package su.plo.voice.proxy.connection;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import su.plo.voice.api.proxy.socket.UdpProxyConnection;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * UDP session of the player on the proxy
+ * <br/>
+ * Session owns the secret sent to the player, the remote secret received from the current backend server
+ * and the UDP connection once the player's first packet is received.
+ * State is replaced atomically, so the remote secret, the connection and the closed flag are always consistent
+ */
+@ToString(of = {"playerId", "state"})
+public final class ProxyUdpSession {
+
+    @Getter
+    private final UUID playerId;
+    @Getter
+    private final UUID secret;
+
+    private final AtomicReference<State> state;
+
+    public ProxyUdpSession(@NotNull UUID playerId, @NotNull UUID secret, @NotNull UUID remoteSecret) {
+        this.playerId = playerId;
+        this.secret = secret;
+        this.state = new AtomicReference<>(new State(remoteSecret, null, false));
+    }
+
+    public @NotNull UUID getRemoteSecret() {
+        return state.get().remoteSecret;
+    }
+
+    public @Nullable UdpProxyConnection getConnection() {
+        return state.get().connection;
+    }
+
+    public boolean isClosed() {
+        return state.get().closed;
+    }
+
+    /**
+     * @return true if the secret halves belong to the secret sent to the player
+     */
+    public boolean isSecret(long secretMostSignificantBits, long secretLeastSignificantBits) {
+        return secret.getMostSignificantBits() == secretMostSignificantBits &&
+                secret.getLeastSignificantBits() == secretLeastSignificantBits;
+    }
+
+    /**
+     * Switches the session to the remote secret of the new backend server
+     *
+     * @return the previous remote secret or null if the session is closed
+     */
+    @Nullable UUID switchServer(@NotNull UUID remoteSecret) {
+        while (true) {
+            State current = state.get();
+            if (current.closed) return null;
+
+            if (state.compareAndSet(current, new State(remoteSecret, current.connection, false))) {
+                syncConnection();
+                return current.remoteSecret;
+            }
+        }
+    }
+
+    /**
+     * Attaches the connection to the session
+     *
+     * @return the state before connecting or null if the session is closed
+     */
+    @Nullable State connect(@NotNull UdpProxyConnection connection) {
+        while (true) {
+            State current = state.get();
+            if (current.closed) return null;
+
+            if (state.compareAndSet(current, new State(current.remoteSecret, connection, false))) {
+                syncConnection();
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Closes the session, closed session can't be switched or connected
+     *
+     * @return the state before closing or null if the session is already closed
+     */
+    @Nullable State close() {
+        while (true) {
+            State current = state.get();
+            if (current.closed) return null;
+
+            if (state.compareAndSet(current, new State(current.remoteSecret, current.connection, true))) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Sets the remote secret of the current state to the connection
+     * <br/>
+     * Repeated until the state is not changed, so concurrent transitions can't leave the stale remote secret
+     */
+    private void syncConnection() {
+        State current;
+        do {
+            current = state.get();
+            if (current.connection != null) current.connection.setRemoteSecret(current.remoteSecret);
+        } while (state.get() != current);
+    }
+
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    @ToString
+    static final class State {
+
+        private final @NotNull UUID remoteSecret;
+        private final @Nullable UdpProxyConnection connection;
+        private final boolean closed;
+
+        @NotNull UUID getRemoteSecret() {
+            return remoteSecret;
+        }
+
+        @Nullable UdpProxyConnection getConnection() {
+            return connection;
+        }
+    }
+}
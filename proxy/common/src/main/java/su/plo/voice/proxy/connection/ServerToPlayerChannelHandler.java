@@ -10,17 +10,24 @@ import su.plo.voice.api.proxy.player.VoiceProxyPlayer;
 import su.plo.voice.api.proxy.server.RemoteServer;
 import su.plo.voice.proto.data.audio.capture.VoiceActivation;
 import su.plo.voice.proto.data.audio.line.VoiceSourceLine;
+import su.plo.voice.proto.packets.Packet;
 import su.plo.voice.proto.packets.PacketUtil;
+import su.plo.voice.proto.packets.tcp.PacketTcpCodec;
 import su.plo.voice.proto.packets.tcp.clientbound.*;
 import su.plo.voice.proxy.BaseVoiceProxy;
 import su.plo.voice.proxy.config.VoiceProxyConfig;
+import su.plo.voice.proxy.socket.NettyUdpProxyConnection;
 
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -28,9 +35,32 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public final class ServerToPlayerChannelHandler implements ClientPacketTcpHandler {
 
+    // other packets are forwarded without decoding
+    private static final PacketTypeTable HANDLED_PACKETS = PacketTypeTable.of(
+            ConnectionPacket.class,
+            LanguagePacket.class,
+            ConfigPacket.class,
+            PlayerInfoUpdatePacket.class,
+            PlayerInfoDeltaPacket.class,
+            PlayerDisconnectPacket.class,
+            BatchPacket.class
+    );
+    private static final PacketTypeTable REPLACEABLE_PACKETS = PacketTypeTable.of(
+            ConnectionPacket.class,
+            LanguagePacket.class,
+            ConfigPacket.class
+    );
+
     private final BaseVoiceProxy voiceProxy;
     private final VoiceProxyPlayer player;
 
+    /**
+     * @return true if the encoded packet should be decoded and handled by the proxy
+     */
+    public boolean shouldHandle(byte[] data) {
+        return HANDLED_PACKETS.contains(data);
+    }
+
     @Override
     public void handle(@NotNull ConnectionPacket packet) {
         if (!isPlayerOnVoiceServer()) {
@@ -89,7 +119,7 @@ public final class ServerToPlayerChannelHandler implements ClientPacketTcpHandle
                 .ifPresent((connection) -> connection.setRemoteServer(remoteServer));
 
         sendConnectionPacket(secret);
-        throw new CancelForwardingException();
+        throw CancelForwardingException.INSTANCE;
     }
 
     @Override
@@ -106,11 +136,19 @@ public final class ServerToPlayerChannelHandler implements ClientPacketTcpHandle
         language.putAll(voiceProxy.getLanguages().getClientLanguage(packet.getLanguageName()));
 
         player.sendPacket(new LanguagePacket(packet.getLanguageName(), language));
-        throw new CancelForwardingException();
+        throw CancelForwardingException.INSTANCE;
     }
 
     @Override
     public void handle(@NotNull ConfigPacket packet) {
+        // audio routed by the proxy is encrypted with the algorithm negotiated by the backend server
+        voiceProxy.getUdpConnectionManager()
+                .getConnectionByPlayerId(player.getInstance().getUUID())
+                .filter(NettyUdpProxyConnection.class::isInstance)
+                .ifPresent((connection) -> ((NettyUdpProxyConnection) connection)
+                        .setEncryption(packet.getEncryption().getAlgorithm())
+                );
+
         Set<VoiceActivation> activations = Sets.newHashSet();
         if (!packet.getActivations().containsAll(voiceProxy.getActivationManager().getActivations())) {
             activations.addAll(
@@ -147,7 +185,7 @@ public final class ServerToPlayerChannelHandler implements ClientPacketTcpHandle
                     activations.size() > 0 ? activations : Sets.newHashSet(packet.getActivations()),
                     packet.getPermissions()
             ));
-            throw new CancelForwardingException();
+            throw CancelForwardingException.INSTANCE;
         }
     }
 
@@ -167,7 +205,7 @@ public final class ServerToPlayerChannelHandler implements ClientPacketTcpHandle
 //                        .collect(Collectors.toList())
 //        ));
 //
-//        throw new CancelForwardingException();
+//        throw CancelForwardingException.INSTANCE;
     }
 
     @Override
@@ -187,13 +225,22 @@ public final class ServerToPlayerChannelHandler implements ClientPacketTcpHandle
 //            }
 //        });
 
-//        throw new CancelForwardingException();
+//        throw CancelForwardingException.INSTANCE;
+    }
+
+    @Override
+    public void handle(@NotNull PlayerInfoDeltaPacket packet) {
+        if (!isPlayerOnVoiceServer()) return;
+
+        voiceProxy.getPlayerManager().getPlayerById(packet.getPlayerId())
+                .filter(VoiceProxyPlayer::hasVoiceChat)
+                .ifPresent((player) -> player.update(packet.apply(player.getInfo())));
     }
 
     @Override
     public void handle(@NotNull PlayerDisconnectPacket packet) {
         if (!isPlayerOnVoiceServer()) return;
-        throw new CancelForwardingException();
+        throw CancelForwardingException.INSTANCE;
     }
 
     @Override
@@ -240,6 +287,51 @@ public final class ServerToPlayerChannelHandler implements ClientPacketTcpHandle
     public void handle(@NotNull DistanceVisualizePacket packet) {
     }
 
+    @Override
+    public void handle(@NotNull BatchPacket packet) {
+        List<byte[]> pending = new ArrayList<>(packet.getPackets().size());
+        boolean modified = false;
+
+        for (byte[] frame : packet.getPackets()) {
+            int type = PacketTcpCodec.peekType(frame);
+            if (!HANDLED_PACKETS.contains(type)) {
+                pending.add(frame);
+                continue;
+            }
+
+            Optional<Packet<ClientPacketTcpHandler>> framePacket;
+            try {
+                framePacket = PacketTcpCodec.decode(frame);
+            } catch (IOException e) {
+                framePacket = Optional.empty();
+            }
+
+            if (!framePacket.isPresent()) {
+                pending.add(frame);
+                continue;
+            }
+
+            // these packets can be replaced by the proxy, so frames before them are sent first to keep the order
+            if (REPLACEABLE_PACKETS.contains(type) && !pending.isEmpty()) {
+                player.sendPacket(new BatchPacket(pending));
+                pending = new ArrayList<>();
+                modified = true;
+            }
+
+            try {
+                framePacket.get().handle(this);
+                pending.add(frame);
+            } catch (CancelForwardingException ignored) {
+                modified = true;
+            }
+        }
+
+        if (!modified) return;
+
+        if (!pending.isEmpty()) player.sendPacket(new BatchPacket(pending));
+        throw CancelForwardingException.INSTANCE;
+    }
+
     private boolean isPlayerOnVoiceServer() {
         return voiceProxy.getUdpProxyServer().isPresent() &&
                 player.getInstance().getServer()
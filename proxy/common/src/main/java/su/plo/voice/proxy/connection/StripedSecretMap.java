@@ -0,0 +1,194 @@
+package su.plo.voice.proxy.connection;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+
+/**
+ * Map keyed by the 128-bit secrets
+ * <br/>
+ * Keys are stored as the long halves in the open-addressing tables, so lookups don't allocate.
+ * Map is split into the stripes by the secret hash.
+ * Each stripe is copied on write and published by the volatile field,
+ * so reads are lock-free and writes lock only their stripe
+ */
+public final class StripedSecretMap<V> {
+
+    private static final int STRIPES = 16;
+
+    // generic array can't be created, it's filled only in the constructor, so all elements are stripes of V
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final Stripe<V>[] stripes = new Stripe[STRIPES];
+
+    public StripedSecretMap() {
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe<>();
+    }
+
+    /**
+     * Gets the value by the secret halves without allocations
+     */
+    public @Nullable V get(long secretMostSignificantBits, long secretLeastSignificantBits) {
+        int hash = hash(secretMostSignificantBits, secretLeastSignificantBits);
+        return stripe(hash).table.get(secretMostSignificantBits, secretLeastSignificantBits, hash);
+    }
+
+    public @Nullable V get(@NotNull UUID secret) {
+        return get(secret.getMostSignificantBits(), secret.getLeastSignificantBits());
+    }
+
+    /**
+     * @return the previous value of the secret or null
+     */
+    public @Nullable V put(@NotNull UUID secret, @NotNull V value) {
+        int hash = hash(secret.getMostSignificantBits(), secret.getLeastSignificantBits());
+        return stripe(hash).put(secret.getMostSignificantBits(), secret.getLeastSignificantBits(), hash, value, true);
+    }
+
+    /**
+     * @return the current value of the secret or null if the value was added
+     */
+    public @Nullable V putIfAbsent(@NotNull UUID secret, @NotNull V value) {
+        int hash = hash(secret.getMostSignificantBits(), secret.getLeastSignificantBits());
+        return stripe(hash).put(secret.getMostSignificantBits(), secret.getLeastSignificantBits(), hash, value, false);
+    }
+
+    /**
+     * Removes the secret only if it's mapped to the same value instance
+     *
+     * @return true if the secret was removed
+     */
+    public boolean remove(@NotNull UUID secret, @NotNull V value) {
+        int hash = hash(secret.getMostSignificantBits(), secret.getLeastSignificantBits());
+        return stripe(hash).remove(secret.getMostSignificantBits(), secret.getLeastSignificantBits(), hash, value);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe<V> stripe : stripes) size += stripe.table.size;
+        return size;
+    }
+
+    public void clear() {
+        for (Stripe<V> stripe : stripes) stripe.clear();
+    }
+
+    private Stripe<V> stripe(int hash) {
+        return stripes[hash & (STRIPES - 1)];
+    }
+
+    private static int hash(long secretMostSignificantBits, long secretLeastSignificantBits) {
+        long hash = (secretMostSignificantBits * 0x9E3779B97F4A7C15L) ^ secretLeastSignificantBits;
+        hash ^= hash >>> 29;
+        hash *= 0xBF58476D1CE4E5B9L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static final class Stripe<V> {
+
+        private volatile Table<V> table = new Table<>(Table.MIN_CAPACITY);
+
+        synchronized @Nullable V put(long mostSignificantBits, long leastSignificantBits, int hash, V value, boolean replace) {
+            Table<V> table = this.table;
+
+            V previous = table.get(mostSignificantBits, leastSignificantBits, hash);
+            if (previous != null && !replace) return previous;
+
+            Table<V> copy = new Table<>(Table.capacityFor(table.size + 1));
+            table.copyTo(copy, mostSignificantBits, leastSignificantBits);
+            copy.insert(mostSignificantBits, leastSignificantBits, hash, value);
+
+            this.table = copy;
+            return previous;
+        }
+
+        synchronized boolean remove(long mostSignificantBits, long leastSignificantBits, int hash, V value) {
+            Table<V> table = this.table;
+            if (table.get(mostSignificantBits, leastSignificantBits, hash) != value) return false;
+
+            // table is rebuilt without the key, so the probe chains don't need tombstones
+            Table<V> copy = new Table<>(Table.capacityFor(table.size - 1));
+            table.copyTo(copy, mostSignificantBits, leastSignificantBits);
+
+            this.table = copy;
+            return true;
+        }
+
+        synchronized void clear() {
+            this.table = new Table<>(Table.MIN_CAPACITY);
+        }
+    }
+
+    private static final class Table<V> {
+
+        private static final int MIN_CAPACITY = 8;
+
+        // keys are interleaved: most significant bits at 2 * slot, least significant bits at 2 * slot + 1
+        private final long[] keys;
+        private final int[] hashes;
+        private final Object[] values;
+        private int size;
+
+        private Table(int capacity) {
+            this.keys = new long[capacity * 2];
+            this.hashes = new int[capacity];
+            this.values = new Object[capacity];
+        }
+
+        /**
+         * @return power of two capacity with the load factor not greater than 0.5,
+         * so the probe always ends on the empty slot
+         */
+        private static int capacityFor(int size) {
+            int capacity = MIN_CAPACITY;
+            while (capacity < size * 2) capacity <<= 1;
+            return capacity;
+        }
+
+        @SuppressWarnings("unchecked")
+        private @Nullable V get(long mostSignificantBits, long leastSignificantBits, int hash) {
+            int mask = values.length - 1;
+            for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+                Object value = values[slot];
+                if (value == null) return null;
+
+                if (keys[slot * 2] == mostSignificantBits && keys[slot * 2 + 1] == leastSignificantBits) {
+                    return (V) value;
+                }
+            }
+        }
+
+        private void insert(long mostSignificantBits, long leastSignificantBits, int hash, Object value) {
+            int mask = values.length - 1;
+            int slot = spread(hash) & mask;
+            while (values[slot] != null) slot = (slot + 1) & mask;
+
+            keys[slot * 2] = mostSignificantBits;
+            keys[slot * 2 + 1] = leastSignificantBits;
+            hashes[slot] = hash;
+            values[slot] = value;
+            size++;
+        }
+
+        /**
+         * Copies all entries except the excluded key
+         */
+        private void copyTo(Table<V> table, long excludedMostSignificantBits, long excludedLeastSignificantBits) {
+            for (int slot = 0; slot < values.length; slot++) {
+                if (values[slot] == null) continue;
+
+                long mostSignificantBits = keys[slot * 2];
+                long leastSignificantBits = keys[slot * 2 + 1];
+                if (mostSignificantBits == excludedMostSignificantBits &&
+                        leastSignificantBits == excludedLeastSignificantBits) continue;
+
+                table.insert(mostSignificantBits, leastSignificantBits, hashes[slot], values[slot]);
+            }
+        }
+
+        // low bits of the hash select the stripe
+        private static int spread(int hash) {
+            return hash >>> 4;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package su.plo.voice.proxy.connection;
 
+import com.google.common.collect.Collections2;
 import com.google.common.collect.Maps;
+import io.netty.buffer.ByteBufAllocator;
 import lombok.AllArgsConstructor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -11,78 +13,105 @@ import su.plo.voice.api.proxy.connection.UdpProxyConnectionManager;
 import su.plo.voice.api.proxy.player.VoiceProxyPlayer;
 import su.plo.voice.api.proxy.socket.UdpProxyConnection;
 import su.plo.voice.api.server.event.player.PlayerQuitEvent;
+import su.plo.voice.api.server.socket.UdpConnection;
 import su.plo.voice.proto.packets.Packet;
 import su.plo.voice.proto.packets.udp.clientbound.ClientPacketUdpHandler;
+import su.plo.voice.proxy.socket.NettyUdpProxyConnection;
+import su.plo.voice.socket.NettyEncodedPacketUdp;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.function.Predicate;
 
+/**
+ * UDP connections of the proxy
+ * <br/>
+ * Each player has one {@link ProxyUdpSession}. Sessions are indexed by the player id
+ * and by both the secret sent to the player and the remote secret of the current backend server,
+ * so the relay finds the session of any datagram with one lookup
+ */
 @AllArgsConstructor
 public final class VoiceUdpProxyConnectionManager implements UdpProxyConnectionManager {
 
     private static final Logger LOGGER = LogManager.getLogger();
 
-    private final Map<UUID, UUID> remoteSecretByPlayerId = Maps.newConcurrentMap();
-    private final Map<UUID, UUID> secretByPlayerId = Maps.newConcurrentMap();
+    private final StripedSecretMap<ProxyUdpSession> sessionBySecret = new StripedSecretMap<>();
+    private final Map<UUID, ProxyUdpSession> sessionByPlayerId = Maps.newConcurrentMap();
 
-    private final Map<UUID, UUID> playerIdByRemoteSecret = Maps.newConcurrentMap();
-    private final Map<UUID, UUID> playerIdBySecret = Maps.newConcurrentMap();
+    private final Collection<UdpProxyConnection> connections = Collections2.transform(
+            Collections2.filter(sessionByPlayerId.values(), (session) -> session.getConnection() != null),
+            ProxyUdpSession::getConnection
+    );
 
-    private final Map<UUID, UdpProxyConnection> connectionByRemoteSecret = Maps.newConcurrentMap();
-    private final Map<UUID, UdpProxyConnection> connectionBySecret = Maps.newConcurrentMap();
-    private final Map<UUID, UdpProxyConnection> connectionByPlayerId = Maps.newConcurrentMap();
+    /**
+     * Gets the session by the secret or the remote secret halves without allocations
+     */
+    public @Nullable ProxyUdpSession getSession(long secretMostSignificantBits, long secretLeastSignificantBits) {
+        return sessionBySecret.get(secretMostSignificantBits, secretLeastSignificantBits);
+    }
+
+    public Optional<ProxyUdpSession> getSessionByPlayerId(@NotNull UUID playerId) {
+        return Optional.ofNullable(sessionByPlayerId.get(playerId));
+    }
 
     @Override
     public Optional<UUID> getPlayerIdByRemoteSecret(UUID remoteSecret) {
-        return Optional.ofNullable(playerIdByRemoteSecret.get(remoteSecret));
+        ProxyUdpSession session = sessionBySecret.get(remoteSecret);
+        if (session == null || !session.getRemoteSecret().equals(remoteSecret)) return Optional.empty();
+
+        return Optional.of(session.getPlayerId());
     }
 
     @Override
     public Optional<UUID> getPlayerIdBySecret(UUID secret) {
-        return Optional.ofNullable(playerIdBySecret.get(secret));
+        ProxyUdpSession session = sessionBySecret.get(secret);
+        if (session == null || !session.getSecret().equals(secret)) return Optional.empty();
+
+        return Optional.of(session.getPlayerId());
     }
 
     @Override
     public Optional<UUID> getPlayerIdByAnySecret(UUID secret) {
-        UUID playerId = playerIdBySecret.get(secret);
-        if (playerId != null) return Optional.of(playerId);
-
-        return Optional.ofNullable(playerIdByRemoteSecret.get(secret));
+        return Optional.ofNullable(sessionBySecret.get(secret))
+                .map(ProxyUdpSession::getPlayerId);
     }
 
     @Override
     public Optional<UUID> getSecretByPlayerId(UUID playerId) {
-        return Optional.ofNullable(secretByPlayerId.get(playerId));
+        return getSessionByPlayerId(playerId).map(ProxyUdpSession::getSecret);
     }
 
     @Override
     public Optional<UUID> getRemoteSecretByPlayerId(UUID playerId) {
-        return Optional.ofNullable(remoteSecretByPlayerId.get(playerId));
+        return getSessionByPlayerId(playerId).map(ProxyUdpSession::getRemoteSecret);
     }
 
     @Override
     public @NotNull UUID setPlayerSecret(UUID playerUUID, UUID remoteSecret) {
-        UUID oldSecret = remoteSecretByPlayerId.put(playerUUID, remoteSecret);
-        playerIdByRemoteSecret.put(remoteSecret, playerUUID);
-
-        if (oldSecret == null) {
-            UUID secret = UUID.randomUUID();
-
-            playerIdBySecret.put(secret, playerUUID);
-            secretByPlayerId.put(playerUUID, secret);
-            return secret;
-        }
-
-        getConnectionByRemoteSecret(oldSecret).ifPresent(connection -> {
-            connection.setRemoteSecret(remoteSecret);
-            connectionByRemoteSecret.remove(oldSecret);
-            connectionByRemoteSecret.put(remoteSecret, connection);
-        });
-
-        return secretByPlayerId.get(playerUUID);
+        // sessions of the player are changed under the map lock of the player id
+        return sessionByPlayerId.compute(playerUUID, (playerId, session) -> {
+            if (session != null) {
+                UUID oldRemoteSecret = session.switchServer(remoteSecret);
+                if (oldRemoteSecret != null) {
+                    sessionBySecret.put(remoteSecret, session);
+                    if (!oldRemoteSecret.equals(remoteSecret)) sessionBySecret.remove(oldRemoteSecret, session);
+
+                    return session;
+                }
+            }
+
+            ProxyUdpSession newSession;
+            do {
+                newSession = new ProxyUdpSession(playerId, UUID.randomUUID(), remoteSecret);
+            } while (sessionBySecret.putIfAbsent(newSession.getSecret(), newSession) != null);
+            sessionBySecret.put(remoteSecret, newSession);
+
+            return newSession;
+        }).getSecret();
     }
 
     @Override
@@ -91,88 +120,132 @@ public final class VoiceUdpProxyConnectionManager implements UdpProxyConnectionM
 //        server.getEventBus().call(connectEvent);
 //        if (connectEvent.isCancelled()) return;
 
-        UdpProxyConnection bySecret = connectionBySecret.put(connection.getSecret(), connection);
-        UdpProxyConnection byRemoteSecret = connectionByRemoteSecret.put(connection.getRemoteSecret(), connection);
-        UdpProxyConnection byPlayer = connectionByPlayerId.put(connection.getPlayer().getInstance().getUUID(), connection);
+        ProxyUdpSession session = sessionByPlayerId.get(connection.getPlayer().getInstance().getUUID());
+        ProxyUdpSession.State previous = session != null && session.getSecret().equals(connection.getSecret())
+                ? session.connect(connection)
+                : null;
 
-        if (bySecret != null) bySecret.disconnect();
-        if (byRemoteSecret != null) byRemoteSecret.disconnect();
-        if (byPlayer != null) byPlayer.disconnect();
+        if (previous == null) {
+            // session was closed or replaced
+            connection.disconnect();
+            return;
+        }
+
+        UdpProxyConnection previousConnection = previous.getConnection();
+        if (previousConnection != null && previousConnection != connection) previousConnection.disconnect();
 
 //        server.getEventBus().call(new UdpConnectedEvent(connection));
     }
 
     @Override
     public boolean removeConnection(UdpProxyConnection connection) {
-        UdpProxyConnection bySecret = connectionBySecret.remove(connection.getSecret());
-        UdpProxyConnection byRemoteSecret = connectionByRemoteSecret.remove(connection.getRemoteSecret());
-        UdpProxyConnection byPlayer = connectionByPlayerId.remove(connection.getPlayer().getInstance().getUUID());
-
-        if (bySecret != null) disconnect(bySecret);
-        if (byRemoteSecret != null) disconnect(byRemoteSecret);
-        if (byPlayer != null && !byPlayer.equals(bySecret)) disconnect(byPlayer);
+        ProxyUdpSession session = sessionByPlayerId.get(connection.getPlayer().getInstance().getUUID());
+        if (session == null || session.getConnection() != connection) {
+            connection.disconnect();
+            return false;
+        }
 
-        return bySecret != null || byPlayer != null;
+        return closeSession(session);
     }
 
     @Override
     public boolean removeConnection(VoiceProxyPlayer player) {
-        UdpProxyConnection connection = connectionByPlayerId.remove(player.getInstance().getUUID());
-        if (connection != null) disconnect(connection);
-
-        return connection != null;
+        ProxyUdpSession session = sessionByPlayerId.get(player.getInstance().getUUID());
+        return session != null && closeSession(session);
     }
 
+    @Override
     public Optional<UdpProxyConnection> getConnectionByRemoteSecret(UUID secret) {
-        return Optional.ofNullable(connectionByRemoteSecret.get(secret));
+        ProxyUdpSession session = sessionBySecret.get(secret);
+        if (session == null || !session.getRemoteSecret().equals(secret)) return Optional.empty();
+
+        return Optional.ofNullable(session.getConnection());
     }
 
     @Override
     public Optional<UdpProxyConnection> getConnectionBySecret(@NotNull UUID secret) {
-        return Optional.ofNullable(connectionBySecret.get(secret));
+        ProxyUdpSession session = sessionBySecret.get(secret);
+        if (session == null || !session.getSecret().equals(secret)) return Optional.empty();
+
+        return Optional.ofNullable(session.getConnection());
     }
 
     @Override
     public Optional<UdpProxyConnection> getConnectionByAnySecret(UUID anySecret) {
-        UdpProxyConnection connection = connectionBySecret.get(anySecret);
-        if (connection != null) return Optional.of(connection);
-
-        return Optional.ofNullable(connectionByRemoteSecret.get(anySecret));
+        return Optional.ofNullable(sessionBySecret.get(anySecret))
+                .map(ProxyUdpSession::getConnection);
     }
 
     @Override
     public Optional<UdpProxyConnection> getConnectionByPlayerId(@NotNull UUID playerId) {
-        return Optional.ofNullable(connectionByPlayerId.get(playerId));
+        return getSessionByPlayerId(playerId).map(ProxyUdpSession::getConnection);
     }
 
+    /**
+     * @return live view of the connections of all sessions
+     */
     @Override
     public Collection<UdpProxyConnection> getConnections() {
-        return connectionByPlayerId.values();
+        return connections;
     }
 
     @Override
     public void clearConnections() {
-        getConnections().forEach(this::removeConnection);
+        sessionByPlayerId.values().forEach(this::closeSession);
     }
 
-    private void disconnect(UdpProxyConnection connection) {
-        connection.disconnect();
+    /**
+     * Closes the session, removes it from the indexes and disconnects its connection
+     *
+     * @return true if the session was closed by this call
+     */
+    private boolean closeSession(@NotNull ProxyUdpSession session) {
+        ProxyUdpSession.State state = session.close();
+        if (state == null) return false;
+
+        sessionByPlayerId.remove(session.getPlayerId(), session);
+        sessionBySecret.remove(session.getSecret(), session);
+        sessionBySecret.remove(state.getRemoteSecret(), session);
+
+        UdpProxyConnection connection = state.getConnection();
+        if (connection != null) {
+            connection.disconnect();
+            LOGGER.info("{} disconnected", connection.getPlayer());
+        }
+//        server.getEventBus().call(new UdpDisconnectEvent(connection));
 
-        secretByPlayerId.remove(connection.getPlayer().getInstance().getUUID());
-        remoteSecretByPlayerId.remove(connection.getPlayer().getInstance().getUUID());
-        playerIdBySecret.remove(connection.getRemoteSecret());
-        playerIdByRemoteSecret.remove(connection.getSecret());
+        return true;
+    }
 
-        LOGGER.info("{} disconnected", connection.getPlayer());
-//        server.getEventBus().call(new UdpDisconnectEvent(connection));
+    @Override
+    public void sendPacket(@NotNull Packet<?> packet, @NotNull Collection<? extends UdpConnection> connections) {
+        if (connections.isEmpty()) return;
+
+        Optional<NettyEncodedPacketUdp> encoded = NettyEncodedPacketUdp.encode(packet, ByteBufAllocator.DEFAULT);
+        if (!encoded.isPresent()) return;
+
+        try {
+            for (UdpConnection connection : connections) {
+                if (connection instanceof NettyUdpProxyConnection) {
+                    ((NettyUdpProxyConnection) connection).sendPacket(encoded.get());
+                } else {
+                    connection.sendPacket(packet);
+                }
+            }
+        } finally {
+            encoded.get().release();
+        }
     }
 
     @Override
     public void broadcast(@NotNull Packet<ClientPacketUdpHandler> packet, @Nullable Predicate<VoiceProxyPlayer> filter) {
+        List<UdpProxyConnection> connections = new ArrayList<>();
         for (UdpProxyConnection connection : getConnections()) {
             if (filter == null || filter.test(connection.getPlayer()))
-                connection.sendPacket(packet);
+                connections.add(connection);
         }
+
+        sendPacket(packet, connections);
     }
 
     @Override
@@ -182,6 +255,6 @@ public final class VoiceUdpProxyConnectionManager implements UdpProxyConnectionM
 
     @EventSubscribe
     public void onPlayerQuit(@NotNull PlayerQuitEvent event) {
-        getConnectionByPlayerId(event.getPlayerId()).ifPresent(this::removeConnection);
+        getSessionByPlayerId(event.getPlayerId()).ifPresent(this::closeSession);
     }
 }
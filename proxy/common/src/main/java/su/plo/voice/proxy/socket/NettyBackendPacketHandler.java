@@ -0,0 +1,50 @@
+package su.plo.voice.proxy.socket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.DatagramPacket;
+import lombok.RequiredArgsConstructor;
+import su.plo.voice.proto.packets.udp.PacketUdpCodec;
+
+import java.net.InetSocketAddress;
+import java.util.UUID;
+
+/**
+ * Relays packets from the socket connected to the backend server back to the player
+ * <br/>
+ * Socket belongs to the one connection, so only the remote secret is checked
+ */
+@RequiredArgsConstructor
+final class NettyBackendPacketHandler extends SimpleChannelInboundHandler<DatagramPacket> {
+
+    private final NettyUdpRelayShard shard;
+    private final NettyUdpProxyConnection connection;
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket datagram) throws Exception {
+        ByteBuf content = datagram.content();
+
+        UUID remoteSecret = connection.getRemoteSecret();
+        Channel channel = connection.getChannel();
+        InetSocketAddress remoteAddress = connection.getRemoteAddress();
+
+        if (!connection.isConnected() ||
+                channel == null ||
+                remoteAddress == null ||
+                PacketUdpCodec.getType(content) < 0 ||
+                PacketUdpCodec.getSecretMostSignificantBits(content) != remoteSecret.getMostSignificantBits() ||
+                PacketUdpCodec.getSecretLeastSignificantBits(content) != remoteSecret.getLeastSignificantBits()
+        ) {
+            shard.onDroppedPacket();
+            return;
+        }
+
+        shard.onBackendPacket();
+        channel.writeAndFlush(new DatagramPacket(
+                PacketUdpCodec.replaceSecret(content, connection.getSecret()).retain(),
+                remoteAddress
+        ));
+    }
+}
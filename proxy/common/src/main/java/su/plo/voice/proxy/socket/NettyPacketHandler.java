@@ -1,115 +1,184 @@
 package su.plo.voice.proxy.socket;
 
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.socket.DatagramPacket;
-import io.netty.channel.socket.nio.NioDatagramChannel;
 import lombok.AllArgsConstructor;
 import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import su.plo.lib.api.proxy.connection.MinecraftProxyServerConnection;
 import su.plo.voice.api.proxy.PlasmoVoiceProxy;
 import su.plo.voice.api.proxy.player.VoiceProxyPlayer;
 import su.plo.voice.api.proxy.server.RemoteServer;
 import su.plo.voice.api.proxy.socket.UdpProxyConnection;
+import su.plo.voice.api.server.event.audio.source.PlayerSpeakEvent;
 import su.plo.voice.proto.packets.udp.PacketUdp;
 import su.plo.voice.proto.packets.udp.PacketUdpCodec;
 import su.plo.voice.proxy.connection.CancelForwardingException;
-import su.plo.voice.socket.NettyPacketUdp;
+import su.plo.voice.proxy.connection.ProxyUdpSession;
+import su.plo.voice.proxy.connection.VoiceUdpProxyConnectionManager;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.UUID;
 
+/**
+ * UDP relay between the players and the backend servers
+ * <br/>
+ * Only the packet header is parsed, the secret is rewritten in place and the datagram is forwarded as is.
+ * Packets from the players are decoded only if addons listen to {@link PlayerSpeakEvent}
+ * or activations are routed by the proxy
+ * <br/>
+ * If the shard uses connected backend sockets, packets are forwarded to the backend server
+ * by the connection's socket and the channel receives only the packets from the players.
+ * Otherwise, packets from the backend servers are received by the same channel and looked up by the remote secret
+ */
 @AllArgsConstructor
-public final class NettyPacketHandler extends SimpleChannelInboundHandler<NettyPacketUdp> {
+public final class NettyPacketHandler extends SimpleChannelInboundHandler<DatagramPacket> {
+
+    private static final Logger LOGGER = LogManager.getLogger();
 
     private final PlasmoVoiceProxy voiceProxy;
+    private final VoiceUdpProxyConnectionManager udpConnections;
+    private final NettyUdpRelayShard shard;
 
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, NettyPacketUdp nettyPacket) throws Exception {
-        PacketUdp packet = nettyPacket.getPacketUdp();
+    protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket datagram) throws Exception {
+        if (!handleDatagram(ctx, datagram)) shard.onDroppedPacket();
+    }
 
-        UUID secret = packet.getSecret();
+    private boolean handleDatagram(ChannelHandlerContext ctx, DatagramPacket datagram) {
+        ByteBuf content = datagram.content();
+        if (PacketUdpCodec.getType(content) < 0) return false;
 
-//        System.out.println(secret + " " + nettyPacket.getDatagramPacket().sender());
+        if (System.currentTimeMillis() - PacketUdpCodec.getTimestamp(content) > PacketUdp.TTL) return false;
 
-        if (voiceProxy.getUdpConnectionManager().getConnectionByAnySecret(secret)
-                .map(connection -> sendPacket(ctx, nettyPacket, connection))
-                .orElse(false)
-        ) return;
+        long secretMostSignificantBits = PacketUdpCodec.getSecretMostSignificantBits(content);
+        long secretLeastSignificantBits = PacketUdpCodec.getSecretLeastSignificantBits(content);
 
-        System.out.println("Initialize connection " + secret);
+        ProxyUdpSession session = udpConnections.getSession(secretMostSignificantBits, secretLeastSignificantBits);
+        if (session == null) return false;
 
-        Optional<UUID> playerId = voiceProxy.getUdpConnectionManager().getPlayerIdBySecret(secret);
-        if (!playerId.isPresent()) return;
+        // backend servers reply to the connected sockets, so the channel accepts only the player secrets
+        boolean playerSecret = session.isSecret(secretMostSignificantBits, secretLeastSignificantBits);
+        if (!playerSecret && shard.isConnectedBackends()) return false;
+
+        UdpProxyConnection existingConnection = session.getConnection();
+        if (existingConnection != null && existingConnection.getRemoteServer() != null) {
+            return sendPacket(ctx, datagram, existingConnection);
+        }
 
-        Optional<UUID> remoteSecret = voiceProxy.getUdpConnectionManager().getRemoteSecretByPlayerId(playerId.get());
-        if (!remoteSecret.isPresent()) return;
+        if (!playerSecret) return false;
 
-        Optional<VoiceProxyPlayer> player = voiceProxy.getPlayerManager().getPlayerById(playerId.get());
-        if (!player.isPresent()) return;
+        LOGGER.debug("Initialize connection {}", session);
+
+        Optional<VoiceProxyPlayer> player = voiceProxy.getPlayerManager().getPlayerById(session.getPlayerId());
+        if (!player.isPresent()) return false;
 
         Optional<MinecraftProxyServerConnection> playerServer = player.get().getInstance().getServer();
-        if (!playerServer.isPresent()) return;
+        if (!playerServer.isPresent()) return false;
 
         Optional<RemoteServer> remoteServer = voiceProxy.getRemoteServerManager()
                 .getServer(playerServer.get().getServerInfo().getName());
-        if (!remoteServer.isPresent()) return;
+        if (!remoteServer.isPresent()) return false;
 
         NettyUdpProxyConnection connection = new NettyUdpProxyConnection(
                 voiceProxy,
-                (NioDatagramChannel) ctx.channel(),
+                ctx.channel(),
                 player.get(),
-                secret
+                session.getSecret()
         );
-        connection.setRemoteSecret(remoteSecret.get());
+        connection.setRemoteSecret(session.getRemoteSecret());
         connection.setRemoteServer(remoteServer.get());
-        voiceProxy.getUdpConnectionManager().addConnection(connection);
+        udpConnections.addConnection(connection);
+        if (!connection.isConnected()) return false;
 
-        sendPacket(ctx, nettyPacket, connection);
+        return sendPacket(ctx, datagram, connection);
     }
 
-    private boolean sendPacket(ChannelHandlerContext ctx, NettyPacketUdp nettyPacket, UdpProxyConnection connection) {
-        if (connection.getRemoteServer() == null) return false;
-
-        InetSocketAddress sender = nettyPacket.getDatagramPacket().sender();
-        InetSocketAddress receiver;
-        UUID receiverSecret;
-
-        if (!connection.getRemoteServer().getAddress().equals(sender)) {
-            receiver = connection.getRemoteServer().getAddress();
-            receiverSecret = connection.getRemoteSecret();
+    private boolean sendPacket(ChannelHandlerContext ctx, DatagramPacket datagram, UdpProxyConnection connection) {
+        InetSocketAddress sender = datagram.sender();
+        InetSocketAddress backendAddress = connection.getRemoteServer().getAddress();
+
+        if (!shard.isConnectedBackends() && backendAddress.equals(sender)) {
+            // rewrite to player
+            shard.onBackendPacket();
+            ctx.channel().writeAndFlush(new DatagramPacket(
+                    PacketUdpCodec.replaceSecret(datagram.content(), connection.getSecret()).retain(),
+                    connection.getRemoteAddress()
+            ));
+            return true;
+        }
 
-            if (!Objects.equals(connection.getRemoteAddress(), sender)) {
-                connection.setRemoteAddress(nettyPacket.getDatagramPacket().sender());
-            }
+        if (!Objects.equals(connection.getRemoteAddress(), sender)) {
+            connection.setRemoteAddress(sender);
+        }
 
-            // handle packet
+        // ping and custom packets are not handled by the proxy,
+        // so packets are decoded only if the speak event can be cancelled or the audio can be routed by the proxy
+        if (voiceProxy.getEventBus().hasListeners(PlayerSpeakEvent.class) ||
+                !voiceProxy.getSourceManager().getRoutes().isEmpty()
+        ) {
             try {
-                connection.handlePacket(nettyPacket.getPacketUdp().getPacket());
-            } catch (CancelForwardingException ignored) {
+                Optional<PacketUdp> packet = PacketUdpCodec.decode(datagram.content());
+                if (packet.isPresent()) connection.handlePacket(packet.get().getPacket());
+            } catch (CancelForwardingException e) {
+                if (e != CancelForwardingException.ROUTED) return false;
+
+                shard.onRoutedPacket();
                 return true;
             } catch (IOException e) {
-                LogManager.getLogger().warn("Failed to decode packet", e); // todo: optional bad packet logging?
+                LOGGER.warn("Failed to decode packet", e); // todo: optional bad packet logging?
             }
-        } else {
-            receiver = connection.getRemoteAddress();
-            receiverSecret = connection.getSecret();
         }
 
         // rewrite to backend server
-//        System.out.println("rewrite to " + connection.getRemoteServer().getAddress() + " " + receiverSecret);
-        ctx.channel().writeAndFlush(new DatagramPacket(
-                Unpooled.wrappedBuffer(PacketUdpCodec.replaceSecret(
-                        nettyPacket.getPacketData(),
-                        receiverSecret
-                )),
-                receiver
-        ));
+        ByteBuf content = PacketUdpCodec.replaceSecret(datagram.content(), connection.getRemoteSecret());
+        shard.onPlayerPacket();
+
+        if (shard.isConnectedBackends() && connection instanceof NettyUdpProxyConnection) {
+            sendToBackend(ctx, (NettyUdpProxyConnection) connection, backendAddress, content.retain());
+        } else {
+            ctx.channel().writeAndFlush(new DatagramPacket(content.retain(), backendAddress));
+        }
 
         return true;
     }
+
+    private void sendToBackend(ChannelHandlerContext ctx,
+                               NettyUdpProxyConnection connection,
+                               InetSocketAddress backendAddress,
+                               ByteBuf content) {
+        // player can be rebalanced to another shard if the player's address was changed,
+        // so replies are sent by the channel that received the last packet
+        if (connection.getChannel() != ctx.channel()) {
+            connection.setChannel(ctx.channel());
+        }
+
+        ChannelFuture backendChannel = connection.getBackendChannel(backendAddress);
+        if (backendChannel == null) {
+            // socket is reconnected if the player was moved to another backend server
+            backendChannel = shard.connectBackend(ctx.channel().eventLoop(), connection, backendAddress);
+            connection.setBackendChannel(backendChannel, backendAddress);
+        }
+
+        if (backendChannel.isDone()) {
+            writeToBackend(backendChannel, content);
+        } else {
+            ChannelFuture connectFuture = backendChannel;
+            connectFuture.addListener(future -> writeToBackend(connectFuture, content));
+        }
+    }
+
+    private void writeToBackend(ChannelFuture backendChannel, ByteBuf content) {
+        if (!backendChannel.isSuccess() || !backendChannel.channel().isActive()) {
+            content.release();
+            return;
+        }
+
+        backendChannel.channel().writeAndFlush(content);
+    }
 }
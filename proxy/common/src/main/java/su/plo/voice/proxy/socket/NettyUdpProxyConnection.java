@@ -1,15 +1,16 @@
 package su.plo.voice.proxy.socket;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.socket.DatagramPacket;
-import io.netty.channel.socket.nio.NioDatagramChannel;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import org.apache.logging.log4j.LogManager;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import su.plo.voice.api.proxy.PlasmoVoiceProxy;
+import su.plo.voice.api.proxy.audio.source.ProxyAudioRoute;
 import su.plo.voice.api.proxy.player.VoiceProxyPlayer;
 import su.plo.voice.api.proxy.server.RemoteServer;
 import su.plo.voice.api.proxy.socket.UdpProxyConnection;
@@ -21,15 +22,18 @@ import su.plo.voice.proto.packets.udp.bothbound.PingPacket;
 import su.plo.voice.proto.packets.udp.serverbound.PlayerAudioPacket;
 import su.plo.voice.proto.packets.udp.serverbound.ServerPacketUdpHandler;
 import su.plo.voice.proxy.connection.CancelForwardingException;
+import su.plo.voice.socket.NettyEncodedPacketUdp;
 
 import java.net.InetSocketAddress;
+import java.util.Optional;
 import java.util.UUID;
 
-@RequiredArgsConstructor
 public final class NettyUdpProxyConnection implements UdpProxyConnection, ServerPacketUdpHandler {
 
     private final PlasmoVoiceProxy voiceProxy;
-    private final NioDatagramChannel channel;
+    // player-facing channel of the relay shard the player's packets were received on
+    @Getter @Setter
+    private volatile Channel channel;
 
     @Getter
     private final VoiceProxyPlayer player;
@@ -37,20 +41,36 @@ public final class NettyUdpProxyConnection implements UdpProxyConnection, Server
     private final UUID secret;
 
     @Getter @Setter
-    private UUID remoteSecret;
+    private volatile UUID remoteSecret;
+    @Getter @Setter
+    private volatile InetSocketAddress remoteAddress;
     @Getter @Setter
-    private InetSocketAddress remoteAddress;
+    private volatile RemoteServer remoteServer;
+    // audio encryption algorithm negotiated with the player by the current backend server,
+    // null until the config is received from the backend server
     @Getter @Setter
-    private RemoteServer remoteServer;
+    private volatile @Nullable String encryption;
     @Getter
-    private boolean connected = true;
+    private volatile boolean connected = true;
+
+    private volatile @Nullable ChannelFuture backendChannel;
+    private volatile @Nullable InetSocketAddress backendAddress;
+
+    public NettyUdpProxyConnection(@NotNull PlasmoVoiceProxy voiceProxy,
+                                   Channel channel,
+                                   @NotNull VoiceProxyPlayer player,
+                                   @NotNull UUID secret) {
+        this.voiceProxy = voiceProxy;
+        this.channel = channel;
+        this.player = player;
+        this.secret = secret;
+    }
 
     @Override
     public void sendPacket(Packet<?> packet) {
-        byte[] encoded = PacketUdpCodec.encode(packet, secret);
-        if (encoded == null) return;
-
-        ByteBuf buf = Unpooled.wrappedBuffer(encoded);
+        Channel channel = this.channel;
+        ByteBuf buf = PacketUdpCodec.encode(packet, secret, channel.alloc());
+        if (buf == null) return;
 
         LogManager.getLogger().debug("UDP packet {} sent to {}", packet, remoteAddress);
 
@@ -60,6 +80,16 @@ public final class NettyUdpProxyConnection implements UdpProxyConnection, Server
 //        voiceServer.getEventBus().call(event);
     }
 
+    /**
+     * Sends the packet encoded for multiple connections
+     */
+    public void sendPacket(@NotNull NettyEncodedPacketUdp encoded) {
+        LogManager.getLogger().debug("UDP packet {} sent to {}", encoded.getPacket(), remoteAddress);
+
+        Channel channel = this.channel;
+        channel.writeAndFlush(encoded.toDatagram(channel, secret, remoteAddress));
+    }
+
     @Override
     public void handlePacket(Packet<ServerPacketUdpHandler> packet) {
 //        UdpPacketReceivedEvent event = new UdpPacketReceivedEvent(this, packet);
@@ -71,6 +101,41 @@ public final class NettyUdpProxyConnection implements UdpProxyConnection, Server
     @Override
     public void disconnect() {
         this.connected = false;
+        closeBackendChannel();
+    }
+
+    /**
+     * Gets the socket connected to the backend server
+     *
+     * @return the connect future of the socket or null if socket is not connected to the address
+     */
+    public @Nullable ChannelFuture getBackendChannel(@NotNull InetSocketAddress address) {
+        ChannelFuture backendChannel = this.backendChannel;
+        if (backendChannel == null || !address.equals(backendAddress)) return null;
+
+        return backendChannel;
+    }
+
+    /**
+     * Sets the socket connected to the backend server, previous socket is closed
+     */
+    public void setBackendChannel(@NotNull ChannelFuture backendChannel, @NotNull InetSocketAddress address) {
+        closeBackendChannel();
+
+        this.backendChannel = backendChannel;
+        this.backendAddress = address;
+
+        // connection can be disconnected while the socket is connecting
+        if (!connected) closeBackendChannel();
+    }
+
+    private void closeBackendChannel() {
+        ChannelFuture backendChannel = this.backendChannel;
+        if (backendChannel == null) return;
+
+        this.backendChannel = null;
+        this.backendAddress = null;
+        backendChannel.channel().close();
     }
 
     @Override
@@ -84,7 +149,13 @@ public final class NettyUdpProxyConnection implements UdpProxyConnection, Server
     @Override
     public void handle(@NotNull PlayerAudioPacket packet) {
         if (!voiceProxy.getEventBus().call(new PlayerSpeakEvent(player, packet))) {
-            throw new CancelForwardingException();
+            throw CancelForwardingException.INSTANCE;
+        }
+
+        // routed audio is sent to the listeners by the proxy, so it's not forwarded to the backend server
+        Optional<ProxyAudioRoute> route = voiceProxy.getSourceManager().getRouteByActivationId(packet.getActivationId());
+        if (route.isPresent() && route.get().sendAudioPacket(player, packet)) {
+            throw CancelForwardingException.ROUTED;
         }
     }
 }
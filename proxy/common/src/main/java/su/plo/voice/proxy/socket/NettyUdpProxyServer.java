@@ -1,20 +1,26 @@
 package su.plo.voice.proxy.socket;
 
+import com.google.common.collect.ImmutableList;
 import io.netty.bootstrap.Bootstrap;
-import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioDatagramChannel;
-import io.netty.util.concurrent.DefaultEventExecutorGroup;
-import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.util.concurrent.GlobalEventExecutor;
 import lombok.RequiredArgsConstructor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 import su.plo.voice.api.proxy.socket.UdpProxyServer;
 import su.plo.voice.proxy.BaseVoiceProxy;
-import su.plo.voice.socket.NettyPacketUdpDecoder;
+import su.plo.voice.proxy.config.VoiceProxyConfig;
+import su.plo.voice.socket.NettyUdpTransport;
 
 import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.Optional;
 
 @RequiredArgsConstructor
@@ -24,59 +30,90 @@ public final class NettyUdpProxyServer implements UdpProxyServer {
 
     private final BaseVoiceProxy voiceProxy;
 
-    private final EventLoopGroup loopGroup = new NioEventLoopGroup();
-//    private final ChannelGroup channelGroup = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
-    private final EventExecutorGroup executors = new DefaultEventExecutorGroup(Runtime.getRuntime().availableProcessors());
+    private final ChannelGroup channelGroup = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+
+    private NettyUdpTransport transport;
+    private List<NettyUdpRelayShard> shards = ImmutableList.of();
 
-    private NioDatagramChannel channel;
     private InetSocketAddress socketAddress;
 
     @Override
     public void start(String ip, int port) {
+        VoiceProxyConfig.VoiceHost host = voiceProxy.getConfig().host();
+        this.transport = NettyUdpTransport.create(host.nativeTransport(), host.udpThreads());
 
-        Bootstrap bootstrap = new Bootstrap();
-        bootstrap.group(loopGroup)
-                .channel(NioDatagramChannel.class)
-                .option(ChannelOption.AUTO_CLOSE, true)
-                .option(ChannelOption.SO_BROADCAST, true);
-
-        bootstrap.handler(new ChannelInitializer<NioDatagramChannel>() {
-            @Override
-            protected void initChannel(@NotNull NioDatagramChannel ch) throws Exception {
-                ChannelPipeline pipeline = ch.pipeline();
+        // backend traffic is relayed by the player-facing channels unless connected sockets are enabled
+        Bootstrap backendBootstrap = host.connectedBackends() ? transport.connectedBootstrap() : null;
 
-                pipeline.addLast("decoder", new NettyPacketUdpDecoder());
-                pipeline.addLast(executors, "handler", new NettyPacketHandler(voiceProxy));
-            }
-        });
+        ImmutableList.Builder<NettyUdpRelayShard> shards = ImmutableList.builder();
 
         logger.info("UDP proxy server is starting on {}:{}", ip, port);
         try {
-            ChannelFuture channelFuture = bootstrap.bind(port).sync();
-            this.channel = (NioDatagramChannel) channelFuture.channel();
-            this.socketAddress = channel.localAddress();
+            for (int index = 0; index < transport.getChannelCount(); index++) {
+                NettyUdpRelayShard shard = new NettyUdpRelayShard(index, backendBootstrap);
+
+                Bootstrap bootstrap = transport.bootstrap()
+                        .option(ChannelOption.AUTO_CLOSE, true)
+                        .handler(new ChannelInitializer<DatagramChannel>() {
+                            @Override
+                            protected void initChannel(@NotNull DatagramChannel ch) throws Exception {
+                                ChannelPipeline pipeline = ch.pipeline();
+
+                                // datagrams are relayed without the decoder, handler parses only the header.
+                                // player sessions are pinned to the shard event loop, so packets are handled right on it
+                                pipeline.addLast("handler", new NettyPacketHandler(
+                                        voiceProxy,
+                                        voiceProxy.getUdpConnectionManager(),
+                                        shard
+                                ));
+                            }
+                        });
+
+                // other channels are bound to the same port using SO_REUSEPORT
+                Channel channel = bootstrap.bind(index == 0 ? port : socketAddress.getPort()).sync().channel();
+                if (index == 0) this.socketAddress = (InetSocketAddress) channel.localAddress();
+
+                channelGroup.add(channel);
+                shards.add(shard);
+            }
         } catch (InterruptedException e) {
             stop();
             return;
         } catch (Exception e) {
             stop();
             throw e;
+        } finally {
+            this.shards = shards.build();
         }
-        logger.info("UDP proxy server is started on {}", socketAddress);
+        logger.info(
+                "UDP proxy server is started on {} using {} transport ({} shards{})",
+                socketAddress,
+                transport.isNativeTransport() ? "epoll" : "NIO",
+                transport.getChannelCount(),
+                backendBootstrap != null ? ", connected backends" : ""
+        );
     }
 
     @Override
     public void stop() {
 //        voiceServer.getUdpConnectionManager().clearConnections();
-//        if (keepAlive != null) keepAlive.close();
-//        channelGroup.close();
-        channel.close();
-        loopGroup.shutdownGracefully();
+        channelGroup.close();
+        if (transport != null) transport.shutdown();
+        shards.forEach(shard -> logger.info("UDP proxy {}", shard));
         logger.info("UDP proxy server is stopped");
 
 //        voiceServer.getEventBus().call(new UdpServerStoppedEvent(this));
     }
 
+    /**
+     * Gets the relay shards, one per player-facing channel
+     * <br/>
+     * Shards expose the packet counters of their event loops
+     */
+    public List<NettyUdpRelayShard> getShards() {
+        return shards;
+    }
+
     @Override
     public Optional<InetSocketAddress> getRemoteAddress() {
         return Optional.ofNullable(socketAddress);
@@ -0,0 +1,114 @@
+package su.plo.voice.proxy.socket;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.EventLoop;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Part of the UDP relay handled by one event loop
+ * <br/>
+ * Player-facing channels of all shards are bound to the same port using SO_REUSEPORT,
+ * so the kernel hashes player flows to the shards and each player session stays on one event loop.
+ * Backend-facing traffic uses the sockets connected to the backend servers,
+ * so packets from the backend servers are demultiplexed by the kernel
+ */
+public final class NettyUdpRelayShard {
+
+    @Getter
+    private final int index;
+    private final @Nullable Bootstrap backendBootstrap;
+
+    private final LongAdder playerPackets = new LongAdder();
+    private final LongAdder backendPackets = new LongAdder();
+    private final LongAdder routedPackets = new LongAdder();
+    private final LongAdder droppedPackets = new LongAdder();
+
+    /**
+     * @param backendBootstrap bootstrap used to connect the sockets to the backend servers,
+     *                         if null, backend traffic is relayed by the player-facing channel
+     */
+    public NettyUdpRelayShard(int index, @Nullable Bootstrap backendBootstrap) {
+        this.index = index;
+        this.backendBootstrap = backendBootstrap;
+    }
+
+    /**
+     * @return true if the backend traffic is relayed by the connected sockets
+     */
+    public boolean isConnectedBackends() {
+        return backendBootstrap != null;
+    }
+
+    /**
+     * Connects the socket to the backend server for the connection
+     * <br/>
+     * Socket is registered on the same event loop as the player-facing channel
+     */
+    ChannelFuture connectBackend(@NotNull EventLoop eventLoop,
+                                 @NotNull NettyUdpProxyConnection connection,
+                                 @NotNull InetSocketAddress backendAddress) {
+        if (backendBootstrap == null) throw new IllegalStateException("Shard doesn't use connected backend sockets");
+
+        return backendBootstrap.clone(eventLoop)
+                .handler(new NettyBackendPacketHandler(this, connection))
+                .connect(backendAddress);
+    }
+
+    /**
+     * @return number of packets relayed from the players to the backend servers
+     */
+    public long getPlayerPackets() {
+        return playerPackets.sum();
+    }
+
+    /**
+     * @return number of packets relayed from the backend servers to the players
+     */
+    public long getBackendPackets() {
+        return backendPackets.sum();
+    }
+
+    /**
+     * @return number of packets sent to the listeners by the proxy audio routes instead of the backend servers
+     */
+    public long getRoutedPackets() {
+        return routedPackets.sum();
+    }
+
+    /**
+     * @return number of invalid, expired, unauthenticated or cancelled packets
+     */
+    public long getDroppedPackets() {
+        return droppedPackets.sum();
+    }
+
+    void onPlayerPacket() {
+        playerPackets.increment();
+    }
+
+    void onBackendPacket() {
+        backendPackets.increment();
+    }
+
+    void onRoutedPacket() {
+        routedPackets.increment();
+    }
+
+    void onDroppedPacket() {
+        droppedPackets.increment();
+    }
+
+    @Override
+    public String toString() {
+        return "shard " + index + ": " + getPlayerPackets() + " from players, "
+                + getBackendPackets() + " from backends, "
+                + getRoutedPackets() + " routed, "
+                + getDroppedPackets() + " dropped";
+    }
+}
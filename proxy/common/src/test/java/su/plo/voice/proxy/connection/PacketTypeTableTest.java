@@ -0,0 +1,38 @@
+package su.plo.voice.proxy.connection;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import su.plo.voice.proto.data.player.VoicePlayerInfo;
+import su.plo.voice.proto.packets.tcp.PacketTcpCodec;
+import su.plo.voice.proto.packets.tcp.clientbound.LanguagePacket;
+import su.plo.voice.proto.packets.tcp.clientbound.PlayerDisconnectPacket;
+import su.plo.voice.proto.packets.tcp.clientbound.PlayerListPacket;
+
+import java.util.Collections;
+import java.util.UUID;
+
+public class PacketTypeTableTest {
+
+    @Test
+    public void testPeek() {
+        PacketTypeTable table = PacketTypeTable.of(LanguagePacket.class, PlayerDisconnectPacket.class);
+
+        byte[] language = PacketTcpCodec.encode(new LanguagePacket("en_us", Collections.emptyMap()));
+        byte[] disconnect = PacketTcpCodec.encode(new PlayerDisconnectPacket(UUID.randomUUID()));
+        byte[] playerList = PacketTcpCodec.encode(new PlayerListPacket(Collections.singletonList(
+                new VoicePlayerInfo(UUID.randomUUID(), "Player", false, false, false)
+        )));
+
+        Assertions.assertTrue(table.contains(language));
+        Assertions.assertTrue(table.contains(disconnect));
+        Assertions.assertFalse(table.contains(playerList));
+
+        Assertions.assertFalse(table.contains(new byte[0]));
+        Assertions.assertFalse(table.contains(new byte[]{(byte) 0xFF}));
+    }
+
+    @Test
+    public void testCancelForwarding() {
+        Assertions.assertEquals(0, CancelForwardingException.INSTANCE.getStackTrace().length);
+    }
+}
@@ -0,0 +1,259 @@
+package su.plo.voice.proxy.connection;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import su.plo.lib.api.proxy.player.MinecraftProxyPlayer;
+import su.plo.voice.api.proxy.PlasmoVoiceProxy;
+import su.plo.voice.api.proxy.player.VoiceProxyPlayer;
+import su.plo.voice.proxy.socket.NettyUdpProxyConnection;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class VoiceUdpProxyConnectionManagerTest {
+
+    private static final PlasmoVoiceProxy VOICE_PROXY = stub(PlasmoVoiceProxy.class);
+
+    @Test
+    public void testSecretMap() {
+        StripedSecretMap<Integer> map = new StripedSecretMap<>();
+        List<UUID> secrets = new ArrayList<>();
+        List<Integer> values = new ArrayList<>();
+
+        for (int i = 0; i < 10_000; i++) {
+            UUID secret = UUID.randomUUID();
+            secrets.add(secret);
+            values.add(i);
+            Assertions.assertNull(map.put(secret, values.get(i)));
+        }
+        Assertions.assertEquals(10_000, map.size());
+
+        for (int i = 0; i < secrets.size(); i++) {
+            UUID secret = secrets.get(i);
+            Assertions.assertEquals(i, map.get(secret.getMostSignificantBits(), secret.getLeastSignificantBits()));
+        }
+        Assertions.assertNull(map.get(UUID.randomUUID()));
+
+        Assertions.assertEquals(0, map.putIfAbsent(secrets.get(0), -1));
+        Assertions.assertEquals(0, map.put(secrets.get(0), -1));
+
+        // secret is removed only if it's mapped to the same value instance
+        Assertions.assertFalse(map.remove(secrets.get(1), -1));
+        Assertions.assertTrue(map.remove(secrets.get(0), -1));
+
+        for (int i = 1; i < secrets.size(); i++) {
+            Assertions.assertTrue(map.remove(secrets.get(i), values.get(i)));
+        }
+        Assertions.assertEquals(0, map.size());
+    }
+
+    @Test
+    public void testServerSwitch() {
+        VoiceUdpProxyConnectionManager udpConnections = new VoiceUdpProxyConnectionManager();
+        UUID playerId = UUID.randomUUID();
+        UUID remoteSecret = UUID.randomUUID();
+
+        UUID secret = udpConnections.setPlayerSecret(playerId, remoteSecret);
+        NettyUdpProxyConnection connection = connect(udpConnections, playerId, secret, remoteSecret);
+
+        UUID newRemoteSecret = UUID.randomUUID();
+        Assertions.assertEquals(secret, udpConnections.setPlayerSecret(playerId, newRemoteSecret));
+
+        Assertions.assertEquals(newRemoteSecret, connection.getRemoteSecret());
+        Assertions.assertFalse(udpConnections.getPlayerIdByRemoteSecret(remoteSecret).isPresent());
+        Assertions.assertEquals(playerId, udpConnections.getPlayerIdByRemoteSecret(newRemoteSecret).get());
+        Assertions.assertSame(connection, udpConnections.getConnectionByAnySecret(secret).get());
+        Assertions.assertSame(connection, udpConnections.getConnectionByAnySecret(newRemoteSecret).get());
+
+        // both secrets are removed on disconnect
+        Assertions.assertTrue(udpConnections.removeConnection(connection));
+        Assertions.assertFalse(connection.isConnected());
+        Assertions.assertFalse(udpConnections.getPlayerIdBySecret(secret).isPresent());
+        Assertions.assertFalse(udpConnections.getPlayerIdByRemoteSecret(newRemoteSecret).isPresent());
+        Assertions.assertFalse(udpConnections.getSecretByPlayerId(playerId).isPresent());
+        Assertions.assertTrue(udpConnections.getConnections().isEmpty());
+
+        // connection of the closed session is disconnected
+        NettyUdpProxyConnection stale = connect(udpConnections, playerId, secret, newRemoteSecret);
+        Assertions.assertFalse(stale.isConnected());
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void stressServerSwitch(TestReporter reporter) throws Exception {
+        int players = 256;
+        int owners = 4;
+        int readers = 4;
+        long durationMs = 1_000L;
+
+        VoiceUdpProxyConnectionManager udpConnections = new VoiceUdpProxyConnectionManager();
+        UUID[] playerIds = new UUID[players];
+        Map<UUID, UUID> playerIdByRemoteSecret = new ConcurrentHashMap<>();
+
+        for (int i = 0; i < players; i++) {
+            playerIds[i] = UUID.randomUUID();
+            UUID remoteSecret = UUID.randomUUID();
+            playerIdByRemoteSecret.put(remoteSecret, playerIds[i]);
+
+            UUID secret = udpConnections.setPlayerSecret(playerIds[i], remoteSecret);
+            connect(udpConnections, playerIds[i], secret, remoteSecret);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicLong lookups = new AtomicLong();
+        AtomicLong switches = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(owners + readers);
+        List<Thread> threads = new ArrayList<>();
+
+        // each player is switched and reconnected only by its owner thread,
+        // so the owner can check the state right after the transition
+        for (int owner = 0; owner < owners; owner++) {
+            int firstPlayer = owner;
+            threads.add(new Thread(() -> run(done, failure, () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    int index = firstPlayer + owners * random.nextInt(players / owners);
+                    UUID playerId = playerIds[index];
+
+                    if (random.nextInt(16) == 0) {
+                        // player left the voice server and joined again
+                        UUID oldSecret = udpConnections.getSecretByPlayerId(playerId).get();
+                        udpConnections.removeConnection(udpConnections.getConnectionByPlayerId(playerId).get());
+                        Assertions.assertNull(session(udpConnections, oldSecret));
+
+                        UUID remoteSecret = UUID.randomUUID();
+                        playerIdByRemoteSecret.put(remoteSecret, playerId);
+                        UUID secret = udpConnections.setPlayerSecret(playerId, remoteSecret);
+                        connect(udpConnections, playerId, secret, remoteSecret);
+                        continue;
+                    }
+
+                    UUID oldRemoteSecret = udpConnections.getRemoteSecretByPlayerId(playerId).get();
+                    UUID remoteSecret = UUID.randomUUID();
+                    playerIdByRemoteSecret.put(remoteSecret, playerId);
+
+                    UUID secret = udpConnections.setPlayerSecret(playerId, remoteSecret);
+                    switches.incrementAndGet();
+
+                    ProxyUdpSession session = session(udpConnections, secret);
+                    Assertions.assertNotNull(session);
+                    Assertions.assertSame(session, session(udpConnections, remoteSecret));
+                    Assertions.assertNull(session(udpConnections, oldRemoteSecret));
+                    Assertions.assertEquals(remoteSecret, session.getConnection().getRemoteSecret());
+                }
+            }), "owner-" + owner));
+        }
+
+        // relay threads look up the sessions by both secrets while the owners switch them
+        for (int reader = 0; reader < readers; reader++) {
+            threads.add(new Thread(() -> run(done, failure, () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    UUID playerId = playerIds[random.nextInt(players)];
+                    ProxyUdpSession current = udpConnections.getSessionByPlayerId(playerId).orElse(null);
+                    if (current == null) continue;
+
+                    ProxyUdpSession bySecret = session(udpConnections, current.getSecret());
+                    if (bySecret != null) Assertions.assertEquals(playerId, bySecret.getPlayerId());
+
+                    UUID remoteSecret = current.getRemoteSecret();
+                    ProxyUdpSession byRemoteSecret = session(udpConnections, remoteSecret);
+                    if (byRemoteSecret != null) {
+                        Assertions.assertEquals(playerIdByRemoteSecret.get(remoteSecret), byRemoteSecret.getPlayerId());
+                    }
+
+                    lookups.addAndGet(2);
+                }
+            }), "reader-" + reader));
+        }
+
+        threads.forEach(Thread::start);
+        Thread.sleep(durationMs);
+        running.set(false);
+        Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        if (failure.get() != null) Assertions.fail(failure.get());
+
+        // indexes are consistent after the load
+        Assertions.assertEquals(players, udpConnections.getConnections().size());
+        for (UUID playerId : playerIds) {
+            ProxyUdpSession session = udpConnections.getSessionByPlayerId(playerId).get();
+            Assertions.assertSame(session, session(udpConnections, session.getSecret()));
+            Assertions.assertSame(session, session(udpConnections, session.getRemoteSecret()));
+            Assertions.assertEquals(session.getRemoteSecret(), session.getConnection().getRemoteSecret());
+            Assertions.assertTrue(session.getConnection().isConnected());
+        }
+
+        reporter.publishEntry("server switch", String.format(
+                "%d server switches and %d lookups in %d ms",
+                switches.get(),
+                lookups.get(),
+                durationMs
+        ));
+    }
+
+    private static void run(CountDownLatch done, AtomicReference<Throwable> failure, Runnable runnable) {
+        try {
+            runnable.run();
+        } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            done.countDown();
+        }
+    }
+
+    private static ProxyUdpSession session(VoiceUdpProxyConnectionManager udpConnections, UUID secret) {
+        return udpConnections.getSession(secret.getMostSignificantBits(), secret.getLeastSignificantBits());
+    }
+
+    private static NettyUdpProxyConnection connect(VoiceUdpProxyConnectionManager udpConnections,
+                                                   UUID playerId,
+                                                   UUID secret,
+                                                   UUID remoteSecret) {
+        MinecraftProxyPlayer instance = stub(MinecraftProxyPlayer.class, (method, args) ->
+                method.equals("getUUID") ? playerId : null
+        );
+
+        NettyUdpProxyConnection connection = new NettyUdpProxyConnection(
+                VOICE_PROXY,
+                null,
+                new VoiceProxyPlayer(VOICE_PROXY, instance),
+                secret
+        );
+        connection.setRemoteSecret(remoteSecret);
+        udpConnections.addConnection(connection);
+
+        return connection;
+    }
+
+    private static <T> T stub(Class<T> clazz) {
+        return stub(clazz, (method, args) -> null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> clazz, StubHandler handler) {
+        return (T) Proxy.newProxyInstance(
+                clazz.getClassLoader(),
+                new Class[]{clazz},
+                (proxy, method, args) -> handler.invoke(method.getName(), args)
+        );
+    }
+
+    private interface StubHandler {
+
+        Object invoke(String method, Object[] args);
+    }
+}
@@ -0,0 +1,471 @@
+package su.plo.voice.proxy.socket;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import su.plo.lib.api.proxy.player.MinecraftProxyPlayer;
+import su.plo.voice.api.addon.AddonContainer;
+import su.plo.voice.api.addon.AddonManager;
+import su.plo.voice.api.encryption.Encryption;
+import su.plo.voice.api.event.EventBus;
+import su.plo.voice.api.proxy.PlasmoVoiceProxy;
+import su.plo.voice.api.proxy.config.ProxyConfig;
+import su.plo.voice.api.proxy.player.VoiceProxyPlayer;
+import su.plo.voice.api.proxy.server.RemoteServer;
+import su.plo.voice.api.server.audio.capture.ServerActivation;
+import su.plo.voice.api.server.audio.line.ServerSourceLine;
+import su.plo.voice.api.server.event.audio.source.PlayerSpeakEvent;
+import su.plo.voice.encryption.VoiceEncryptionManager;
+import su.plo.voice.encryption.aes.AesEncryption;
+import su.plo.voice.encryption.aes.AesEncryptionSupplier;
+import su.plo.voice.encryption.aes.AesGcmEncryption;
+import su.plo.voice.encryption.aes.AesGcmEncryptionSupplier;
+import su.plo.voice.proto.packets.Packet;
+import su.plo.voice.proto.packets.udp.PacketUdpCodec;
+import su.plo.voice.proto.packets.udp.clientbound.SourceAudioPacket;
+import su.plo.voice.proto.packets.udp.serverbound.PlayerAudioPacket;
+import su.plo.voice.proxy.audio.source.VoiceProxySourceManager;
+import su.plo.voice.proxy.connection.VoiceUdpProxyConnectionManager;
+
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class NettyPacketHandlerTest {
+
+    private static final String LOCALHOST = "127.0.0.1";
+    private static final InetSocketAddress PROXY_ADDRESS = new InetSocketAddress("127.0.0.1", 60606);
+    private static final InetSocketAddress PLAYER_ADDRESS = new InetSocketAddress("127.0.0.2", 50000);
+    private static final InetSocketAddress BACKEND_ADDRESS = new InetSocketAddress("127.0.0.3", 60607);
+    private static final InetSocketAddress LISTENER_ADDRESS = new InetSocketAddress("127.0.0.4", 50001);
+    private static final InetSocketAddress GCM_LISTENER_ADDRESS = new InetSocketAddress("127.0.0.5", 50002);
+
+    @Test
+    public void testRelay() {
+        Relay relay = new Relay();
+
+        // player -> backend
+        ByteBuf encoded = relay.encode(relay.secret);
+        Assertions.assertFalse(relay.channel.writeInbound(new DatagramPacket(encoded, PROXY_ADDRESS, PLAYER_ADDRESS)));
+
+        DatagramPacket forwarded = relay.channel.readOutbound();
+        try {
+            Assertions.assertEquals(BACKEND_ADDRESS, forwarded.recipient());
+            Assertions.assertSame(encoded, forwarded.content());
+            Assertions.assertEquals(relay.remoteSecret, secret(forwarded.content()));
+        } finally {
+            forwarded.release();
+        }
+        Assertions.assertEquals(0, relay.speakEvents.get());
+
+        // backend -> player
+        encoded = relay.encode(relay.remoteSecret);
+        relay.channel.writeInbound(new DatagramPacket(encoded, PROXY_ADDRESS, BACKEND_ADDRESS));
+
+        forwarded = relay.channel.readOutbound();
+        try {
+            Assertions.assertEquals(PLAYER_ADDRESS, forwarded.recipient());
+            Assertions.assertEquals(relay.secret, secret(forwarded.content()));
+        } finally {
+            forwarded.release();
+        }
+
+        // packet is decoded only if the speak event has listeners
+        relay.speakListeners.set(true);
+        relay.channel.writeInbound(new DatagramPacket(relay.encode(relay.secret), PROXY_ADDRESS, PLAYER_ADDRESS));
+        ((DatagramPacket) relay.channel.readOutbound()).release();
+        Assertions.assertEquals(1, relay.speakEvents.get());
+
+        Assertions.assertEquals(2, relay.shard.getPlayerPackets());
+        Assertions.assertEquals(1, relay.shard.getBackendPackets());
+
+        // unknown secret
+        relay.channel.writeInbound(new DatagramPacket(relay.encode(UUID.randomUUID()), PROXY_ADDRESS, PLAYER_ADDRESS));
+        Assertions.assertNull(relay.channel.readOutbound());
+        Assertions.assertEquals(1, relay.shard.getDroppedPackets());
+
+        // relayed datagrams are released in both paths, so the buffer isn't leaked by relaying it many times
+        ByteBuf reused = relay.encode(relay.secret);
+        for (boolean listeners : new boolean[]{false, true}) {
+            relay.speakListeners.set(listeners);
+            for (int i = 0; i < 10; i++) {
+                PacketUdpCodec.replaceSecret(reused, relay.secret);
+                relay.channel.writeInbound(new DatagramPacket(reused.retain(), PROXY_ADDRESS, PLAYER_ADDRESS));
+            }
+            drainOutbound(relay.channel);
+        }
+        reused.release();
+        Assertions.assertEquals(0, reused.refCnt());
+
+        Assertions.assertFalse(relay.channel.finish());
+    }
+
+    @Test
+    public void testRoute() throws Exception {
+        Relay relay = new Relay();
+        NettyUdpProxyConnection listener = relay.connect(UUID.randomUUID(), UUID.randomUUID(), LISTENER_ADDRESS);
+        // backend servers negotiate the algorithm with each player, so the listener can use the other one than the speaker
+        NettyUdpProxyConnection gcmListener = relay.connect(UUID.randomUUID(), UUID.randomUUID(), GCM_LISTENER_ADDRESS);
+        gcmListener.setEncryption(AesGcmEncryption.CIPHER);
+
+        UUID activationId = UUID.randomUUID();
+        UUID lineId = UUID.randomUUID();
+        ServerActivation activation = stub(ServerActivation.class, (method, args) -> {
+            switch (method) {
+                case "getId":
+                    return activationId;
+                case "checkPermissions":
+                case "isStereoSupported":
+                    return true;
+                default:
+                    return null;
+            }
+        });
+        ServerSourceLine line = stub(ServerSourceLine.class, (method, args) ->
+                method.equals("getId") ? lineId : null
+        );
+        relay.sourceManager.createRoute(relay, activation, line);
+
+        byte[] audio = new byte[128];
+        new Random().nextBytes(audio);
+        byte[] data = relay.encryption(AesEncryption.CIPHER).encrypt(audio);
+
+        // routed audio is sent by the proxy to the other players and is not forwarded to the backend server
+        relay.channel.writeInbound(new DatagramPacket(relay.encode(relay.secret, activationId, data), PROXY_ADDRESS, PLAYER_ADDRESS));
+
+        // listener using the same algorithm receives the audio as is
+        DatagramPacket routed = relay.channel.readOutbound();
+        try {
+            Assertions.assertEquals(LISTENER_ADDRESS, routed.recipient());
+            Assertions.assertEquals(listener.getSecret(), secret(routed.content()));
+
+            SourceAudioPacket packet = (SourceAudioPacket) (Packet<?>) PacketUdpCodec.decode(routed.content()).get().getPacket();
+            Assertions.assertTrue(relay.sourceManager.getSourceById(packet.getSourceId()).isPresent());
+            Assertions.assertArrayEquals(data, packet.getData());
+        } finally {
+            routed.release();
+        }
+
+        // listener using the other algorithm receives the audio encrypted again
+        DatagramPacket transcoded = relay.channel.readOutbound();
+        try {
+            Assertions.assertEquals(GCM_LISTENER_ADDRESS, transcoded.recipient());
+            Assertions.assertEquals(gcmListener.getSecret(), secret(transcoded.content()));
+
+            SourceAudioPacket packet = (SourceAudioPacket) (Packet<?>) PacketUdpCodec.decode(transcoded.content()).get().getPacket();
+            Assertions.assertArrayEquals(audio, relay.encryption(AesGcmEncryption.CIPHER).decrypt(packet.getData()));
+        } finally {
+            transcoded.release();
+        }
+        Assertions.assertNull(relay.channel.readOutbound());
+
+        // routed packets are counted separately from dropped ones
+        Assertions.assertEquals(1, relay.shard.getRoutedPackets());
+        Assertions.assertEquals(0, relay.shard.getDroppedPackets());
+
+        // other activations are forwarded
+        relay.channel.writeInbound(new DatagramPacket(relay.encode(relay.secret), PROXY_ADDRESS, PLAYER_ADDRESS));
+        DatagramPacket forwarded = relay.channel.readOutbound();
+        try {
+            Assertions.assertEquals(BACKEND_ADDRESS, forwarded.recipient());
+        } finally {
+            forwarded.release();
+        }
+
+        // sources are removed with the route
+        relay.sourceManager.removeRoute(activationId);
+        Assertions.assertTrue(relay.sourceManager.getSources().isEmpty());
+
+        Assertions.assertFalse(relay.channel.finish());
+    }
+
+    @Test
+    public void testConnectedBackend() throws Exception {
+        EventLoopGroup loopGroup = new NioEventLoopGroup(1);
+        try {
+            BlockingQueue<DatagramPacket> backendPackets = new LinkedBlockingQueue<>();
+            BlockingQueue<DatagramPacket> playerPackets = new LinkedBlockingQueue<>();
+
+            Channel backend = bind(loopGroup, backendPackets);
+            Channel player = bind(loopGroup, playerPackets);
+
+            RemoteServer remoteServer = stub(RemoteServer.class, (method, args) ->
+                    method.equals("getAddress") ? backend.localAddress() : null
+            );
+            NettyUdpRelayShard shard = new NettyUdpRelayShard(
+                    0,
+                    new Bootstrap().group(loopGroup).channel(NioDatagramChannel.class)
+            );
+            Relay relay = new Relay(remoteServer, shard);
+
+            Channel proxy = new Bootstrap()
+                    .group(loopGroup)
+                    .channel(NioDatagramChannel.class)
+                    .handler(new NettyPacketHandler(relay.voiceProxy, relay.udpConnections, shard))
+                    .bind(LOCALHOST, 0)
+                    .sync()
+                    .channel();
+
+            // player -> backend
+            player.writeAndFlush(new DatagramPacket(relay.encode(relay.secret), (InetSocketAddress) proxy.localAddress())).sync();
+
+            DatagramPacket forwarded = backendPackets.poll(5, TimeUnit.SECONDS);
+            Assertions.assertNotNull(forwarded);
+            InetSocketAddress backendSocket = forwarded.sender();
+            try {
+                Assertions.assertEquals(relay.remoteSecret, secret(forwarded.content()));
+                // backend-facing traffic is sent by the connected socket, not by the player-facing channel
+                Assertions.assertNotEquals(proxy.localAddress(), backendSocket);
+            } finally {
+                forwarded.release();
+            }
+
+            // backend -> player, packet is received by the connected socket
+            backend.writeAndFlush(new DatagramPacket(relay.encode(relay.remoteSecret), backendSocket)).sync();
+
+            forwarded = playerPackets.poll(5, TimeUnit.SECONDS);
+            Assertions.assertNotNull(forwarded);
+            try {
+                Assertions.assertEquals(proxy.localAddress(), forwarded.sender());
+                Assertions.assertEquals(relay.secret, secret(forwarded.content()));
+            } finally {
+                forwarded.release();
+            }
+
+            // connected socket accepts only the remote secret of the connection
+            backend.writeAndFlush(new DatagramPacket(relay.encode(relay.secret), backendSocket)).sync();
+            Assertions.assertNull(playerPackets.poll(200, TimeUnit.MILLISECONDS));
+
+            Assertions.assertEquals(1, shard.getPlayerPackets());
+            Assertions.assertEquals(1, shard.getBackendPackets());
+            Assertions.assertEquals(1, shard.getDroppedPackets());
+
+            // connected socket is closed with the connection
+            relay.udpConnections.clearConnections();
+            backend.writeAndFlush(new DatagramPacket(relay.encode(relay.remoteSecret), backendSocket)).sync();
+            Assertions.assertNull(playerPackets.poll(200, TimeUnit.MILLISECONDS));
+
+            proxy.close().sync();
+            backend.close().sync();
+            player.close().sync();
+        } finally {
+            loopGroup.shutdownGracefully().sync();
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmarkRelay(TestReporter reporter) {
+        int packets = 2_000_000;
+        Relay relay = new Relay();
+
+        for (int round = 0; round < 3; round++) {
+            for (boolean listeners : new boolean[]{false, true}) {
+                relay.speakListeners.set(listeners);
+                ByteBuf encoded = relay.encode(relay.secret);
+
+                long start = System.nanoTime();
+                for (int i = 0; i < packets; i++) {
+                    // secret is rewritten in place, so the player secret is written back before the next packet
+                    PacketUdpCodec.replaceSecret(encoded, relay.secret);
+                    relay.channel.writeInbound(new DatagramPacket(encoded.retain(), PROXY_ADDRESS, PLAYER_ADDRESS));
+
+                    if (i % 1_000 == 999) drainOutbound(relay.channel);
+                }
+                drainOutbound(relay.channel);
+                long elapsed = System.nanoTime() - start;
+
+                encoded.release();
+                Assertions.assertEquals(0, encoded.refCnt());
+
+                reporter.publishEntry("round " + round, String.format(
+                        "%s: %.0f packets/s on one core",
+                        listeners ? "decode with speak listeners" : "header-only relay",
+                        packets / (elapsed / 1_000_000_000D)
+                ));
+            }
+        }
+    }
+
+    private static Channel bind(EventLoopGroup loopGroup, BlockingQueue<DatagramPacket> packets) throws InterruptedException {
+        return new Bootstrap()
+                .group(loopGroup)
+                .channel(NioDatagramChannel.class)
+                .handler(new SimpleChannelInboundHandler<DatagramPacket>() {
+                    @Override
+                    protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) {
+                        packets.add(packet.retain());
+                    }
+                })
+                .bind(LOCALHOST, 0)
+                .sync()
+                .channel();
+    }
+
+    private static void drainOutbound(EmbeddedChannel channel) {
+        Object message;
+        while ((message = channel.readOutbound()) != null) {
+            ((DatagramPacket) message).release();
+        }
+    }
+
+    private static UUID secret(ByteBuf buf) {
+        return new UUID(
+                PacketUdpCodec.getSecretMostSignificantBits(buf),
+                PacketUdpCodec.getSecretLeastSignificantBits(buf)
+        );
+    }
+
+    private static final class Relay {
+
+        private final AtomicBoolean speakListeners = new AtomicBoolean();
+        private final AtomicInteger speakEvents = new AtomicInteger();
+
+        private final UUID remoteSecret = UUID.randomUUID();
+        private final UUID secret;
+        private final RemoteServer remoteServer;
+        private final PlasmoVoiceProxy voiceProxy;
+        private final VoiceUdpProxyConnectionManager udpConnections = new VoiceUdpProxyConnectionManager();
+        private final VoiceEncryptionManager encryptionManager = new VoiceEncryptionManager();
+        private final byte[] aesEncryptionKey = new byte[16];
+        private final VoiceProxySourceManager sourceManager;
+        private final NettyUdpRelayShard shard;
+        private final EmbeddedChannel channel;
+
+        private Relay() {
+            this(
+                    stub(RemoteServer.class, (method, args) ->
+                            method.equals("getAddress") ? BACKEND_ADDRESS : null
+                    ),
+                    new NettyUdpRelayShard(0, null)
+            );
+        }
+
+        private Relay(RemoteServer remoteServer, NettyUdpRelayShard shard) {
+            this.remoteServer = remoteServer;
+            this.shard = shard;
+
+            EventBus eventBus = stub(EventBus.class, (method, args) -> {
+                switch (method) {
+                    case "hasListeners":
+                        return args[0] == PlayerSpeakEvent.class && speakListeners.get();
+                    case "call":
+                        if (args[0] instanceof PlayerSpeakEvent) speakEvents.incrementAndGet();
+                        return true;
+                    default:
+                        return null;
+                }
+            });
+            AddonContainer addon = stub(AddonContainer.class, (method, args) ->
+                    method.equals("getId") ? "test" : null
+            );
+            AddonManager addonManager = stub(AddonManager.class, (method, args) ->
+                    method.equals("getAddon") ? Optional.of(addon) : null
+            );
+            encryptionManager.register(new AesEncryptionSupplier());
+            encryptionManager.register(new AesGcmEncryptionSupplier());
+            new Random().nextBytes(aesEncryptionKey);
+            ProxyConfig config = stub(ProxyConfig.class, (method, args) ->
+                    method.equals("aesEncryptionKey") ? aesEncryptionKey : null
+            );
+
+            AtomicReference<VoiceProxySourceManager> sourceManager = new AtomicReference<>();
+            this.voiceProxy = stub(PlasmoVoiceProxy.class, (method, args) -> {
+                switch (method) {
+                    case "getEventBus":
+                        return eventBus;
+                    case "getAddonManager":
+                        return addonManager;
+                    case "getSourceManager":
+                        return sourceManager.get();
+                    case "getUdpConnectionManager":
+                        return udpConnections;
+                    case "getConfig":
+                        return config;
+                    case "getEncryptionManager":
+                        return encryptionManager;
+                    default:
+                        return null;
+                }
+            });
+            this.sourceManager = new VoiceProxySourceManager(voiceProxy);
+            sourceManager.set(this.sourceManager);
+
+            this.channel = new EmbeddedChannel(new NettyPacketHandler(voiceProxy, udpConnections, shard));
+            this.secret = connect(UUID.randomUUID(), remoteSecret, PLAYER_ADDRESS).getSecret();
+        }
+
+        private NettyUdpProxyConnection connect(UUID playerId, UUID remoteSecret, InetSocketAddress address) {
+            MinecraftProxyPlayer instance = stub(MinecraftProxyPlayer.class, (method, args) ->
+                    method.equals("getUUID") ? playerId : null
+            );
+
+            NettyUdpProxyConnection connection = new NettyUdpProxyConnection(
+                    voiceProxy,
+                    channel,
+                    new VoiceProxyPlayer(voiceProxy, instance),
+                    udpConnections.setPlayerSecret(playerId, remoteSecret)
+            );
+            connection.setRemoteSecret(remoteSecret);
+            connection.setRemoteServer(remoteServer);
+            connection.setRemoteAddress(address);
+            udpConnections.addConnection(connection);
+
+            return connection;
+        }
+
+        private ByteBuf encode(UUID secret) {
+            return encode(secret, UUID.randomUUID());
+        }
+
+        private ByteBuf encode(UUID secret, UUID activationId) {
+            return encode(secret, activationId, new byte[128]);
+        }
+
+        private ByteBuf encode(UUID secret, UUID activationId, byte[] data) {
+            return PacketUdpCodec.encode(
+                    new PlayerAudioPacket(1L, data, activationId, (short) 16, false),
+                    secret,
+                    ByteBufAllocator.DEFAULT
+            );
+        }
+
+        private Encryption encryption(String algorithm) {
+            return encryptionManager.create(algorithm, aesEncryptionKey);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> clazz, StubHandler handler) {
+        return (T) Proxy.newProxyInstance(
+                clazz.getClassLoader(),
+                new Class[]{clazz},
+                (proxy, method, args) -> handler.invoke(method.getName(), args)
+        );
+    }
+
+    private interface StubHandler {
+
+        Object invoke(String method, Object[] args);
+    }
+}
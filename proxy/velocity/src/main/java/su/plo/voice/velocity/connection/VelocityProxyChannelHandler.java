@@ -13,7 +13,7 @@ import com.velocitypowered.api.proxy.messages.ChannelIdentifier;
 import com.velocitypowered.api.proxy.messages.MinecraftChannelIdentifier;
 import org.apache.logging.log4j.LogManager;
 import org.jetbrains.annotations.NotNull;
-import su.plo.voice.api.proxy.player.VoiceProxyPlayer;
+import su.plo.voice.proto.packets.Packet;
 import su.plo.voice.proto.packets.PacketHandler;
 import su.plo.voice.proto.packets.PacketUtil;
 import su.plo.voice.proto.packets.tcp.PacketTcpCodec;
@@ -31,6 +31,7 @@ import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
 public class VelocityProxyChannelHandler {
@@ -95,34 +96,39 @@ public class VelocityProxyChannelHandler {
         if (!event.getResult().isAllowed()) return;
         if (!event.getIdentifier().equals(VOICE_CHANNEL)) return;
 
+        byte[] data = event.getData();
+
+        // packet type is peeked first, so packets not handled by the proxy are forwarded without decoding
+        PacketHandler handler;
+        if (event.getSource() instanceof Player) {
+            Player player = (Player) event.getSource();
+
+            PlayerToServerChannelHandler playerToServer = playerToServerChannels.computeIfAbsent(
+                    player.getUniqueId(),
+                    (playerId) -> new PlayerToServerChannelHandler(voiceProxy, voiceProxy.getPlayerManager().wrap(player))
+            );
+            if (!playerToServer.shouldHandle(data)) return;
+
+            handler = playerToServer;
+        } else if (event.getTarget() instanceof Player) {
+            Player player = (Player) event.getTarget();
+
+            ServerToPlayerChannelHandler serverToPlayer = serverToPlayerChannels.computeIfAbsent(
+                    player.getUniqueId(),
+                    (playerId) -> new ServerToPlayerChannelHandler(voiceProxy, voiceProxy.getPlayerManager().wrap(player))
+            );
+            if (!serverToPlayer.shouldHandle(data)) return;
+
+            handler = serverToPlayer;
+        } else return;
+
         try {
-            PacketTcpCodec.decode(ByteStreams.newDataInput(event.getData()))
-                    .ifPresent((packet) -> {
-                        PacketHandler handler;
-                        if (event.getSource() instanceof Player) {
-                            Player player = (Player) event.getSource();
-                            VoiceProxyPlayer voicePlayer = voiceProxy.getPlayerManager().wrap(player);
-
-                            handler = playerToServerChannels.computeIfAbsent(
-                                    player.getUniqueId(),
-                                    (playerId) -> new PlayerToServerChannelHandler(voiceProxy, voicePlayer)
-                            );
-                        } else if (event.getTarget() instanceof Player) {
-                            Player player = (Player) event.getTarget();
-                            VoiceProxyPlayer voicePlayer = voiceProxy.getPlayerManager().wrap(player);
-
-                            handler = serverToPlayerChannels.computeIfAbsent(
-                                    player.getUniqueId(),
-                                    (playerId) -> new ServerToPlayerChannelHandler(voiceProxy, voicePlayer)
-                            );
-                        } else return;
-
-                        try {
-                            packet.handle(handler);
-                        } catch (CancelForwardingException ignored) {
-                            event.setResult(PluginMessageEvent.ForwardResult.handled());
-                        }
-                    });
+            Optional<Packet<PacketHandler>> packet = PacketTcpCodec.decode(data);
+            if (!packet.isPresent()) return;
+
+            packet.get().handle(handler);
+        } catch (CancelForwardingException ignored) {
+            event.setResult(PluginMessageEvent.ForwardResult.handled());
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -8,20 +8,31 @@ import su.plo.voice.api.addon.AddonContainer;
 import su.plo.voice.api.server.audio.capture.ServerActivation;
 import su.plo.voice.api.server.player.VoicePlayer;
 import su.plo.voice.proto.data.audio.capture.VoiceActivation;
+import su.plo.voice.server.player.BaseVoicePlayer;
 
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 public final class VoiceServerActivation extends VoiceActivation implements ServerActivation {
 
+    private static final AtomicInteger NEXT_INDEX = new AtomicInteger();
+
     @Getter
     private final AddonContainer addon;
 
     @Getter
     private final Set<String> permissions;
 
+    // index of the activation in the players' permission caches
+    @Getter
+    private final int index = NEXT_INDEX.getAndIncrement();
+    // incremented on permissions change, so results cached by the players are checked again
+    @Getter
+    private volatile int permissionsVersion;
+
     public VoiceServerActivation(@NotNull AddonContainer addon,
                                  @NotNull String name,
                                  @NotNull String translation,
@@ -43,21 +54,32 @@ public final class VoiceServerActivation extends VoiceActivation implements Serv
     @Override
     public void addPermission(@NotNull String permission) {
         permissions.add(permission);
+        permissionsVersion++;
     }
 
     @Override
     public void removePermission(@NotNull String permission) {
         permissions.remove(permission);
+        permissionsVersion++;
     }
 
     @Override
     public void clearPermissions() {
         permissions.clear();
+        permissionsVersion++;
     }
 
     @Override
     public boolean checkPermissions(@NotNull VoicePlayer player) {
-        return checkPermissions(player.getInstance());
+        if (player instanceof BaseVoicePlayer) {
+            return ((BaseVoicePlayer<?>) player).hasActivationPermission(this);
+        }
+
+        for (String permission : permissions) {
+            if (player.hasPermission(permission)) return true;
+        }
+
+        return false;
     }
 
     @Override
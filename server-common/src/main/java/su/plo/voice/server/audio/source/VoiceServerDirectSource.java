@@ -17,7 +17,9 @@ import su.plo.voice.proto.packets.Packet;
 import su.plo.voice.proto.packets.tcp.clientbound.SourceInfoPacket;
 import su.plo.voice.proto.packets.udp.clientbound.SourceAudioPacket;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.function.Supplier;
@@ -117,28 +119,33 @@ public final class VoiceServerDirectSource
 
     @Override
     public boolean sendAudioPacket(@NotNull SourceAudioPacket packet, @Nullable UUID activationId) {
-        ServerSourceAudioPacketEvent event = new ServerSourceAudioPacketEvent(this, packet, activationId);
-        if (!voice.getEventBus().call(event)) return false;
+        if (voice.getEventBus().hasListeners(ServerSourceAudioPacketEvent.class)) {
+            ServerSourceAudioPacketEvent event = new ServerSourceAudioPacketEvent(this, packet, activationId);
+            if (!voice.getEventBus().call(event)) return false;
+        }
 
         packet.setSourceState((byte) state.get());
 
         if (dirty.compareAndSet(true, false))
             sendPacket(new SourceInfoPacket(getInfo()));
 
+        List<UdpConnection> connections = new ArrayList<>();
         if (playersSupplier != null) {
             for (VoicePlayer player : playersSupplier.get()) {
-                if (testPlayer(player)) continue;
+                if (!testPlayer(player)) continue;
 
-                udpConnections.getConnectionByPlayerId(player.getInstance().getUUID())
-                        .ifPresent(connection -> connection.sendPacket(packet));
+                Optional<? extends UdpConnection> connection = udpConnections.getConnectionByPlayerId(player.getInstance().getUUID());
+                if (connection.isPresent()) connections.add(connection.get());
             }
         } else {
             for (UdpConnection connection : udpConnections.getConnections()) {
                 if (!testPlayer(connection.getPlayer())) continue;
-                connection.sendPacket(packet);
+                connections.add(connection);
             }
         }
 
+        udpConnections.sendPacket(packet, connections);
+
         return true;
     }
 
@@ -149,7 +156,7 @@ public final class VoiceServerDirectSource
 
         if (playersSupplier != null) {
             for (VoicePlayer player : playersSupplier.get()) {
-                if (testPlayer(player)) continue;
+                if (!testPlayer(player)) continue;
                 player.sendPacket(packet);
             }
         } else {
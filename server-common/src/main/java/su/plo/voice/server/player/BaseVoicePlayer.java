@@ -6,6 +6,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import su.plo.lib.api.server.player.MinecraftServerPlayer;
 import su.plo.voice.api.PlasmoVoice;
 import su.plo.voice.api.server.audio.capture.ServerActivation;
@@ -15,16 +16,20 @@ import su.plo.voice.api.server.player.VoicePlayer;
 import su.plo.voice.proto.packets.Packet;
 import su.plo.voice.proto.packets.tcp.PacketTcpCodec;
 import su.plo.voice.proto.packets.tcp.clientbound.DistanceVisualizePacket;
+import su.plo.voice.server.audio.capture.VoiceServerActivation;
 
 import java.security.PublicKey;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
 @RequiredArgsConstructor
-@ToString(doNotUseGetters = true, exclude = "publicKey")
+@ToString(doNotUseGetters = true, exclude = {"publicKey", "permissions"})
 public abstract class BaseVoicePlayer<P extends MinecraftServerPlayer> implements VoicePlayer {
 
+    private static final long PERMISSIONS_CACHE_TTL_MS = 10_000L;
+
     private final PlasmoVoice voice;
     @Getter
     protected final @NotNull P instance;
@@ -38,9 +43,17 @@ public abstract class BaseVoicePlayer<P extends MinecraftServerPlayer> implement
     private PlayerModLoader modLoader;
     @Setter
     private PublicKey publicKey;
+    // encryption algorithm negotiated with the client
+    @Getter
+    @Setter
+    private volatile @Nullable String encryption;
 
     private final Map<UUID, Integer> distanceByActivationId = Maps.newConcurrentMap();
 
+    // cached because activations are checked on every audio packet,
+    // the whole cache is replaced on invalidation, so lookups started before it can't put old values into the new one
+    private volatile PermissionsCache permissions = new PermissionsCache(0L);
+
     @Override
     public void sendPacket(@NotNull Packet<?> packet) {
         instance.sendPacket("plasmo:voice/v2", PacketTcpCodec.encode(packet));
@@ -78,6 +91,60 @@ public abstract class BaseVoicePlayer<P extends MinecraftServerPlayer> implement
         return Optional.ofNullable(publicKey);
     }
 
+    @Override
+    public boolean hasPermission(@NotNull String permission) {
+        PermissionsCache permissions = getPermissionsCache();
+
+        Boolean hasPermission = permissions.permissions.get(permission);
+        if (hasPermission == null) {
+            hasPermission = instance.hasPermission(permission);
+            permissions.permissions.put(permission, hasPermission);
+        }
+
+        return hasPermission;
+    }
+
+    /**
+     * Checks if the player has any permission of the activation
+     * <br/>
+     * Result is cached by the activation index until the player's permissions
+     * or the activation's permissions are changed
+     */
+    public boolean hasActivationPermission(@NotNull VoiceServerActivation activation) {
+        PermissionsCache permissions = getPermissionsCache();
+        int index = activation.getIndex();
+        int version = activation.getPermissionsVersion() + 1;
+
+        int[] activations = permissions.activations;
+        if (index < activations.length) {
+            int cached = activations[index];
+            if ((cached >>> 1) == version) return (cached & 1) != 0;
+        }
+
+        boolean hasPermission = false;
+        for (String permission : activation.getPermissions()) {
+            if (hasPermission(permission)) {
+                hasPermission = true;
+                break;
+            }
+        }
+
+        if (index >= activations.length) {
+            activations = Arrays.copyOf(activations, index + 1);
+            permissions.activations = activations;
+        }
+        activations[index] = (version << 1) | (hasPermission ? 1 : 0);
+
+        return hasPermission;
+    }
+
+    /**
+     * Drops cached permissions of the player
+     */
+    public void invalidatePermissions() {
+        this.permissions = new PermissionsCache(System.currentTimeMillis() + PERMISSIONS_CACHE_TTL_MS);
+    }
+
     public void setActivationDistance(@NotNull ServerActivation activation, int distance) {
         distanceByActivationId.put(activation.getId(), distance);
         voice.getEventBus().call(new PlayerActivationDistanceUpdateEvent(this, activation, distance));
@@ -91,4 +158,29 @@ public abstract class BaseVoicePlayer<P extends MinecraftServerPlayer> implement
     protected void checkVoiceChat() {
         if (!hasVoiceChat()) throw new IllegalStateException("Player is not connected to UDP server");
     }
+
+    private PermissionsCache getPermissionsCache() {
+        PermissionsCache permissions = this.permissions;
+        // permissions can be changed without PlayerPermissionUpdateEvent, so cache is dropped from time to time
+        if (System.currentTimeMillis() >= permissions.expireAt) {
+            invalidatePermissions();
+            permissions = this.permissions;
+        }
+
+        return permissions;
+    }
+
+    private static final class PermissionsCache {
+
+        private final long expireAt;
+        // permission -> has permission
+        private final Map<String, Boolean> permissions = Maps.newConcurrentMap();
+        // activation index -> (activation permissions version << 1) | has permission, 0 if not cached
+        // concurrent writes can lose entries, it only means that they are checked again
+        private volatile int[] activations = new int[0];
+
+        private PermissionsCache(long expireAt) {
+            this.expireAt = expireAt;
+        }
+    }
 }
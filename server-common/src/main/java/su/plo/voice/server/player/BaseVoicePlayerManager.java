@@ -52,6 +52,14 @@ public abstract class BaseVoicePlayerManager<P extends VoicePlayer> implements V
         synchronizedPermissions.clear();
     }
 
+    @EventSubscribe(priority = EventPriority.LOWEST)
+    public void onPermissionInvalidate(@NotNull PlayerPermissionUpdateEvent event) {
+        // permissions can depend on each other (wildcards, groups), so the whole cache is dropped
+        if (event.getPlayer() instanceof BaseVoicePlayer) {
+            ((BaseVoicePlayer<?>) event.getPlayer()).invalidatePermissions();
+        }
+    }
+
     @EventSubscribe
     public void onPermissionUpdate(@NotNull PlayerPermissionUpdateEvent event) {
         String permission = event.getPermission();
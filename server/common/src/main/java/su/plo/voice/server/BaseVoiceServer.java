@@ -17,8 +17,6 @@ import su.plo.voice.api.server.PlasmoVoiceServer;
 import su.plo.voice.api.server.audio.capture.ServerActivationManager;
 import su.plo.voice.api.server.audio.line.ServerSourceLineManager;
 import su.plo.voice.api.server.audio.source.ServerSourceManager;
-import su.plo.voice.api.server.connection.TcpServerConnectionManager;
-import su.plo.voice.api.server.connection.UdpServerConnectionManager;
 import su.plo.voice.api.server.event.VoiceServerInitializeEvent;
 import su.plo.voice.api.server.event.VoiceServerShutdownEvent;
 import su.plo.voice.api.server.event.command.CommandsRegisterEvent;
@@ -33,16 +31,20 @@ import su.plo.voice.api.server.socket.UdpServerConnection;
 import su.plo.voice.server.audio.capture.ProximityServerActivation;
 import su.plo.voice.server.audio.capture.VoiceServerActivationManager;
 import su.plo.voice.server.audio.line.VoiceServerSourceLineManager;
+import su.plo.voice.server.audio.mixer.VoiceServerMixer;
 import su.plo.voice.server.audio.source.VoiceServerSourceManager;
 import su.plo.voice.server.command.*;
 import su.plo.voice.server.config.VoiceServerConfig;
 import su.plo.voice.server.config.VoiceServerLanguages;
+import su.plo.voice.server.connection.ConnectionAdmission;
+import su.plo.voice.server.connection.VoiceServerEncryption;
 import su.plo.voice.server.connection.VoiceTcpConnectionManager;
 import su.plo.voice.server.connection.VoiceUdpConnectionManager;
 import su.plo.voice.server.mute.VoiceMuteManager;
 import su.plo.voice.server.mute.storage.MuteStorageFactory;
 import su.plo.voice.server.player.LuckPermsListener;
 import su.plo.voice.server.player.PermissionSupplier;
+import su.plo.voice.server.player.PlayerPositionSnapshot;
 import su.plo.voice.server.player.VoiceServerPlayerManager;
 import su.plo.voice.server.socket.NettyUdpServer;
 import su.plo.voice.util.version.ModrinthVersion;
@@ -53,6 +55,9 @@ import java.nio.file.Files;
 import java.util.Collection;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 public abstract class BaseVoiceServer extends BaseVoice implements PlasmoVoiceServer {
@@ -60,17 +65,35 @@ public abstract class BaseVoiceServer extends BaseVoice implements PlasmoVoiceSe
     public static final String CHANNEL_STRING = "plasmo:voice/v2";
     public static final String SERVICE_CHANNEL_STRING = "plasmo:voice/proxy/v2";
 
+    // reconnect of all players is spread over (players / HANDSHAKES_PER_SECOND) seconds
+    private static final int HANDSHAKES_PER_SECOND = 100;
+
     protected static final ConfigurationProvider TOML = ConfigurationProvider.getProvider(TomlConfiguration.class);
 
     protected final Logger logger = LogManager.getLogger();
     @Getter
-    protected final TcpServerConnectionManager tcpConnectionManager = new VoiceTcpConnectionManager(this);
+    protected final ConnectionAdmission connectionAdmission = new ConnectionAdmission(
+            this::getBackgroundExecutor,
+            HANDSHAKES_PER_SECOND,
+            HANDSHAKES_PER_SECOND
+    );
+    @Getter
+    protected final VoiceTcpConnectionManager tcpConnectionManager = new VoiceTcpConnectionManager(this);
+    @Getter
+    protected final VoiceServerEncryption audioEncryption = new VoiceServerEncryption(this);
+    @Getter
+    protected final PlayerPositionSnapshot playerPositions = new PlayerPositionSnapshot();
+    @Getter
+    protected final VoiceUdpConnectionManager udpConnectionManager = new VoiceUdpConnectionManager(this, audioEncryption, playerPositions);
     @Getter
-    protected final UdpServerConnectionManager udpConnectionManager = new VoiceUdpConnectionManager(this);
+    protected final VoiceServerMixer mixer = new VoiceServerMixer(this, audioEncryption, playerPositions);
     @Getter
-    protected final ServerSourceManager sourceManager = new VoiceServerSourceManager(this);
+    protected final ServerSourceManager sourceManager = new VoiceServerSourceManager(this, mixer, playerPositions);
 
     protected UdpServer udpServer;
+    protected ScheduledFuture<?> playerPositionsTask;
+    // set while the positions capture is waiting for the main thread
+    private final AtomicBoolean capturingPositions = new AtomicBoolean();
     @Getter
     protected PermissionSupplier permissionSupplier;
     @Getter
@@ -112,9 +135,18 @@ public abstract class BaseVoiceServer extends BaseVoice implements PlasmoVoiceSe
         eventBus.call(new VoiceServerInitializeEvent(this));
         eventBus.register(this, sourceManager);
         eventBus.register(this, udpConnectionManager);
+        eventBus.register(this, tcpConnectionManager);
+        eventBus.register(this, connectionAdmission);
         eventBus.register(this, getMinecraftServer());
         eventBus.register(this, proximityActivation);
 
+        this.playerPositionsTask = backgroundExecutor.scheduleAtFixedRate(
+                this::capturePlayerPositions,
+                0L,
+                50L,
+                TimeUnit.MILLISECONDS
+        );
+
         this.permissionSupplier = createPermissionSupplier();
 
         this.playerManager = new VoiceServerPlayerManager(this, getMinecraftServer());
@@ -172,10 +204,20 @@ public abstract class BaseVoiceServer extends BaseVoice implements PlasmoVoiceSe
             }
         }
 
+        if (playerPositionsTask != null) {
+            playerPositionsTask.cancel(false);
+            this.playerPositionsTask = null;
+        }
+        playerPositions.clear();
+
         if (udpServer != null) {
             udpServer.stop();
             this.udpServer = null;
         }
+        connectionAdmission.clear();
+        tcpConnectionManager.close();
+
+        mixer.close();
 
         // cleanup sources
         sourceManager.clear();
@@ -244,9 +286,49 @@ public abstract class BaseVoiceServer extends BaseVoice implements PlasmoVoiceSe
         // register proximity activation
         proximityActivation.register(config);
 
+        audioEncryption.setGcmEnabled(config.voice().gcmEncryption());
+        mixer.start(config);
+
         if (restartUdpServer) startUdpServer();
     }
 
+    /**
+     * Captures positions of the voice players on the main thread
+     * and rebuilds the proximity grid from them on the background executor
+     */
+    protected void capturePlayerPositions() {
+        // main thread is lagging and didn't capture the previous tick yet
+        if (!capturingPositions.compareAndSet(false, true)) return;
+
+        try {
+            getMinecraftServer().executeInMainThread(() -> {
+                try {
+                    playerPositions.update(udpConnectionManager.getConnections()
+                            .stream()
+                            .map((connection) -> connection.getPlayer().getInstance())
+                            .collect(Collectors.toList())
+                    );
+                } catch (Exception e) {
+                    logger.error("Failed to capture player positions", e);
+                    return;
+                } finally {
+                    capturingPositions.set(false);
+                }
+
+                backgroundExecutor.execute(() -> {
+                    try {
+                        udpConnectionManager.updateProximityGrid();
+                    } catch (Exception e) {
+                        logger.error("Failed to update proximity grid", e);
+                    }
+                });
+            });
+        } catch (Exception e) {
+            capturingPositions.set(false);
+            logger.error("Failed to schedule player positions capture", e);
+        }
+    }
+
     private void startUdpServer() {
         Collection<VoiceServerPlayer> connectedPlayers = null;
         if (this.udpServer != null) {
@@ -258,7 +340,7 @@ public abstract class BaseVoiceServer extends BaseVoice implements PlasmoVoiceSe
             this.udpServer = null;
         }
 
-        UdpServer server = new NettyUdpServer(this, config);
+        UdpServer server = new NettyUdpServer(this, udpConnectionManager, audioEncryption, connectionAdmission, config);
 
         UdpServerCreateEvent createUdpServerEvent = new UdpServerCreateEvent(server);
         eventBus.call(createUdpServerEvent);
@@ -0,0 +1,98 @@
+package su.plo.voice.server.audio.mixer;
+
+import lombok.ToString;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mixing cost counters of {@link VoiceServerMixer}
+ */
+@ToString
+public final class MixerMetrics {
+
+    // number of mixer ticks
+    private final LongAdder ticks = new LongAdder();
+    // number of ticks that took longer than one frame
+    private final LongAdder overruns = new LongAdder();
+    // number of decoded speaker frames
+    private final LongAdder decodedFrames = new LongAdder();
+    // number of encoded listener frames
+    private final LongAdder mixedFrames = new LongAdder();
+    // number of speaker frames dropped because of listener budget
+    private final LongAdder droppedFrames = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+    private final LongAdder mixNanos = new LongAdder();
+
+    void onTick(long decodeNanos, long mixNanos, long frameNanos) {
+        ticks.increment();
+        this.decodeNanos.add(decodeNanos);
+        this.mixNanos.add(mixNanos);
+        if (decodeNanos + mixNanos > frameNanos) overruns.increment();
+    }
+
+    void onDecoded() {
+        decodedFrames.increment();
+    }
+
+    void onMixed() {
+        mixedFrames.increment();
+    }
+
+    void onDropped() {
+        droppedFrames.increment();
+    }
+
+    public long getTicks() {
+        return ticks.sum();
+    }
+
+    public long getOverruns() {
+        return overruns.sum();
+    }
+
+    public long getDecodedFrames() {
+        return decodedFrames.sum();
+    }
+
+    public long getMixedFrames() {
+        return mixedFrames.sum();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.sum();
+    }
+
+    /**
+     * @return average time spent on decoding speakers in one tick in microseconds
+     */
+    public double getAverageDecodeMicros() {
+        long ticks = getTicks();
+        return ticks == 0 ? 0D : decodeNanos.sum() / 1_000D / ticks;
+    }
+
+    /**
+     * @return average time spent on mixing and encoding listener frames in one tick in microseconds
+     */
+    public double getAverageMixMicros() {
+        long ticks = getTicks();
+        return ticks == 0 ? 0D : mixNanos.sum() / 1_000D / ticks;
+    }
+
+    /**
+     * @return average cost of one mixed listener frame in microseconds
+     */
+    public double getAverageFrameMicros() {
+        long frames = getMixedFrames();
+        return frames == 0 ? 0D : mixNanos.sum() / 1_000D / frames;
+    }
+
+    void reset() {
+        ticks.reset();
+        overruns.reset();
+        decodedFrames.reset();
+        mixedFrames.reset();
+        droppedFrames.reset();
+        decodeNanos.reset();
+        mixNanos.reset();
+    }
+}
@@ -0,0 +1,503 @@
+package su.plo.voice.server.audio.mixer;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Getter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import su.plo.lib.api.server.world.ServerPos3d;
+import su.plo.voice.api.audio.codec.AudioDecoder;
+import su.plo.voice.api.audio.codec.AudioEncoder;
+import su.plo.voice.api.server.PlasmoVoiceServer;
+import su.plo.voice.api.server.audio.line.ServerSourceLine;
+import su.plo.voice.api.server.audio.source.ServerDirectSource;
+import su.plo.voice.api.server.player.VoicePlayer;
+import su.plo.voice.api.server.player.VoiceServerPlayer;
+import su.plo.voice.api.server.socket.UdpServerConnection;
+import su.plo.voice.api.util.Params;
+import su.plo.voice.proto.data.audio.line.VoiceSourceLine;
+import su.plo.voice.proto.packets.tcp.clientbound.SourceAudioEndPacket;
+import su.plo.voice.proto.packets.udp.clientbound.SourceAudioPacket;
+import su.plo.voice.server.config.VoiceServerConfig;
+import su.plo.voice.server.connection.VoiceServerEncryption;
+import su.plo.voice.server.player.PlayerPositionSnapshot;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Mixes far away speakers into a single stream per listener
+ * <br/>
+ * Speakers closer than forward distance are forwarded as is,
+ * other speakers are decoded once per frame, mixed for every listener with distance attenuation,
+ * encoded and sent to the listener using listener's direct source
+ */
+public final class VoiceServerMixer {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String CODEC = "opus";
+
+    private static final long FRAME_MS = 20L;
+    private static final long END_TIMEOUT_MS = 500L;
+    private static final long SPEAKER_TIMEOUT_MS = 5_000L;
+    private static final long LISTENER_TIMEOUT_MS = 60_000L;
+    private static final long METRICS_INTERVAL_MS = 60_000L;
+
+    private final PlasmoVoiceServer voiceServer;
+    private final VoiceServerEncryption encryption;
+    private final PlayerPositionSnapshot playerPositions;
+
+    @Getter
+    private final MixerMetrics metrics = new MixerMetrics();
+
+    private final Queue<SpeakerFrame> pendingFrames = new ConcurrentLinkedQueue<>();
+    private final Map<UUID, SpeakerState> speakers = Maps.newHashMap();
+    private final Map<UUID, ListenerState> listeners = Maps.newHashMap();
+
+    private volatile boolean running;
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService workers;
+
+    private Params encoderParams;
+    private int sampleRate;
+    private int frameSize;
+    private int mtuSize;
+    private double forwardDistance;
+    private int maxSources;
+
+    private long lastMetricsLog;
+
+    public VoiceServerMixer(@NotNull PlasmoVoiceServer voiceServer,
+                            @NotNull VoiceServerEncryption encryption,
+                            @NotNull PlayerPositionSnapshot playerPositions) {
+        this.voiceServer = voiceServer;
+        this.encryption = encryption;
+        this.playerPositions = playerPositions;
+    }
+
+    /**
+     * Starts the mixer if it's enabled in the config, stops running mixer otherwise
+     */
+    public synchronized void start(@NotNull VoiceServerConfig config) {
+        close();
+
+        VoiceServerConfig.Voice.Mixer mixerConfig = config.voice().mixer();
+        if (!mixerConfig.enabled()) return;
+
+        this.encoderParams = Params.builder()
+                .set("mode", config.voice().opus().mode())
+                .set("bitrate", String.valueOf(config.voice().opus().bitrate()))
+                .build();
+        this.sampleRate = config.voice().sampleRate();
+        this.frameSize = (sampleRate / 1_000) * (int) FRAME_MS;
+        this.mtuSize = config.voice().mtuSize();
+        this.forwardDistance = mixerConfig.forwardDistance();
+        this.maxSources = mixerConfig.maxSources();
+
+        this.workers = Executors.newFixedThreadPool(
+                mixerConfig.threads(),
+                new ThreadFactoryBuilder().setNameFormat("Voice Mixer Worker #%d").setDaemon(true).build()
+        );
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("Voice Mixer").setDaemon(true).build()
+        );
+
+        metrics.reset();
+        this.lastMetricsLog = System.currentTimeMillis();
+        this.running = true;
+
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                tick();
+            } catch (InterruptedException ignored) {
+            } catch (Exception e) {
+                LOGGER.error("Failed to mix audio", e);
+            }
+        }, FRAME_MS, FRAME_MS, TimeUnit.MILLISECONDS);
+
+        LOGGER.info("Voice mixer is started with {} threads", mixerConfig.threads());
+    }
+
+    public synchronized void close() {
+        if (!running) return;
+        this.running = false;
+
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1L, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+        }
+        workers.shutdown();
+
+        pendingFrames.clear();
+        speakers.values().forEach((speaker) -> speaker.decoder.close());
+        speakers.clear();
+        listeners.values().forEach(ListenerState::close);
+        listeners.clear();
+
+        LOGGER.info("Voice mixer is stopped");
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Takes listeners which are too far from the source to the mixer
+     *
+     * @param sourceId source id
+     * @param position source position
+     * @param stereo is source stereo
+     * @param codec source codec
+     * @param packet audio packet
+     * @param range range in which listeners can hear the source
+     * @param connections listeners in range
+     *
+     * @return listeners which should receive the packet as is
+     */
+    public Collection<UdpServerConnection> mix(@NotNull UUID sourceId,
+                                               @NotNull ServerPos3d position,
+                                               boolean stereo,
+                                               @Nullable String codec,
+                                               @NotNull SourceAudioPacket packet,
+                                               double range,
+                                               @NotNull Collection<UdpServerConnection> connections) {
+        if (!running || stereo || !CODEC.equals(codec) || range <= 0D || connections.isEmpty()) return connections;
+
+        double forwardDistanceSquared = forwardDistance * forwardDistance;
+        ServerPos3d listenerPosition = new ServerPos3d();
+
+        List<UdpServerConnection> forwarded = new ArrayList<>(connections.size());
+        List<UdpServerConnection> mixed = null;
+        float[] gains = null;
+
+        for (UdpServerConnection connection : connections) {
+            UUID listenerId = connection.getPlayer().getInstance().getUUID();
+            if (!playerPositions.getPosition(listenerId, listenerPosition)
+                    || !listenerPosition.getWorld().equals(position.getWorld())) {
+                forwarded.add(connection);
+                continue;
+            }
+
+            double distanceSquared = position.distanceSquared(listenerPosition);
+            if (distanceSquared <= forwardDistanceSquared) {
+                forwarded.add(connection);
+                continue;
+            }
+
+            float gain = (float) Math.max(0D, 1D - Math.sqrt(distanceSquared) / range);
+            if (gain <= 0F) continue;
+
+            if (mixed == null) {
+                mixed = new ArrayList<>();
+                gains = new float[connections.size()];
+            }
+
+            gains[mixed.size()] = gain;
+            mixed.add(connection);
+        }
+
+        if (mixed != null) {
+            pendingFrames.add(new SpeakerFrame(
+                    sourceId,
+                    packet.getData(),
+                    mixed.toArray(new UdpServerConnection[0]),
+                    gains
+            ));
+        }
+
+        return forwarded;
+    }
+
+    private void tick() throws InterruptedException {
+        long now = System.currentTimeMillis();
+
+        // one frame per speaker, other frames are mixed in the next ticks
+        Map<UUID, SpeakerFrame> frames = new LinkedHashMap<>();
+        List<SpeakerFrame> delayed = new ArrayList<>();
+
+        SpeakerFrame frame;
+        while ((frame = pendingFrames.poll()) != null) {
+            if (frames.putIfAbsent(frame.sourceId, frame) != null) delayed.add(frame);
+        }
+        pendingFrames.addAll(delayed);
+
+        long decodeStart = System.nanoTime();
+        decode(frames.values(), now);
+        long decodeTime = System.nanoTime() - decodeStart;
+
+        long mixStart = System.nanoTime();
+        mix(frames.values(), now);
+        long mixTime = System.nanoTime() - mixStart;
+
+        if (!frames.isEmpty()) {
+            metrics.onTick(decodeTime, mixTime, TimeUnit.MILLISECONDS.toNanos(FRAME_MS));
+        }
+
+        cleanup(now);
+        logMetrics(now);
+    }
+
+    private void decode(@NotNull Collection<SpeakerFrame> frames, long now) throws InterruptedException {
+        List<Callable<Void>> tasks = new ArrayList<>(frames.size());
+
+        for (SpeakerFrame frame : frames) {
+            SpeakerState speaker = speakers.computeIfAbsent(frame.sourceId, (sourceId) -> new SpeakerState(
+                    voiceServer.getCodecManager().createDecoder(CODEC, sampleRate, false, frameSize, mtuSize, Params.EMPTY)
+            ));
+            speaker.lastFrame = now;
+
+            tasks.add(() -> {
+                try {
+                    frame.samples = speaker.decoder.decode(encryption.getEncryption().decrypt(frame.data));
+                    metrics.onDecoded();
+                } catch (Exception e) {
+                    LOGGER.debug("Failed to decode speaker frame", e);
+                }
+                return null;
+            });
+        }
+
+        if (!tasks.isEmpty()) workers.invokeAll(tasks);
+    }
+
+    private void mix(@NotNull Collection<SpeakerFrame> frames, long now) throws InterruptedException {
+        Map<UdpServerConnection, ListenerMix> mixes = Maps.newHashMap();
+
+        for (SpeakerFrame frame : frames) {
+            if (frame.samples == null) continue;
+
+            for (int i = 0; i < frame.listeners.length; i++) {
+                mixes.computeIfAbsent(frame.listeners[i], (connection) -> new ListenerMix(maxSources))
+                        .add(frame.samples, frame.gains[i]);
+            }
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>(mixes.size());
+        for (Map.Entry<UdpServerConnection, ListenerMix> entry : mixes.entrySet()) {
+            UdpServerConnection connection = entry.getKey();
+            if (!connection.isConnected()) continue;
+
+            ListenerState listener = listeners.get(connection.getPlayer().getInstance().getUUID());
+            if (listener == null) {
+                listener = createListener(connection.getPlayer());
+                if (listener == null) continue;
+
+                listeners.put(connection.getPlayer().getInstance().getUUID(), listener);
+            }
+            listener.lastFrame = now;
+
+            ListenerState state = listener;
+            ListenerMix mix = entry.getValue();
+            tasks.add(() -> {
+                try {
+                    state.send(mix);
+                    metrics.onMixed();
+                } catch (Exception e) {
+                    LOGGER.debug("Failed to send mixed frame", e);
+                }
+                return null;
+            });
+        }
+
+        if (!tasks.isEmpty()) workers.invokeAll(tasks);
+    }
+
+    private void cleanup(long now) {
+        speakers.entrySet().removeIf((entry) -> {
+            if (now - entry.getValue().lastFrame < SPEAKER_TIMEOUT_MS) return false;
+
+            entry.getValue().decoder.close();
+            return true;
+        });
+
+        listeners.entrySet().removeIf((entry) -> {
+            ListenerState listener = entry.getValue();
+            long idle = now - listener.lastFrame;
+
+            if (listener.speaking && idle >= END_TIMEOUT_MS) {
+                listener.speaking = false;
+                listener.source.sendPacket(new SourceAudioEndPacket(listener.source.getId(), listener.sequenceNumber++));
+            }
+
+            if (idle < LISTENER_TIMEOUT_MS &&
+                    voiceServer.getUdpConnectionManager().getConnectionByPlayerId(entry.getKey()).isPresent()
+            ) return false;
+
+            listener.close();
+            return true;
+        });
+    }
+
+    private void logMetrics(long now) {
+        if (now - lastMetricsLog < METRICS_INTERVAL_MS) return;
+        this.lastMetricsLog = now;
+
+        if (metrics.getTicks() == 0L) return;
+
+        LOGGER.info(
+                "Voice mixer: {} frames decoded, {} frames mixed, {} frames dropped, {} overruns; " +
+                        "{} us decode, {} us mix per tick, {} us per listener frame",
+                metrics.getDecodedFrames(),
+                metrics.getMixedFrames(),
+                metrics.getDroppedFrames(),
+                metrics.getOverruns(),
+                String.format("%.1f", metrics.getAverageDecodeMicros()),
+                String.format("%.1f", metrics.getAverageMixMicros()),
+                String.format("%.1f", metrics.getAverageFrameMicros())
+        );
+        metrics.reset();
+    }
+
+    private @Nullable ListenerState createListener(@NotNull VoiceServerPlayer player) {
+        Optional<ServerSourceLine> line = voiceServer.getSourceLineManager()
+                .getLineById(VoiceSourceLine.generateId(VoiceSourceLine.PROXIMITY_NAME));
+        if (!line.isPresent()) return null;
+
+        ServerDirectSource source = voiceServer.getSourceManager().createDirectSource(
+                voiceServer,
+                line.get(),
+                CODEC,
+                false
+        );
+        Collection<VoicePlayer> players = Collections.singletonList(player);
+        source.setPlayers(() -> players);
+
+        AudioEncoder encoder = voiceServer.getCodecManager().createEncoder(
+                CODEC,
+                sampleRate,
+                false,
+                frameSize,
+                mtuSize,
+                encoderParams
+        );
+
+        return new ListenerState(player, source, encoder);
+    }
+
+    private static final class SpeakerFrame {
+
+        private final UUID sourceId;
+        private final byte[] data;
+        private final UdpServerConnection[] listeners;
+        private final float[] gains;
+
+        private volatile short[] samples;
+
+        private SpeakerFrame(@NotNull UUID sourceId,
+                             byte[] data,
+                             @NotNull UdpServerConnection[] listeners,
+                             float[] gains) {
+            this.sourceId = sourceId;
+            this.data = data;
+            this.listeners = listeners;
+            this.gains = gains;
+        }
+    }
+
+    private static final class SpeakerState {
+
+        private final AudioDecoder decoder;
+        private long lastFrame;
+
+        private SpeakerState(@NotNull AudioDecoder decoder) {
+            this.decoder = decoder;
+        }
+    }
+
+    /**
+     * Speaker frames mixed for the listener in one tick
+     * <br/>
+     * Only the loudest speakers are mixed if there are more of them than the listener budget
+     */
+    private final class ListenerMix {
+
+        private final short[][] samples;
+        private final float[] gains;
+        private int size;
+
+        private ListenerMix(int budget) {
+            this.samples = new short[budget][];
+            this.gains = new float[budget];
+        }
+
+        private void add(short[] samples, float gain) {
+            if (size < this.samples.length) {
+                this.samples[size] = samples;
+                this.gains[size] = gain;
+                size++;
+                return;
+            }
+
+            int quietest = 0;
+            for (int i = 1; i < size; i++) {
+                if (gains[i] < gains[quietest]) quietest = i;
+            }
+
+            metrics.onDropped();
+            if (gains[quietest] >= gain) return;
+
+            this.samples[quietest] = samples;
+            this.gains[quietest] = gain;
+        }
+    }
+
+    private final class ListenerState {
+
+        private final VoiceServerPlayer player;
+        private final ServerDirectSource source;
+        private final AudioEncoder encoder;
+        private final float[] buffer = new float[frameSize];
+        private final short[] mixed = new short[frameSize];
+
+        private long sequenceNumber;
+        private volatile long lastFrame;
+        private volatile boolean speaking;
+
+        private ListenerState(@NotNull VoiceServerPlayer player,
+                              @NotNull ServerDirectSource source,
+                              @NotNull AudioEncoder encoder) {
+            this.player = player;
+            this.source = source;
+            this.encoder = encoder;
+        }
+
+        private void send(@NotNull ListenerMix mix) throws Exception {
+            Arrays.fill(buffer, 0F);
+
+            for (int i = 0; i < mix.size; i++) {
+                short[] samples = mix.samples[i];
+                float gain = mix.gains[i];
+
+                int length = Math.min(samples.length, buffer.length);
+                for (int j = 0; j < length; j++) {
+                    buffer[j] += samples[j] * gain;
+                }
+            }
+
+            for (int i = 0; i < buffer.length; i++) {
+                mixed[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, buffer[i]));
+            }
+
+            byte[] encrypted = encryption.getEncryption().encrypt(encoder.encode(mixed));
+
+            this.speaking = true;
+            source.sendAudioPacket(new SourceAudioPacket(
+                    sequenceNumber++,
+                    (byte) source.getState(),
+                    encrypted,
+                    source.getId(),
+                    (short) 0
+            ), null);
+        }
+
+        private void close() {
+            voiceServer.getSourceManager().remove(source);
+            encoder.close();
+        }
+    }
+}
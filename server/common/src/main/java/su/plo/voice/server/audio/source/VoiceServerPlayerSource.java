@@ -9,24 +9,35 @@ import su.plo.voice.api.server.audio.line.ServerSourceLine;
 import su.plo.voice.api.server.audio.source.ServerPlayerSource;
 import su.plo.voice.api.server.player.VoicePlayer;
 import su.plo.voice.api.server.player.VoiceServerPlayer;
+import su.plo.voice.api.server.socket.UdpServerConnection;
 import su.plo.voice.proto.data.audio.source.PlayerSourceInfo;
+import su.plo.voice.proto.packets.udp.clientbound.SourceAudioPacket;
+import su.plo.voice.server.audio.mixer.VoiceServerMixer;
+import su.plo.voice.server.player.PlayerPositionSnapshot;
+
+import java.util.Collection;
 
 public final class VoiceServerPlayerSource
         extends VoiceServerPositionalSource<PlayerSourceInfo>
         implements ServerPlayerSource {
 
     private final VoiceServerPlayer player;
-    private final ServerPos3d playerPosition = new ServerPos3d();
+    private final VoiceServerMixer mixer;
+    private final PlayerPositionSnapshot playerPositions;
 
     public VoiceServerPlayerSource(@NotNull PlasmoVoiceServer voiceServer,
                                    @NotNull AddonContainer addon,
                                    @NotNull ServerSourceLine line,
                                    @Nullable String codec,
                                    boolean stereo,
-                                   @NotNull VoiceServerPlayer player) {
+                                   @NotNull VoiceServerPlayer player,
+                                   @NotNull VoiceServerMixer mixer,
+                                   @NotNull PlayerPositionSnapshot playerPositions) {
         super(voiceServer, addon, player.getInstance().getUUID(), line, codec, stereo);
 
         this.player = player;
+        this.mixer = mixer;
+        this.playerPositions = playerPositions;
         addFilter(this::filterVanish);
     }
 
@@ -37,7 +48,21 @@ public final class VoiceServerPlayerSource
 
     @Override
     public @NotNull ServerPos3d getPosition() {
-        return player.getInstance().getServerPosition(playerPosition);
+        // audio is routed off the main thread, so position is taken from the last tick snapshot.
+        // world is null if the position of the player was not captured yet
+        ServerPos3d position = new ServerPos3d();
+        playerPositions.getPosition(player.getInstance().getUUID(), position);
+
+        return position;
+    }
+
+    @Override
+    protected Collection<UdpServerConnection> mix(@NotNull SourceAudioPacket packet,
+                                                  short distance,
+                                                  @NotNull Collection<UdpServerConnection> connections) {
+        if (!mixer.isRunning()) return connections;
+
+        return mixer.mix(id, getPosition(), stereo, codec, packet, distance, connections);
     }
 
     private boolean filterVanish(@NotNull VoicePlayer player) {
@@ -15,6 +15,8 @@ import su.plo.voice.proto.packets.Packet;
 import su.plo.voice.proto.packets.tcp.clientbound.SourceInfoPacket;
 import su.plo.voice.proto.packets.udp.clientbound.SourceAudioPacket;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.UUID;
 
 public abstract class VoiceServerPositionalSource<S extends SourceInfo>
@@ -23,8 +25,6 @@ public abstract class VoiceServerPositionalSource<S extends SourceInfo>
 
     private final PlasmoVoiceServer voiceServer;
 
-    private final ServerPos3d playerPosition = new ServerPos3d();
-
     public VoiceServerPositionalSource(@NotNull PlasmoVoiceServer voiceServer,
                                        @NotNull AddonContainer addon,
                                        @NotNull UUID id,
@@ -43,10 +43,12 @@ public abstract class VoiceServerPositionalSource<S extends SourceInfo>
 
     @Override
     public boolean sendAudioPacket(@NotNull SourceAudioPacket packet, short distance, @Nullable UUID activationId) {
-        ServerSourceAudioPacketEvent event = new ServerSourceAudioPacketEvent(this, packet, distance, activationId);
-        if (!voiceServer.getEventBus().call(event)) return false;
+        if (voiceServer.getEventBus().hasListeners(ServerSourceAudioPacketEvent.class)) {
+            ServerSourceAudioPacketEvent event = new ServerSourceAudioPacketEvent(this, packet, distance, activationId);
+            if (!voiceServer.getEventBus().call(event)) return false;
 
-        distance = event.getDistance();
+            distance = event.getDistance();
+        }
 
         packet.setSourceState((byte) state.get());
         if (dirty.compareAndSet(true, false))
@@ -54,19 +56,11 @@ public abstract class VoiceServerPositionalSource<S extends SourceInfo>
 
         distance *= 2;
 
-        ServerPos3d sourcePosition = getPosition();
-        double distanceSquared = distance * distance;
-
-        for (UdpServerConnection connection : voiceServer.getUdpConnectionManager().getConnections()) {
-            if (!testPlayer(connection.getPlayer())) continue;
+        Collection<UdpServerConnection> connections = getConnectionsInRange(distance);
+        connections.removeIf(connection -> !testPlayer(connection.getPlayer()));
+        connections = mix(packet, distance, connections);
 
-            connection.getPlayer().getInstance().getServerPosition(playerPosition);
-            if (sourcePosition.getWorld().equals(playerPosition.getWorld()) &&
-                    sourcePosition.distanceSquared(playerPosition) <= distanceSquared
-            ) {
-                connection.sendPacket(packet);
-            }
-        }
+        voiceServer.getUdpConnectionManager().sendPacket(packet, connections);
 
         return true;
     }
@@ -78,20 +72,30 @@ public abstract class VoiceServerPositionalSource<S extends SourceInfo>
 
         distance = (short) (event.getDistance() * 2);
 
-        ServerPos3d sourcePosition = getPosition();
-        double distanceSquared = distance * distance;
-
-        for (UdpServerConnection connection : voiceServer.getUdpConnectionManager().getConnections()) {
+        for (UdpServerConnection connection : getConnectionsInRange(distance)) {
             if (!testPlayer(connection.getPlayer())) continue;
 
-            connection.getPlayer().getInstance().getServerPosition(playerPosition);
-            if (sourcePosition.getWorld().equals(playerPosition.getWorld()) &&
-                    sourcePosition.distanceSquared(playerPosition) <= distanceSquared
-            ) {
-                connection.getPlayer().sendPacket(packet);
-            }
+            connection.getPlayer().sendPacket(packet);
         }
 
         return true;
     }
+
+    /**
+     * Takes the listeners which should receive the mixed audio instead of the packet
+     *
+     * @return listeners which should receive the packet as is
+     */
+    protected Collection<UdpServerConnection> mix(@NotNull SourceAudioPacket packet,
+                                                  short distance,
+                                                  @NotNull Collection<UdpServerConnection> connections) {
+        return connections;
+    }
+
+    private Collection<UdpServerConnection> getConnectionsInRange(short distance) {
+        ServerPos3d sourcePosition = getPosition();
+        if (sourcePosition.getWorld() == null) return new ArrayList<>();
+
+        return voiceServer.getUdpConnectionManager().getConnectionsInRange(sourcePosition, distance);
+    }
 }
@@ -14,6 +14,8 @@ import su.plo.voice.api.server.audio.source.*;
 import su.plo.voice.api.server.event.VoiceServerShutdownEvent;
 import su.plo.voice.api.server.event.player.PlayerQuitEvent;
 import su.plo.voice.api.server.player.VoiceServerPlayer;
+import su.plo.voice.server.audio.mixer.VoiceServerMixer;
+import su.plo.voice.server.player.PlayerPositionSnapshot;
 
 import java.util.Collection;
 import java.util.Map;
@@ -24,6 +26,8 @@ import java.util.UUID;
 public class VoiceServerSourceManager implements ServerSourceManager {
 
     private final PlasmoVoiceServer voiceServer;
+    private final VoiceServerMixer mixer;
+    private final PlayerPositionSnapshot playerPositions;
 
     private final Map<UUID, ServerAudioSource<?>> sourceById = Maps.newConcurrentMap();
     private final Map<UUID, ServerPlayerSource> sourceByPlayerId = Maps.newConcurrentMap();
@@ -63,7 +67,9 @@ public class VoiceServerSourceManager implements ServerSourceManager {
                     line,
                     codec,
                     stereo,
-                    player
+                    player,
+                    mixer,
+                    playerPositions
             );
 
             sourceById.put(source.getId(), source);
@@ -54,6 +54,13 @@ public final class VoiceServerConfig implements ServerConfig {
         @ConfigField(path = "public")
         private @Nullable Public hostPublic = null;
 
+        @ConfigField(path = "native_transport", comment = "Use native epoll transport for the UDP server on Linux\nWith native transport, UDP server binds one socket per thread using SO_REUSEPORT")
+        private boolean nativeTransport = false;
+
+        @ConfigField(path = "udp_threads", comment = "Number of native transport threads\n0 means number of available processors")
+        @ConfigValidator(value = UdpThreadsValidator.class, allowed = "0-256")
+        private int udpThreads = 0;
+
         @Config
         @Data
         @Accessors(fluent = true)
@@ -78,6 +85,17 @@ public final class VoiceServerConfig implements ServerConfig {
                 return port >= 0 && port <= 65535;
             }
         }
+
+        @NoArgsConstructor
+        public static class UdpThreadsValidator implements Predicate<Object> {
+
+            @Override
+            public boolean test(Object o) {
+                if (!(o instanceof Long)) return false;
+                long threads = (long) o;
+                return threads >= 0 && threads <= 256;
+            }
+        }
     }
 
     @Config
@@ -111,12 +129,18 @@ public final class VoiceServerConfig implements ServerConfig {
         @ConfigField(path = "client_mod_required")
         private boolean clientModRequired = false;
 
+        @ConfigField(path = "gcm_encryption", comment = "Use AES-GCM audio encryption with the clients which support it\nAudio of older clients is transcoded on the server when it's received and once per sent packet\nDisable it to relay audio of all clients with AES-CBC without transcoding")
+        private boolean gcmEncryption = true;
+
         @ConfigField
         private Proximity proximity = new Proximity();
 
         @ConfigField
         private Opus opus = new Opus();
 
+        @ConfigField
+        private Mixer mixer = new Mixer();
+
         @Config
         @Data
         @Accessors(fluent = true)
@@ -184,6 +208,48 @@ public final class VoiceServerConfig implements ServerConfig {
             }
         }
 
+        @Config
+        @Data
+        @Accessors(fluent = true)
+        public static class Mixer {
+
+            @ConfigField(comment = "Mix far away speakers on the server and send them to the listener as a single stream\nReduces client bandwidth and CPU usage in crowds, but increases server CPU usage")
+            private boolean enabled = false;
+
+            @ConfigField(path = "forward_distance", comment = "Speakers closer than this distance are sent to the listener as is")
+            private int forwardDistance = 16;
+
+            @ConfigField(path = "max_sources", comment = "Max number of speakers mixed for one listener, the quietest speakers are dropped")
+            @ConfigValidator(value = MaxSourcesValidator.class, allowed = "1-128")
+            private int maxSources = 16;
+
+            @ConfigField(comment = "Number of mixer worker threads")
+            @ConfigValidator(value = ThreadsValidator.class, allowed = "1-64")
+            private int threads = 2;
+
+            @NoArgsConstructor
+            public static class MaxSourcesValidator implements Predicate<Object> {
+
+                @Override
+                public boolean test(Object o) {
+                    if (!(o instanceof Long)) return false;
+                    long maxSources = (long) o;
+                    return maxSources >= 1 && maxSources <= 128;
+                }
+            }
+
+            @NoArgsConstructor
+            public static class ThreadsValidator implements Predicate<Object> {
+
+                @Override
+                public boolean test(Object o) {
+                    if (!(o instanceof Long)) return false;
+                    long threads = (long) o;
+                    return threads >= 1 && threads <= 64;
+                }
+            }
+        }
+
         @NoArgsConstructor
         public static class MtuSizeValidator implements Predicate<Object> {
 
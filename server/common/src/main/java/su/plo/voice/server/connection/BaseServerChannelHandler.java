@@ -1,6 +1,7 @@
 package su.plo.voice.server.connection;
 
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.jetbrains.annotations.NotNull;
 import su.plo.lib.api.chat.MinecraftTextComponent;
 import su.plo.voice.api.event.EventSubscribe;
@@ -16,15 +17,28 @@ import su.plo.voice.util.version.SemanticVersion;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 public abstract class BaseServerChannelHandler {
 
+    private static final int PACKET_WORKERS = 2;
+
     protected final BaseVoiceServer voiceServer;
 
     protected final Map<UUID, PlayerChannelHandler> channels = Maps.newHashMap();
 
+    // packets are handled off the main thread, packets of one player are handled in order
+    protected final ExecutorService packetWorkers = Executors.newFixedThreadPool(
+            PACKET_WORKERS,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("Voice Channel Worker #%d")
+                    .setDaemon(true)
+                    .build()
+    );
+
     private final Map<UUID, ScheduledFuture<?>> playerCheckFutures = Maps.newConcurrentMap();
 
     protected BaseServerChannelHandler(@NotNull BaseVoiceServer voiceServer) {
@@ -35,6 +49,11 @@ public abstract class BaseServerChannelHandler {
         channels.clear();
     }
 
+    public void close() {
+        clear();
+        packetWorkers.shutdown();
+    }
+
     protected void handleRegisterChannels(List<String> channels, VoiceServerPlayer player) {
         if (!voiceServer.getUdpServer().isPresent() || voiceServer.getConfig() == null) return;
 
@@ -0,0 +1,244 @@
+package su.plo.voice.server.connection;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import su.plo.voice.api.event.EventSubscribe;
+import su.plo.voice.api.server.event.player.PlayerQuitEvent;
+
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Spreads connection handshakes over time
+ * <br/>
+ * Handshakes are admitted by the token bucket, so when all players reconnect at once
+ * (UDP server restart, mass keep alive timeout) they are handled at a steady rate
+ * instead of in the same instant. Queued handshakes are admitted by stage,
+ * so players who are already in the middle of the handshake finish it first
+ */
+public final class ConnectionAdmission {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final Supplier<? extends ScheduledExecutorService> scheduler;
+    private final double permitsPerNano;
+    private final int burst;
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private final Map<UUID, Entry[]> entriesByPlayerId = Maps.newHashMap();
+
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private long lastSequence;
+    private boolean drainScheduled;
+
+    private long admitted;
+    private int maxQueueDepth;
+
+    public ConnectionAdmission(@NotNull Supplier<? extends ScheduledExecutorService> scheduler,
+                               int permitsPerSecond,
+                               int burst) {
+        this.scheduler = scheduler;
+        this.permitsPerNano = permitsPerSecond / 1_000_000_000D;
+        this.burst = burst;
+        this.tokens = burst;
+    }
+
+    /**
+     * Runs the handshake stage right away if there is a free token, otherwise queues it
+     * <br/>
+     * Queued stage of the player is replaced by the new one, so repeated requests are handled once
+     */
+    public void submit(@NotNull UUID playerId, @NotNull Stage stage, @NotNull Runnable task) {
+        synchronized (this) {
+            refill();
+
+            if (queue.isEmpty() && tokens >= 1D) {
+                tokens -= 1D;
+                admitted++;
+            } else {
+                enqueue(playerId, stage, task);
+                return;
+            }
+        }
+
+        run(task);
+    }
+
+    /**
+     * Drops queued stages of the player
+     */
+    public synchronized void remove(@NotNull UUID playerId) {
+        Entry[] entries = entriesByPlayerId.remove(playerId);
+        if (entries == null) return;
+
+        for (Entry entry : entries) {
+            if (entry != null) queue.remove(entry);
+        }
+    }
+
+    public synchronized void clear() {
+        queue.clear();
+        entriesByPlayerId.clear();
+    }
+
+    /**
+     * @return number of queued handshake stages
+     */
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return number of queued handshake stages of the stage
+     */
+    public synchronized int getQueueDepth(@NotNull Stage stage) {
+        int depth = 0;
+        for (Entry entry : queue) {
+            if (entry.stage == stage) depth++;
+        }
+
+        return depth;
+    }
+
+    /**
+     * @return max number of queued handshake stages since the creation
+     */
+    public synchronized int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * @return number of admitted handshake stages since the creation
+     */
+    public synchronized long getAdmitted() {
+        return admitted;
+    }
+
+    @EventSubscribe
+    public void onPlayerQuit(@NotNull PlayerQuitEvent event) {
+        remove(event.getPlayerId());
+    }
+
+    private void enqueue(UUID playerId, Stage stage, Runnable task) {
+        Entry[] entries = entriesByPlayerId.computeIfAbsent(playerId, (id) -> new Entry[Stage.values().length]);
+
+        Entry entry = entries[stage.ordinal()];
+        if (entry != null) {
+            entry.task = task;
+            return;
+        }
+
+        entry = new Entry(playerId, stage, task, lastSequence++);
+        entries[stage.ordinal()] = entry;
+        queue.add(entry);
+
+        if (queue.size() > maxQueueDepth) {
+            this.maxQueueDepth = queue.size();
+            if (maxQueueDepth % burst == 0) {
+                LOGGER.info("{} connection handshakes are queued", maxQueueDepth);
+            }
+        }
+
+        scheduleDrain();
+    }
+
+    private void drain() {
+        List<Runnable> tasks = Lists.newArrayList();
+
+        synchronized (this) {
+            this.drainScheduled = false;
+            refill();
+
+            while (tokens >= 1D && !queue.isEmpty()) {
+                Entry entry = queue.poll();
+
+                Entry[] entries = entriesByPlayerId.get(entry.playerId);
+                entries[entry.stage.ordinal()] = null;
+                if (isEmpty(entries)) entriesByPlayerId.remove(entry.playerId);
+
+                tokens -= 1D;
+                admitted++;
+                tasks.add(entry.task);
+            }
+
+            if (!queue.isEmpty()) scheduleDrain();
+        }
+
+        tasks.forEach(this::run);
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled) return;
+
+        long delay = (long) Math.ceil(Math.max(0D, 1D - tokens) / permitsPerNano);
+        try {
+            scheduler.get().schedule(this::drain, delay, TimeUnit.NANOSECONDS);
+            this.drainScheduled = true;
+        } catch (RejectedExecutionException ignored) {
+            // server is shutting down
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        this.tokens = Math.min(burst, tokens + (now - lastRefill) * permitsPerNano);
+        this.lastRefill = now;
+    }
+
+    private void run(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            LOGGER.error("Failed to handle connection handshake", e);
+        }
+    }
+
+    private static boolean isEmpty(Entry[] entries) {
+        for (Entry entry : entries) {
+            if (entry != null) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Handshake stages, earlier stages are admitted first
+     */
+    public enum Stage {
+        // UDP connection is established, config and player list should be sent
+        CONFIGURE,
+        // player info is received, connection packet should be sent
+        CONNECT
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+
+        private final UUID playerId;
+        private final Stage stage;
+        private final long sequence;
+        private Runnable task;
+
+        private Entry(@NotNull UUID playerId, @NotNull Stage stage, @NotNull Runnable task, long sequence) {
+            this.playerId = playerId;
+            this.stage = stage;
+            this.task = task;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(@NotNull Entry other) {
+            int compare = Integer.compare(stage.ordinal(), other.stage.ordinal());
+            return compare != 0 ? compare : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package su.plo.voice.server.connection;
 
+import com.google.common.util.concurrent.MoreExecutors;
 import org.apache.logging.log4j.LogManager;
 import org.jetbrains.annotations.NotNull;
 import su.plo.voice.api.server.PlasmoVoiceServer;
@@ -15,6 +16,7 @@ import su.plo.voice.proto.packets.tcp.clientbound.LanguagePacket;
 import su.plo.voice.proto.packets.tcp.clientbound.SourceInfoPacket;
 import su.plo.voice.proto.packets.tcp.serverbound.*;
 import su.plo.voice.server.player.BaseVoicePlayer;
+import su.plo.voice.server.player.VoiceServerPlayerEntity;
 import su.plo.voice.server.util.version.ServerVersionUtil;
 import su.plo.voice.util.version.SemanticVersion;
 
@@ -22,18 +24,45 @@ import java.security.KeyFactory;
 import java.security.spec.EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 public final class PlayerChannelHandler implements ServerPacketTcpHandler {
 
     private final PlasmoVoiceServer voiceServer;
     private final TcpServerConnectionManager tcpConnections;
+    private final VoiceServerEncryption encryption;
     private final VoiceServerPlayer player;
+    private final Executor executor;
 
     public PlayerChannelHandler(@NotNull PlasmoVoiceServer voiceServer,
-                                @NotNull VoiceServerPlayer player) {
+                                @NotNull VoiceServerEncryption encryption,
+                                @NotNull VoiceServerPlayer player,
+                                @NotNull Executor workers) {
         this.voiceServer = voiceServer;
         this.tcpConnections = voiceServer.getTcpConnectionManager();
+        this.encryption = encryption;
         this.player = player;
+        this.executor = MoreExecutors.newSequentialExecutor(workers);
+    }
+
+    /**
+     * Queues the packet to the voice channel workers
+     * <br/>
+     * Packets of the player are handled in the order they were received
+     */
+    public void queuePacket(Packet<PacketHandler> packet) {
+        try {
+            executor.execute(() -> {
+                try {
+                    handlePacket(packet);
+                } catch (Exception e) {
+                    LogManager.getLogger().error("Failed to handle packet {} from {}", packet, player, e);
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+            // channel handler is closed
+        }
     }
 
     public void handlePacket(Packet<PacketHandler> packet) {
@@ -69,6 +98,13 @@ public final class PlayerChannelHandler implements ServerPacketTcpHandler {
             return;
         }
 
+        ((BaseVoicePlayer<?>) player).setEncryption(
+                encryption.negotiate(packet.getEncryptionAlgorithms())
+        );
+        if (player instanceof VoiceServerPlayerEntity) {
+            ((VoiceServerPlayerEntity) player).setCapabilities(packet.getCapabilities());
+        }
+
         tcpConnections.connect(player);
     }
 
@@ -0,0 +1,225 @@
+package su.plo.voice.server.connection;
+
+import com.google.common.collect.Maps;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Immutable per-world grid of positioned values bucketed by chunk columns
+ * <br/>
+ * Grid is built once from a position snapshot and can be queried concurrently
+ */
+public final class ProximityGrid<T> {
+
+    private static final int CELL_SHIFT = 4; // 16 blocks, same as chunk
+    private static final ProximityGrid<?> EMPTY = new ProximityGrid<>(Collections.emptyMap());
+
+    @SuppressWarnings("unchecked")
+    public static <T> ProximityGrid<T> empty() {
+        return (ProximityGrid<T>) EMPTY;
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    private final Map<Object, WorldCells<T>> worlds;
+
+    private ProximityGrid(@NotNull Map<Object, WorldCells<T>> worlds) {
+        this.worlds = worlds;
+    }
+
+    /**
+     * Calls the consumer for every value in the world within the distance of the position
+     */
+    public void forEachInRange(@NotNull Object world, double x, double y, double z,
+                               double distance, @NotNull Consumer<T> consumer) {
+        WorldCells<T> cells = worlds.get(world);
+        if (cells == null) return;
+
+        cells.forEachInRange(x, y, z, distance, consumer);
+    }
+
+    /**
+     * Gets the values in the world within the distance of the position
+     */
+    public List<T> getInRange(@NotNull Object world, double x, double y, double z, double distance) {
+        List<T> values = new ArrayList<>();
+        forEachInRange(world, x, y, z, distance, values::add);
+        return values;
+    }
+
+    public int size() {
+        int size = 0;
+        for (WorldCells<T> cells : worlds.values()) {
+            size += cells.values.length;
+        }
+        return size;
+    }
+
+    private static long cellKey(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+
+    private static int cell(double coordinate) {
+        return ((int) Math.floor(coordinate)) >> CELL_SHIFT;
+    }
+
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    public static final class Builder<T> {
+
+        private final Map<Object, List<Entry<T>>> entries = Maps.newHashMap();
+
+        private Builder() {
+        }
+
+        public Builder<T> add(@NotNull Object world, double x, double y, double z, @NotNull T value) {
+            entries.computeIfAbsent(world, (key) -> new ArrayList<>())
+                    .add(new Entry<>(cellKey(cell(x), cell(z)), x, y, z, value));
+            return this;
+        }
+
+        public ProximityGrid<T> build() {
+            if (entries.isEmpty()) return empty();
+
+            Map<Object, WorldCells<T>> worlds = Maps.newHashMapWithExpectedSize(entries.size());
+            entries.forEach((world, worldEntries) -> worlds.put(world, new WorldCells<>(worldEntries)));
+
+            return new ProximityGrid<>(worlds);
+        }
+    }
+
+    private static final class Entry<T> {
+
+        private final long cell;
+        private final double x;
+        private final double y;
+        private final double z;
+        private final T value;
+
+        private Entry(long cell, double x, double y, double z, T value) {
+            this.cell = cell;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.value = value;
+        }
+    }
+
+    private static final class WorldCells<T> {
+
+        // entries sorted by cell, each occupied cell is a [start; end) range of these arrays
+        private final double[] xs;
+        private final double[] ys;
+        private final double[] zs;
+        private final Object[] values;
+
+        // open addressing table of occupied cells
+        private final int mask;
+        private final long[] keys;
+        private final int[] starts;
+        private final int[] ends;
+        private final boolean[] used;
+
+        private WorldCells(@NotNull List<Entry<T>> entries) {
+            entries.sort((a, b) -> Long.compare(a.cell, b.cell));
+
+            int size = entries.size();
+            this.xs = new double[size];
+            this.ys = new double[size];
+            this.zs = new double[size];
+            this.values = new Object[size];
+
+            int cellCount = 0;
+            for (int i = 0; i < size; i++) {
+                Entry<T> entry = entries.get(i);
+                xs[i] = entry.x;
+                ys[i] = entry.y;
+                zs[i] = entry.z;
+                values[i] = entry.value;
+
+                if (i == 0 || entries.get(i - 1).cell != entry.cell) cellCount++;
+            }
+
+            int capacity = Integer.highestOneBit(Math.max(cellCount, 1) * 2 - 1) << 1;
+            this.mask = capacity - 1;
+            this.keys = new long[capacity];
+            this.starts = new int[capacity];
+            this.ends = new int[capacity];
+            this.used = new boolean[capacity];
+
+            int start = 0;
+            for (int i = 1; i <= size; i++) {
+                if (i < size && entries.get(i).cell == entries.get(start).cell) continue;
+
+                long key = entries.get(start).cell;
+                int slot = mix(key) & mask;
+                while (used[slot]) slot = (slot + 1) & mask;
+
+                used[slot] = true;
+                keys[slot] = key;
+                starts[slot] = start;
+                ends[slot] = i;
+
+                start = i;
+            }
+        }
+
+        private void forEachInRange(double x, double y, double z, double distance, Consumer<T> consumer) {
+            double distanceSquared = distance * distance;
+
+            int minX = cell(x - distance);
+            int maxX = cell(x + distance);
+            int minZ = cell(z - distance);
+            int maxZ = cell(z + distance);
+
+            long cellsInRange = ((long) maxX - minX + 1) * ((long) maxZ - minZ + 1);
+            if (cellsInRange >= values.length) {
+                // probing every cell in range costs more than checking every entry
+                forEachInRange(0, values.length, x, y, z, distanceSquared, consumer);
+                return;
+            }
+
+            for (int cellX = minX; cellX <= maxX; cellX++) {
+                for (int cellZ = minZ; cellZ <= maxZ; cellZ++) {
+                    long key = cellKey(cellX, cellZ);
+
+                    int slot = mix(key) & mask;
+                    while (used[slot]) {
+                        if (keys[slot] == key) {
+                            forEachInRange(starts[slot], ends[slot], x, y, z, distanceSquared, consumer);
+                            break;
+                        }
+                        slot = (slot + 1) & mask;
+                    }
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void forEachInRange(int start, int end,
+                                    double x, double y, double z,
+                                    double distanceSquared, Consumer<T> consumer) {
+            for (int i = start; i < end; i++) {
+                double xDiff = xs[i] - x;
+                double yDiff = ys[i] - y;
+                double zDiff = zs[i] - z;
+
+                if ((xDiff * xDiff) + (yDiff * yDiff) + (zDiff * zDiff) <= distanceSquared) {
+                    consumer.accept((T) values[i]);
+                }
+            }
+        }
+    }
+}
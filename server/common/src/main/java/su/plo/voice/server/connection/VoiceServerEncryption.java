@@ -0,0 +1,205 @@
+package su.plo.voice.server.connection;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import su.plo.voice.api.encryption.Encryption;
+import su.plo.voice.api.encryption.EncryptionException;
+import su.plo.voice.api.server.PlasmoVoiceServer;
+import su.plo.voice.api.server.player.VoicePlayer;
+import su.plo.voice.encryption.AudioTranscoder;
+import su.plo.voice.proto.packets.Packet;
+import su.plo.voice.proto.packets.udp.clientbound.SelfAudioInfoPacket;
+import su.plo.voice.proto.packets.udp.clientbound.SourceAudioPacket;
+import su.plo.voice.proto.packets.udp.serverbound.PlayerAudioPacket;
+import su.plo.voice.server.player.BaseVoicePlayer;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Audio encryption negotiated with the clients
+ * <br/>
+ * Clients which support AES-GCM use it if it's enabled in the config, other clients use AES-CBC.
+ * Audio is relayed encrypted with AES-GCM if it's enabled and with AES-CBC otherwise.
+ * Audio of the clients using the other algorithm is transcoded: decrypted and encrypted again
+ * once when it's received from them and once per fan-out before it's sent to them.
+ * That's two AES operations per packet on the relay path for these clients,
+ * so the number of transcoded packets is counted, see {@link #getTranscodedPackets()},
+ * and AES-GCM can be disabled to relay the audio of all clients without transcoding
+ */
+public final class VoiceServerEncryption {
+
+    public static final String AES_CBC = "AES/CBC/PKCS5Padding";
+    public static final String AES_GCM = "AES/GCM/NoPadding";
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final PlasmoVoiceServer voiceServer;
+
+    private final LongAdder transcodedPackets = new LongAdder();
+
+    private volatile boolean gcmEnabled = true;
+
+    // key can be replaced by the proxy and AES-GCM can be disabled by the config reload,
+    // so encryptions are recreated when they are changed
+    private volatile Keyed keyed;
+
+    public VoiceServerEncryption(@NotNull PlasmoVoiceServer voiceServer) {
+        this.voiceServer = voiceServer;
+    }
+
+    /**
+     * Selects the encryption algorithm from the algorithms supported by the client
+     */
+    public @NotNull String negotiate(@NotNull Collection<String> algorithms) {
+        return gcmEnabled && algorithms.contains(AES_GCM)
+                ? AES_GCM
+                : AES_CBC;
+    }
+
+    /**
+     * Enables AES-GCM for the clients which support it, set from the config on load and reload
+     * <br/>
+     * Players keep the algorithm negotiated on join, so audio is transcoded for them if it differs
+     */
+    public void setGcmEnabled(boolean gcmEnabled) {
+        this.gcmEnabled = gcmEnabled;
+    }
+
+    /**
+     * @return the encryption used for relayed audio
+     */
+    public @NotNull Encryption getEncryption() {
+        return getKeyed().relayed;
+    }
+
+    /**
+     * @return the encryption algorithm negotiated with the player
+     */
+    public @NotNull String getAlgorithm(@NotNull VoicePlayer player) {
+        if (player instanceof BaseVoicePlayer) {
+            String algorithm = ((BaseVoicePlayer<?>) player).getEncryption();
+            if (algorithm != null) return algorithm;
+        }
+
+        return AES_CBC;
+    }
+
+    /**
+     * @return true if the player uses the other algorithm than relayed audio, so audio is transcoded for them
+     */
+    public boolean isTranscoded(@NotNull VoicePlayer player) {
+        return !getKeyed().relayedAlgorithm.equals(getAlgorithm(player));
+    }
+
+    /**
+     * @return the number of audio packets transcoded since the start
+     */
+    public long getTranscodedPackets() {
+        return transcodedPackets.sum();
+    }
+
+    /**
+     * Transcodes audio received from the player to relayed encryption, see {@link #isTranscoded(VoicePlayer)}
+     *
+     * @return the packet with transcoded data or empty if data can't be decrypted
+     */
+    public Optional<PlayerAudioPacket> fromPlayer(@NotNull PlayerAudioPacket packet) {
+        return transcode(packet.getData(), false).map(data -> new PlayerAudioPacket(
+                packet.getSequenceNumber(),
+                data,
+                packet.getActivationId(),
+                packet.getDistance(),
+                packet.isStereo()
+        ));
+    }
+
+    /**
+     * Transcodes relayed audio for the player, see {@link #isTranscoded(VoicePlayer)}
+     *
+     * @return the packet with transcoded data, the same packet if it doesn't contain audio
+     * or empty if data can't be decrypted
+     */
+    public Optional<Packet<?>> toPlayer(@NotNull Packet<?> packet) {
+        if (packet instanceof SourceAudioPacket) {
+            SourceAudioPacket audioPacket = (SourceAudioPacket) packet;
+
+            return transcode(audioPacket.getData(), true).map(data -> new SourceAudioPacket(
+                    audioPacket.getSequenceNumber(),
+                    audioPacket.getSourceState(),
+                    data,
+                    audioPacket.getSourceId(),
+                    audioPacket.getDistance()
+            ));
+        } else if (packet instanceof SelfAudioInfoPacket) {
+            SelfAudioInfoPacket infoPacket = (SelfAudioInfoPacket) packet;
+            if (!infoPacket.getData().isPresent()) return Optional.of(packet);
+
+            return transcode(infoPacket.getData().get(), true).map(data -> new SelfAudioInfoPacket(
+                    infoPacket.getSourceId(),
+                    infoPacket.getSequenceNumber(),
+                    data,
+                    infoPacket.getDistance()
+            ));
+        }
+
+        return Optional.of(packet);
+    }
+
+    private Optional<byte[]> transcode(byte[] data, boolean toPlayer) {
+        Keyed keyed = getKeyed();
+        Encryption from = toPlayer ? keyed.relayed : keyed.transcoded;
+        Encryption to = toPlayer ? keyed.transcoded : keyed.relayed;
+
+        try {
+            byte[] transcoded = AudioTranscoder.transcode(from, to, data);
+            transcodedPackets.increment();
+            return Optional.of(transcoded);
+        } catch (EncryptionException e) {
+            LOGGER.debug("Failed to transcode audio: {}", e.toString());
+            return Optional.empty();
+        }
+    }
+
+    private Keyed getKeyed() {
+        byte[] key = voiceServer.getConfig().voice().aesEncryptionKey();
+        boolean gcm = gcmEnabled;
+
+        Keyed keyed = this.keyed;
+        if (keyed == null || keyed.key != key || keyed.gcm != gcm) {
+            Encryption gcmEncryption = voiceServer.getEncryptionManager().create(AES_GCM, key);
+            Encryption cbcEncryption = voiceServer.getEncryptionManager().create(AES_CBC, key);
+
+            keyed = gcm
+                    ? new Keyed(key, true, AES_GCM, gcmEncryption, cbcEncryption)
+                    : new Keyed(key, false, AES_CBC, cbcEncryption, gcmEncryption);
+            this.keyed = keyed;
+        }
+
+        return keyed;
+    }
+
+    private static final class Keyed {
+
+        private final byte[] key;
+        private final boolean gcm;
+        private final String relayedAlgorithm;
+        private final Encryption relayed;
+        // encryption of the clients using the other algorithm
+        private final Encryption transcoded;
+
+        private Keyed(byte[] key,
+                      boolean gcm,
+                      @NotNull String relayedAlgorithm,
+                      @NotNull Encryption relayed,
+                      @NotNull Encryption transcoded) {
+            this.key = key;
+            this.gcm = gcm;
+            this.relayedAlgorithm = relayedAlgorithm;
+            this.relayed = relayed;
+            this.transcoded = transcoded;
+        }
+    }
+}
@@ -1,35 +1,83 @@
 package su.plo.voice.server.connection;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import su.plo.voice.api.event.EventSubscribe;
+import su.plo.voice.api.server.audio.capture.ServerActivation;
+import su.plo.voice.api.server.audio.line.ServerSourceLine;
 import su.plo.voice.api.server.config.ServerConfig;
 import su.plo.voice.api.server.connection.TcpServerConnectionManager;
+import su.plo.voice.api.server.event.connection.UdpDisconnectEvent;
 import su.plo.voice.api.server.player.VoiceServerPlayer;
+import su.plo.voice.api.server.socket.UdpServerConnection;
 import su.plo.voice.proto.data.audio.capture.CaptureInfo;
 import su.plo.voice.proto.data.audio.capture.VoiceActivation;
 import su.plo.voice.proto.data.audio.codec.CodecInfo;
+import su.plo.voice.proto.data.audio.line.VoiceSourceLine;
 import su.plo.voice.proto.data.encryption.EncryptionInfo;
 import su.plo.voice.proto.packets.Packet;
 import su.plo.voice.proto.packets.tcp.clientbound.*;
 import su.plo.voice.server.BaseVoiceServer;
+import su.plo.voice.server.player.PlayerInfoSync;
+import su.plo.voice.server.player.VoiceServerPlayerEntity;
 
 import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 public final class VoiceTcpConnectionManager implements TcpServerConnectionManager {
 
+    // player info changes are sent to the receiver at most once per interval
+    private static final long PLAYER_INFO_FLUSH_INTERVAL_MS = 100L;
+
+    private static final int CONFIG_WORKERS = 2;
+
+    // cipher instances are not thread-safe, but can be reinitialized instead of creating new ones
+    private static final ThreadLocal<Cipher> RSA_CIPHERS = ThreadLocal.withInitial(VoiceTcpConnectionManager::createRsaCipher);
+
     private final BaseVoiceServer voiceServer;
+    private final PlayerInfoSync playerInfoSync;
 
-    private final Object playerStateLock = new Object();
+    // config packets are built off the netty and main threads,
+    // so the reconnect of all players doesn't block them with RSA encryption
+    private ThreadPoolExecutor configWorkers;
+    // last config packet send of the player, next one is chained to it to keep the order
+    private final Map<UUID, CompletableFuture<Void>> configSends = Maps.newConcurrentMap();
+    private volatile ConfigTemplate configTemplate;
 
     public VoiceTcpConnectionManager(@NotNull BaseVoiceServer voiceServer) {
         this.voiceServer = voiceServer;
+        this.playerInfoSync = new PlayerInfoSync(
+                voiceServer::getBackgroundExecutor,
+                PLAYER_INFO_FLUSH_INTERVAL_MS,
+                (player) -> player instanceof VoiceServerPlayerEntity &&
+                        ((VoiceServerPlayerEntity) player).hasCapability(PlayerInfoDeltaPacket.CAPABILITY)
+        );
+    }
+
+    /**
+     * Shuts down the config workers, they are created again on the next config packet
+     */
+    public synchronized void close() {
+        if (configWorkers == null) return;
+
+        configWorkers.shutdown();
+        this.configWorkers = null;
     }
 
     @Override
@@ -44,6 +92,16 @@ public final class VoiceTcpConnectionManager implements TcpServerConnectionManag
     public void connect(@NotNull VoiceServerPlayer player) {
         if (!voiceServer.getUdpServer().isPresent() || voiceServer.getConfig() == null) return;
 
+        voiceServer.getConnectionAdmission().submit(
+                player.getInstance().getUUID(),
+                ConnectionAdmission.Stage.CONNECT,
+                () -> sendConnection(player)
+        );
+    }
+
+    private void sendConnection(@NotNull VoiceServerPlayer player) {
+        if (!voiceServer.getUdpServer().isPresent() || voiceServer.getConfig() == null) return;
+
         UUID secret = voiceServer.getUdpConnectionManager()
                 .getSecretByPlayerId(player.getInstance().getUUID());
 
@@ -77,28 +135,63 @@ public final class VoiceTcpConnectionManager implements TcpServerConnectionManag
 
     @Override
     public void sendConfigInfo(@NotNull VoiceServerPlayer receiver) {
-        if (!voiceServer.getUdpServer().isPresent() || voiceServer.getConfig() == null) return;
+        sendConfigInfoAsync(receiver);
+    }
 
-        ServerConfig config = voiceServer.getConfig();
-        ServerConfig.Voice voiceConfig = config.voice();
-        ServerConfig.Voice.Opus opusConfig = voiceConfig.opus();
+    @Override
+    public CompletableFuture<Void> sendConfigInfoAsync(@NotNull VoiceServerPlayer receiver) {
+        if (!voiceServer.getUdpServer().isPresent() || voiceServer.getConfig() == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        UUID playerId = receiver.getInstance().getUUID();
+        // config resent by the reload can't overtake the config of the handshake.
+        // rejected execution on shutdown completes the future exceptionally
+        CompletableFuture<Void> future = configSends.compute(playerId, (id, previous) ->
+                (previous != null ? previous.exceptionally((e) -> null) : CompletableFuture.<Void>completedFuture(null))
+                        .thenRunAsync(() -> sendConfigPacket(receiver), getConfigWorkers())
+        );
+        future.whenComplete((result, e) -> configSends.remove(playerId, future));
+
+        return future;
+    }
+
+    private synchronized ThreadPoolExecutor getConfigWorkers() {
+        if (configWorkers == null) {
+            this.configWorkers = new ThreadPoolExecutor(
+                    CONFIG_WORKERS,
+                    CONFIG_WORKERS,
+                    60L,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("Voice Config Worker #%d")
+                            .setDaemon(true)
+                            .build()
+            );
+            configWorkers.allowCoreThreadTimeOut(true);
+        }
+
+        return configWorkers;
+    }
 
-        Map<String, String> codecParams = Maps.newHashMap();
-        codecParams.put("mode", opusConfig.mode());
-        codecParams.put("bitrate", String.valueOf(opusConfig.bitrate()));
+    private void sendConfigPacket(@NotNull VoiceServerPlayer receiver) {
+        ServerConfig config = voiceServer.getConfig();
+        if (config == null) return;
 
+        ConfigTemplate template = getConfigTemplate(config);
 
         EncryptionInfo aesEncryption;
         try {
             PublicKey publicKey = receiver.getPublicKey()
                     .orElseThrow(() -> new IllegalStateException(receiver + " has empty public key"));
 
-            Cipher encryptCipher = Cipher.getInstance("RSA");
+            Cipher encryptCipher = RSA_CIPHERS.get();
             encryptCipher.init(Cipher.ENCRYPT_MODE, publicKey);
 
             aesEncryption = new EncryptionInfo(
-                    "AES/CBC/PKCS5Padding",
-                    encryptCipher.doFinal(voiceConfig.aesEncryptionKey())
+                    voiceServer.getAudioEncryption().getAlgorithm(receiver),
+                    encryptCipher.doFinal(config.voice().aesEncryptionKey())
             );
         } catch (Exception e) {
             LogManager.getLogger().error("Failed to encode encryption data: {}", e.toString());
@@ -106,60 +199,113 @@ public final class VoiceTcpConnectionManager implements TcpServerConnectionManag
             return;
         }
 
+        Set<VoiceSourceLine> sourceLines = Sets.newHashSet();
+        for (ServerSourceLine line : voiceServer.getSourceLineManager().getLines()) {
+            sourceLines.add(line.getPlayerSourceLine(receiver));
+        }
+
+        Set<VoiceActivation> activations = Sets.newHashSet();
+        for (ServerActivation activation : voiceServer.getActivationManager().getActivations()) {
+            if (activation.checkPermissions(receiver)) activations.add((VoiceActivation) activation);
+        }
+
         receiver.sendPacket(new ConfigPacket(
-                UUID.fromString(config.serverId()),
-                new CaptureInfo(
-                        voiceConfig.sampleRate(),
-                        voiceConfig.mtuSize(),
-                        new CodecInfo("opus", codecParams)
-                ),
+                template.serverId,
+                template.captureInfo,
                 aesEncryption,
-                voiceServer.getSourceLineManager()
-                        .getLines()
-                        .stream()
-                        .map(line -> line.getPlayerSourceLine(receiver))
-                        .collect(Collectors.toSet()),
-                voiceServer.getActivationManager()
-                        .getActivations()
-                        .stream()
-                        .filter(activation -> activation.checkPermissions(receiver))
-                        .map(activation -> (VoiceActivation) activation) // waytoodank
-                        .collect(Collectors.toSet()),
+                sourceLines,
+                activations,
                 getPlayerPermissions(receiver)
         ));
     }
 
+    private ConfigTemplate getConfigTemplate(@NotNull ServerConfig config) {
+        // config is replaced on reload, so the template is rebuilt once after each reload
+        ConfigTemplate template = this.configTemplate;
+        if (template == null || template.config != config) {
+            template = new ConfigTemplate(config);
+            this.configTemplate = template;
+        }
+
+        return template;
+    }
+
     @Override
     public void sendPlayerList(@NotNull VoiceServerPlayer receiver) {
-        synchronized (playerStateLock) {
-            receiver.sendPacket(new PlayerListPacket(
-                    voiceServer.getUdpConnectionManager().getConnections()
-                            .stream()
-                            .filter(connection -> receiver.getInstance().canSee(connection.getPlayer().getInstance()))
-                            .map(connection -> connection.getPlayer().getInfo())
-                            .collect(Collectors.toList())
-            ));
+        List<UUID> playerIds = Lists.newArrayList();
+        for (UdpServerConnection connection : voiceServer.getUdpConnectionManager().getConnections()) {
+            VoiceServerPlayer player = connection.getPlayer();
+            if (!receiver.getInstance().canSee(player.getInstance())) continue;
+
+            playerInfoSync.publish(player.getInfo());
+            playerIds.add(player.getInstance().getUUID());
         }
+
+        playerInfoSync.sendList(receiver, playerIds);
     }
 
     @Override
     public void broadcastPlayerInfoUpdate(@NotNull VoiceServerPlayer player) {
-        synchronized (playerStateLock) {
-            broadcast(new PlayerInfoUpdatePacket(
-                    player.getInfo()
-            ), (player1) -> player1.getInstance().canSee(player.getInstance()));
+        // receivers which already have the latest info of the player are skipped on flush
+        playerInfoSync.publish(player.getInfo());
+
+        UUID playerId = player.getInstance().getUUID();
+        for (VoiceServerPlayer receiver : voiceServer.getPlayerManager().getPlayers()) {
+            if (receiver.hasVoiceChat() && receiver.getInstance().canSee(player.getInstance())) {
+                playerInfoSync.markDirty(receiver, playerId);
+            }
         }
     }
 
+    @EventSubscribe
+    public void onUdpDisconnect(@NotNull UdpDisconnectEvent event) {
+        playerInfoSync.remove(event.getConnection().getPlayer().getInstance().getUUID());
+    }
+
     private Map<String, Boolean> getPlayerPermissions(@NotNull VoiceServerPlayer player) {
         Map<String, Boolean> permissions = Maps.newHashMap();
 
         voiceServer.getPlayerManager()
                 .getSynchronizedPermissions()
                 .forEach(permission ->
-                        permissions.put(permission, player.getInstance().hasPermission(permission))
+                        permissions.put(permission, player.hasPermission(permission))
                 );
 
         return permissions;
     }
+
+    private static Cipher createRsaCipher() {
+        try {
+            return Cipher.getInstance("RSA");
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Parts of the config packet which are the same for all players
+     */
+    private static final class ConfigTemplate {
+
+        private final ServerConfig config;
+        private final UUID serverId;
+        private final CaptureInfo captureInfo;
+
+        private ConfigTemplate(@NotNull ServerConfig config) {
+            ServerConfig.Voice voiceConfig = config.voice();
+            ServerConfig.Voice.Opus opusConfig = voiceConfig.opus();
+
+            Map<String, String> codecParams = Maps.newHashMap();
+            codecParams.put("mode", opusConfig.mode());
+            codecParams.put("bitrate", String.valueOf(opusConfig.bitrate()));
+
+            this.config = config;
+            this.serverId = UUID.fromString(config.serverId());
+            this.captureInfo = new CaptureInfo(
+                    voiceConfig.sampleRate(),
+                    voiceConfig.mtuSize(),
+                    new CodecInfo("opus", codecParams)
+            );
+        }
+    }
 }
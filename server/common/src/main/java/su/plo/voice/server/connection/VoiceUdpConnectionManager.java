@@ -1,58 +1,69 @@
 package su.plo.voice.server.connection;
 
 import com.google.common.collect.Maps;
-import lombok.AllArgsConstructor;
+import com.google.common.collect.Sets;
+import io.netty.buffer.ByteBufAllocator;
+import lombok.RequiredArgsConstructor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import su.plo.lib.api.server.world.ServerPos3d;
 import su.plo.voice.api.event.EventSubscribe;
 import su.plo.voice.api.server.PlasmoVoiceServer;
 import su.plo.voice.api.server.connection.UdpServerConnectionManager;
 import su.plo.voice.api.server.event.connection.UdpConnectEvent;
 import su.plo.voice.api.server.event.connection.UdpConnectedEvent;
 import su.plo.voice.api.server.event.connection.UdpDisconnectEvent;
+import su.plo.voice.api.server.event.connection.UdpPacketBatchSendEvent;
 import su.plo.voice.api.server.event.player.PlayerQuitEvent;
 import su.plo.voice.api.server.player.VoiceServerPlayer;
+import su.plo.voice.api.server.socket.UdpConnection;
 import su.plo.voice.api.server.socket.UdpServerConnection;
 import su.plo.voice.proto.packets.Packet;
 import su.plo.voice.proto.packets.udp.clientbound.ClientPacketUdpHandler;
+import su.plo.voice.server.player.PlayerPositionSnapshot;
+import su.plo.voice.server.socket.NettyUdpConnection;
+import su.plo.voice.socket.NettyEncodedPacketUdp;
+import su.plo.voice.socket.UdpSessionTable;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.function.Predicate;
 
-@AllArgsConstructor
+@RequiredArgsConstructor
 public final class VoiceUdpConnectionManager implements UdpServerConnectionManager {
 
     private static final Logger LOGGER = LogManager.getLogger();
 
     private final PlasmoVoiceServer server;
+    private final VoiceServerEncryption encryption;
+    private final PlayerPositionSnapshot playerPositions;
 
-    private final Map<UUID, UUID> secretByPlayerId = Maps.newConcurrentMap();
-    private final Map<UUID, UUID> playerIdBySecret = Maps.newConcurrentMap();
+    private final UdpSessionTable<UdpServerConnection> sessions = new UdpSessionTable<>();
+    private final Map<UUID, UdpSessionTable.Session<UdpServerConnection>> sessionByPlayerId = Maps.newConcurrentMap();
+    // secrets of the connections added with the secrets not allocated by the session table
+    private final Set<UUID> foreignSecrets = Sets.newConcurrentHashSet();
 
     private final Map<UUID, UdpServerConnection> connectionBySecret = Maps.newConcurrentMap();
     private final Map<UUID, UdpServerConnection> connectionByPlayerId = Maps.newConcurrentMap();
 
+    private volatile ProximityGrid<UdpServerConnection> proximityGrid = ProximityGrid.empty();
+
     @Override
     public Optional<UUID> getPlayerIdBySecret(UUID secret) {
-        return Optional.ofNullable(playerIdBySecret.get(secret));
+        return Optional.ofNullable(sessions.get(secret))
+                .map(UdpSessionTable.Session::getPlayerId);
     }
 
     @Override
     public UUID getSecretByPlayerId(UUID playerUUID) {
-        if (secretByPlayerId.containsKey(playerUUID)) {
-            return secretByPlayerId.get(playerUUID);
-        }
-
-        UUID secret = UUID.randomUUID();
-        secretByPlayerId.put(playerUUID, secret);
-        playerIdBySecret.put(secret, playerUUID);
-
-        return secret;
+        return sessionByPlayerId.computeIfAbsent(playerUUID, sessions::allocate).getSecret();
     }
 
     @Override
@@ -67,6 +78,13 @@ public final class VoiceUdpConnectionManager implements UdpServerConnectionManag
         if (bySecret != null) bySecret.disconnect();
         if (byPlayer != null) byPlayer.disconnect();
 
+        UdpSessionTable.Session<UdpServerConnection> session = sessions.get(connection.getSecret());
+        if (session != null) {
+            session.setConnection(connection);
+        } else {
+            foreignSecrets.add(connection.getSecret());
+        }
+
         server.getEventBus().call(new UdpConnectedEvent(connection));
     }
 
@@ -102,6 +120,29 @@ public final class VoiceUdpConnectionManager implements UdpServerConnectionManag
         return Optional.ofNullable(connectionBySecret.get(secret));
     }
 
+    /**
+     * Gets the connection by the secret halves without allocations
+     * <br/>
+     * Only connections with the secrets from {@link #getSecretByPlayerId(UUID)} are found,
+     * connections with other secrets should be looked up by {@link #getConnectionBySecret(UUID)}
+     */
+    public @Nullable UdpServerConnection getConnectionBySecret(long secretMostSignificantBits, long secretLeastSignificantBits) {
+        UdpSessionTable.Session<UdpServerConnection> session = sessions.get(secretMostSignificantBits, secretLeastSignificantBits);
+        return session != null ? session.getConnection() : null;
+    }
+
+    /**
+     * Checks if the secret belongs to the session or to the connection without allocations
+     * <br/>
+     * Used to drop unauthenticated packets before decoding
+     */
+    public boolean isKnownSecret(long secretMostSignificantBits, long secretLeastSignificantBits) {
+        if (sessions.get(secretMostSignificantBits, secretLeastSignificantBits) != null) return true;
+
+        return !foreignSecrets.isEmpty() &&
+                foreignSecrets.contains(new UUID(secretMostSignificantBits, secretLeastSignificantBits));
+    }
+
     @Override
     public Optional<UdpServerConnection> getConnectionByPlayerId(@NotNull UUID playerId) {
         return Optional.ofNullable(connectionByPlayerId.get(playerId));
@@ -112,6 +153,39 @@ public final class VoiceUdpConnectionManager implements UdpServerConnectionManag
         return connectionByPlayerId.values();
     }
 
+    @Override
+    public Collection<UdpServerConnection> getConnectionsInRange(@NotNull ServerPos3d position, double distance) {
+        Collection<UdpServerConnection> connections = proximityGrid.getInRange(
+                position.getWorld(),
+                position.getX(),
+                position.getY(),
+                position.getZ(),
+                distance
+        );
+        // connections removed since the last grid update are still in the grid
+        connections.removeIf(connection -> !connection.isConnected());
+
+        return connections;
+    }
+
+    /**
+     * Rebuilds the proximity grid from the last player positions snapshot
+     * <br/>
+     * Should be called once per tick after the snapshot is captured
+     */
+    public void updateProximityGrid() {
+        ProximityGrid.Builder<UdpServerConnection> builder = ProximityGrid.builder();
+
+        playerPositions.forEach((playerId, position) -> {
+            UdpServerConnection connection = connectionByPlayerId.get(playerId);
+            if (connection == null) return;
+
+            builder.add(position.getWorld(), position.getX(), position.getY(), position.getZ(), connection);
+        });
+
+        this.proximityGrid = builder.build();
+    }
+
     @Override
     public void clearConnections() {
         getConnections().forEach(this::removeConnection);
@@ -120,19 +194,99 @@ public final class VoiceUdpConnectionManager implements UdpServerConnectionManag
     private void disconnect(UdpServerConnection connection) {
         connection.disconnect();
 
-        secretByPlayerId.remove(connection.getPlayer().getInstance().getUUID());
-        playerIdBySecret.remove(connection.getSecret());
+        UdpSessionTable.Session<UdpServerConnection> session = sessionByPlayerId.remove(connection.getPlayer().getInstance().getUUID());
+        if (session != null) sessions.free(session);
+        foreignSecrets.remove(connection.getSecret());
 
         LOGGER.info("{} disconnected", connection.getPlayer());
         server.getEventBus().call(new UdpDisconnectEvent(connection));
     }
 
+    @Override
+    public void sendPacket(@NotNull Packet<?> packet, @NotNull Collection<? extends UdpConnection> connections) {
+        if (connections.isEmpty()) return;
+
+        Optional<NettyEncodedPacketUdp> encoded = NettyEncodedPacketUdp.encode(packet, ByteBufAllocator.DEFAULT);
+        if (!encoded.isPresent()) return;
+
+        List<NettyUdpConnection> transcodedConnections = null;
+        try {
+            for (UdpConnection connection : connections) {
+                if (!(connection instanceof NettyUdpConnection)) {
+                    connection.sendPacket(packet);
+                    continue;
+                }
+
+                NettyUdpConnection nettyConnection = (NettyUdpConnection) connection;
+                if (nettyConnection.isTranscodedEncryption()) {
+                    if (transcodedConnections == null) transcodedConnections = new ArrayList<>();
+                    transcodedConnections.add(nettyConnection);
+                    continue;
+                }
+
+                nettyConnection.sendPacket(encoded.get());
+            }
+
+            if (transcodedConnections != null) sendTranscodedPacket(packet, encoded.get(), transcodedConnections);
+        } finally {
+            encoded.get().release();
+        }
+
+        if (server.getEventBus().hasListeners(UdpPacketBatchSendEvent.class)) {
+            server.getEventBus().call(new UdpPacketBatchSendEvent(packet, toServerConnections(connections)));
+        }
+    }
+
+    /**
+     * Sends the packet to the clients with the other encryption than relayed audio,
+     * audio is transcoded only once for all of them
+     */
+    private void sendTranscodedPacket(@NotNull Packet<?> packet,
+                                      @NotNull NettyEncodedPacketUdp encoded,
+                                      @NotNull List<NettyUdpConnection> connections) {
+        Optional<Packet<?>> transcodedPacket = encryption.toPlayer(packet);
+        if (!transcodedPacket.isPresent()) return;
+
+        if (transcodedPacket.get() == packet) {
+            connections.forEach(connection -> connection.sendPacket(encoded));
+            return;
+        }
+
+        Optional<NettyEncodedPacketUdp> transcodedEncoded = NettyEncodedPacketUdp.encode(transcodedPacket.get(), ByteBufAllocator.DEFAULT);
+        if (!transcodedEncoded.isPresent()) return;
+
+        try {
+            connections.forEach(connection -> connection.sendPacket(transcodedEncoded.get()));
+        } finally {
+            transcodedEncoded.get().release();
+        }
+    }
+
     @Override
     public void broadcast(@NotNull Packet<ClientPacketUdpHandler> packet, @Nullable Predicate<VoiceServerPlayer> filter) {
+        List<UdpServerConnection> connections = new ArrayList<>();
         for (UdpServerConnection connection : getConnections()) {
             if (filter == null || filter.test(connection.getPlayer()))
-                connection.sendPacket(packet);
+                connections.add(connection);
         }
+
+        sendPacket(packet, connections);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<? extends UdpServerConnection> toServerConnections(@NotNull Collection<? extends UdpConnection> connections) {
+        for (UdpConnection connection : connections) {
+            if (!(connection instanceof UdpServerConnection)) {
+                List<UdpServerConnection> serverConnections = new ArrayList<>(connections.size());
+                for (UdpConnection udpConnection : connections) {
+                    if (udpConnection instanceof UdpServerConnection)
+                        serverConnections.add((UdpServerConnection) udpConnection);
+                }
+                return serverConnections;
+            }
+        }
+
+        return (Collection<? extends UdpServerConnection>) connections;
     }
 
     @EventSubscribe
@@ -74,12 +74,18 @@ public final class LuckPermsListener {
         if (event.isUser()) {
             User user = (User) event.getTarget();
             Optional<VoiceServerPlayer> player = players.getPlayerById(user.getUniqueId());
-            if (!player.isPresent() || !player.get().hasVoiceChat()) return;
+            if (!player.isPresent()) return;
+
+            invalidatePermissions(player.get());
+            if (!player.get().hasVoiceChat()) return;
 
             onLpPermissionChange(player.get(), node.getKey());
         } else if (event.isGroup()) {
             Group group = (Group) event.getTarget();
 
+            // group can be inherited by other groups, so cache is dropped for all players
+            players.getPlayers().forEach(this::invalidatePermissions);
+
             // iterate all online players and check if they are in group
             for (VoiceServerPlayer player : players.getPlayers()) {
                 if (player.getInstance().hasPermission("group." + group.getName())) {
@@ -89,6 +95,12 @@ public final class LuckPermsListener {
         }
     }
 
+    private void invalidatePermissions(@NotNull VoiceServerPlayer player) {
+        if (player instanceof BaseVoicePlayer) {
+            ((BaseVoicePlayer<?>) player).invalidatePermissions();
+        }
+    }
+
     private synchronized void onLpPermissionChange(@NotNull VoiceServerPlayer player, @NotNull String permission) {
         String playerPermissionKey = player.getInstance().getUUID() + "_" + permission;
 
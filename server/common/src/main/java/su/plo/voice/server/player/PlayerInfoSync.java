@@ -0,0 +1,191 @@
+package su.plo.voice.server.player;
+
+import com.google.common.collect.Maps;
+import org.jetbrains.annotations.NotNull;
+import su.plo.voice.api.server.player.VoiceServerPlayer;
+import su.plo.voice.proto.data.player.VoicePlayerInfo;
+import su.plo.voice.proto.packets.tcp.clientbound.PlayerInfoDeltaPacket;
+import su.plo.voice.proto.packets.tcp.clientbound.PlayerInfoUpdatePacket;
+import su.plo.voice.proto.packets.tcp.clientbound.PlayerListPacket;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Versioned player info sync
+ * <br/>
+ * Every change of the player info is published with a new version.
+ * Each receiver keeps the versions it has already received (version vector),
+ * so changes are sent only once and only as the changed fields to the clients which support it.
+ * Changes are flushed to the receiver at most once per flush interval,
+ * so multiple changes of the same player are sent as one packet
+ */
+public final class PlayerInfoSync {
+
+    private final Supplier<? extends ScheduledExecutorService> scheduler;
+    private final long flushIntervalMs;
+    private final Predicate<VoiceServerPlayer> deltaSupport;
+
+    private final AtomicLong lastVersion = new AtomicLong();
+    private final Map<UUID, State> stateByPlayerId = Maps.newConcurrentMap();
+    private final Map<UUID, Receiver> receiverById = Maps.newConcurrentMap();
+
+    public PlayerInfoSync(@NotNull Supplier<? extends ScheduledExecutorService> scheduler,
+                          long flushIntervalMs,
+                          @NotNull Predicate<VoiceServerPlayer> deltaSupport) {
+        this.scheduler = scheduler;
+        this.flushIntervalMs = flushIntervalMs;
+        this.deltaSupport = deltaSupport;
+    }
+
+    /**
+     * Publishes the player info
+     *
+     * @return true if the player info is changed and should be sent to the receivers
+     */
+    public boolean publish(@NotNull VoicePlayerInfo playerInfo) {
+        State[] published = new State[1];
+        stateByPlayerId.compute(playerInfo.getPlayerId(), (playerId, current) -> {
+            if (current != null && current.playerInfo.equals(playerInfo)) return current;
+            return published[0] = new State(playerInfo, lastVersion.incrementAndGet());
+        });
+
+        return published[0] != null;
+    }
+
+    /**
+     * Schedules sending the latest published info of the player to the receiver
+     */
+    public void markDirty(@NotNull VoiceServerPlayer receiver, @NotNull UUID playerId) {
+        getReceiver(receiver).markDirty(playerId);
+    }
+
+    /**
+     * Sends the latest published info of the players to the receiver as the full list
+     */
+    public void sendList(@NotNull VoiceServerPlayer receiver, @NotNull Collection<UUID> playerIds) {
+        getReceiver(receiver).sendList(playerIds);
+    }
+
+    /**
+     * Removes the player state and the player as the receiver
+     */
+    public void remove(@NotNull UUID playerId) {
+        stateByPlayerId.remove(playerId);
+        receiverById.remove(playerId);
+
+        // the client forgets the player on disconnect, so full info is sent on the next connect
+        for (Receiver receiver : receiverById.values()) {
+            receiver.forget(playerId);
+        }
+    }
+
+    public void clear() {
+        stateByPlayerId.clear();
+        receiverById.clear();
+    }
+
+    private Receiver getReceiver(VoiceServerPlayer player) {
+        UUID playerId = player.getInstance().getUUID();
+
+        Receiver receiver = receiverById.get(playerId);
+        if (receiver != null) return receiver;
+
+        return receiverById.computeIfAbsent(playerId, (id) -> new Receiver(player));
+    }
+
+    private final class Receiver {
+
+        private final VoiceServerPlayer player;
+
+        // player id -> state last sent to the receiver
+        private final Map<UUID, State> sentByPlayerId = new HashMap<>();
+        private final Set<UUID> dirty = new LinkedHashSet<>();
+
+        private boolean flushScheduled;
+        private long lastFlush;
+
+        private Receiver(@NotNull VoiceServerPlayer player) {
+            this.player = player;
+        }
+
+        private synchronized void markDirty(UUID playerId) {
+            dirty.add(playerId);
+            if (flushScheduled) return;
+
+            long delay = Math.max(0L, lastFlush + flushIntervalMs - System.currentTimeMillis());
+            try {
+                scheduler.get().schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+                this.flushScheduled = true;
+            } catch (RejectedExecutionException ignored) {
+                // server is shutting down
+            }
+        }
+
+        private synchronized void sendList(Collection<UUID> playerIds) {
+            List<VoicePlayerInfo> players = new ArrayList<>(playerIds.size());
+            for (UUID playerId : playerIds) {
+                State state = stateByPlayerId.get(playerId);
+                if (state == null) continue;
+
+                players.add(state.playerInfo);
+                sentByPlayerId.put(playerId, state);
+            }
+
+            player.sendPacket(new PlayerListPacket(players));
+        }
+
+        private synchronized void forget(UUID playerId) {
+            sentByPlayerId.remove(playerId);
+            dirty.remove(playerId);
+        }
+
+        private synchronized void flush() {
+            this.flushScheduled = false;
+            this.lastFlush = System.currentTimeMillis();
+            if (receiverById.get(player.getInstance().getUUID()) != this) return;
+
+            boolean delta = deltaSupport.test(player);
+            for (UUID playerId : dirty) {
+                State state = stateByPlayerId.get(playerId);
+                if (state == null) continue;
+
+                State sent = sentByPlayerId.get(playerId);
+                if (sent != null && sent.version >= state.version) continue;
+
+                if (sent != null && sent.playerInfo.equals(state.playerInfo)) {
+                    // changes were reverted before the flush
+                } else if (sent != null && delta) {
+                    player.sendPacket(PlayerInfoDeltaPacket.diff(sent.playerInfo, state.playerInfo));
+                } else {
+                    player.sendPacket(new PlayerInfoUpdatePacket(state.playerInfo));
+                }
+                sentByPlayerId.put(playerId, state);
+            }
+            dirty.clear();
+        }
+    }
+
+    private static final class State {
+
+        private final VoicePlayerInfo playerInfo;
+        private final long version;
+
+        private State(@NotNull VoicePlayerInfo playerInfo, long version) {
+            this.playerInfo = playerInfo;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package su.plo.voice.server.player;
+
+import com.google.common.collect.Maps;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import su.plo.voice.proto.packets.Packet;
+import su.plo.voice.proto.packets.tcp.PacketTcpCodec;
+import su.plo.voice.proto.packets.tcp.clientbound.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Outbound channel packets of the player coalesced within one tick
+ * <br/>
+ * Packets queued within the tick are sent as one {@link BatchPacket}.
+ * Updates of the same source, player or activation collapse to the newest one,
+ * which is moved to the end of the queue, so it's still sent after all older packets
+ */
+public final class PlayerPacketQueue {
+
+    private static final long FLUSH_DELAY_MS = 50L;
+    // plugin messages are limited to 32767 bytes on old versions
+    private static final int MAX_BATCH_SIZE = 32_000;
+
+    private final Consumer<byte[]> sender;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<Object, Packet<?>> packets = new LinkedHashMap<>();
+    private boolean flushScheduled;
+
+    public PlayerPacketQueue(@NotNull Consumer<byte[]> sender, @NotNull ScheduledExecutorService scheduler) {
+        this.sender = sender;
+        this.scheduler = scheduler;
+    }
+
+    public synchronized void add(@NotNull Packet<?> packet) {
+        Object key = getCoalesceKey(packet);
+        if (key == null) {
+            key = new Object();
+        } else {
+            packets.remove(key);
+        }
+        packets.put(key, packet);
+
+        if (!flushScheduled) {
+            this.flushScheduled = true;
+            scheduler.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends all queued packets
+     */
+    public synchronized void flush() {
+        this.flushScheduled = false;
+        if (packets.isEmpty()) return;
+
+        List<byte[]> frames = new ArrayList<>(packets.size());
+        int batchSize = 0;
+
+        for (Packet<?> packet : packets.values()) {
+            byte[] encoded = PacketTcpCodec.encode(packet);
+            if (encoded == null) continue;
+
+            if (!frames.isEmpty() && batchSize + encoded.length + 4 > MAX_BATCH_SIZE) {
+                send(frames);
+                frames = new ArrayList<>();
+                batchSize = 0;
+            }
+
+            frames.add(encoded);
+            batchSize += encoded.length + 4;
+        }
+        packets.clear();
+
+        if (!frames.isEmpty()) send(frames);
+    }
+
+    public synchronized int size() {
+        return packets.size();
+    }
+
+    private void send(@NotNull List<byte[]> frames) {
+        if (frames.size() == 1) {
+            sender.accept(frames.get(0));
+            return;
+        }
+
+        sender.accept(PacketTcpCodec.encode(new BatchPacket(frames)));
+    }
+
+    /**
+     * @return the key of the state updated by the packet or null if packet can't be coalesced
+     */
+    static @Nullable Object getCoalesceKey(@NotNull Packet<?> packet) {
+        if (packet instanceof SourceInfoPacket) {
+            return Maps.immutableEntry("source", ((SourceInfoPacket) packet).getSourceInfo().getId());
+        } else if (packet instanceof PlayerInfoUpdatePacket) {
+            return Maps.immutableEntry("player", ((PlayerInfoUpdatePacket) packet).getPlayerInfo().getPlayerId());
+        } else if (packet instanceof PlayerDisconnectPacket) {
+            return Maps.immutableEntry("player", ((PlayerDisconnectPacket) packet).getPlayerId());
+        } else if (packet instanceof ActivationRegisterPacket) {
+            return Maps.immutableEntry("activation", ((ActivationRegisterPacket) packet).getActivation().getId());
+        } else if (packet instanceof ActivationUnregisterPacket) {
+            return Maps.immutableEntry("activation", ((ActivationUnregisterPacket) packet).getActivationId());
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,239 @@
+package su.plo.voice.server.player;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.jetbrains.annotations.NotNull;
+import su.plo.lib.api.server.entity.MinecraftServerPlayerEntity;
+import su.plo.lib.api.server.world.MinecraftServerWorld;
+import su.plo.lib.api.server.world.ServerPos3d;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Positions of voice players captured once per server tick
+ * <br/>
+ * Positions are copied on the main thread into flat primitive arrays.
+ * The back frame is written while the front frame is read, then the frames are swapped,
+ * so audio threads never read live entity state
+ */
+public final class PlayerPositionSnapshot {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // player slots are stable while the player is online, so readers can look up slot without the frame
+    private final Map<UUID, Integer> slotByPlayerId = Maps.newConcurrentMap();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    private int nextSlot;
+
+    private final Frame[] frames = new Frame[]{new Frame(INITIAL_CAPACITY), new Frame(INITIAL_CAPACITY)};
+    private volatile Frame front = frames[0];
+    private volatile long tick;
+
+    // used only by the writer
+    private final ServerPos3d position = new ServerPos3d();
+
+    /**
+     * Captures the positions of the players
+     * <br/>
+     * Should be called on the main thread once per tick
+     */
+    public synchronized void update(@NotNull Collection<MinecraftServerPlayerEntity> players) {
+        Frame front = this.front;
+        Frame back = front == frames[0] ? frames[1] : frames[0];
+
+        // release slots of the players which are not in the list anymore
+        Set<UUID> online = Sets.newHashSetWithExpectedSize(players.size());
+        for (MinecraftServerPlayerEntity player : players) online.add(player.getUUID());
+
+        Iterator<Map.Entry<UUID, Integer>> iterator = slotByPlayerId.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<UUID, Integer> entry = iterator.next();
+            if (online.contains(entry.getKey())) continue;
+
+            iterator.remove();
+            freeSlots.add(entry.getValue());
+        }
+
+        for (MinecraftServerPlayerEntity player : players) {
+            slotByPlayerId.computeIfAbsent(player.getUUID(), (playerId) -> {
+                Integer slot = freeSlots.poll();
+                return slot != null ? slot : nextSlot++;
+            });
+        }
+
+        if (back.capacity() < nextSlot) {
+            back = new Frame(Math.max(nextSlot, back.capacity() * 2));
+            frames[front == frames[0] ? 1 : 0] = back;
+        }
+
+        long stamp = back.lock.writeLock();
+        try {
+            back.clear(nextSlot);
+
+            for (MinecraftServerPlayerEntity player : players) {
+                Integer slot = slotByPlayerId.get(player.getUUID());
+                if (slot == null) continue;
+
+                player.getServerPosition(position);
+                if (position.getWorld() == null) continue;
+
+                back.set(slot, player.getUUID(), position);
+            }
+        } finally {
+            back.lock.unlockWrite(stamp);
+        }
+
+        this.front = back;
+        this.tick++;
+    }
+
+    /**
+     * Copies the last captured position of the player to the position
+     *
+     * @return false if the position of the player was not captured yet
+     */
+    public boolean getPosition(@NotNull UUID playerId, @NotNull ServerPos3d position) {
+        Integer slot = slotByPlayerId.get(playerId);
+        if (slot == null) return false;
+
+        Frame frame = front;
+
+        long stamp = frame.lock.tryOptimisticRead();
+        boolean found = frame.get(slot, playerId, position);
+        if (frame.lock.validate(stamp)) return found;
+
+        // frame was swapped and rewritten while reading
+        stamp = frame.lock.readLock();
+        try {
+            return frame.get(slot, playerId, position);
+        } finally {
+            frame.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Calls the consumer for every captured position
+     * <br/>
+     * Position object is reused between calls
+     */
+    public void forEach(@NotNull PositionConsumer consumer) {
+        Frame frame = front;
+        ServerPos3d position = new ServerPos3d();
+
+        long stamp = frame.lock.readLock();
+        try {
+            for (int slot = 0; slot < frame.size; slot++) {
+                UUID playerId = frame.playerIds[slot];
+                if (playerId == null || !frame.get(slot, playerId, position)) continue;
+
+                consumer.accept(playerId, position);
+            }
+        } finally {
+            frame.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return number of captured snapshots
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    public synchronized void clear() {
+        slotByPlayerId.clear();
+        freeSlots.clear();
+        this.nextSlot = 0;
+
+        for (Frame frame : frames) {
+            long stamp = frame.lock.writeLock();
+            try {
+                frame.clear(frame.capacity());
+                frame.size = 0;
+            } finally {
+                frame.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface PositionConsumer {
+
+        void accept(@NotNull UUID playerId, @NotNull ServerPos3d position);
+    }
+
+    private static final class Frame {
+
+        private static final int COORDINATES = 3;
+        private static final int ROTATIONS = 2;
+
+        private final StampedLock lock = new StampedLock();
+
+        private final UUID[] playerIds;
+        private final MinecraftServerWorld[] worlds;
+        // x, y, z
+        private final double[] coordinates;
+        // yaw, pitch
+        private final float[] rotations;
+        private int size;
+
+        private Frame(int capacity) {
+            this.playerIds = new UUID[capacity];
+            this.worlds = new MinecraftServerWorld[capacity];
+            this.coordinates = new double[capacity * COORDINATES];
+            this.rotations = new float[capacity * ROTATIONS];
+        }
+
+        private int capacity() {
+            return playerIds.length;
+        }
+
+        private void clear(int size) {
+            for (int slot = 0; slot < Math.max(size, this.size); slot++) {
+                playerIds[slot] = null;
+                worlds[slot] = null;
+            }
+            this.size = size;
+        }
+
+        private void set(int slot, @NotNull UUID playerId, @NotNull ServerPos3d position) {
+            playerIds[slot] = playerId;
+            worlds[slot] = position.getWorld();
+
+            int index = slot * COORDINATES;
+            coordinates[index] = position.getX();
+            coordinates[index + 1] = position.getY();
+            coordinates[index + 2] = position.getZ();
+
+            index = slot * ROTATIONS;
+            rotations[index] = position.getYaw();
+            rotations[index + 1] = position.getPitch();
+        }
+
+        private boolean get(int slot, @NotNull UUID playerId, @NotNull ServerPos3d position) {
+            if (slot >= size || !playerId.equals(playerIds[slot])) return false;
+
+            MinecraftServerWorld world = worlds[slot];
+            if (world == null) return false;
+
+            position.setWorld(world);
+
+            int index = slot * COORDINATES;
+            position.setX(coordinates[index]);
+            position.setY(coordinates[index + 1]);
+            position.setZ(coordinates[index + 2]);
+
+            index = slot * ROTATIONS;
+            position.setYaw(rotations[index]);
+            position.setPitch(rotations[index + 1]);
+
+            return true;
+        }
+    }
+}
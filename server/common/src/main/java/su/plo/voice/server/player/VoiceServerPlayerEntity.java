@@ -1,5 +1,6 @@
 package su.plo.voice.server.player;
 
+import com.google.common.collect.ImmutableSet;
 import lombok.ToString;
 import org.jetbrains.annotations.NotNull;
 import su.plo.lib.api.server.entity.MinecraftServerPlayerEntity;
@@ -9,29 +10,62 @@ import su.plo.voice.api.server.player.VoiceServerPlayer;
 import su.plo.voice.proto.data.player.VoicePlayerInfo;
 import su.plo.voice.proto.packets.Packet;
 import su.plo.voice.proto.packets.tcp.PacketTcpCodec;
+import su.plo.voice.proto.packets.tcp.clientbound.BatchPacket;
 import su.plo.voice.server.BaseVoiceServer;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
 @ToString(doNotUseGetters = true, callSuper = true)
 public final class VoiceServerPlayerEntity
         extends BaseVoicePlayer<MinecraftServerPlayerEntity>
         implements VoiceServerPlayer {
 
     private final PlasmoVoiceServer voiceServer;
+    private final PlayerPacketQueue packetQueue;
+
+    // capabilities sent by the client in PlayerInfoPacket
+    private volatile Set<String> capabilities = Collections.emptySet();
+    // set if the client can handle batched packets
+    private volatile boolean packetBatching;
 
     public VoiceServerPlayerEntity(@NotNull PlasmoVoiceServer voiceServer,
                                    @NotNull MinecraftServerPlayerEntity player) {
         super(voiceServer, player);
         this.voiceServer = voiceServer;
+        this.packetQueue = new PlayerPacketQueue(
+                (encoded) -> instance.sendPacket(BaseVoiceServer.CHANNEL_STRING, encoded),
+                voiceServer.getBackgroundExecutor()
+        );
+    }
+
+    public void setCapabilities(@NotNull Collection<String> capabilities) {
+        this.capabilities = ImmutableSet.copyOf(capabilities);
+        setPacketBatching(hasCapability(BatchPacket.CAPABILITY));
+    }
+
+    public boolean hasCapability(@NotNull String capability) {
+        return capabilities.contains(capability);
+    }
+
+    private void setPacketBatching(boolean packetBatching) {
+        this.packetBatching = packetBatching;
+        // packets queued before are sent now, so they are not reordered with the next packets
+        if (!packetBatching) packetQueue.flush();
     }
 
     @Override
     public void sendPacket(@NotNull Packet<?> packet) {
-        byte[] encoded = PacketTcpCodec.encode(packet);
-
         TcpPacketSendEvent event = new TcpPacketSendEvent(this, packet);
         if (!voiceServer.getEventBus().call(event)) return;
 
-        instance.sendPacket(BaseVoiceServer.CHANNEL_STRING, encoded);
+        if (packetBatching) {
+            packetQueue.add(packet);
+            return;
+        }
+
+        instance.sendPacket(BaseVoiceServer.CHANNEL_STRING, PacketTcpCodec.encode(packet));
 
 //        LogManager.getLogger().info("Channel packet {} sent to {}", packet, this);
     }
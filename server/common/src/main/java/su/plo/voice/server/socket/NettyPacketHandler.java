@@ -2,68 +2,110 @@ package su.plo.voice.server.socket;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.DatagramChannel;
 import lombok.AllArgsConstructor;
 import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import su.plo.voice.api.server.PlasmoVoiceServer;
 import su.plo.voice.api.server.player.VoiceServerPlayer;
-import su.plo.voice.proto.packets.tcp.clientbound.PlayerInfoUpdatePacket;
+import su.plo.voice.api.server.socket.UdpServerConnection;
 import su.plo.voice.proto.packets.udp.PacketUdp;
+import su.plo.voice.server.connection.ConnectionAdmission;
+import su.plo.voice.server.connection.VoiceServerEncryption;
+import su.plo.voice.server.connection.VoiceUdpConnectionManager;
 import su.plo.voice.socket.NettyPacketUdp;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 @AllArgsConstructor
 public final class NettyPacketHandler extends SimpleChannelInboundHandler<NettyPacketUdp> {
 
+    private static final Logger LOGGER = LogManager.getLogger();
+
     private final PlasmoVoiceServer voiceServer;
+    private final VoiceUdpConnectionManager udpConnections;
+    private final VoiceServerEncryption encryption;
+    private final ConnectionAdmission admission;
+    private final NettyUdpKeepAlive keepAlive;
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, NettyPacketUdp nettyPacket) throws Exception {
         PacketUdp packet = nettyPacket.getPacketUdp();
+        InetSocketAddress sender = nettyPacket.getDatagramPacket().sender();
+
+        UdpServerConnection connection = udpConnections.getConnectionBySecret(
+                packet.getSecretMostSignificantBits(),
+                packet.getSecretLeastSignificantBits()
+        );
+        if (connection != null) {
+            handlePacket(connection, packet, sender);
+            return;
+        }
 
+        // UUID secret is used only on the handshake and by the connections which are not in the session table
         UUID secret = packet.getSecret();
 
-        if (voiceServer.getUdpConnectionManager().getConnectionBySecret(secret)
-                .map(connection -> {
-                    if (!connection.getRemoteAddress().equals(nettyPacket.getDatagramPacket().sender())) {
-                        connection.setRemoteAddress(nettyPacket.getDatagramPacket().sender());
-                    }
-
-                    try {
-                        System.out.println("Received packet from " + nettyPacket.getDatagramPacket().sender());
-                        connection.handlePacket(packet.getPacket());
-                    } catch (IOException e) {
-                        LogManager.getLogger().warn("Failed to decode packet", e); // todo: optional bad packet logging?
-                    }
-
-                    return true;
-                })
-                .orElse(false)
-        ) return;
-
-        Optional<UUID> playerId = voiceServer.getUdpConnectionManager().getPlayerIdBySecret(secret);
+        Optional<UdpServerConnection> connectionBySecret = udpConnections.getConnectionBySecret(secret);
+        if (connectionBySecret.isPresent()) {
+            handlePacket(connectionBySecret.get(), packet, sender);
+            return;
+        }
+
+        Optional<UUID> playerId = udpConnections.getPlayerIdBySecret(secret);
         if (!playerId.isPresent()) return;
 
         Optional<VoiceServerPlayer> player = voiceServer.getPlayerManager().getPlayerById(playerId.get());
         if (!player.isPresent()) return;
 
-        NettyUdpConnection connection = new NettyUdpConnection(
+        NettyUdpConnection newConnection = new NettyUdpConnection(
                 voiceServer,
-                (NioDatagramChannel) ctx.channel(),
+                encryption,
+                (DatagramChannel) ctx.channel(),
                 secret,
                 player.get()
         );
-        connection.setRemoteAddress(nettyPacket.getDatagramPacket().sender());
-        voiceServer.getUdpConnectionManager().addConnection(connection);
+        newConnection.setRemoteAddress(sender);
+        udpConnections.addConnection(newConnection);
+        // connection can be cancelled by UdpConnectEvent
+        if (udpConnections.getConnectionBySecret(secret).orElse(null) != newConnection) return;
 
-        voiceServer.getTcpConnectionManager().sendConfigInfo(player.get());
-        voiceServer.getTcpConnectionManager().sendPlayerList(player.get());
+        keepAlive.add(newConnection);
+
+        admission.submit(playerId.get(), ConnectionAdmission.Stage.CONFIGURE, () -> {
+            // player can be disconnected while waiting for the admission
+            if (!newConnection.isConnected()) return;
+
+            // player list is sent after the config packet, so the client receives the handshake in order
+            voiceServer.getTcpConnectionManager().sendConfigInfoAsync(player.get())
+                    .thenRun(() -> {
+                        voiceServer.getTcpConnectionManager().sendPlayerList(player.get());
+                        voiceServer.getTcpConnectionManager().broadcastPlayerInfoUpdate(player.get());
+                    })
+                    .exceptionally((e) -> {
+                        // config workers are stopped on shutdown
+                        if (!(e.getCause() instanceof RejectedExecutionException)) {
+                            LOGGER.error("Failed to handle connection handshake", e);
+                        }
+                        return null;
+                    });
+        });
+
+        LOGGER.debug("Received connection from {}", sender);
+    }
 
-        voiceServer.getTcpConnectionManager().broadcast(new PlayerInfoUpdatePacket(player.get().getInfo()));
+    private void handlePacket(UdpServerConnection connection, PacketUdp packet, InetSocketAddress sender) {
+        if (!connection.getRemoteAddress().equals(sender)) {
+            connection.setRemoteAddress(sender);
+        }
 
-        System.out.println("Received connection from " + nettyPacket.getDatagramPacket().sender());
+        try {
+            connection.handlePacket(packet.getPacket());
+        } catch (IOException e) {
+            LOGGER.warn("Failed to decode packet", e); // todo: optional bad packet logging?
+        }
     }
 }
@@ -1,13 +1,13 @@
 package su.plo.voice.server.socket;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.socket.DatagramPacket;
-import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.DatagramChannel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 import su.plo.voice.api.server.PlasmoVoiceServer;
 import su.plo.voice.api.server.event.audio.source.PlayerSpeakEvent;
@@ -22,15 +22,21 @@ import su.plo.voice.proto.packets.udp.bothbound.CustomPacket;
 import su.plo.voice.proto.packets.udp.bothbound.PingPacket;
 import su.plo.voice.proto.packets.udp.serverbound.PlayerAudioPacket;
 import su.plo.voice.proto.packets.udp.serverbound.ServerPacketUdpHandler;
+import su.plo.voice.server.connection.VoiceServerEncryption;
+import su.plo.voice.socket.NettyEncodedPacketUdp;
 
 import java.net.InetSocketAddress;
+import java.util.Optional;
 import java.util.UUID;
 
 @ToString(of = {"channel", "secret", "player", "keepAlive", "sentKeepAlive"})
 public final class NettyUdpConnection implements UdpServerConnection, ServerPacketUdpHandler {
 
+    private static final Logger LOGGER = LogManager.getLogger();
+
     private final PlasmoVoiceServer voiceServer;
-    private final NioDatagramChannel channel;
+    private final VoiceServerEncryption encryption;
+    private final DatagramChannel channel;
 
     @Getter
     @Setter
@@ -46,13 +52,15 @@ public final class NettyUdpConnection implements UdpServerConnection, ServerPack
     private long sentKeepAlive;
 
     @Getter
-    private boolean connected = true;
+    private volatile boolean connected = true;
 
     public NettyUdpConnection(@NotNull PlasmoVoiceServer voiceServer,
-                              @NotNull NioDatagramChannel channel,
+                              @NotNull VoiceServerEncryption encryption,
+                              @NotNull DatagramChannel channel,
                               @NotNull UUID secret,
                               @NotNull VoiceServerPlayer player) {
         this.voiceServer = voiceServer;
+        this.encryption = encryption;
         this.channel = channel;
         this.secret = secret;
         this.player = player;
@@ -60,17 +68,39 @@ public final class NettyUdpConnection implements UdpServerConnection, ServerPack
 
     @Override
     public void sendPacket(Packet<?> packet) {
-        byte[] encoded = PacketUdpCodec.encode(packet, secret);
-        if (encoded == null) return;
+        if (isTranscodedEncryption()) {
+            Optional<Packet<?>> transcodedPacket = encryption.toPlayer(packet);
+            if (!transcodedPacket.isPresent()) return;
+
+            packet = transcodedPacket.get();
+        }
 
-        ByteBuf buf = Unpooled.wrappedBuffer(encoded);
+        ByteBuf buf = PacketUdpCodec.encode(packet, secret, channel.alloc());
+        if (buf == null) return;
 
-        LogManager.getLogger().debug("UDP packet {} sent to {}", packet, remoteAddress);
+        LOGGER.debug("UDP packet {} sent to {}", packet, remoteAddress);
 
         channel.writeAndFlush(new DatagramPacket(buf, remoteAddress));
 
-        UdpPacketSendEvent event = new UdpPacketSendEvent(this, packet);
-        voiceServer.getEventBus().call(event);
+        if (voiceServer.getEventBus().hasListeners(UdpPacketSendEvent.class)) {
+            voiceServer.getEventBus().call(new UdpPacketSendEvent(this, packet));
+        }
+    }
+
+    /**
+     * Sends the packet encoded for multiple connections
+     * <br/>
+     * Audio in the packet should be already encrypted with the encryption of the connection,
+     * see {@link #isTranscodedEncryption()}
+     */
+    public void sendPacket(@NotNull NettyEncodedPacketUdp encoded) {
+        LOGGER.debug("UDP packet {} sent to {}", encoded.getPacket(), remoteAddress);
+
+        channel.writeAndFlush(encoded.toDatagram(channel, secret, remoteAddress));
+
+        if (voiceServer.getEventBus().hasListeners(UdpPacketSendEvent.class)) {
+            voiceServer.getEventBus().call(new UdpPacketSendEvent(this, encoded.getPacket()));
+        }
     }
 
     @Override
@@ -100,6 +130,20 @@ public final class NettyUdpConnection implements UdpServerConnection, ServerPack
 
     @Override
     public void handle(@NotNull PlayerAudioPacket packet) {
+        if (isTranscodedEncryption()) {
+            Optional<PlayerAudioPacket> relayedPacket = encryption.fromPlayer(packet);
+            if (!relayedPacket.isPresent()) return;
+
+            packet = relayedPacket.get();
+        }
+
         voiceServer.getEventBus().call(new PlayerSpeakEvent(player, packet));
     }
+
+    /**
+     * @return true if the client uses the other encryption than relayed audio
+     */
+    public boolean isTranscodedEncryption() {
+        return encryption.isTranscoded(player);
+    }
 }
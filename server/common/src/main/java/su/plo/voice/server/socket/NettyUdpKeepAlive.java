@@ -1,55 +1,122 @@
 package su.plo.voice.server.socket;
 
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.ScheduledFuture;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 import su.plo.voice.api.server.connection.TcpServerConnectionManager;
 import su.plo.voice.api.server.connection.UdpServerConnectionManager;
-import su.plo.voice.api.server.socket.UdpServerConnection;
 import su.plo.voice.proto.packets.udp.bothbound.PingPacket;
 import su.plo.voice.server.config.VoiceServerConfig;
+import su.plo.voice.socket.NettyEncodedPacketUdp;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Keep alive of the UDP connections on the hashed timing wheel
+ * <br/>
+ * One revolution of the wheel is the ping interval and every connection is placed to the least loaded slot,
+ * so pings are spread evenly across the interval instead of being sent to all connections at once.
+ * Timeouts are checked three times per revolution: every tick also checks the slots
+ * which are a third and two thirds of the revolution ahead of the pinged one.
+ * Wheel is ticked on the event loop, so slots are not synchronized
+ */
 public final class NettyUdpKeepAlive {
 
-    private final Logger logger = LogManager.getLogger(NettyUdpKeepAlive.class);
+    private static final long TICK_MS = 50L;
+    private static final int WHEEL_SIZE = 60; // 3 seconds ping interval
+    private static final int CHECKS_PER_REVOLUTION = 3; // 1 second timeout check interval
 
-    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final Logger logger = LogManager.getLogger(NettyUdpKeepAlive.class);
 
     private final TcpServerConnectionManager tcpConnections;
     private final UdpServerConnectionManager udpConnections;
     private final VoiceServerConfig config;
+    private final EventLoop eventLoop;
+
+    private final List<List<NettyUdpConnection>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private final NettyEncodedPacketUdp ping;
+    private final ScheduledFuture<?> tickFuture;
+    private int cursor;
 
     public NettyUdpKeepAlive(@NotNull TcpServerConnectionManager tcpConnections,
                              @NotNull UdpServerConnectionManager udpConnections,
-                             @NotNull VoiceServerConfig config) {
+                             @NotNull VoiceServerConfig config,
+                             @NotNull EventLoop eventLoop) {
         this.tcpConnections = tcpConnections;
         this.udpConnections = udpConnections;
         this.config = config;
+        this.eventLoop = eventLoop;
+
+        for (int i = 0; i < WHEEL_SIZE; i++) wheel.add(new ArrayList<>());
+
+        // ping is encoded once, only the secret and the timestamp are written for every connection
+        this.ping = NettyEncodedPacketUdp.encode(new PingPacket(), ByteBufAllocator.DEFAULT)
+                .orElseThrow(() -> new IllegalStateException("PingPacket is not registered"));
+        this.tickFuture = eventLoop.scheduleAtFixedRate(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds the connection to the wheel, connection is removed from the wheel once it's disconnected
+     */
+    public void add(@NotNull NettyUdpConnection connection) {
+        if (!eventLoop.inEventLoop()) {
+            eventLoop.execute(() -> add(connection));
+            return;
+        }
 
-        executor.scheduleAtFixedRate(this::tick, 0L, 3L, TimeUnit.SECONDS);
+        List<NettyUdpConnection> slot = wheel.get(0);
+        for (List<NettyUdpConnection> other : wheel) {
+            if (other.size() < slot.size()) slot = other;
+        }
+        slot.add(connection);
     }
 
     public void close() {
-        executor.shutdown();
+        tickFuture.cancel(false);
+        eventLoop.execute(() -> {
+            wheel.forEach(List::clear);
+            ping.release();
+        });
     }
 
     private void tick() {
         long now = System.currentTimeMillis();
-        PingPacket packet = new PingPacket();
+        long timeout = config.voice().keepAliveTimeoutMs();
+
+        for (int check = 0; check < CHECKS_PER_REVOLUTION; check++) {
+            int index = (cursor + check * WHEEL_SIZE / CHECKS_PER_REVOLUTION) % WHEEL_SIZE;
+            tickSlot(wheel.get(index), check == 0, now, timeout);
+        }
+        this.cursor = (cursor + 1) % WHEEL_SIZE;
+    }
+
+    private void tickSlot(List<NettyUdpConnection> slot, boolean sendPing, long now, long timeout) {
+        for (int i = slot.size() - 1; i >= 0; i--) {
+            NettyUdpConnection connection = slot.get(i);
+
+            if (!connection.isConnected()) {
+                removeAt(slot, i);
+            } else if (now - connection.getKeepAlive() > timeout) {
+                removeAt(slot, i);
 
-        for (UdpServerConnection connection : udpConnections.getConnections()) {
-            if (now - connection.getKeepAlive() > config.voice().keepAliveTimeoutMs()) {
                 logger.info("{} timed out. Reconnect packet sent", connection);
                 udpConnections.removeConnection(connection);
                 tcpConnections.requestPlayerInfo(connection.getPlayer());
-            } else if (now - connection.getSentKeepAlive() >= 1_000L) {
+            } else if (sendPing) {
                 connection.setSentKeepAlive(now);
-                connection.sendPacket(packet);
+                connection.sendPacket(ping);
             }
         }
     }
+
+    private static void removeAt(List<NettyUdpConnection> slot, int index) {
+        int last = slot.size() - 1;
+        slot.set(index, slot.get(last));
+        slot.remove(last);
+    }
 }
@@ -4,10 +4,8 @@ import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioDatagramChannel;
-import io.netty.util.concurrent.DefaultEventExecutorGroup;
-import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.util.concurrent.GlobalEventExecutor;
 import lombok.RequiredArgsConstructor;
 import org.apache.logging.log4j.LogManager;
@@ -18,7 +16,11 @@ import su.plo.voice.api.server.event.socket.UdpServerStartedEvent;
 import su.plo.voice.api.server.event.socket.UdpServerStoppedEvent;
 import su.plo.voice.api.server.socket.UdpServer;
 import su.plo.voice.server.config.VoiceServerConfig;
+import su.plo.voice.server.connection.ConnectionAdmission;
+import su.plo.voice.server.connection.VoiceServerEncryption;
+import su.plo.voice.server.connection.VoiceUdpConnectionManager;
 import su.plo.voice.socket.NettyPacketUdpDecoder;
+import su.plo.voice.socket.NettyUdpTransport;
 
 import java.net.InetSocketAddress;
 import java.util.Optional;
@@ -28,38 +30,45 @@ public final class NettyUdpServer implements UdpServer {
 
     private final Logger logger = LogManager.getLogger();
 
-    private final EventLoopGroup loopGroup = new NioEventLoopGroup();
     private final ChannelGroup channelGroup = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
-    private final EventExecutorGroup executors = new DefaultEventExecutorGroup(Runtime.getRuntime().availableProcessors());
 
     private final PlasmoVoiceServer voiceServer;
+    private final VoiceUdpConnectionManager udpConnections;
+    private final VoiceServerEncryption encryption;
+    private final ConnectionAdmission admission;
     private final VoiceServerConfig config;
 
+    private NettyUdpTransport transport;
     private NettyUdpKeepAlive keepAlive;
 
     private InetSocketAddress socketAddress;
 
     @Override
     public void start(String ip, int port) {
+        this.transport = NettyUdpTransport.create(
+                config.host().nativeTransport(),
+                config.host().udpThreads()
+        );
+
         this.keepAlive = new NettyUdpKeepAlive(
                 voiceServer.getTcpConnectionManager(),
-                voiceServer.getUdpConnectionManager(),
-                config
+                udpConnections,
+                config,
+                transport.getLoopGroup().next()
         );
 
-        Bootstrap bootstrap = new Bootstrap();
-        bootstrap.group(loopGroup)
-                .channel(NioDatagramChannel.class)
-                .option(ChannelOption.SO_BROADCAST, true);
-
-        bootstrap.handler(new ChannelInitializer<NioDatagramChannel>() {
+        Bootstrap bootstrap = transport.bootstrap();
+        bootstrap.handler(new ChannelInitializer<DatagramChannel>() {
             @Override
-            protected void initChannel(@NotNull NioDatagramChannel ch) throws Exception {
+            protected void initChannel(@NotNull DatagramChannel ch) throws Exception {
                 ChannelPipeline pipeline = ch.pipeline();
 
-                pipeline.addLast("decoder", new NettyPacketUdpDecoder());
+                // flushes are consolidated until the end of the read cycle
+                pipeline.addLast("flush", new FlushConsolidationHandler(256, true));
+                pipeline.addLast("decoder", new NettyPacketUdpDecoder(false, udpConnections::isKnownSecret));
 
-                pipeline.addLast(executors, "handler", new NettyPacketHandler(voiceServer));
+                // packets are handled right on the event loop
+                pipeline.addLast("handler", new NettyPacketHandler(voiceServer, udpConnections, encryption, admission, keepAlive));
             }
         });
 
@@ -68,6 +77,11 @@ public final class NettyUdpServer implements UdpServer {
             ChannelFuture channelFuture = bootstrap.bind(port).sync();
             channelGroup.add(channelFuture.channel());
             this.socketAddress = (InetSocketAddress) channelFuture.channel().localAddress();
+
+            // other channels are bound to the same port using SO_REUSEPORT
+            for (int i = 1; i < transport.getChannelCount(); i++) {
+                channelGroup.add(bootstrap.bind(socketAddress.getPort()).sync().channel());
+            }
         } catch (InterruptedException e) {
             stop();
             return;
@@ -75,18 +89,23 @@ public final class NettyUdpServer implements UdpServer {
             stop();
             throw e;
         }
-        logger.info("UDP server is started on {}", socketAddress);
+        logger.info(
+                "UDP server is started on {} using {} transport ({} channels)",
+                socketAddress,
+                transport.isNativeTransport() ? "epoll" : "NIO",
+                transport.getChannelCount()
+        );
 
         voiceServer.getEventBus().call(new UdpServerStartedEvent(this));
     }
 
     @Override
     public void stop() {
-        voiceServer.getUdpConnectionManager().clearConnections();
+        udpConnections.clearConnections();
         if (keepAlive != null) keepAlive.close();
         channelGroup.close();
-        loopGroup.shutdownGracefully();
-        logger.info("UDP server is stopped");
+        if (transport != null) transport.shutdown();
+        logger.info("UDP server is stopped, {} audio packets were transcoded", encryption.getTranscodedPackets());
 
         voiceServer.getEventBus().call(new UdpServerStoppedEvent(this));
     }
@@ -0,0 +1,138 @@
+package su.plo.voice.server.connection;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConnectionAdmissionTest {
+
+    @Test
+    public void testReconnectStorm(TestReporter reporter) throws InterruptedException {
+        int players = 1_000;
+        int permitsPerSecond = 2_000;
+        int burst = 50;
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        ConnectionAdmission admission = new ConnectionAdmission(() -> scheduler, permitsPerSecond, burst);
+
+        List<Long> admittedAt = Collections.synchronizedList(new ArrayList<>());
+        List<ConnectionAdmission.Stage> admittedStages = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger duplicates = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(players);
+
+        long start = System.nanoTime();
+
+        // all players send the player info at the same time, half of them send it twice
+        List<Thread> threads = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            int offset = thread;
+            Thread submitter = new Thread(() -> {
+                for (int i = offset; i < players; i += 4) {
+                    UUID playerId = UUID.randomUUID();
+                    ConnectionAdmission.Stage stage = i % 2 == 0
+                            ? ConnectionAdmission.Stage.CONNECT
+                            : ConnectionAdmission.Stage.CONFIGURE;
+
+                    boolean[] handled = new boolean[1];
+                    Runnable task = () -> {
+                        synchronized (handled) {
+                            if (handled[0]) {
+                                duplicates.incrementAndGet();
+                                return;
+                            }
+                            handled[0] = true;
+                        }
+
+                        admittedAt.add(System.nanoTime() - start);
+                        admittedStages.add(stage);
+                        done.countDown();
+                    };
+
+                    admission.submit(playerId, stage, task);
+                    if (i % 4 < 2) admission.submit(playerId, stage, task);
+                }
+            });
+            submitter.start();
+            threads.add(submitter);
+        }
+        for (Thread thread : threads) thread.join();
+
+        Assertions.assertTrue(admission.getQueueDepth() > 0);
+
+        Assertions.assertTrue(done.await(10L, TimeUnit.SECONDS));
+        long elapsed = System.nanoTime() - start;
+        scheduler.shutdownNow();
+
+        // repeated handshake is merged with the queued one,
+        // so it can be handled twice only if the first one was admitted right away
+        Assertions.assertTrue(duplicates.get() <= burst);
+        Assertions.assertEquals(0, admission.getQueueDepth());
+        Assertions.assertEquals(players + duplicates.get(), admission.getAdmitted());
+
+        // handshakes are spread over time instead of handled in the same instant
+        double minSeconds = (players - burst) / (double) permitsPerSecond;
+        Assertions.assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos((long) (minSeconds * 1_000D * 0.9D)));
+
+        // no 100 ms window admits much more than the rate allows
+        List<Long> times = new ArrayList<>(admittedAt);
+        Collections.sort(times);
+        int maxInWindow = 0;
+        int windowStart = 0;
+        for (int i = 0; i < times.size(); i++) {
+            while (times.get(i) - times.get(windowStart) > TimeUnit.MILLISECONDS.toNanos(100L)) windowStart++;
+            maxInWindow = Math.max(maxInWindow, i - windowStart + 1);
+        }
+        Assertions.assertTrue(maxInWindow <= burst + permitsPerSecond / 10 + 20, "max in window " + maxInWindow);
+
+        // queued handshakes in the later stage are admitted first
+        List<ConnectionAdmission.Stage> stages = new ArrayList<>(admittedStages);
+        long configureIndexSum = 0L;
+        long connectIndexSum = 0L;
+        for (int i = 0; i < stages.size(); i++) {
+            if (stages.get(i) == ConnectionAdmission.Stage.CONFIGURE) configureIndexSum += i;
+            else connectIndexSum += i;
+        }
+        Assertions.assertTrue(configureIndexSum < connectIndexSum);
+
+        reporter.publishEntry("admission", String.format(
+                "%d reconnects admitted in %.2f ms, max queue depth %d, max %d per 100 ms",
+                players,
+                elapsed / 1_000_000D,
+                admission.getMaxQueueDepth(),
+                maxInWindow
+        ));
+    }
+
+    @Test
+    public void testRemove() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        ConnectionAdmission admission = new ConnectionAdmission(() -> scheduler, 1, 1);
+
+        AtomicInteger handled = new AtomicInteger();
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        admission.submit(first, ConnectionAdmission.Stage.CONNECT, handled::incrementAndGet);
+        admission.submit(second, ConnectionAdmission.Stage.CONNECT, handled::incrementAndGet);
+        admission.submit(second, ConnectionAdmission.Stage.CONFIGURE, handled::incrementAndGet);
+
+        Assertions.assertEquals(1, handled.get());
+        Assertions.assertEquals(1, admission.getQueueDepth(ConnectionAdmission.Stage.CONNECT));
+        Assertions.assertEquals(1, admission.getQueueDepth(ConnectionAdmission.Stage.CONFIGURE));
+
+        admission.remove(second);
+        Assertions.assertEquals(0, admission.getQueueDepth());
+
+        scheduler.shutdownNow();
+    }
+}
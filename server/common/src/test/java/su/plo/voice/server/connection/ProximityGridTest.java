@@ -0,0 +1,149 @@
+package su.plo.voice.server.connection;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ProximityGridTest {
+
+    private static final String[] WORLDS = new String[]{"world", "world_nether", "world_the_end"};
+    private static final double DISTANCE = 48D;
+
+    @Test
+    public void testMatchesScan() {
+        List<TestPlayer> players = createPlayers(2_000, new Random(0L));
+        ProximityGrid<TestPlayer> grid = createGrid(players);
+
+        Assertions.assertEquals(players.size(), grid.size());
+
+        for (TestPlayer speaker : players) {
+            for (double distance : new double[]{0D, 8D, DISTANCE, 10_000D}) {
+                Assertions.assertEquals(
+                        scan(players, speaker, distance).size(),
+                        grid.getInRange(speaker.world, speaker.x, speaker.y, speaker.z, distance).size()
+                );
+            }
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmark(TestReporter reporter) {
+        for (int playerCount : new int[]{100, 500, 2_000}) {
+            List<TestPlayer> players = createPlayers(playerCount, new Random(playerCount));
+            ProximityGrid<TestPlayer> grid = createGrid(players);
+
+            // warmup
+            for (int i = 0; i < 5; i++) {
+                scanAll(players);
+                queryAll(grid, players);
+            }
+
+            long scanTime = 0L;
+            long gridTime = 0L;
+            long buildTime = 0L;
+            int iterations = 20;
+
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                int scanned = scanAll(players);
+                scanTime += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                grid = createGrid(players);
+                buildTime += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                int queried = queryAll(grid, players);
+                gridTime += System.nanoTime() - start;
+
+                Assertions.assertEquals(scanned, queried);
+            }
+
+            reporter.publishEntry(playerCount + " players", String.format(
+                    "scan %.3f ms, grid %.3f ms (+%.3f ms per tick to build)",
+                    scanTime / (double) iterations / 1_000_000D,
+                    gridTime / (double) iterations / 1_000_000D,
+                    buildTime / (double) iterations / 1_000_000D
+            ));
+        }
+    }
+
+    private int scanAll(List<TestPlayer> players) {
+        int found = 0;
+        for (TestPlayer speaker : players) {
+            found += scan(players, speaker, DISTANCE).size();
+        }
+        return found;
+    }
+
+    private int queryAll(ProximityGrid<TestPlayer> grid, List<TestPlayer> players) {
+        int[] found = new int[1];
+        for (TestPlayer speaker : players) {
+            grid.forEachInRange(speaker.world, speaker.x, speaker.y, speaker.z, DISTANCE, (player) -> found[0]++);
+        }
+        return found[0];
+    }
+
+    private List<TestPlayer> scan(List<TestPlayer> players, TestPlayer speaker, double distance) {
+        List<TestPlayer> found = new ArrayList<>();
+        double distanceSquared = distance * distance;
+
+        for (TestPlayer player : players) {
+            if (!player.world.equals(speaker.world)) continue;
+
+            double xDiff = player.x - speaker.x;
+            double yDiff = player.y - speaker.y;
+            double zDiff = player.z - speaker.z;
+            if ((xDiff * xDiff) + (yDiff * yDiff) + (zDiff * zDiff) <= distanceSquared) {
+                found.add(player);
+            }
+        }
+
+        return found;
+    }
+
+    private ProximityGrid<TestPlayer> createGrid(List<TestPlayer> players) {
+        ProximityGrid.Builder<TestPlayer> builder = ProximityGrid.builder();
+        for (TestPlayer player : players) {
+            builder.add(player.world, player.x, player.y, player.z, player);
+        }
+        return builder.build();
+    }
+
+    private List<TestPlayer> createPlayers(int count, Random random) {
+        List<TestPlayer> players = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // most of the players are around the spawn
+            double spread = i % 4 == 0 ? 5_000D : 500D;
+
+            players.add(new TestPlayer(
+                    WORLDS[i % 5 == 0 ? (i / 5) % WORLDS.length : 0],
+                    (random.nextDouble() - 0.5D) * spread,
+                    60D + random.nextDouble() * 40D,
+                    (random.nextDouble() - 0.5D) * spread
+            ));
+        }
+        return players;
+    }
+
+    private static final class TestPlayer {
+
+        private final String world;
+        private final double x;
+        private final double y;
+        private final double z;
+
+        private TestPlayer(String world, double x, double y, double z) {
+            this.world = world;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package su.plo.voice.server.player;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import su.plo.lib.api.server.entity.MinecraftServerPlayerEntity;
+import su.plo.voice.api.server.player.VoiceServerPlayer;
+import su.plo.voice.proto.data.player.VoicePlayerInfo;
+import su.plo.voice.proto.packets.Packet;
+import su.plo.voice.proto.packets.tcp.PacketTcpCodec;
+import su.plo.voice.proto.packets.tcp.clientbound.PlayerInfoDeltaPacket;
+import su.plo.voice.proto.packets.tcp.clientbound.PlayerInfoUpdatePacket;
+import su.plo.voice.proto.packets.tcp.clientbound.PlayerListPacket;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class PlayerInfoSyncTest {
+
+    @Test
+    public void testSync() throws InterruptedException {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        PlayerInfoSync sync = new PlayerInfoSync(() -> scheduler, 10L, (player) -> true);
+
+        TestPlayer first = new TestPlayer(0);
+        TestPlayer second = new TestPlayer(1);
+
+        sync.publish(first.info);
+        sync.sendList(first.player, list(first));
+
+        sync.publish(second.info);
+        sync.sendList(second.player, list(first, second));
+
+        second.info = new VoicePlayerInfo(second.id, second.info.getPlayerNick(), true, false, false);
+        Assertions.assertTrue(sync.publish(second.info));
+        Assertions.assertFalse(sync.publish(copy(second.info)));
+        sync.markDirty(first.player, second.id);
+        sync.markDirty(second.player, second.id);
+        sync.markDirty(second.player, second.id);
+
+        await(scheduler);
+
+        // first doesn't know second yet, so the latest full info is sent
+        Assertions.assertEquals(2, first.received.size());
+        Assertions.assertTrue(first.received.get(1) instanceof PlayerInfoUpdatePacket);
+        Assertions.assertEquals(second.info, first.known.get(second.id));
+
+        // second received its own info in the list, so only the change is sent
+        Assertions.assertEquals(2, second.received.size());
+        Assertions.assertTrue(second.received.get(1) instanceof PlayerInfoDeltaPacket);
+        Assertions.assertEquals(second.info, second.known.get(second.id));
+    }
+
+    @Test
+    public void testDelta() throws InterruptedException {
+        ScheduledExecutorService[] scheduler = {Executors.newSingleThreadScheduledExecutor()};
+        PlayerInfoSync sync = new PlayerInfoSync(() -> scheduler[0], 10L, (player) -> true);
+
+        TestPlayer first = new TestPlayer(0);
+        TestPlayer second = new TestPlayer(1);
+        sync.publish(first.info);
+        sync.publish(second.info);
+        sync.sendList(first.player, list(first, second));
+
+        second.info = new VoicePlayerInfo(second.id, second.info.getPlayerNick(), false, true, false);
+        sync.publish(second.info);
+        sync.markDirty(first.player, second.id);
+        await(scheduler[0]);
+
+        Assertions.assertTrue(first.received.get(1) instanceof PlayerInfoDeltaPacket);
+        Assertions.assertEquals(second.info, first.known.get(second.id));
+
+        // disconnected player is sent in full on the next connect
+        scheduler[0] = Executors.newSingleThreadScheduledExecutor();
+        sync.remove(second.id);
+        sync.publish(second.info);
+        sync.markDirty(first.player, second.id);
+        await(scheduler[0]);
+
+        Assertions.assertTrue(first.received.get(2) instanceof PlayerInfoUpdatePacket);
+    }
+
+    @Test
+    public void testJoinStorm() throws InterruptedException {
+        List<TestPlayer> baseline = baselineJoinStorm(100, 3);
+        List<TestPlayer> synced = syncJoinStorm(100, 3);
+
+        // every client ends up with the latest state of everyone
+        for (TestPlayer player : synced) {
+            Assertions.assertEquals(synced.size(), player.known.size());
+            for (TestPlayer other : synced) {
+                Assertions.assertEquals(other.info, player.known.get(other.id));
+            }
+        }
+        Assertions.assertTrue(receivedBytes(synced) < receivedBytes(baseline));
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmarkJoinStorm(TestReporter reporter) throws InterruptedException {
+        int playerCount = 500;
+        // every player toggles the microphone a few times in a row after the storm
+        int toggles = 3;
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            List<TestPlayer> baseline = baselineJoinStorm(playerCount, toggles);
+            long baselineTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<TestPlayer> synced = syncJoinStorm(playerCount, toggles);
+            long syncTime = System.nanoTime() - start;
+
+            reporter.publishEntry("round " + round, String.format(
+                    "%d players join storm: baseline %d packets, %d KiB, %.2f ms; sync %d packets, %d KiB, %.2f ms with flush delays",
+                    playerCount,
+                    receivedPackets(baseline),
+                    receivedBytes(baseline) / 1024,
+                    baselineTime / 1_000_000D,
+                    receivedPackets(synced),
+                    receivedBytes(synced) / 1024,
+                    syncTime / 1_000_000D
+            ));
+        }
+    }
+
+    // full list to the joined player and full info broadcast to everyone on every change
+    private static List<TestPlayer> baselineJoinStorm(int playerCount, int toggles) {
+        List<TestPlayer> players = new ArrayList<>();
+
+        for (int i = 0; i < playerCount; i++) {
+            TestPlayer joined = new TestPlayer(i);
+            players.add(joined);
+
+            List<VoicePlayerInfo> list = new ArrayList<>();
+            for (TestPlayer player : players) list.add(player.info);
+            joined.player.sendPacket(new PlayerListPacket(list));
+
+            for (TestPlayer receiver : players) receiver.player.sendPacket(new PlayerInfoUpdatePacket(joined.info));
+        }
+        for (TestPlayer player : players) {
+            for (int toggle = 1; toggle <= toggles; toggle++) {
+                player.info = toggle(player.info, toggle);
+                for (TestPlayer receiver : players) receiver.player.sendPacket(new PlayerInfoUpdatePacket(player.info));
+            }
+        }
+
+        return players;
+    }
+
+    private static List<TestPlayer> syncJoinStorm(int playerCount, int toggles) throws InterruptedException {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        PlayerInfoSync sync = new PlayerInfoSync(() -> scheduler, 50L, (player) -> true);
+        List<TestPlayer> players = new ArrayList<>();
+        List<UUID> playerIds = new ArrayList<>();
+
+        for (int i = 0; i < playerCount; i++) {
+            TestPlayer joined = new TestPlayer(i);
+            players.add(joined);
+            playerIds.add(joined.id);
+
+            sync.publish(joined.info);
+            sync.sendList(joined.player, playerIds);
+            for (TestPlayer player : players) sync.markDirty(player.player, joined.id);
+        }
+        for (TestPlayer player : players) {
+            for (int toggle = 1; toggle <= toggles; toggle++) {
+                player.info = toggle(player.info, toggle);
+                sync.publish(player.info);
+                for (TestPlayer receiver : players) sync.markDirty(receiver.player, player.id);
+            }
+        }
+        await(scheduler);
+
+        return players;
+    }
+
+    private static long receivedBytes(List<TestPlayer> players) {
+        long bytes = 0L;
+        for (TestPlayer player : players) bytes += player.receivedBytes();
+        return bytes;
+    }
+
+    private static long receivedPackets(List<TestPlayer> players) {
+        long packets = 0L;
+        for (TestPlayer player : players) packets += player.received.size();
+        return packets;
+    }
+
+    private static VoicePlayerInfo toggle(VoicePlayerInfo info, int toggle) {
+        return new VoicePlayerInfo(info.getPlayerId(), info.getPlayerNick(), false, false, toggle % 2 == 1);
+    }
+
+    private static List<UUID> list(TestPlayer... players) {
+        List<UUID> playerIds = new ArrayList<>();
+        for (TestPlayer player : players) playerIds.add(player.id);
+        return playerIds;
+    }
+
+    private static VoicePlayerInfo copy(VoicePlayerInfo info) {
+        return new VoicePlayerInfo(
+                info.getPlayerId(),
+                info.getPlayerNick(),
+                info.isMuted(),
+                info.isVoiceDisabled(),
+                info.isMicrophoneMuted()
+        );
+    }
+
+    private static void await(ScheduledExecutorService scheduler) throws InterruptedException {
+        // delayed flushes are executed after shutdown
+        scheduler.shutdown();
+        Assertions.assertTrue(scheduler.awaitTermination(10L, TimeUnit.SECONDS));
+    }
+
+    private static final class TestPlayer {
+
+        private final UUID id = UUID.randomUUID();
+        private final VoiceServerPlayer player;
+
+        private final List<Packet<?>> received = new ArrayList<>();
+        private final Map<UUID, VoicePlayerInfo> known = new HashMap<>();
+
+        private VoicePlayerInfo info;
+
+        private TestPlayer(int index) {
+            this.info = new VoicePlayerInfo(id, "Player" + index, false, false, false);
+
+            MinecraftServerPlayerEntity entity = (MinecraftServerPlayerEntity) Proxy.newProxyInstance(
+                    MinecraftServerPlayerEntity.class.getClassLoader(),
+                    new Class[]{MinecraftServerPlayerEntity.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("getUUID")) return id;
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+            );
+
+            this.player = (VoiceServerPlayer) Proxy.newProxyInstance(
+                    VoiceServerPlayer.class.getClassLoader(),
+                    new Class[]{VoiceServerPlayer.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "getInstance":
+                                return entity;
+                            case "sendPacket":
+                                receive((Packet<?>) args[0]);
+                                return null;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    }
+            );
+        }
+
+        private long receivedBytes() {
+            long bytes = 0L;
+            for (Packet<?> packet : received) bytes += PacketTcpCodec.encode(packet).length;
+            return bytes;
+        }
+
+        private synchronized void receive(Packet<?> packet) {
+            received.add(packet);
+
+            if (packet instanceof PlayerListPacket) {
+                for (VoicePlayerInfo playerInfo : ((PlayerListPacket) packet).getPlayers()) {
+                    known.put(playerInfo.getPlayerId(), playerInfo);
+                }
+            } else if (packet instanceof PlayerInfoUpdatePacket) {
+                VoicePlayerInfo playerInfo = ((PlayerInfoUpdatePacket) packet).getPlayerInfo();
+                known.put(playerInfo.getPlayerId(), playerInfo);
+            } else if (packet instanceof PlayerInfoDeltaPacket) {
+                PlayerInfoDeltaPacket delta = (PlayerInfoDeltaPacket) packet;
+                known.put(delta.getPlayerId(), delta.apply(known.get(delta.getPlayerId())));
+            }
+        }
+    }
+}
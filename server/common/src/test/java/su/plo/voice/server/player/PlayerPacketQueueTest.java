@@ -0,0 +1,67 @@
+package su.plo.voice.server.player;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import su.plo.voice.proto.data.player.VoicePlayerInfo;
+import su.plo.voice.proto.packets.Packet;
+import su.plo.voice.proto.packets.tcp.PacketTcpCodec;
+import su.plo.voice.proto.packets.tcp.clientbound.BatchPacket;
+import su.plo.voice.proto.packets.tcp.clientbound.DistanceVisualizePacket;
+import su.plo.voice.proto.packets.tcp.clientbound.PlayerDisconnectPacket;
+import su.plo.voice.proto.packets.tcp.clientbound.PlayerInfoUpdatePacket;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+public class PlayerPacketQueueTest {
+
+    @Test
+    public void testCoalesce() throws IOException {
+        List<byte[]> sent = new ArrayList<>();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        try {
+            PlayerPacketQueue queue = new PlayerPacketQueue(sent::add, scheduler);
+
+            UUID playerId = UUID.randomUUID();
+            UUID otherPlayerId = UUID.randomUUID();
+
+            queue.add(new PlayerInfoUpdatePacket(new VoicePlayerInfo(playerId, "first", false, false, false)));
+            queue.add(new DistanceVisualizePacket(8, 0xFFFFFF));
+            queue.add(new PlayerInfoUpdatePacket(new VoicePlayerInfo(otherPlayerId, "other", false, false, false)));
+            queue.add(new PlayerInfoUpdatePacket(new VoicePlayerInfo(playerId, "first", true, false, false)));
+            queue.add(new PlayerDisconnectPacket(otherPlayerId));
+
+            Assertions.assertEquals(3, queue.size());
+            queue.flush();
+            Assertions.assertEquals(0, queue.size());
+
+            Assertions.assertEquals(1, sent.size());
+            BatchPacket batch = (BatchPacket) (Packet<?>) PacketTcpCodec.decode(sent.get(0))
+                    .orElseThrow(IllegalStateException::new);
+
+            List<Packet<?>> packets = new ArrayList<>();
+            for (byte[] frame : batch.getPackets()) {
+                packets.add(PacketTcpCodec.decode(frame).orElseThrow(IllegalStateException::new));
+            }
+
+            // newest updates are moved to the end
+            Assertions.assertEquals(3, packets.size());
+            Assertions.assertTrue(packets.get(0) instanceof DistanceVisualizePacket);
+            Assertions.assertTrue(((PlayerInfoUpdatePacket) packets.get(1)).getPlayerInfo().isMuted());
+            Assertions.assertEquals(otherPlayerId, ((PlayerDisconnectPacket) packets.get(2)).getPlayerId());
+
+            // single packet is sent as is
+            queue.add(new PlayerDisconnectPacket(playerId));
+            queue.flush();
+            Packet<?> single = PacketTcpCodec.decode(sent.get(1)).orElseThrow(IllegalStateException::new);
+            Assertions.assertTrue(single instanceof PlayerDisconnectPacket);
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
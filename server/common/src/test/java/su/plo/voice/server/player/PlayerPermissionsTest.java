@@ -0,0 +1,135 @@
+package su.plo.voice.server.player;
+
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import su.plo.lib.api.server.entity.MinecraftServerPlayerEntity;
+import su.plo.voice.api.addon.AddonContainer;
+import su.plo.voice.api.server.PlasmoVoiceServer;
+import su.plo.voice.server.audio.capture.VoiceServerActivation;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class PlayerPermissionsTest {
+
+    @Test
+    public void testCache() {
+        TestPlayer player = new TestPlayer();
+        player.permissions.put("pv.activation.proximity", true);
+
+        Assertions.assertTrue(player.player.hasPermission("pv.activation.proximity"));
+        Assertions.assertEquals(1, player.checks);
+
+        player.permissions.put("pv.activation.proximity", false);
+        Assertions.assertTrue(player.player.hasPermission("pv.activation.proximity"));
+        Assertions.assertEquals(1, player.checks);
+
+        player.player.invalidatePermissions();
+        Assertions.assertFalse(player.player.hasPermission("pv.activation.proximity"));
+        Assertions.assertEquals(2, player.checks);
+    }
+
+    @Test
+    public void testInvalidationDuringLookup() {
+        TestPlayer player = new TestPlayer();
+        player.permissions.put("pv.activation.proximity", true);
+        // permission is revoked while the old value is being checked
+        player.onCheck = () -> {
+            player.onCheck = null;
+            player.permissions.put("pv.activation.proximity", false);
+            player.player.invalidatePermissions();
+        };
+
+        Assertions.assertTrue(player.player.hasPermission("pv.activation.proximity"));
+        Assertions.assertFalse(player.player.hasPermission("pv.activation.proximity"));
+    }
+
+    @Test
+    public void testActivation() {
+        TestPlayer player = new TestPlayer();
+        player.permissions.put("pv.activation.proximity", false);
+        player.permissions.put("pv.activation.group", true);
+
+        VoiceServerActivation proximity = activation("proximity");
+        VoiceServerActivation group = activation("group");
+
+        Assertions.assertFalse(proximity.checkPermissions(player.player));
+        Assertions.assertTrue(group.checkPermissions(player.player));
+        Assertions.assertFalse(proximity.checkPermissions(player.player));
+        Assertions.assertEquals(2, player.checks);
+
+        // activation permissions are changed, so the cached result is not used
+        proximity.addPermission("pv.activation.group");
+        Assertions.assertTrue(proximity.checkPermissions(player.player));
+
+        player.permissions.put("pv.activation.group", false);
+        Assertions.assertTrue(group.checkPermissions(player.player));
+
+        player.player.invalidatePermissions();
+        Assertions.assertFalse(group.checkPermissions(player.player));
+        Assertions.assertFalse(proximity.checkPermissions(player.player));
+    }
+
+    private static VoiceServerActivation activation(String name) {
+        AddonContainer addon = (AddonContainer) Proxy.newProxyInstance(
+                AddonContainer.class.getClassLoader(),
+                new Class[]{AddonContainer.class},
+                (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+        );
+
+        return new VoiceServerActivation(
+                addon,
+                name,
+                "pv.activation." + name,
+                "",
+                Sets.newHashSet("pv.activation." + name),
+                Collections.emptyList(),
+                0,
+                true,
+                true,
+                false,
+                1
+        );
+    }
+
+    private static final class TestPlayer {
+
+        private final Map<String, Boolean> permissions = new HashMap<>();
+        private final VoiceServerPlayerEntity player;
+
+        private int checks;
+        private Runnable onCheck;
+
+        private TestPlayer() {
+            MinecraftServerPlayerEntity entity = (MinecraftServerPlayerEntity) Proxy.newProxyInstance(
+                    MinecraftServerPlayerEntity.class.getClassLoader(),
+                    new Class[]{MinecraftServerPlayerEntity.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("hasPermission")) {
+                            boolean hasPermission = permissions.getOrDefault((String) args[0], false);
+                            checks++;
+                            if (onCheck != null) onCheck.run();
+                            return hasPermission;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+            );
+
+            PlasmoVoiceServer voiceServer = (PlasmoVoiceServer) Proxy.newProxyInstance(
+                    PlasmoVoiceServer.class.getClassLoader(),
+                    new Class[]{PlasmoVoiceServer.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("getBackgroundExecutor")) return null;
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+            );
+
+            this.player = new VoiceServerPlayerEntity(voiceServer, entity);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package su.plo.voice.server.player;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import su.plo.lib.api.server.entity.MinecraftServerPlayerEntity;
+import su.plo.lib.api.server.world.MinecraftServerWorld;
+import su.plo.lib.api.server.world.ServerPos3d;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PlayerPositionSnapshotTest {
+
+    private static final MinecraftServerWorld WORLD = (MinecraftServerWorld) Proxy.newProxyInstance(
+            MinecraftServerWorld.class.getClassLoader(),
+            new Class[]{MinecraftServerWorld.class},
+            (proxy, method, args) -> method.getName().equals("getKey") ? "world" : null
+    );
+
+    @Test
+    public void testSnapshot() {
+        PlayerPositionSnapshot snapshot = new PlayerPositionSnapshot();
+        ServerPos3d position = new ServerPos3d();
+
+        TestPlayer first = new TestPlayer();
+        TestPlayer second = new TestPlayer();
+
+        first.move(1D);
+        second.move(2D);
+        snapshot.update(Arrays.asList(first.entity, second.entity));
+
+        // live position changes are not visible until the next capture
+        first.move(10D);
+
+        Assertions.assertTrue(snapshot.getPosition(first.id, position));
+        Assertions.assertEquals(1D, position.getX());
+        Assertions.assertEquals(1F, position.getYaw());
+        Assertions.assertSame(WORLD, position.getWorld());
+
+        snapshot.update(Collections.singletonList(first.entity));
+
+        Assertions.assertTrue(snapshot.getPosition(first.id, position));
+        Assertions.assertEquals(10D, position.getZ());
+        Assertions.assertFalse(snapshot.getPosition(second.id, position));
+
+        // released slot is reused by the new player
+        TestPlayer third = new TestPlayer();
+        third.move(3D);
+        snapshot.update(Arrays.asList(first.entity, third.entity));
+
+        Assertions.assertFalse(snapshot.getPosition(second.id, position));
+        Assertions.assertTrue(snapshot.getPosition(third.id, position));
+        Assertions.assertEquals(3D, position.getY());
+
+        List<UUID> captured = new ArrayList<>();
+        snapshot.forEach((playerId, playerPosition) -> captured.add(playerId));
+        Assertions.assertEquals(2, captured.size());
+        Assertions.assertEquals(3L, snapshot.getTick());
+    }
+
+    @Test
+    public void testConcurrentReads() throws InterruptedException {
+        PlayerPositionSnapshot snapshot = new PlayerPositionSnapshot();
+
+        List<TestPlayer> players = new ArrayList<>();
+        List<MinecraftServerPlayerEntity> entities = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            TestPlayer player = new TestPlayer();
+            players.add(player);
+            entities.add(player.entity);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger torn = new AtomicInteger();
+
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread reader = new Thread(() -> {
+                ServerPos3d position = new ServerPos3d();
+                while (running.get()) {
+                    for (TestPlayer player : players) {
+                        if (!snapshot.getPosition(player.id, position)) continue;
+
+                        // all coordinates of the player are captured in the same tick
+                        if (position.getX() != position.getY() || position.getY() != position.getZ()) {
+                            torn.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        for (int tick = 0; tick < 5_000; tick++) {
+            for (TestPlayer player : players) player.move(tick);
+            snapshot.update(entities);
+        }
+
+        running.set(false);
+        for (Thread reader : readers) reader.join();
+
+        Assertions.assertEquals(0, torn.get());
+    }
+
+    private static final class TestPlayer {
+
+        private final UUID id = UUID.randomUUID();
+        private final ServerPos3d position = new ServerPos3d();
+        private final MinecraftServerPlayerEntity entity;
+
+        private TestPlayer() {
+            position.setWorld(WORLD);
+
+            this.entity = (MinecraftServerPlayerEntity) Proxy.newProxyInstance(
+                    MinecraftServerPlayerEntity.class.getClassLoader(),
+                    new Class[]{MinecraftServerPlayerEntity.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "getUUID":
+                                return id;
+                            case "getServerPosition":
+                                ServerPos3d target = (ServerPos3d) args[0];
+                                target.setWorld(position.getWorld());
+                                target.setX(position.getX());
+                                target.setY(position.getY());
+                                target.setZ(position.getZ());
+                                target.setYaw(position.getYaw());
+                                target.setPitch(position.getPitch());
+                                return target;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    }
+            );
+        }
+
+        private void move(double coordinate) {
+            position.setX(coordinate);
+            position.setY(coordinate);
+            position.setZ(coordinate);
+            position.setYaw((float) coordinate);
+        }
+    }
+}
@@ -63,6 +63,7 @@ public final class PaperVoiceServer extends BaseVoiceServer implements Listener
 
     public void onShutdown() {
         super.onShutdown();
+        if (handler != null) handler.close();
         this.handler = null;
         this.serviceChannel = null;
     }
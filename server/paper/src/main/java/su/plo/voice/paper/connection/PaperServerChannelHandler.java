@@ -2,7 +2,6 @@ package su.plo.voice.paper.connection;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.io.ByteStreams;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
@@ -34,7 +33,7 @@ public final class PaperServerChannelHandler extends BaseServerChannelHandler im
     @Override
     public void onPluginMessageReceived(@NotNull String channelName, @NotNull Player player, @NotNull byte[] message) {
         try {
-            PacketTcpCodec.decode(ByteStreams.newDataInput(message))
+            PacketTcpCodec.decode(message)
                     .ifPresent(packet -> {
 //                        LogManager.getLogger().info("Channel packet received {}", packet);
 
@@ -42,10 +41,15 @@ public final class PaperServerChannelHandler extends BaseServerChannelHandler im
 
                         PlayerChannelHandler channel = channels.computeIfAbsent(
                                 player.getUniqueId(),
-                                (playerId) -> new PlayerChannelHandler(voiceServer, voicePlayer)
+                                (playerId) -> new PlayerChannelHandler(
+                                        voiceServer,
+                                        voiceServer.getAudioEncryption(),
+                                        voicePlayer,
+                                        packetWorkers
+                                )
                         );
 
-                        channel.handlePacket(packet);
+                        channel.queuePacket(packet);
                     });
         } catch (IOException e) {
             e.printStackTrace();